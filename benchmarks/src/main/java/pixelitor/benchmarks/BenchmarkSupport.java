@@ -0,0 +1,143 @@
+/*
+ * Copyright 2019 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.benchmarks;
+
+import pixelitor.Composition;
+import pixelitor.TestHelper;
+import pixelitor.filters.FilterAction;
+import pixelitor.filters.FilterUtils;
+import pixelitor.gui.PixelitorWindow;
+import pixelitor.layers.ImageLayer;
+import pixelitor.menus.MenuBar;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Static utility methods shared by the benchmarks
+ */
+public final class BenchmarkSupport {
+    // the image type names that can be used as benchmark parameters
+    public static final String ARGB = "TYPE_INT_ARGB";
+    public static final String ARGB_PRE = "TYPE_INT_ARGB_PRE";
+    public static final String GRAY = "TYPE_BYTE_GRAY";
+
+    private static boolean initialized = false;
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Initializes the parts of the application needed by
+     * the benchmarks, without showing the main window
+     */
+    public static synchronized void init() {
+        if (initialized) {
+            return;
+        }
+        TestHelper.setupMockFgBgSelector();
+
+        // the filters are registered when their menu items are created
+        new MenuBar(mock(PixelitorWindow.class));
+
+        initialized = true;
+    }
+
+    public static FilterAction findFilter(String listName) {
+        init();
+        for (FilterAction action : FilterUtils.getAllFiltersSorted()) {
+            if (action.getListName().equals(listName)) {
+                return action;
+            }
+        }
+        throw new IllegalArgumentException("filter \"" + listName + "\" not found");
+    }
+
+    public static int parseImageType(String typeName) {
+        switch (typeName) {
+            case ARGB:
+                return TYPE_INT_ARGB;
+            case ARGB_PRE:
+                return TYPE_INT_ARGB_PRE;
+            case GRAY:
+                return TYPE_BYTE_GRAY;
+            default:
+                throw new IllegalArgumentException("typeName = " + typeName);
+        }
+    }
+
+    /**
+     * Creates an image with deterministic content: smooth gradients,
+     * some noise and partially transparent areas
+     */
+    public static BufferedImage createImage(int width, int height, String typeName, long seed) {
+        int type = parseImageType(typeName);
+        BufferedImage img = new BufferedImage(width, height, type);
+        Random random = new Random(seed);
+        int phase = random.nextInt(256);
+
+        if (type == TYPE_BYTE_GRAY) {
+            WritableRaster raster = img.getRaster();
+            byte[] row = new byte[width];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int v = ((x + y) * 255 / (width + height) + phase) & 0xFF;
+                    row[x] = (byte) (v ^ (random.nextInt(16)));
+                }
+                raster.setDataElements(0, y, width, 1, row);
+            }
+            return img;
+        }
+
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            int g = (y * 255 / height + phase) & 0xFF;
+            for (int x = 0; x < width; x++) {
+                int r = (x * 255 / width) & 0xFF;
+                int b = random.nextInt(256);
+                int a = ((x / 64 + y / 64) % 4 == 0) ? 128 : 255;
+                row[x] = a << 24 | r << 16 | g << 8 | b;
+            }
+            // setRGB premultiplies for TYPE_INT_ARGB_PRE
+            img.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return img;
+    }
+
+    /**
+     * Creates a composition with the given number of image layers.
+     * The composition has a mock view, so it isn't shown.
+     */
+    public static Composition createComposition(int width, int height, int numLayers) {
+        init();
+        Composition comp = TestHelper.createEmptyComposition(width, height);
+        for (int i = 0; i < numLayers; i++) {
+            BufferedImage image = createImage(width, height, ARGB, i);
+            ImageLayer layer = new ImageLayer(comp, image, "layer " + (i + 1), null);
+            comp.addLayerInInitMode(layer);
+        }
+        comp.setDirty(false);
+        return comp;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2019 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pixelitor.Composition;
+import pixelitor.gui.View;
+import pixelitor.layers.Drawable;
+import pixelitor.tools.AbstractBrushTool;
+import pixelitor.tools.Tools;
+import pixelitor.tools.gui.ToolSettingsPanel;
+import pixelitor.tools.util.PPoint;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Draws a diagonal brush stroke over the whole image
+ * with the default settings of a brush tool
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BrushBenchmarks {
+    @Param({"Brush", "Eraser", "Smudge"})
+    public String toolName;
+
+    @Param({"1000", "3000"})
+    public int size;
+
+    private AbstractBrushTool tool;
+    private Drawable dr;
+    private PPoint start;
+    private PPoint end;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Composition comp = BenchmarkSupport.createComposition(size, size, 1);
+        dr = comp.getActiveDrawableOrThrow();
+        View view = comp.getView();
+
+        switch (toolName) {
+            case "Brush":
+                tool = Tools.BRUSH;
+                break;
+            case "Eraser":
+                tool = Tools.ERASER;
+                break;
+            case "Smudge":
+                tool = Tools.SMUDGE;
+                break;
+            default:
+                throw new IllegalArgumentException("toolName = " + toolName);
+        }
+        tool.setSettingsPanel(new ToolSettingsPanel());
+        tool.initSettingsPanel();
+        tool.resetInitialState();
+
+        start = PPoint.eagerFromIm(size * 0.1, size * 0.1, view);
+        end = PPoint.eagerFromIm(size * 0.9, size * 0.9, view);
+    }
+
+    @Benchmark
+    public void drawBrushStroke() {
+        tool.drawBrushStrokeProgrammatically(dr, start, end);
+    }
+}
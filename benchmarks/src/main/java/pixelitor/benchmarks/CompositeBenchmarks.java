@@ -0,0 +1,73 @@
+/*
+ * Copyright 2019 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pixelitor.Composition;
+import pixelitor.layers.BlendingMode;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calculates the composite image of a composition, where all
+ * layers except the bottom one use the given blending mode
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompositeBenchmarks {
+    @Param({"2", "8"})
+    public int numLayers;
+
+    // all blending modes, if not specified
+    @Param
+    public BlendingMode blendingMode;
+
+    @Param({"1000", "3000"})
+    public int size;
+
+    private Composition comp;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        comp = BenchmarkSupport.createComposition(size, size, numLayers);
+        for (int i = 1; i < numLayers; i++) {
+            comp.getLayer(i).setBlendingMode(blendingMode, false, false, false);
+        }
+    }
+
+    @Benchmark
+    public BufferedImage calculateCompositeImage() {
+        return comp.calculateCompositeImage();
+    }
+}
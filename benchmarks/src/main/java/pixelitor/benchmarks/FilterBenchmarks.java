@@ -0,0 +1,94 @@
+/*
+ * Copyright 2019 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import pixelitor.filters.Filter;
+import pixelitor.filters.FilterAction;
+import pixelitor.filters.FilterUtils;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the filters with their default settings.
+ *
+ * By default only a few filters are benchmarked, the main method
+ * runs the benchmark for every filter returned by
+ * {@link FilterUtils#getAllFiltersSorted()}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterBenchmarks {
+    // the list names of the filters, as in the batch filter wizard
+    @Param({"Gaussian Blur", "Median", "Morphology", "Voronoi Diagram"})
+    public String filterName;
+
+    @Param({"1000", "3000"})
+    public int size;
+
+    @Param({BenchmarkSupport.ARGB, BenchmarkSupport.ARGB_PRE, BenchmarkSupport.GRAY})
+    public String imageType;
+
+    private Filter filter;
+    private BufferedImage src;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        filter = BenchmarkSupport.findFilter(filterName).getFilter();
+        src = BenchmarkSupport.createImage(size, size, imageType, 0);
+    }
+
+    @Benchmark
+    public BufferedImage filter() {
+        return filter.transformImage(src);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        BenchmarkSupport.init();
+        String[] allNames = Arrays.stream(FilterUtils.getAllFiltersSorted())
+                .map(FilterAction::getListName)
+                .toArray(String[]::new);
+
+        Options options = new OptionsBuilder()
+                .include(FilterBenchmarks.class.getName())
+                .param("filterName", allNames)
+                .build();
+        new Runner(options).run();
+    }
+}
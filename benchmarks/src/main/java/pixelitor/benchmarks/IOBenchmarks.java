@@ -0,0 +1,103 @@
+/*
+ * Copyright 2019 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pixelitor.Composition;
+import pixelitor.io.OpenRaster;
+import pixelitor.io.PXCFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes and reads compositions in the layered file formats
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IOBenchmarks {
+    @Param({"pxc", "ora"})
+    public String format;
+
+    @Param({"1", "4"})
+    public int numLayers;
+
+    @Param({"1000", "3000"})
+    public int size;
+
+    private Composition comp;
+
+    // written in the setup, and read by the read benchmark
+    private File inFile;
+
+    // overwritten by the write benchmark
+    private File outFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        comp = BenchmarkSupport.createComposition(size, size, numLayers);
+
+        inFile = File.createTempFile("pixelitor_bench_in", "." + format);
+        outFile = File.createTempFile("pixelitor_bench_out", "." + format);
+        write(comp, inFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        inFile.delete();
+        outFile.delete();
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        write(comp, outFile);
+    }
+
+    @Benchmark
+    public Composition read() throws Exception {
+        if (format.equals("pxc")) {
+            return PXCFormat.read(inFile);
+        }
+        return OpenRaster.read(inFile);
+    }
+
+    private void write(Composition comp, File file) throws IOException {
+        if (format.equals("pxc")) {
+            PXCFormat.write(comp, file);
+        } else {
+            OpenRaster.write(comp, file, false);
+        }
+    }
+}
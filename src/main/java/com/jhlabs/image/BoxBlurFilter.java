@@ -16,6 +16,7 @@ limitations under the License.
 
 package com.jhlabs.image;
 
+import pixelitor.ThreadPool;
 import pixelitor.utils.ProgressTracker;
 
 import java.awt.image.BufferedImage;
@@ -122,6 +123,7 @@ public class BoxBlurFilter extends AbstractBufferedImageOp {
 
     /**
      * Blur and transpose a block of ARGB pixels.
+     * The rows are processed in parallel.
      *
      * @param in     the input pixels
      * @param out    the output pixels
@@ -131,7 +133,6 @@ public class BoxBlurFilter extends AbstractBufferedImageOp {
      * @param pt
      */
     public static void blur(int[] in, int[] out, int width, int height, float radius, ProgressTracker pt) {
-        int widthMinus1 = width - 1;
         int r = (int) radius;
         int tableSize = 2 * r + 1;
 
@@ -145,92 +146,110 @@ public class BoxBlurFilter extends AbstractBufferedImageOp {
             divide[i] = i / tableSize;
         }
 
-        int inIndex = 0;
+        ThreadPool.processRowBlocks(height, (fromY, toY) -> {
+            // the thread-local buffers are reused between the
+            // iterations and the horizontal/vertical passes
+            ChannelBuffers buffers = ChannelBuffers.get(width + tableSize);
+            for (int y = fromY; y < toY; y++) {
+                blurLine(in, out, width, height, y, r, divide, buffers);
+            }
+        }, pt);
+    }
 
-        for (int y = 0; y < height; y++) {
-            int outIndex = y;
-            int ta = 0, tr = 0, tg = 0, tb = 0;
+    private static void blurLine(int[] in, int[] out, int width, int height,
+                                 int y, int r, int[] divide, ChannelBuffers buffers) {
+        int[] as = buffers.a;
+        int[] rs = buffers.r;
+        int[] gs = buffers.g;
+        int[] bs = buffers.b;
 
-            for (int i = -r; i <= r; i++) {
-                int rgb = in[inIndex + ImageMath.clamp(i, 0, width - 1)];
-                ta += (rgb >> 24) & 0xff;
-                tr += (rgb >> 16) & 0xff;
-                tg += (rgb >> 8) & 0xff;
-                tb += rgb & 0xff;
-            }
+        // unpack the line into separate channel arrays, padded with r + 1 clamped
+        // pixels on both sides, so that the sliding window needs no edge checks
+        int inIndex = y * width;
+        int widthMinus1 = width - 1;
+        int paddedLength = width + 2 * r + 1;
+        for (int i = 0; i < paddedLength; i++) {
+            int rgb = in[inIndex + ImageMath.clamp(i - r, 0, widthMinus1)];
+            as[i] = (rgb >> 24) & 0xff;
+            rs[i] = (rgb >> 16) & 0xff;
+            gs[i] = (rgb >> 8) & 0xff;
+            bs[i] = rgb & 0xff;
+        }
 
-            for (int x = 0; x < width; x++) {
-                out[outIndex] = (divide[ta] << 24) | (divide[tr] << 16) | (divide[tg] << 8) | divide[tb];
-
-                int i1 = x + r + 1;
-                if (i1 > widthMinus1) {
-                    i1 = widthMinus1;
-                }
-                int i2 = x - r;
-                if (i2 < 0) {
-                    i2 = 0;
-                }
-                int rgb1 = in[inIndex + i1];
-                int rgb2 = in[inIndex + i2];
-
-                ta += ((rgb1 >> 24) & 0xff) - ((rgb2 >> 24) & 0xff);
-                tr += ((rgb1 & 0xff0000) - (rgb2 & 0xff0000)) >> 16;
-                tg += ((rgb1 & 0xff00) - (rgb2 & 0xff00)) >> 8;
-                tb += (rgb1 & 0xff) - (rgb2 & 0xff);
-                outIndex += height;
-            }
-            inIndex += width;
+        int ta = 0, tr = 0, tg = 0, tb = 0;
+        int windowSize = 2 * r + 1;
+        for (int i = 0; i < windowSize; i++) {
+            ta += as[i];
+            tr += rs[i];
+            tg += gs[i];
+            tb += bs[i];
+        }
 
-            pt.unitDone();
+        int outIndex = y;
+        for (int x = 0; x < width; x++) {
+            out[outIndex] = (divide[ta] << 24) | (divide[tr] << 16) | (divide[tg] << 8) | divide[tb];
+
+            int i1 = x + windowSize;
+            ta += as[i1] - as[x];
+            tr += rs[i1] - rs[x];
+            tg += gs[i1] - gs[x];
+            tb += bs[i1] - bs[x];
+            outIndex += height;
         }
     }
 
     public static void blurFractional(int[] in, int[] out, int width, int height, float radius) {
-        radius -= (int) radius;
-        float f = 1.0f / (1 + 2 * radius);
-        int inIndex = 0;
+        float fraction = radius - (int) radius;
+        float f = 1.0f / (1 + 2 * fraction);
 
-        for (int y = 0; y < height; y++) {
-            int outIndex = y;
-
-            out[outIndex] = in[0];
-            outIndex += height;
-            for (int x = 1; x < width - 1; x++) {
-                int i = inIndex + x;
-                int rgb1 = in[i - 1];
-                int rgb2 = in[i];
-                int rgb3 = in[i + 1];
-
-                int a1 = (rgb1 >> 24) & 0xff;
-                int r1 = (rgb1 >> 16) & 0xff;
-                int g1 = (rgb1 >> 8) & 0xff;
-                int b1 = rgb1 & 0xff;
-                int a2 = (rgb2 >> 24) & 0xff;
-                int r2 = (rgb2 >> 16) & 0xff;
-                int g2 = (rgb2 >> 8) & 0xff;
-                int b2 = rgb2 & 0xff;
-                int a3 = (rgb3 >> 24) & 0xff;
-                int r3 = (rgb3 >> 16) & 0xff;
-                int g3 = (rgb3 >> 8) & 0xff;
-                int b3 = rgb3 & 0xff;
-                a1 = a2 + (int) ((a1 + a3) * radius);
-                r1 = r2 + (int) ((r1 + r3) * radius);
-                g1 = g2 + (int) ((g1 + g3) * radius);
-                b1 = b2 + (int) ((b1 + b3) * radius);
-                a1 *= f;
-                r1 *= f;
-                g1 *= f;
-                b1 *= f;
-                out[outIndex] = (a1 << 24) | (r1 << 16) | (g1 << 8) | b1;
-                outIndex += height;
+        ThreadPool.processRowBlocks(height, (fromY, toY) -> {
+            for (int y = fromY; y < toY; y++) {
+                blurFractionalLine(in, out, width, height, y, fraction, f);
             }
+        }, ProgressTracker.NULL_TRACKER);
+    }
 
-            // Laszlo: we get an array index out of bounds exception here
-            // if either the width or the height of the image is 1 pixel.
-            // In Pixelitor these cases are already filtered before we get here
-            out[outIndex] = in[width - 1];
-            inIndex += width;
+    private static void blurFractionalLine(int[] in, int[] out, int width, int height,
+                                           int y, float radius, float f) {
+        int inIndex = y * width;
+        int outIndex = y;
+
+        out[outIndex] = in[inIndex];
+        outIndex += height;
+        for (int x = 1; x < width - 1; x++) {
+            int i = inIndex + x;
+            int rgb1 = in[i - 1];
+            int rgb2 = in[i];
+            int rgb3 = in[i + 1];
+
+            int a1 = (rgb1 >> 24) & 0xff;
+            int r1 = (rgb1 >> 16) & 0xff;
+            int g1 = (rgb1 >> 8) & 0xff;
+            int b1 = rgb1 & 0xff;
+            int a2 = (rgb2 >> 24) & 0xff;
+            int r2 = (rgb2 >> 16) & 0xff;
+            int g2 = (rgb2 >> 8) & 0xff;
+            int b2 = rgb2 & 0xff;
+            int a3 = (rgb3 >> 24) & 0xff;
+            int r3 = (rgb3 >> 16) & 0xff;
+            int g3 = (rgb3 >> 8) & 0xff;
+            int b3 = rgb3 & 0xff;
+            a1 = a2 + (int) ((a1 + a3) * radius);
+            r1 = r2 + (int) ((r1 + r3) * radius);
+            g1 = g2 + (int) ((g1 + g3) * radius);
+            b1 = b2 + (int) ((b1 + b3) * radius);
+            a1 *= f;
+            r1 *= f;
+            g1 *= f;
+            b1 *= f;
+            out[outIndex] = (a1 << 24) | (r1 << 16) | (g1 << 8) | b1;
+            outIndex += height;
         }
+
+        // Laszlo: we get an array index out of bounds exception here
+        // if either the width or the height of the image is 1 pixel.
+        // In Pixelitor these cases are already filtered before we get here
+        out[outIndex] = in[inIndex + width - 1];
     }
 
     /**
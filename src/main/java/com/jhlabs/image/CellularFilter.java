@@ -20,10 +20,11 @@ import com.jhlabs.math.Function2D;
 import com.jhlabs.math.Noise;
 import net.jafama.FastMath;
 import pixelitor.ThreadPool;
-import pixelitor.utils.CachedFloatRandom;
+import pixelitor.utils.CounterRNG;
 
 import java.awt.Rectangle;
-import java.util.concurrent.Future;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A filter which produces an image with a cellular texture.
@@ -324,27 +325,27 @@ public class CellularFilter extends WholeImageFilter implements Function2D {
         public float distance;
     }
 
+    // Laszlo: the feature points of the cubes are cached per thread,
+    // because the same cubes are checked for many neighboring pixels
     enum GridType {
         RANDOM {
             @Override
-            float checkCube(float x, float y, int cubeX, int cubeY, Point[] results, float randomness) {
-                CachedFloatRandom random = randomTL.get();
-                random.setSeed(571 * cubeX + 23 * cubeY);
+            int createPoints(int cubeX, int cubeY, float randomness, float[] points, int offset, CounterRNG random) {
+                random.jumpTo(cubeKey(cubeX, cubeY));
                 int randomIndex = random.nextInt() & 0x1fff;
                 int numPoints = probabilities[randomIndex];
                 float weight = 1.0f;
                 for (int i = 0; i < numPoints; i++) {
                     float px = random.nextFloat();
                     float py = random.nextFloat();
-                    insertionSort(x, y, cubeX, cubeY, results, px, py, weight);
+                    offset = addPoint(points, offset, px, py, weight);
                 }
-                return results[2].distance;
+                return numPoints;
             }
         }, SQUARE {
             @Override
-            float checkCube(float x, float y, int cubeX, int cubeY, Point[] results, float randomness) {
-                CachedFloatRandom random = randomTL.get();
-                random.setSeed(571 * cubeX + 23 * cubeY);
+            int createPoints(int cubeX, int cubeY, float randomness, float[] points, int offset, CounterRNG random) {
+                random.jumpTo(cubeKey(cubeX, cubeY));
                 float weight = 1.0f;
                 float px = 0.5f;
                 float py = 0.5f;
@@ -352,12 +353,12 @@ public class CellularFilter extends WholeImageFilter implements Function2D {
                     px += randomness * (random.nextFloat() - 0.5);
                     py += randomness * (random.nextFloat() - 0.5);
                 }
-                insertionSort(x, y, cubeX, cubeY, results, px, py, weight);
-                return results[2].distance;
+                addPoint(points, offset, px, py, weight);
+                return 1;
             }
         }, HEXAGONAL {
             @Override
-            float checkCube(float x, float y, int cubeX, int cubeY, Point[] results, float randomness) {
+            int createPoints(int cubeX, int cubeY, float randomness, float[] points, int offset, CounterRNG random) {
 //                random.setSeed(571 * cubeX + 23 * cubeY);
                 float px, py;
                 if ((cubeX & 1) == 0) {
@@ -371,12 +372,12 @@ public class CellularFilter extends WholeImageFilter implements Function2D {
                     px += randomness * Noise.noise2(271 * (cubeX + px), 271 * (cubeY + py));
                     py += randomness * Noise.noise2(271 * (cubeX + px) + 89, 271 * (cubeY + py) + 137);
                 }
-                insertionSort(x, y, cubeX, cubeY, results, px, py, 1.0f);
-                return results[2].distance;
+                addPoint(points, offset, px, py, 1.0f);
+                return 1;
             }
         }, OCTAGONAL {
             @Override
-            float checkCube(float x, float y, int cubeX, int cubeY, Point[] results, float randomness) {
+            int createPoints(int cubeX, int cubeY, float randomness, float[] points, int offset, CounterRNG random) {
 //                random.setSeed(571 * cubeX + 23 * cubeY);
                 float weight = 1.0f;
                 for (int i = 0; i < 2; i++) {
@@ -397,13 +398,13 @@ public class CellularFilter extends WholeImageFilter implements Function2D {
                         px += randomness * Noise.noise2(271 * (cubeX + px), 271 * (cubeY + py));
                         py += randomness * Noise.noise2(271 * (cubeX + px) + 89, 271 * (cubeY + py) + 137);
                     }
-                    insertionSort(x, y, cubeX, cubeY, results, px, py, weight);
+                    offset = addPoint(points, offset, px, py, weight);
                 }
-                return results[2].distance;
+                return 2;
             }
         }, TRIANGULAR {
             @Override
-            float checkCube(float x, float y, int cubeX, int cubeY, Point[] results, float randomness) {
+            int createPoints(int cubeX, int cubeY, float randomness, float[] points, int offset, CounterRNG random) {
 //                random.setSeed(571 * cubeX + 23 * cubeY);
                 float weight = 1.0f;
                 for (int i = 0; i < 2; i++) {
@@ -429,16 +430,41 @@ public class CellularFilter extends WholeImageFilter implements Function2D {
                         px += randomness * Noise.noise2(271 * (cubeX + px), 271 * (cubeY + py));
                         py += randomness * Noise.noise2(271 * (cubeX + px) + 89, 271 * (cubeY + py) + 137);
                     }
-                    insertionSort(x, y, cubeX, cubeY, results, px, py, weight);
+                    offset = addPoint(points, offset, px, py, weight);
                 }
-                return results[2].distance;
+                return 2;
             }
         };
 
-        static final ThreadLocal<CachedFloatRandom> randomTL =
-            ThreadLocal.withInitial(CachedFloatRandom::new);
+        /**
+         * Writes the (x, y, weight) triplets of the feature points of the
+         * given cube into the given array, starting at the given offset,
+         * and returns the number of points. The random grid types use
+         * the stream of the given generator that belongs to the cube.
+         */
+        abstract int createPoints(int cubeX, int cubeY, float randomness, float[] points, int offset, CounterRNG random);
 
-        abstract float checkCube(float x, float y, int cubeX, int cubeY, Point[] results, float randomness);
+        private static long cubeKey(int cubeX, int cubeY) {
+            return ((long) cubeY << 32) | (cubeX & 0xFFFFFFFFL);
+        }
+
+        float checkCube(float x, float y, int cubeX, int cubeY, Point[] results, float randomness, CubeCache cache) {
+            int slot = cache.findSlot(this, cubeX, cubeY, randomness);
+            float[] points = cache.points;
+            int offset = slot * CubeCache.SLOT_LENGTH;
+            int end = offset + 3 * cache.numPoints[slot];
+            for (int i = offset; i < end; i += 3) {
+                insertionSort(x, y, cubeX, cubeY, results, points[i], points[i + 1], points[i + 2]);
+            }
+            return results[2].distance;
+        }
+
+        private static int addPoint(float[] points, int offset, float px, float py, float weight) {
+            points[offset] = px;
+            points[offset + 1] = py;
+            points[offset + 2] = weight;
+            return offset + 3;
+        }
 
         static void insertionSort(float x, float y, int cubeX, int cubeY, Point[] results, float px, float py, float weight) {
             float dx = Math.abs(x - px);
@@ -488,6 +514,72 @@ public class CellularFilter extends WholeImageFilter implements Function2D {
 
     }
 
+    /**
+     * A direct-mapped cache of the feature points of recently checked cubes.
+     * A slot is identified by the low bits of the cube coordinates,
+     * so the cubes of a 32x32 neighborhood don't evict each other.
+     */
+    static final class CubeCache {
+        private static final int BITS = 5;
+        private static final int MASK = (1 << BITS) - 1;
+        private static final int NUM_SLOTS = 1 << (2 * BITS);
+
+        // the random grid has at most 9 points per cube
+        private static final int MAX_POINTS = 9;
+        static final int SLOT_LENGTH = 3 * MAX_POINTS;
+
+        private final GridType[] gridTypes = new GridType[NUM_SLOTS];
+        private final int[] cubeXs = new int[NUM_SLOTS];
+        private final int[] cubeYs = new int[NUM_SLOTS];
+        private final float[] randomnesses = new float[NUM_SLOTS];
+        final int[] numPoints = new int[NUM_SLOTS];
+        final float[] points = new float[NUM_SLOTS * SLOT_LENGTH];
+
+        // the filter run for which the cached points are valid
+        private int stamp = -1;
+
+        private final CounterRNG random = new CounterRNG(0);
+
+        /**
+         * Invalidates the cache if it was filled during another
+         * filter run, because the random numbers could have changed since
+         */
+        void startUsing(int newStamp, long seed) {
+            if (stamp != newStamp) {
+                Arrays.fill(gridTypes, null);
+                stamp = newStamp;
+                random.setSeed(seed);
+            }
+        }
+
+        int findSlot(GridType gridType, int cubeX, int cubeY, float randomness) {
+            int slot = ((cubeY & MASK) << BITS) | (cubeX & MASK);
+            if (gridTypes[slot] != gridType
+                    || cubeXs[slot] != cubeX
+                    || cubeYs[slot] != cubeY
+                    || randomnesses[slot] != randomness) {
+                numPoints[slot] = gridType.createPoints(cubeX, cubeY,
+                        randomness, points, slot * SLOT_LENGTH, random);
+                gridTypes[slot] = gridType;
+                cubeXs[slot] = cubeX;
+                cubeYs[slot] = cubeY;
+                randomnesses[slot] = randomness;
+            }
+            return slot;
+        }
+    }
+
+    private static final ThreadLocal<CubeCache> cubeCacheTL = ThreadLocal.withInitial(CubeCache::new);
+    private static final AtomicInteger lastCacheStamp = new AtomicInteger();
+    private int cacheStamp;
+
+    // Laszlo: the seed of the random grid
+    private long seed;
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
     @Override
     public float evaluate(float x, float y) {
         Point[] results = resultsTL.get();
@@ -502,30 +594,32 @@ public class CellularFilter extends WholeImageFilter implements Function2D {
 
         GridType localGridType = gridType;
         // float localRandomness = randomness; // this one actually slows it down!?
+        CubeCache cache = cubeCacheTL.get();
+        cache.startUsing(cacheStamp, seed);
 
-        float d = localGridType.checkCube(fx, fy, ix, iy, results, randomness);
+        float d = localGridType.checkCube(fx, fy, ix, iy, results, randomness, cache);
         if (d > fy) {
-            d = localGridType.checkCube(fx, fy + 1, ix, iy - 1, results, randomness);
+            d = localGridType.checkCube(fx, fy + 1, ix, iy - 1, results, randomness, cache);
         }
         if (d > 1 - fy) {
-            d = localGridType.checkCube(fx, fy - 1, ix, iy + 1, results, randomness);
+            d = localGridType.checkCube(fx, fy - 1, ix, iy + 1, results, randomness, cache);
         }
         if (d > fx) {
-            localGridType.checkCube(fx + 1, fy, ix - 1, iy, results, randomness);
+            localGridType.checkCube(fx + 1, fy, ix - 1, iy, results, randomness, cache);
             if (d > fy) {
-                d = localGridType.checkCube(fx + 1, fy + 1, ix - 1, iy - 1, results, randomness);
+                d = localGridType.checkCube(fx + 1, fy + 1, ix - 1, iy - 1, results, randomness, cache);
             }
             if (d > 1 - fy) {
-                d = localGridType.checkCube(fx + 1, fy - 1, ix - 1, iy + 1, results, randomness);
+                d = localGridType.checkCube(fx + 1, fy - 1, ix - 1, iy + 1, results, randomness, cache);
             }
         }
         if (d > 1 - fx) {
-            d = localGridType.checkCube(fx - 1, fy, ix + 1, iy, results, randomness);
+            d = localGridType.checkCube(fx - 1, fy, ix + 1, iy, results, randomness, cache);
             if (d > fy) {
-                d = localGridType.checkCube(fx - 1, fy + 1, ix + 1, iy - 1, results, randomness);
+                d = localGridType.checkCube(fx - 1, fy + 1, ix + 1, iy - 1, results, randomness, cache);
             }
             if (d > 1 - fy) {
-                d = localGridType.checkCube(fx - 1, fy - 1, ix + 1, iy + 1, results, randomness);
+                d = localGridType.checkCube(fx - 1, fy - 1, ix + 1, iy + 1, results, randomness, cache);
             }
         }
 
@@ -604,18 +698,19 @@ public class CellularFilter extends WholeImageFilter implements Function2D {
         pt = createProgressTracker(height);
         int[] outPixels = new int[width * height];
 
-        Future<?>[] futures = new Future[height];
-        for (int y = 0; y < height; y++) {
-            int finalY = y;
-            Runnable calculateLineTask = () -> {
-                int index = width * finalY;
+        // Laszlo: the points cached in the previous runs are not used
+        cacheStamp = lastCacheStamp.incrementAndGet();
+
+        // Laszlo: blocks of rows, so that the threads
+        // can reuse the cached points of the previous row
+        ThreadPool.processRowBlocks(height, (fromRow, toRow) -> {
+            for (int y = fromRow; y < toRow; y++) {
+                int index = width * y;
                 for (int x = 0; x < width; x++) {
-                    outPixels[index++] = getPixel(x, finalY, inPixels, width, height);
+                    outPixels[index++] = getPixel(x, y, inPixels, width, height);
                 }
-            };
-            futures[y] = ThreadPool.submit(calculateLineTask);
-        }
-        ThreadPool.waitToFinish(futures, pt);
+            }
+        }, pt);
 
         finishProgressTracker();
 
@@ -0,0 +1,52 @@
+/*
+Copyright 2019 Laszlo Balazs-Csiki
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.jhlabs.image;
+
+/**
+ * Per-thread line buffers that store the channels of ARGB
+ * pixels in separate arrays (structure of arrays).
+ * The simple loops over such arrays can be vectorized by the JIT,
+ * and the buffers are reused between the lines, the blur
+ * iterations and the filter runs.
+ */
+class ChannelBuffers {
+    private static final ThreadLocal<ChannelBuffers> buffersTL =
+            ThreadLocal.withInitial(ChannelBuffers::new);
+
+    int[] a = new int[0];
+    int[] r = new int[0];
+    int[] g = new int[0];
+    int[] b = new int[0];
+
+    private ChannelBuffers() {
+    }
+
+    /**
+     * Returns the buffers of the current thread,
+     * with a length of at least the given length
+     */
+    static ChannelBuffers get(int minLength) {
+        ChannelBuffers buffers = buffersTL.get();
+        if (buffers.a.length < minLength) {
+            buffers.a = new int[minLength];
+            buffers.r = new int[minLength];
+            buffers.g = new int[minLength];
+            buffers.b = new int[minLength];
+        }
+        return buffers;
+    }
+}
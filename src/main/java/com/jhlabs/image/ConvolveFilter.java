@@ -265,6 +265,15 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
             convolveH(kernel, inPixels, outPixels, width, height, alpha, edgeAction);
         } else if (kernel.getWidth() == 1) {
             convolveV(kernel, inPixels, outPixels, width, height, alpha, edgeAction);
+        } else if (FFTConvolver.shouldBeUsedFor(kernel.getWidth(), kernel.getHeight())) {
+            // Laszlo: big kernels are convolved in the frequency domain.
+            // The 3x3 and 5x5 kernels of the Convolve filters are below
+            // the threshold, they use the direct convolution below.
+            pt = createProgressTracker(height);
+            FFTConvolver convolver = new FFTConvolver(kernel.getKernelData(null),
+                    kernel.getWidth(), kernel.getHeight());
+            convolver.convolve(inPixels, outPixels, width, height, alpha, edgeAction, pt);
+            finishProgressTracker();
         } else {
             convolveHV(kernel, inPixels, outPixels, width, height, alpha, edgeAction);
         }
@@ -16,8 +16,9 @@ limitations under the License.
 
 package com.jhlabs.image;
 
+import pixelitor.utils.CounterRNG;
+
 import java.awt.image.BufferedImage;
-import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * This filter diffuses an image by moving its pixels in random directions.
@@ -25,6 +26,7 @@ import java.util.concurrent.ThreadLocalRandom;
 public class DiffuseFilter extends TransformFilter {
     private float[] sinTable, cosTable;
     private float scale = 4;
+    private long seed;
 
     public DiffuseFilter(String filterName) {
         super(filterName);
@@ -53,13 +55,22 @@ public class DiffuseFilter extends TransformFilter {
         return scale;
     }
 
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
     @Override
     protected void transformInverse(int x, int y, float[] out) {
-        // int angle = (int) (Math.random() * 255);
-        int angle = ThreadLocalRandom.current().nextInt(255); // faster than Math.random
+        // Laszlo: the random numbers depend only on the seed and the
+        // pixel coordinates, so that the result is reproducible
+        // even if the pixels are processed on several threads
+        long bits = CounterRNG.hash(seed, ((long) y << 32) | x);
+
+        // the high 32 bits select one of the first 255 angles
+        int angle = (int) (((bits >>> 32) * 255) >>> 32);
 
-        // float distance = (float) Math.random();
-        float distance = ThreadLocalRandom.current().nextFloat(); // faster than Math.random
+        // the low 24 bits give a distance in [0, 1)
+        float distance = (bits & 0xFFFFFF) * (1.0f / (1 << 24));
 
         out[0] = x + distance * sinTable[angle];
         out[1] = y + distance * cosTable[angle];
@@ -0,0 +1,475 @@
+/*
+Copyright 2019 Laszlo Balazs-Csiki
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.jhlabs.image;
+
+import com.jhlabs.math.FFT;
+import pixelitor.ThreadPool;
+import pixelitor.utils.ProgressTracker;
+
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+
+/**
+ * A convolution in the frequency domain, for big 2D kernels.
+ * Its cost per pixel grows only with the logarithm of the kernel size,
+ * while the cost of the direct convolution in {@link ConvolveFilter}
+ * grows with the kernel area.
+ *
+ * The kernel is interpreted as in {@link ConvolveFilter}: the output
+ * pixel at (x, y) is the sum of kernel[j][i] * input(x + i - kw/2, y + j - kh/2).
+ *
+ * The image is split into blocks, which are transformed separately,
+ * and their results are overlap-added. The block rows are processed
+ * in parallel (first the even, then the odd ones, so that
+ * overlapping results are never added at the same time).
+ * If there are only a few block rows, the row and column FFT passes
+ * of each block are split across the cores instead.
+ * The spectra of the recently used kernels are cached, but only
+ * softly referenced, so that the memory can be reclaimed if needed.
+ *
+ * Only big kernels benefit from it: the 3x3 and 5x5 kernels of the
+ * Convolve filters stay below the threshold and are convolved directly.
+ */
+public class FFTConvolver {
+    /**
+     * Above this kernel area the FFT convolution
+     * is faster than the direct one.
+     */
+    private static final int MIN_KERNEL_AREA = 11 * 11;
+
+    private static final int MIN_FFT_SIZE = 32;
+    private static final int MAX_FFT_SIZE = 2048;
+
+    private static final int NUM_PROCESSORS = Runtime.getRuntime().availableProcessors();
+
+    private static final int MAX_CACHED_SPECTRA = 4;
+    private static final Map<SpectrumKey, SoftReference<float[][]>> spectrumCache =
+            new LinkedHashMap<SpectrumKey, SoftReference<float[][]>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<SpectrumKey, SoftReference<float[][]>> eldest) {
+                    return size() > MAX_CACHED_SPECTRA;
+                }
+            };
+
+    private final float[] kernel;
+    private final int kernelWidth;
+    private final int kernelHeight;
+
+    // the kernel center
+    private final int cx;
+    private final int cy;
+
+    public FFTConvolver(float[] kernel, int kernelWidth, int kernelHeight) {
+        if (kernel.length != kernelWidth * kernelHeight) {
+            throw new IllegalArgumentException("kernel.length = " + kernel.length
+                    + ", kernelWidth = " + kernelWidth + ", kernelHeight = " + kernelHeight);
+        }
+        this.kernel = kernel;
+        this.kernelWidth = kernelWidth;
+        this.kernelHeight = kernelHeight;
+        cx = kernelWidth / 2;
+        cy = kernelHeight / 2;
+    }
+
+    public static boolean shouldBeUsedFor(int kernelWidth, int kernelHeight) {
+        return kernelWidth * kernelHeight >= MIN_KERNEL_AREA;
+    }
+
+    /**
+     * Convolves a block of ARGB pixels. It has the same contract
+     * as {@link ConvolveFilter#convolve(java.awt.image.Kernel, int[], int[], int, int, boolean, int)},
+     * except that clamped edges are extended with the nearest edge pixels.
+     * The given {@link ProgressTracker} gets one unit for each row.
+     */
+    public void convolve(int[] inPixels, int[] outPixels, int width, int height,
+                         boolean alpha, int edgeAction, ProgressTracker pt) {
+        int numPixels = width * height;
+        float[][] planes = new float[alpha ? 4 : 3][numPixels];
+        int offset = alpha ? 1 : 0;
+        for (int i = 0; i < numPixels; i++) {
+            int rgb = inPixels[i];
+            if (alpha) {
+                planes[0][i] = rgb >>> 24;
+            }
+            planes[offset][i] = (rgb >> 16) & 0xff;
+            planes[offset + 1][i] = (rgb >> 8) & 0xff;
+            planes[offset + 2][i] = rgb & 0xff;
+        }
+
+        float[][] out = convolve(planes, width, height, edgeAction, pt);
+
+        for (int i = 0; i < numPixels; i++) {
+            int ia = alpha ? PixelUtils.clamp((int) (out[0][i] + 0.5f)) : 0xff;
+            int ir = PixelUtils.clamp((int) (out[offset][i] + 0.5f));
+            int ig = PixelUtils.clamp((int) (out[offset + 1][i] + 0.5f));
+            int ib = PixelUtils.clamp((int) (out[offset + 2][i] + 0.5f));
+            outPixels[i] = (ia << 24) | (ir << 16) | (ig << 8) | ib;
+        }
+    }
+
+    /**
+     * Convolves each of the given channel planes, and returns
+     * the results in new planes. The edge action is one of the
+     * edge constants in {@link ConvolveFilter}, and clamped edges are
+     * extended with the nearest edge pixels.
+     * The given {@link ProgressTracker} gets one unit for each row.
+     */
+    public float[][] convolve(float[][] planes, int width, int height,
+                              int edgeAction, ProgressTracker pt) {
+        // the input area that has an effect on the output
+        int extWidth = width + kernelWidth - 1;
+        int extHeight = height + kernelHeight - 1;
+
+        int maxKernelSize = Math.max(kernelWidth, kernelHeight);
+        int n = chooseFFTSize(maxKernelSize, Math.max(extWidth, extHeight));
+        int blockSize = n - maxKernelSize + 1;
+        FFT fft = new FFT(log2(n));
+
+        float[][] spectrum = getSpectrum(fft, n);
+
+        int numBlockRows = (extHeight + blockSize - 1) / blockSize;
+        int numBlockCols = (extWidth + blockSize - 1) / blockSize;
+
+        float[][] out = new float[planes.length][width * height];
+        BlockRowTask task = new BlockRowTask(planes, out, width, height,
+                edgeAction, fft, n, blockSize, numBlockCols, spectrum);
+
+        if (numBlockRows < 2 * NUM_PROCESSORS) {
+            // too few block rows: process them one after the
+            // other, with parallel FFT passes within each block
+            for (int blockRow = 0; blockRow < numBlockRows; blockRow++) {
+                task.process(blockRow, true);
+                pt.unitsDone(task.getOutputRows(blockRow));
+            }
+        } else {
+            for (int phase = 0; phase < 2; phase++) {
+                int numTasks = (numBlockRows - phase + 1) / 2;
+                Future<?>[] futures = new Future[numTasks];
+                for (int i = 0; i < numTasks; i++) {
+                    int blockRow = 2 * i + phase;
+                    futures[i] = ThreadPool.submit(() -> task.process(blockRow, false));
+                }
+                ThreadPool.waitToFinish(futures, NULL_TRACKER);
+                for (int i = 0; i < numTasks; i++) {
+                    pt.unitsDone(task.getOutputRows(2 * i + phase));
+                }
+            }
+        }
+
+        return out;
+    }
+
+    /**
+     * Chooses a power-of-two FFT size that is big enough so that the
+     * blocks are at least as big as the kernel, but not bigger than
+     * necessary for the whole (extended) image
+     */
+    private static int chooseFFTSize(int kernelSize, int extSize) {
+        // the blocks must be at least as big as the kernel,
+        // but bigger blocks have less overhead
+        int n = nextPowerOf2(Math.max(MIN_FFT_SIZE, 4 * kernelSize));
+        int wholeImageSize = nextPowerOf2(Math.max(extSize + kernelSize - 1, 2 * kernelSize));
+        n = Math.min(n, wholeImageSize);
+        return Math.min(n, Math.max(MAX_FFT_SIZE, nextPowerOf2(2 * kernelSize)));
+    }
+
+    /**
+     * Returns the spectrum of the kernel for the given FFT size,
+     * either from the cache or calculated
+     */
+    private float[][] getSpectrum(FFT fft, int n) {
+        SpectrumKey key = new SpectrumKey(kernel, kernelWidth, kernelHeight, n);
+        synchronized (spectrumCache) {
+            SoftReference<float[][]> ref = spectrumCache.get(key);
+            if (ref != null) {
+                float[][] cached = ref.get();
+                if (cached != null) {
+                    return cached;
+                }
+                // cleared by the garbage collector
+                spectrumCache.remove(key);
+            }
+        }
+
+        float[] re = new float[n * n];
+        float[] im = new float[n * n];
+
+        // The kernel has to be flipped and wrapped around, so that
+        // out(x, y) = sum h(u, v) * in(x - u, y - v)
+        for (int j = 0; j < kernelHeight; j++) {
+            int v = Math.floorMod(cy - j, n);
+            for (int i = 0; i < kernelWidth; i++) {
+                int u = Math.floorMod(cx - i, n);
+                re[v * n + u] += kernel[j * kernelWidth + i];
+            }
+        }
+        transform2D(fft, re, im, n, n, true, true);
+
+        float[][] spectrum = {re, im};
+        synchronized (spectrumCache) {
+            spectrumCache.put(key, new SoftReference<>(spectrum));
+        }
+        return spectrum;
+    }
+
+    /**
+     * Transforms an n*n block. Only the first numRows rows can have nonzero
+     * values in the forward transform, the row FFTs of the other rows are skipped.
+     */
+    private static void transform2D(FFT fft, float[] re, float[] im,
+                                    int n, int numRows, boolean forward, boolean parallel) {
+        int logN = log2(n);
+        if (parallel) {
+            ThreadPool.processRowBlocks(numRows, (fromRow, toRow) ->
+                    transformRows(fft, re, im, n, logN, fromRow, toRow, forward), NULL_TRACKER);
+            ThreadPool.processRowBlocks(n, (fromCol, toCol) ->
+                    transformColumns(fft, re, im, n, logN, fromCol, toCol, forward), NULL_TRACKER);
+        } else {
+            transformRows(fft, re, im, n, logN, 0, numRows, forward);
+            transformColumns(fft, re, im, n, logN, 0, n, forward);
+        }
+    }
+
+    private static void transformRows(FFT fft, float[] re, float[] im, int n, int logN,
+                                      int fromRow, int toRow, boolean forward) {
+        float[] rTemp = new float[n];
+        float[] iTemp = new float[n];
+        for (int y = fromRow; y < toRow; y++) {
+            int offset = y * n;
+            System.arraycopy(re, offset, rTemp, 0, n);
+            System.arraycopy(im, offset, iTemp, 0, n);
+            fft.transform1D(rTemp, iTemp, logN, n, forward);
+            System.arraycopy(rTemp, 0, re, offset, n);
+            System.arraycopy(iTemp, 0, im, offset, n);
+        }
+    }
+
+    private static void transformColumns(FFT fft, float[] re, float[] im, int n, int logN,
+                                         int fromCol, int toCol, boolean forward) {
+        float[] rTemp = new float[n];
+        float[] iTemp = new float[n];
+        for (int x = fromCol; x < toCol; x++) {
+            for (int y = 0, index = x; y < n; y++, index += n) {
+                rTemp[y] = re[index];
+                iTemp[y] = im[index];
+            }
+            fft.transform1D(rTemp, iTemp, logN, n, forward);
+            for (int y = 0, index = x; y < n; y++, index += n) {
+                re[index] = rTemp[y];
+                im[index] = iTemp[y];
+            }
+        }
+    }
+
+    /**
+     * Maps a coordinate outside the image according to the edge
+     * action, returns -1 if the pixel should be treated as zero
+     */
+    private static int mapEdge(int v, int size, int edgeAction) {
+        if (v >= 0 && v < size) {
+            return v;
+        }
+        if (edgeAction == ConvolveFilter.CLAMP_EDGES) {
+            return v < 0 ? 0 : size - 1;
+        } else if (edgeAction == ConvolveFilter.WRAP_EDGES) {
+            return Math.floorMod(v, size);
+        }
+        return -1;
+    }
+
+    private static int nextPowerOf2(int n) {
+        int p = 1;
+        while (p < n) {
+            p <<= 1;
+        }
+        return p;
+    }
+
+    private static int log2(int n) {
+        return Integer.numberOfTrailingZeros(n);
+    }
+
+    /**
+     * Convolves the blocks of one block row, and adds the results to
+     * the output planes. Two channels are transformed together, one
+     * as the real and one as the imaginary part, which is possible
+     * because the kernel is real.
+     */
+    private class BlockRowTask {
+        private final float[][] planes;
+        private final float[][] out;
+        private final int width;
+        private final int height;
+        private final int edgeAction;
+        private final FFT fft;
+        private final int n;
+        private final int blockSize;
+        private final int numBlockCols;
+        private final float[] spectrumRe;
+        private final float[] spectrumIm;
+
+        BlockRowTask(float[][] planes, float[][] out, int width, int height,
+                     int edgeAction, FFT fft, int n, int blockSize,
+                     int numBlockCols, float[][] spectrum) {
+            this.planes = planes;
+            this.out = out;
+            this.width = width;
+            this.height = height;
+            this.edgeAction = edgeAction;
+            this.fft = fft;
+            this.n = n;
+            this.blockSize = blockSize;
+            this.numBlockCols = numBlockCols;
+            spectrumRe = spectrum[0];
+            spectrumIm = spectrum[1];
+        }
+
+        void process(int blockRow, boolean parallelFFT) {
+            float[] re = new float[n * n];
+            float[] im = new float[n * n];
+            int[] srcX = new int[blockSize];
+
+            // the first input row of the block row, relative to the image
+            int y0 = blockRow * blockSize - cy;
+            int bh = Math.min(blockSize, height + kernelHeight - 1 - cy - y0);
+
+            for (int blockCol = 0; blockCol < numBlockCols; blockCol++) {
+                int x0 = blockCol * blockSize - cx;
+                int bw = Math.min(blockSize, width + kernelWidth - 1 - cx - x0);
+                for (int i = 0; i < bw; i++) {
+                    srcX[i] = mapEdge(x0 + i, width, edgeAction);
+                }
+
+                for (int c = 0; c < planes.length; c += 2) {
+                    float[] inRe = planes[c];
+                    float[] inIm = c + 1 < planes.length ? planes[c + 1] : null;
+
+                    Arrays.fill(re, 0);
+                    Arrays.fill(im, 0);
+                    for (int j = 0; j < bh; j++) {
+                        int sy = mapEdge(y0 + j, height, edgeAction);
+                        if (sy < 0) {
+                            continue;
+                        }
+                        int srcOffset = sy * width;
+                        int offset = j * n;
+                        for (int i = 0; i < bw; i++) {
+                            int sx = srcX[i];
+                            if (sx >= 0) {
+                                re[offset + i] = inRe[srcOffset + sx];
+                                if (inIm != null) {
+                                    im[offset + i] = inIm[srcOffset + sx];
+                                }
+                            }
+                        }
+                    }
+
+                    transform2D(fft, re, im, n, bh, true, parallelFFT);
+                    for (int i = 0, len = n * n; i < len; i++) {
+                        float a = re[i];
+                        float b = im[i];
+                        float kr = spectrumRe[i];
+                        float ki = spectrumIm[i];
+                        re[i] = a * kr - b * ki;
+                        im[i] = a * ki + b * kr;
+                    }
+                    transform2D(fft, re, im, n, n, false, parallelFFT);
+
+                    addToOutput(re, out[c], x0, y0, bw, bh);
+                    if (inIm != null) {
+                        addToOutput(im, out[c + 1], x0, y0, bw, bh);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Adds the convolved block, which starts at (x0, y0) in the
+         * input, to the output, wrapping around the block indices
+         */
+        private void addToOutput(float[] result, float[] outPlane,
+                                 int x0, int y0, int bw, int bh) {
+            int fromX = Math.max(0, x0 - (kernelWidth - 1 - cx));
+            int toX = Math.min(width, x0 + bw + cx);
+            int fromY = Math.max(0, y0 - (kernelHeight - 1 - cy));
+            int toY = Math.min(height, y0 + bh + cy);
+            for (int y = fromY; y < toY; y++) {
+                int rowOffset = Math.floorMod(y - y0, n) * n;
+                int outOffset = y * width;
+                for (int x = fromX; x < toX; x++) {
+                    outPlane[outOffset + x] += result[rowOffset + Math.floorMod(x - x0, n)];
+                }
+            }
+        }
+
+        /**
+         * The number of image rows in the input area of the given
+         * block row, used for the progress tracking
+         */
+        int getOutputRows(int blockRow) {
+            int y0 = blockRow * blockSize - cy;
+            int from = Math.max(0, y0);
+            int to = Math.min(height, y0 + blockSize);
+            return Math.max(0, to - from);
+        }
+    }
+
+    /**
+     * Identifies a cached kernel spectrum
+     */
+    private static class SpectrumKey {
+        private final float[] kernel;
+        private final int kernelWidth;
+        private final int kernelHeight;
+        private final int fftSize;
+        private final int hash;
+
+        SpectrumKey(float[] kernel, int kernelWidth, int kernelHeight, int fftSize) {
+            this.kernel = kernel.clone();
+            this.kernelWidth = kernelWidth;
+            this.kernelHeight = kernelHeight;
+            this.fftSize = fftSize;
+            hash = 31 * (31 * (31 * Arrays.hashCode(kernel) + kernelWidth)
+                    + kernelHeight) + fftSize;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SpectrumKey)) {
+                return false;
+            }
+            SpectrumKey other = (SpectrumKey) o;
+            return kernelWidth == other.kernelWidth
+                    && kernelHeight == other.kernelHeight
+                    && fftSize == other.fftSize
+                    && Arrays.equals(kernel, other.kernel);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -95,8 +95,7 @@ public class GaussianFilter extends ConvolveFilter {
         getRGB(src, 0, 0, width, height, inPixels);
 
         if (radius > 0) {
-            convolveAndTranspose(kernel, inPixels, outPixels, width, height, alpha, alpha && premultiplyAlpha, false, CLAMP_EDGES, pt);
-            convolveAndTranspose(kernel, outPixels, inPixels, height, width, alpha, false, alpha && premultiplyAlpha, CLAMP_EDGES, pt);
+            blur(inPixels, outPixels, width, height, pt);
         }
 
 //        dst.setRGB(0, 0, width, height, inPixels, 0, width);
@@ -107,6 +106,24 @@ public class GaussianFilter extends ConvolveFilter {
         return dst;
     }
 
+    /**
+     * Blurs the pixels horizontally and vertically. The result is
+     * in inPixels, outPixels is used as a temporary buffer.
+     * For large radii the recursive implementation is used,
+     * because its speed doesn't depend on the radius.
+     */
+    protected void blur(int[] inPixels, int[] outPixels, int width, int height, ProgressTracker pt) {
+        boolean premultiply = alpha && premultiplyAlpha;
+        if (RecursiveGaussian.shouldBeUsedFor(radius)) {
+            RecursiveGaussian rg = new RecursiveGaussian(radius);
+            rg.blurAndTranspose(inPixels, outPixels, width, height, alpha, premultiply, false, pt);
+            rg.blurAndTranspose(outPixels, inPixels, height, width, alpha, false, premultiply, pt);
+        } else {
+            convolveAndTranspose(kernel, inPixels, outPixels, width, height, alpha, premultiply, false, CLAMP_EDGES, pt);
+            convolveAndTranspose(kernel, outPixels, inPixels, height, width, alpha, false, premultiply, CLAMP_EDGES, pt);
+        }
+    }
+
     /**
      * Blur and transpose a block of ARGB pixels.
      *
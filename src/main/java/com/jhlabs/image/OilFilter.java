@@ -19,7 +19,7 @@ package com.jhlabs.image;
 import pixelitor.ThreadPool;
 
 import java.awt.Rectangle;
-import java.util.concurrent.Future;
+import java.util.Arrays;
 
 /**
  * A filter which produces a "oil-painting" effect.
@@ -70,90 +70,155 @@ public class OilFilter extends WholeImageFilter {
     protected int[] filterPixels(int width, int height, int[] inPixels, Rectangle transformedSpace) {
         int[] outPixels = new int[width * height];
 
-        pt = createProgressTracker(height);
-        Future<?>[] futures = new Future[height];
-        for (int y = 0; y < height; y++) {
-            int finalY = y;
-            Runnable lineTask = () -> calculateLine(width, height, inPixels, outPixels, finalY);
-            futures[y] = ThreadPool.submit(lineTask);
+        // the intensity bin of each pixel is calculated only once
+        byte[] bins = new byte[width * height];
+        for (int i = 0; i < bins.length; i++) {
+            int rgb = inPixels[i];
+            int intensity = (((rgb >> 16) & 0xff) + ((rgb >> 8) & 0xff) + (rgb & 0xff)) / 3;
+            bins[i] = (byte) (intensity * levels / 256);
         }
 
-        ThreadPool.waitToFinish(futures, pt);
+        pt = createProgressTracker(height);
+        ThreadPool.processRowBlocks(height, (fromY, toY) -> {
+            WindowHistogram histogram = new WindowHistogram(levels);
+            for (int y = fromY; y < toY; y++) {
+                calculateLine(width, height, inPixels, bins, outPixels, y, histogram);
+            }
+        }, pt);
         finishProgressTracker();
 
         return outPixels;
     }
 
-    private void calculateLine(int width, int height, int[] inPixels, int[] outPixels, int y) {
+    // The idea is that for each pixel the most frequently occurring
+    // intensity value in its neighborhood is found, and this will determine
+    // the new value of the pixel.
+    // The neighborhood histogram is not recalculated for every pixel:
+    // when moving to the next pixel, the column leaving the neighborhood
+    // is removed from it and the column entering it is added.
+    private void calculateLine(int width, int height, int[] inPixels, byte[] bins,
+                               int[] outPixels, int y, WindowHistogram histogram) {
+        int minY = Math.max(0, y - rangeY);
+        int maxY = Math.min(height - 1, y + rangeY);
+
+        histogram.clear();
+        int lastX = Math.min(width - 1, rangeX);
+        for (int ix = 0; ix <= lastX; ix++) {
+            addColumn(histogram, width, inPixels, bins, ix, minY, maxY);
+        }
+
         int index = y * width;
-        int[] rTotal = new int[levels];
-        int[] gTotal = new int[levels];
-        int[] bTotal = new int[levels];
-        int[] histogram = new int[levels];
         for (int x = 0; x < width; x++) {
-            // The idea is that for each pixel the most frequently occuring
-            // intensity value in its neighborhood is found, and this will determine
-            // new value of the pixel
-            for (int i = 0; i < levels; i++) {
-                histogram[i] = rTotal[i] = gTotal[i] = bTotal[i] = 0;
-            }
-
-            // For each pixel, all pixels within the brush size will have to be examined.
-            for (int row = -rangeY; row <= rangeY; row++) {
-                int iy = y + row;
-                int ioffset;
-                if (0 <= iy && iy < height) {
-                    ioffset = iy * width;
-                    for (int col = -rangeX; col <= rangeX; col++) {
-                        int ix = x + col;
-                        if (0 <= ix && ix < width) {
-                            // examining each neighbor pixel which is within brush size
-                            int rgb = inPixels[ioffset + ix];
-                            int r = (rgb >> 16) & 0xff;
-                            int g = (rgb >> 8) & 0xff;
-
-                            int b = rgb & 0xff;
-                            int intensity = (r + g + b) / 3;
-                            // For each sub-pixel, calculate the intensity, and determine
-                            // which intensity bin that intensity number falls into
-                            int intensityI = intensity * levels / 256;
-                            histogram[intensityI]++;
-
-                            // Also maintain the total red, green, and blue values for each bin,
-                            // later these may be used to determine the final value of the pixel.
-                            rTotal[intensityI] += r;
-                            gTotal[intensityI] += g;
-                            bTotal[intensityI] += b;
-                        }
-                    }
+            if (x > 0) {
+                int removedX = x - rangeX - 1;
+                if (removedX >= 0) {
+                    removeColumn(histogram, width, inPixels, bins, removedX, minY, maxY);
                 }
-            }
-
-            // Determine which intensity bin has the most number of pixels in it.
-            int maxIndex = 0;
-            int curMax = 0;
-            for (int i = 0; i < levels; i++) {
-                if (histogram[i] > curMax) {
-                    curMax = histogram[i];
-                    maxIndex = i;
+                int addedX = x + rangeX;
+                if (addedX < width) {
+                    addColumn(histogram, width, inPixels, bins, addedX, minY, maxY);
                 }
             }
 
             // The final color of the pixel is the average of the colors
             // in the bin with the highest number of pixels
-            int r = rTotal[maxIndex] / curMax;
-            int g = gTotal[maxIndex] / curMax;
-            int b = bTotal[maxIndex] / curMax;
-
-//                r = PixelUtils.clamp(r);
-//                g = PixelUtils.clamp(g);
-//                b = PixelUtils.clamp(b);
+            int maxIndex = histogram.getMaxIndex();
+            int curMax = histogram.count[maxIndex];
+            int r = histogram.rTotal[maxIndex] / curMax;
+            int g = histogram.gTotal[maxIndex] / curMax;
+            int b = histogram.bTotal[maxIndex] / curMax;
 
             outPixels[index] = (inPixels[index] & 0xff000000) | (r << 16) | (g << 8) | b;
             index++;
         }
     }
 
+    private static void addColumn(WindowHistogram histogram, int width, int[] inPixels,
+                                  byte[] bins, int x, int minY, int maxY) {
+        for (int iy = minY, i = minY * width + x; iy <= maxY; iy++, i += width) {
+            histogram.add(bins[i] & 0xff, inPixels[i]);
+        }
+    }
+
+    private static void removeColumn(WindowHistogram histogram, int width, int[] inPixels,
+                                     byte[] bins, int x, int minY, int maxY) {
+        for (int iy = minY, i = minY * width + x; iy <= maxY; iy++, i += width) {
+            histogram.remove(bins[i] & 0xff, inPixels[i]);
+        }
+    }
+
+    /**
+     * The intensity histogram of the neighborhood of a pixel,
+     * together with the total red, green and blue values for each bin.
+     * The bin with the most pixels is tracked incrementally, and
+     * searched again only if a pixel was removed from it.
+     */
+    private static class WindowHistogram {
+        final int[] count;
+        final int[] rTotal;
+        final int[] gTotal;
+        final int[] bTotal;
+
+        private int maxIndex;
+        private boolean maxValid;
+
+        WindowHistogram(int levels) {
+            count = new int[levels];
+            rTotal = new int[levels];
+            gTotal = new int[levels];
+            bTotal = new int[levels];
+        }
+
+        void clear() {
+            Arrays.fill(count, 0);
+            Arrays.fill(rTotal, 0);
+            Arrays.fill(gTotal, 0);
+            Arrays.fill(bTotal, 0);
+            maxIndex = 0;
+            maxValid = true;
+        }
+
+        void add(int bin, int rgb) {
+            int newCount = ++count[bin];
+            rTotal[bin] += (rgb >> 16) & 0xff;
+            gTotal[bin] += (rgb >> 8) & 0xff;
+            bTotal[bin] += rgb & 0xff;
+
+            if (maxValid) {
+                // in case of a tie the lower bin wins
+                int maxCount = count[maxIndex];
+                if (newCount > maxCount || (newCount == maxCount && bin < maxIndex)) {
+                    maxIndex = bin;
+                }
+            }
+        }
+
+        void remove(int bin, int rgb) {
+            count[bin]--;
+            rTotal[bin] -= (rgb >> 16) & 0xff;
+            gTotal[bin] -= (rgb >> 8) & 0xff;
+            bTotal[bin] -= rgb & 0xff;
+
+            if (bin == maxIndex) {
+                maxValid = false;
+            }
+        }
+
+        int getMaxIndex() {
+            if (!maxValid) {
+                int curMax = 0;
+                for (int i = 0; i < count.length; i++) {
+                    if (count[i] > curMax) {
+                        curMax = count[i];
+                        maxIndex = i;
+                    }
+                }
+                maxValid = true;
+            }
+            return maxIndex;
+        }
+    }
+
     public String toString() {
 		return "Stylize/Oil...";
 	}
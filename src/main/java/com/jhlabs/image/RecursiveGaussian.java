@@ -0,0 +1,173 @@
+/*
+Copyright 2019 Laszlo Balazs-Csiki
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.jhlabs.image;
+
+import pixelitor.ThreadPool;
+import pixelitor.utils.ProgressTracker;
+
+/**
+ * A recursive (IIR) Gaussian blur based on the Young - van Vliet algorithm
+ * ("Recursive implementation of the Gaussian filter", 1995).
+ * Unlike the direct convolution in {@link GaussianFilter}, its cost
+ * per pixel doesn't depend on the blur radius.
+ */
+public class RecursiveGaussian {
+    /**
+     * Above this radius the recursive implementation is faster than the
+     * direct convolution. Bellow it the direct convolution is used,
+     * because for small sigmas it is also more accurate.
+     */
+    public static final float MIN_RADIUS = 20;
+
+    // the normalized filter coefficients
+    private final float b;
+    private final float a1;
+    private final float a2;
+    private final float a3;
+
+    /**
+     * The radius is interpreted as in {@link GaussianFilter#makeKernel(float)},
+     * where sigma is one third of the radius.
+     */
+    public RecursiveGaussian(float radius) {
+        float sigma = Math.max(radius / 3.0f, 0.5f);
+
+        double q;
+        if (sigma >= 2.5) {
+            q = 0.98711 * sigma - 0.96330;
+        } else {
+            q = 3.97156 - 4.14554 * Math.sqrt(1.0 - 0.26891 * sigma);
+        }
+        double q2 = q * q;
+        double q3 = q2 * q;
+
+        double b0 = 1.57825 + 2.44413 * q + 1.4281 * q2 + 0.422205 * q3;
+        double b1 = 2.44413 * q + 2.85619 * q2 + 1.26661 * q3;
+        double b2 = -(1.4281 * q2 + 1.26661 * q3);
+        double b3 = 0.422205 * q3;
+
+        a1 = (float) (b1 / b0);
+        a2 = (float) (b2 / b0);
+        a3 = (float) (b3 / b0);
+        b = 1.0f - (a1 + a2 + a3);
+    }
+
+    public static boolean shouldBeUsedFor(float radius) {
+        return radius >= MIN_RADIUS;
+    }
+
+    /**
+     * Blurs and transposes a block of ARGB pixels. It has the same
+     * contract as {@link GaussianFilter#convolveAndTranspose},
+     * with the edges always clamped.
+     * The rows are processed in parallel.
+     */
+    public void blurAndTranspose(int[] inPixels, int[] outPixels,
+                                 int width, int height, boolean alpha,
+                                 boolean premultiply, boolean unpremultiply,
+                                 ProgressTracker pt) {
+        ThreadPool.processRowBlocks(height, (fromY, toY) -> {
+            float[] buffer = new float[4 * width];
+            for (int y = fromY; y < toY; y++) {
+                blurAndTransposeLine(inPixels, outPixels, buffer,
+                        width, height, y, alpha, premultiply, unpremultiply);
+            }
+        }, pt);
+    }
+
+    private void blurAndTransposeLine(int[] inPixels, int[] outPixels,
+                                      float[] buffer, int width, int height,
+                                      int y, boolean alpha,
+                                      boolean premultiply, boolean unpremultiply) {
+        // unpack the line into interleaved a, r, g, b floats
+        int ioffset = y * width;
+        for (int x = 0, i = 0; x < width; x++, i += 4) {
+            int rgb = inPixels[ioffset + x];
+            int pa = (rgb >>> 24);
+            float pr = (rgb >> 16) & 0xff;
+            float pg = (rgb >> 8) & 0xff;
+            float pb = rgb & 0xff;
+            if (premultiply) {
+                float a255 = pa * (1.0f / 255.0f);
+                pr *= a255;
+                pg *= a255;
+                pb *= a255;
+            }
+            buffer[i] = pa;
+            buffer[i + 1] = pr;
+            buffer[i + 2] = pg;
+            buffer[i + 3] = pb;
+        }
+
+        for (int c = 0; c < 4; c++) {
+            filterChannel(buffer, c, width);
+        }
+
+        int index = y;
+        for (int x = 0, i = 0; x < width; x++, i += 4) {
+            float a = buffer[i];
+            float r = buffer[i + 1];
+            float g = buffer[i + 2];
+            float b = buffer[i + 3];
+            if (unpremultiply && a != 0 && a != 255) {
+                float f = 255.0f / a;
+                r *= f;
+                g *= f;
+                b *= f;
+            }
+            int ia = alpha ? PixelUtils.clamp((int) (a + 0.5f)) : 0xff;
+            int ir = PixelUtils.clamp((int) (r + 0.5f));
+            int ig = PixelUtils.clamp((int) (g + 0.5f));
+            int ib = PixelUtils.clamp((int) (b + 0.5f));
+            outPixels[index] = (ia << 24) | (ir << 16) | (ig << 8) | ib;
+            index += height;
+        }
+    }
+
+    /**
+     * Runs the causal and the anti-causal filter on one channel
+     * of the interleaved buffer. The edges are clamped by starting
+     * the recursions from their steady state.
+     */
+    private void filterChannel(float[] buffer, int c, int width) {
+        int last = c + 4 * (width - 1);
+
+        // forward pass
+        float w1 = buffer[c];
+        float w2 = w1;
+        float w3 = w1;
+        for (int i = c; i <= last; i += 4) {
+            float w = b * buffer[i] + a1 * w1 + a2 * w2 + a3 * w3;
+            buffer[i] = w;
+            w3 = w2;
+            w2 = w1;
+            w1 = w;
+        }
+
+        // backward pass
+        float o1 = buffer[last];
+        float o2 = o1;
+        float o3 = o1;
+        for (int i = last; i >= c; i -= 4) {
+            float o = b * buffer[i] + a1 * o1 + a2 * o2 + a3 * o3;
+            buffer[i] = o;
+            o3 = o2;
+            o2 = o1;
+            o1 = o;
+        }
+    }
+}
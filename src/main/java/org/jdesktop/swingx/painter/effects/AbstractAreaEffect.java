@@ -22,8 +22,9 @@
 
 package org.jdesktop.swingx.painter.effects;
 
+import pixelitor.utils.DistanceTransform;
+
 import java.awt.AlphaComposite;
-import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Composite;
 import java.awt.Graphics2D;
@@ -35,6 +36,8 @@ import java.awt.geom.Area;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.Arrays;
 
 /**
  * The abstract base class for path effects. It takes care
@@ -50,6 +53,9 @@ public class AbstractAreaEffect implements AreaEffect {
     // for compatibility with pixelitor versions before 4.2.0
     private static final long serialVersionUID = -9104855683480422662L;
 
+    // the number of distance lookup table entries per pixel
+    private static final int DISTANCE_LOOKUP_SCALE = 4;
+
     /**
      * Creates a new instance of AreaEffect
      */
@@ -119,7 +125,7 @@ public class AbstractAreaEffect implements AreaEffect {
                         RenderingHints.VALUE_ANTIALIAS_ON);
                 g2.translate(getEffectWidth() - getOffset().getX(),
                         getEffectWidth() - getOffset().getY());
-                paintBorderGlow(g2, clipShape, width, height);
+                paintWithDistanceTransform(clipImage, clipShape);
 
                 // clip out the parts we don't want
                 g2.setComposite(AlphaComposite.Clear);
@@ -140,8 +146,15 @@ public class AbstractAreaEffect implements AreaEffect {
 
             g.drawImage(clipImage, -getEffectWidth() + (int) getOffset().getX(), -getEffectWidth() + (int) getOffset().getY(), null);
         } else {
-            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            paintBorderGlow(g, clipShape, width, height);
+            BufferedImage clipImage = getClipImage(effectBounds);
+            Graphics2D g2 = clipImage.createGraphics();
+            g2.setComposite(AlphaComposite.Clear);
+            g2.fillRect(0, 0, effectBounds.width, effectBounds.height);
+            g2.dispose();
+
+            paintWithDistanceTransform(clipImage, clipShape);
+
+            g.drawImage(clipImage, -getEffectWidth() + (int) getOffset().getX(), -getEffectWidth() + (int) getOffset().getY(), null);
         }
 
         //g.setColor(Color.MAGENTA);
@@ -193,65 +206,125 @@ public class AbstractAreaEffect implements AreaEffect {
     }*/
 
 
-    /* draws the actual shaded border to the specified graphics
-    */
-
     /**
-     * Paints the border glow
+     * Renders the effect. Instead of drawing the shape with many strokes
+     * of increasing width (as the original SwingX code did), it rasterizes the shape once,
+     * calculates the distance of each pixel from the edge of the shape
+     * with a linear-time distance transform, and maps the distances
+     * to colors. Therefore the cost depends only on the area of the
+     * effect, and not on the effect width or the brush steps.
+     *
+     * The shape is painted into the given image translated
+     * by the effect width, as in the masked case of {@link #apply}.
      *
-     * @param g2
-     * @param clipShape
-     * @param width
-     * @param height
+     * Added by lbalazscs
      */
-    protected void paintBorderGlow(Graphics2D g2,
-                                   Shape clipShape, int width, int height) {
-
-        int steps = getBrushSteps();
-        float brushAlpha = 1f / steps;
-
-        boolean inside = isRenderInsideShape();
-
-        g2.setPaint(getBrushColor());
-
-        g2.translate(offset.getX(), offset.getY());
-
-        if (isShouldFillShape()) {
-            // set the inside/outside mode
-            if (inside) {
-                g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_ATOP, 1f));
-                Area a1 = new Area(new Rectangle(
-                        (int) -offset.getX() - 20,
-                        (int) -offset.getY() - 20,
-                        width + 40, height + 40));
-                Area a2 = new Area(clipShape);
-                a1.subtract(a2);
-                g2.fill(a1);
+    private void paintWithDistanceTransform(BufferedImage img, Shape clipShape) {
+        float maxDistance = getMaxEffectDistance();
+        int margin = (int) Math.ceil(maxDistance) + 2;
+        int translation = getEffectWidth();
+
+        Rectangle region = clipShape.getBounds();
+        region.translate(translation, translation);
+        region.grow(margin, margin);
+        region = region.intersection(new Rectangle(0, 0, img.getWidth(), img.getHeight()));
+        if (region.isEmpty()) {
+            return;
+        }
+        int regionWidth = region.width;
+        int regionHeight = region.height;
+        int numPixels = regionWidth * regionHeight;
+
+        // rasterize the shape with antialiasing
+        BufferedImage maskImage = new BufferedImage(regionWidth, regionHeight, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D mg = maskImage.createGraphics();
+        mg.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        mg.translate(translation - region.x, translation - region.y);
+        mg.setColor(Color.WHITE);
+        mg.fill(clipShape);
+        mg.dispose();
+        byte[] mask = ((DataBufferByte) maskImage.getRaster().getDataBuffer()).getData();
+
+        // the squared distances of the outside pixels from the shape
+        // and of the inside pixels from the outside
+        float[] outsideDist = new float[numPixels];
+        float[] insideDist = new float[numPixels];
+        for (int i = 0; i < numPixels; i++) {
+            if ((mask[i] & 0xFF) >= 128) {
+                outsideDist[i] = 0;
+                insideDist[i] = DistanceTransform.FAR;
             } else {
-                g2.setComposite(AlphaComposite.getInstance(AlphaComposite.DST_OVER, 1f));
-                g2.fill(clipShape);
+                outsideDist[i] = DistanceTransform.FAR;
+                insideDist[i] = 0;
+            }
+        }
+        DistanceTransform.squaredDistances(outsideDist, regionWidth, regionHeight);
+        DistanceTransform.squaredDistances(insideDist, regionWidth, regionHeight);
+
+        int lookupSize = (int) (maxDistance * DISTANCE_LOOKUP_SCALE) + 1;
+        int[] outsideColors = createDistanceLookup(lookupSize, DISTANCE_LOOKUP_SCALE, false);
+        int[] insideColors = createDistanceLookup(lookupSize, DISTANCE_LOOKUP_SCALE, true);
+
+        int[] pixels = new int[numPixels];
+        for (int i = 0; i < numPixels; i++) {
+            boolean inside = outsideDist[i] == 0;
+            // the distance is measured from the center of the pixel
+            // to the center of the nearest pixel on the other side,
+            // and the edge is half a pixel closer
+            float sqDist = inside ? insideDist[i] : outsideDist[i];
+            float distance = (float) Math.sqrt(sqDist) - 0.5f;
+            int lookupIndex = (int) (distance * DISTANCE_LOOKUP_SCALE);
+            if (lookupIndex < lookupSize) {
+                pixels[i] = inside ? insideColors[lookupIndex] : outsideColors[lookupIndex];
             }
-
         }
+        img.getRaster().setDataElements(region.x, region.y, regionWidth, regionHeight, pixels);
+    }
 
-        // set the inside/outside mode
-        /*
-        if(inside) {
-            g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_ATOP, brushAlpha));
-        } else {
-            g2.setComposite(AlphaComposite.getInstance(AlphaComposite.DST_OVER, brushAlpha));
-        }*/
-        g2.setComposite(AlphaComposite.getInstance(AlphaComposite.DST_OVER, brushAlpha));
-
-        // draw the effect
-        for (float i = 0; i < steps; i = i + 1f) {
-            float brushWidth = i * effectWidth / steps;
-            g2.setStroke(new BasicStroke(brushWidth,
-                    BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-            g2.draw(clipShape);
+    /**
+     * Returns the distance from the edge of the shape
+     * beyond which this effect paints nothing
+     */
+    protected float getMaxEffectDistance() {
+        return effectWidth / 2.0f + 1;
+    }
+
+    /**
+     * Returns the (not premultiplied) ARGB colors of this effect at the
+     * distances 0, 1/scale, 2/scale... from the edge of the shape,
+     * either inside or outside the shape.
+     *
+     * The colors approximate the original stroke-based rendering, where
+     * a pixel at distance d is covered by the strokes wider than 2*d.
+     */
+    protected int[] createDistanceLookup(int size, int scale, boolean insideShape) {
+        int[] lookup = new int[size];
+        Color color = getBrushColor();
+        int rgb = color.getRGB() & 0x00FFFFFF;
+        float colorAlpha = color.getAlpha() / 255.0f;
+
+        if (insideShape && isShouldFillShape() && !isRenderInsideShape()) {
+            Arrays.fill(lookup, color.getRGB());
+            return lookup;
         }
-        g2.translate(-offset.getX(), -offset.getY());
 
+        int steps = getBrushSteps();
+        if (steps <= 0 || effectWidth <= 0) {
+            return lookup;
+        }
+        float brushAlpha = 1.0f / steps;
+        for (int i = 0; i < size; i++) {
+            float distance = i / (float) scale;
+            // the number of strokes covering this distance
+            float numStrokes = steps - 2 * distance * steps / effectWidth;
+            if (numStrokes > 0) {
+                // each stroke is composited with the brush alpha
+                float alpha = 1.0f - (float) Math.pow(1.0f - brushAlpha, numStrokes);
+                int a = (int) (255 * alpha * colorAlpha + 0.5f);
+                lookup[i] = (a << 24) | rgb;
+            }
+        }
+        return lookup;
     }
 
     /**
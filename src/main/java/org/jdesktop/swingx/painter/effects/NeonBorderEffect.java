@@ -22,12 +22,8 @@
 
 package org.jdesktop.swingx.painter.effects;
 
-import java.awt.AlphaComposite;
-import java.awt.BasicStroke;
 import java.awt.Color;
-import java.awt.Graphics2D;
 import java.awt.Point;
-import java.awt.Shape;
 
 /**
  * An effect which draws a multicolored border around a painter's shape.
@@ -71,59 +67,65 @@ public class NeonBorderEffect extends AbstractAreaEffect {
         setOpacity(opacity);
     }
 
+    // lbalazscs: the distance transform based equivalent of the
+    // original rendering, which drew the shape with narrowing strokes
     @Override
-    protected void paintBorderGlow(Graphics2D gfx, Shape clipShape, int width, int height) {
-
-        /*
-        // draw the effect
-        for(float i=steps-1; i>=0; i=i-1f) {
-            float brushWidth = i * getEffectWidth()/steps;
-            gfx.setPaint(interpolateColor(i/steps,edgeColor,centerColor));
-            gfx.setStroke(new BasicStroke(brushWidth,
-                    BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-            gfx.draw(clipShape);
-        }*/
-
-        /* // an interesting outline effect. stroke the shape with a wide brush
-        * // then stroke again with slightly less wide one, then don't fill the middle
-       for(int i=0; i<2; i++) {
-           float brushWidth = (2-i)*5;
-           p("widdth = " + brushWidth);
-           gfx.setPaint(interpolateColor((float)(1-i), Color.BLACK, Color.WHITE));
-           gfx.setStroke(new BasicStroke(brushWidth));
-           gfx.draw(clipShape);
-       }
-        */
-        gfx.translate(getOffset().getX(), getOffset().getY());
-        gfx.setComposite(AlphaComposite.SrcOver);
-        int steps = getEffectWidth();
-        if (borderPosition == BorderPosition.Centered) {
-            steps = steps / 2;
+    protected float getMaxEffectDistance() {
+        return (getNeonSteps() + 1) / 2.0f + 1;
+    }
+
+    @Override
+    protected int[] createDistanceLookup(int size, int scale, boolean insideShape) {
+        int[] lookup = new int[size];
+        int steps = getNeonSteps();
+        if (steps <= 0) {
+            return lookup;
         }
-        for (int i = 0; i < steps; i++) {
+        float half = steps / 2;
+        for (int i = 0; i < size; i++) {
+            float distance = i / (float) scale;
+
+            // the widest stroke has a width of steps + 1, and
+            // its antialiased edge is approximated by a linear ramp
+            float coverage = (steps + 1) / 2.0f - distance + 0.5f;
+            if (coverage <= 0) {
+                break;
+            }
 
-            // make the brush width smaller each time until there is nothing left
-            float brushWidth = (float) (steps + 1 - i);
-            float half = steps / 2;
+            // the index of the narrowest stroke covering this distance,
+            // which is painted last, so it determines the color
+            float strokeIndex = steps + 1 - 2 * distance;
+            strokeIndex = Math.max(0, Math.min(steps - 1, strokeIndex));
 
+            float t;
             if (borderPosition == BorderPosition.Centered) {
-                gfx.setPaint(interpolateColor((float) (steps - i) / steps, getEdgeColor(), getCenterColor()));
+                t = (steps - strokeIndex) / steps;
+            } else if (half == 0) {
+                t = 0;
+            } else if (strokeIndex < half) {
+                t = (half - strokeIndex) / half;
             } else {
-                if (i < half) {
-                    gfx.setPaint(interpolateColor((float) (half - i) / half, getEdgeColor(), getCenterColor()));
-                } else {
-                    gfx.setPaint(interpolateColor((float) (i - half) / half, getEdgeColor(), getCenterColor()));
-                }
+                t = (strokeIndex - half) / half;
             }
+            t = Math.max(0, Math.min(1, t));
+            Color color = interpolateColor(t, getEdgeColor(), getCenterColor());
 
-            // to make the effect softer use a different stroke
-            gfx.setStroke(new BasicStroke(brushWidth,
-                    BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-            //gfx.setStroke(new BasicStroke(brushWidth));
-            gfx.draw(clipShape);
+            int argb = color.getRGB();
+            if (coverage < 1) {
+                int a = (int) ((argb >>> 24) * coverage + 0.5f);
+                argb = (a << 24) | (argb & 0x00FFFFFF);
+            }
+            lookup[i] = argb;
         }
-        gfx.translate(-getOffset().getX(), -getOffset().getY());
+        return lookup;
+    }
 
+    private int getNeonSteps() {
+        int steps = getEffectWidth();
+        if (borderPosition == BorderPosition.Centered) {
+            steps = steps / 2;
+        }
+        return steps;
     }
 
     protected Color interpolateColor(float t, Color start, Color end) {
@@ -8,10 +8,12 @@
 package pd;
 
 import net.jafama.FastMath;
+import pixelitor.ThreadPool;
 import pixelitor.utils.ProgressTracker;
 import pixelitor.utils.StatusBarProgressTracker;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
 import java.util.Arrays;
 
 /**
@@ -22,7 +24,9 @@ import java.util.Arrays;
  * <p>This class provides a configurable implementation of the Canny edge
  * detection algorithm. This classic algorithm has a number of shortcomings,
  * but remains an effective tool in many scenarios. <em>This class is designed
- * for single threaded use only.</em></p>
+ * for single threaded use only.</em> (Internally the processing of the rows
+ * is split across the available cores, and the buffers are reused between
+ * the runs if the image size doesn't change.)</p>
  *
  * <p>Sample usage:</p>
  *
@@ -72,6 +76,17 @@ public class CannyEdgeDetector {
     private float[] xGradient;
     private float[] yGradient;
 
+    // marks the connected components containing strong edge pixels
+    private byte[] strongComponents;
+    private boolean arraysReused;
+
+    // the kernels of the last run, with the parameters they were created for
+    private float[] kernel;
+    private float[] diffKernel;
+    private int kwidth;
+    private float kernelsRadius;
+    private int kernelsWidth;
+
     private ProgressTracker pt;
 
     // constructors
@@ -265,38 +280,37 @@ public class CannyEdgeDetector {
         this.contrastNormalized = contrastNormalized;
     }
 
+    /**
+     * Returns true if the buffers allocated in the last run
+     * can be reused for the given image.
+     */
+
+    public boolean canReuseBuffersFor(BufferedImage image) {
+        return data != null && data.length == image.getWidth() * image.getHeight();
+    }
+
     // methods
 
     public void process() {
         width = sourceImage.getWidth();
         height = sourceImage.getHeight();
 
-        // the number of computational units are experimental values
-        // that seem to work pretty well
-        pt = new StatusBarProgressTracker("Canny", width + 450);
+        // one unit for each row in each of the five row passes
+        pt = new StatusBarProgressTracker("Canny", 5 * height);
 
         picsize = width * height;
         initArrays();
 
-        pt.unitsDone(10);
-
         readLuminance();
 
-        pt.unitsDone(50);
-
         if (contrastNormalized) {
             normalizeContrast();
-            pt.unitsDone(10);
         }
 
         computeGradients(gaussianKernelRadius, gaussianKernelWidth);
         int low = Math.round(lowThreshold * MAGNITUDE_SCALE);
         int high = Math.round(highThreshold * MAGNITUDE_SCALE);
         performHysteresis(low, high);
-        pt.unitDone();
-
-        thresholdEdges();
-        pt.unitDone();
 
         writeEdges(data);
         pt.finished();
@@ -313,26 +327,23 @@ public class CannyEdgeDetector {
             yConv = new float[picsize];
             xGradient = new float[picsize];
             yGradient = new float[picsize];
+            strongComponents = new byte[picsize];
+            arraysReused = false;
+        } else {
+            // they have to be cleared in readLuminance,
+            // because the passes below don't write the borders
+            arraysReused = true;
         }
     }
 
-    //NOTE: The elements of the method below (specifically the technique for
-    //non-maximal suppression and the technique for gradient computation)
-    //are derived from an implementation posted in the following forum (with the
-    //clear intent of others using the code):
-    //  http://forum.java.sun.com/thread.jspa?threadID=546211&start=45&tstart=0
-    //My code effectively mimics the algorithm exhibited above.
-    //Since I don't know the providence of the code that was posted it is a
-    //possibility (though I think a very remote one) that this code violates
-    //someone's intellectual property rights. If this concerns you feel free to
-    //contact me for an alternative, though less efficient, implementation.
-
-    private void computeGradients(float kernelRadius, int kernelWidth) {
+    private void createKernels(float kernelRadius, int kernelWidth) {
+        if (kernel != null && kernelsRadius == kernelRadius && kernelsWidth == kernelWidth) {
+            return;
+        }
 
         //generate the gaussian convolution masks
-        float[] kernel = new float[kernelWidth];
-        float[] diffKernel = new float[kernelWidth];
-        int kwidth;
+        kernel = new float[kernelWidth];
+        diffKernel = new float[kernelWidth];
         for (kwidth = 0; kwidth < kernelWidth; kwidth++) {
             float g1 = gaussian(kwidth, kernelRadius);
             if (g1 <= GAUSSIAN_CUT_OFF && kwidth >= 2) {
@@ -343,149 +354,177 @@ public class CannyEdgeDetector {
             kernel[kwidth] = (g1 + g2 + g3) / 3.0f / (2.0f * (float) Math.PI * kernelRadius * kernelRadius);
             diffKernel[kwidth] = g3 - g2;
         }
+        kernelsRadius = kernelRadius;
+        kernelsWidth = kernelWidth;
+    }
 
-        pt.unitDone();
+    //NOTE: The elements of the method below (specifically the technique for
+    //non-maximal suppression and the technique for gradient computation)
+    //are derived from an implementation posted in the following forum (with the
+    //clear intent of others using the code):
+    //  http://forum.java.sun.com/thread.jspa?threadID=546211&start=45&tstart=0
+    //My code effectively mimics the algorithm exhibited above.
+    //Since I don't know the providence of the code that was posted it is a
+    //possibility (though I think a very remote one) that this code violates
+    //someone's intellectual property rights. If this concerns you feel free to
+    //contact me for an alternative, though less efficient, implementation.
+
+    // Laszlo: the passes below process the rows in parallel strips
+    // (each pass reads only the results of the previous pass),
+    // and the loops go along the rows for a better memory access pattern
+    private void computeGradients(float kernelRadius, int kernelWidth) {
+        createKernels(kernelRadius, kernelWidth);
 
         int initX = kwidth - 1;
         int maxX = width - (kwidth - 1);
-        int initY = width * (kwidth - 1);
-        int maxY = width * (height - (kwidth - 1));
+        int initRow = kwidth - 1;
+        int maxRow = height - (kwidth - 1);
+        int numRows = Math.max(0, maxRow - initRow);
 
         //perform convolution in x and y directions
-        for (int x = initX; x < maxX; x++) {
-            for (int y = initY; y < maxY; y += width) {
-                int index = x + y;
-                float sumX = data[index] * kernel[0];
-                float sumY = sumX;
-                int xOffset = 1;
-                int yOffset = width;
-                for (; xOffset < kwidth; ) {
-                    sumY += kernel[xOffset] * (data[index - yOffset] + data[index + yOffset]);
-                    sumX += kernel[xOffset] * (data[index - xOffset] + data[index + xOffset]);
-                    yOffset += width;
-                    xOffset++;
-                }
-
-                yConv[index] = sumY;
-                xConv[index] = sumX;
-            }
-
-        }
-
-        pt.unitsDone(200);
+        ThreadPool.processRowBlocks(numRows, (fromRow, toRow) -> {
+            for (int row = initRow + fromRow; row < initRow + toRow; row++) {
+                int y = row * width;
+                for (int x = initX; x < maxX; x++) {
+                    int index = x + y;
+                    float sumX = data[index] * kernel[0];
+                    float sumY = sumX;
+                    int xOffset = 1;
+                    int yOffset = width;
+                    for (; xOffset < kwidth; ) {
+                        sumY += kernel[xOffset] * (data[index - yOffset] + data[index + yOffset]);
+                        sumX += kernel[xOffset] * (data[index - xOffset] + data[index + xOffset]);
+                        yOffset += width;
+                        xOffset++;
+                    }
 
-        for (int x = initX; x < maxX; x++) {
-            for (int y = initY; y < maxY; y += width) {
-                float sum = 0.0f;
-                int index = x + y;
-                for (int i = 1; i < kwidth; i++) {
-                    sum += diffKernel[i] * (yConv[index - i] - yConv[index + i]);
+                    yConv[index] = sumY;
+                    xConv[index] = sumX;
                 }
-
-                xGradient[index] = sum;
             }
+        }, pt);
+        pt.unitsDone(height - numRows);
+
+        ThreadPool.processRowBlocks(numRows, (fromRow, toRow) -> {
+            for (int row = initRow + fromRow; row < initRow + toRow; row++) {
+                int y = row * width;
+                for (int x = initX; x < maxX; x++) {
+                    float sum = 0.0f;
+                    int index = x + y;
+                    for (int i = 1; i < kwidth; i++) {
+                        sum += diffKernel[i] * (yConv[index - i] - yConv[index + i]);
+                    }
 
-        }
-
-        pt.unitsDone(100);
-
-        for (int x = kwidth; x < width - kwidth; x++) {
-            for (int y = initY; y < maxY; y += width) {
-                float sum = 0.0f;
-                int index = x + y;
-                int yOffset = width;
-                for (int i = 1; i < kwidth; i++) {
-                    sum += diffKernel[i] * (xConv[index - yOffset] - xConv[index + yOffset]);
-                    yOffset += width;
+                    xGradient[index] = sum;
                 }
+                for (int x = kwidth; x < width - kwidth; x++) {
+                    float sum = 0.0f;
+                    int index = x + y;
+                    int yOffset = width;
+                    for (int i = 1; i < kwidth; i++) {
+                        sum += diffKernel[i] * (xConv[index - yOffset] - xConv[index + yOffset]);
+                        yOffset += width;
+                    }
 
-                yGradient[index] = sum;
+                    yGradient[index] = sum;
+                }
             }
-
-        }
-
-        pt.unitsDone(100);
-
-        initX = kwidth;
-        maxX = width - kwidth;
-        initY = width * kwidth;
-        maxY = width * (height - kwidth);
-        for (int x = initX; x < maxX; x++) {
-            pt.unitDone();
-            for (int y = initY; y < maxY; y += width) {
-                int index = x + y;
-                int indexN = index - width;
-                int indexS = index + width;
-                int indexW = index - 1;
-                int indexE = index + 1;
-                int indexNW = indexN - 1;
-                int indexNE = indexN + 1;
-                int indexSW = indexS - 1;
-                int indexSE = indexS + 1;
-
-                float xGrad = xGradient[index];
-                float yGrad = yGradient[index];
-                float gradMag = hypot(xGrad, yGrad);
-
-                //perform non-maximal supression
-                float nMag = hypot(xGradient[indexN], yGradient[indexN]);
-                float sMag = hypot(xGradient[indexS], yGradient[indexS]);
-                float wMag = hypot(xGradient[indexW], yGradient[indexW]);
-                float eMag = hypot(xGradient[indexE], yGradient[indexE]);
-                float neMag = hypot(xGradient[indexNE], yGradient[indexNE]);
-                float seMag = hypot(xGradient[indexSE], yGradient[indexSE]);
-                float swMag = hypot(xGradient[indexSW], yGradient[indexSW]);
-                float nwMag = hypot(xGradient[indexNW], yGradient[indexNW]);
-                float tmp;
-                /*
-                 * An explanation of what's happening here, for those who want
-                 * to understand the source: This performs the "non-maximal
-                 * supression" phase of the Canny edge detection in which we
-                 * need to compare the gradient magnitude to that in the
-                 * direction of the gradient; only if the value is a local
-                 * maximum do we consider the point as an edge candidate.
-                 *
-                 * We need to break the comparison into a number of different
-                 * cases depending on the gradient direction so that the
-                 * appropriate values can be used. To avoid computing the
-                 * gradient direction, we use two simple comparisons: first we
-                 * check that the partial derivatives have the same sign (1)
-                 * and then we check which is larger (2). As a consequence, we
-                 * have reduced the problem to one of four identical cases that
-                 * each test the central gradient magnitude against the values at
-                 * two points with 'identical support'; what this means is that
-                 * the geometry required to accurately interpolate the magnitude
-                 * of gradient function at those points has an identical
-                 * geometry (upto right-angled-rotation/reflection).
-                 *
-                 * When comparing the central gradient to the two interpolated
-                 * values, we avoid performing any divisions by multiplying both
-                 * sides of each inequality by the greater of the two partial
-                 * derivatives. The common comparand is stored in a temporary
-                 * variable (3) and reused in the mirror case (4).
-                 *
-                 */
-                if (xGrad * yGrad <= (float) 0 /*(1)*/
-                    ? Math.abs(xGrad) >= Math.abs(yGrad) /*(2)*/
-                    ? (tmp = Math.abs(xGrad * gradMag)) >= Math.abs(yGrad * neMag - (xGrad + yGrad) * eMag) /*(3)*/
-                    && tmp > Math.abs(yGrad * swMag - (xGrad + yGrad) * wMag) /*(4)*/
-                    : (tmp = Math.abs(yGrad * gradMag)) >= Math.abs(xGrad * neMag - (yGrad + xGrad) * nMag) /*(3)*/
-                    && tmp > Math.abs(xGrad * swMag - (yGrad + xGrad) * sMag) /*(4)*/
-                    : Math.abs(xGrad) >= Math.abs(yGrad) /*(2)*/
-                    ? (tmp = Math.abs(xGrad * gradMag)) >= Math.abs(yGrad * seMag + (xGrad - yGrad) * eMag) /*(3)*/
-                    && tmp > Math.abs(yGrad * nwMag + (xGrad - yGrad) * wMag) /*(4)*/
-                    : (tmp = Math.abs(yGrad * gradMag)) >= Math.abs(xGrad * seMag + (yGrad - xGrad) * sMag) /*(3)*/
-                    && tmp > Math.abs(xGrad * nwMag + (yGrad - xGrad) * nMag) /*(4)*/
-                ) {
-                    magnitude[index] = gradMag >= MAGNITUDE_LIMIT ? MAGNITUDE_MAX : (int) (MAGNITUDE_SCALE * gradMag);
-                    //NOTE: The orientation of the edge is not employed by this
-                    //implementation. It is a simple matter to compute it at
-                    //this point as: Math.atan2(yGrad, xGrad);
-                } else {
-                    magnitude[index] = 0;
+        }, pt);
+        pt.unitsDone(height - numRows);
+
+        // The gradient magnitudes are calculated only once for each
+        // pixel (and not nine times in the non-maximal suppression).
+        // The xConv array is not needed anymore, so it is reused.
+        float[] gradMags = xConv;
+        ThreadPool.processRowBlocks(height, (fromRow, toRow) -> {
+            for (int i = fromRow * width, end = toRow * width; i < end; i++) {
+                gradMags[i] = hypot(xGradient[i], yGradient[i]);
+            }
+        }, ProgressTracker.NULL_TRACKER);
+
+        int initNX = kwidth;
+        int maxNX = width - kwidth;
+        int initNRow = kwidth;
+        int numNRows = Math.max(0, height - kwidth - initNRow);
+        ThreadPool.processRowBlocks(numNRows, (fromRow, toRow) -> {
+            for (int row = initNRow + fromRow; row < initNRow + toRow; row++) {
+                int y = row * width;
+                for (int x = initNX; x < maxNX; x++) {
+                    int index = x + y;
+                    int indexN = index - width;
+                    int indexS = index + width;
+                    int indexW = index - 1;
+                    int indexE = index + 1;
+                    int indexNW = indexN - 1;
+                    int indexNE = indexN + 1;
+                    int indexSW = indexS - 1;
+                    int indexSE = indexS + 1;
+
+                    float xGrad = xGradient[index];
+                    float yGrad = yGradient[index];
+                    float gradMag = gradMags[index];
+
+                    //perform non-maximal supression
+                    float nMag = gradMags[indexN];
+                    float sMag = gradMags[indexS];
+                    float wMag = gradMags[indexW];
+                    float eMag = gradMags[indexE];
+                    float neMag = gradMags[indexNE];
+                    float seMag = gradMags[indexSE];
+                    float swMag = gradMags[indexSW];
+                    float nwMag = gradMags[indexNW];
+                    float tmp;
+                    /*
+                     * An explanation of what's happening here, for those who want
+                     * to understand the source: This performs the "non-maximal
+                     * supression" phase of the Canny edge detection in which we
+                     * need to compare the gradient magnitude to that in the
+                     * direction of the gradient; only if the value is a local
+                     * maximum do we consider the point as an edge candidate.
+                     *
+                     * We need to break the comparison into a number of different
+                     * cases depending on the gradient direction so that the
+                     * appropriate values can be used. To avoid computing the
+                     * gradient direction, we use two simple comparisons: first we
+                     * check that the partial derivatives have the same sign (1)
+                     * and then we check which is larger (2). As a consequence, we
+                     * have reduced the problem to one of four identical cases that
+                     * each test the central gradient magnitude against the values at
+                     * two points with 'identical support'; what this means is that
+                     * the geometry required to accurately interpolate the magnitude
+                     * of gradient function at those points has an identical
+                     * geometry (upto right-angled-rotation/reflection).
+                     *
+                     * When comparing the central gradient to the two interpolated
+                     * values, we avoid performing any divisions by multiplying both
+                     * sides of each inequality by the greater of the two partial
+                     * derivatives. The common comparand is stored in a temporary
+                     * variable (3) and reused in the mirror case (4).
+                     *
+                     */
+                    if (xGrad * yGrad <= (float) 0 /*(1)*/
+                        ? Math.abs(xGrad) >= Math.abs(yGrad) /*(2)*/
+                        ? (tmp = Math.abs(xGrad * gradMag)) >= Math.abs(yGrad * neMag - (xGrad + yGrad) * eMag) /*(3)*/
+                        && tmp > Math.abs(yGrad * swMag - (xGrad + yGrad) * wMag) /*(4)*/
+                        : (tmp = Math.abs(yGrad * gradMag)) >= Math.abs(xGrad * neMag - (yGrad + xGrad) * nMag) /*(3)*/
+                        && tmp > Math.abs(xGrad * swMag - (yGrad + xGrad) * sMag) /*(4)*/
+                        : Math.abs(xGrad) >= Math.abs(yGrad) /*(2)*/
+                        ? (tmp = Math.abs(xGrad * gradMag)) >= Math.abs(yGrad * seMag + (xGrad - yGrad) * eMag) /*(3)*/
+                        && tmp > Math.abs(yGrad * nwMag + (xGrad - yGrad) * wMag) /*(4)*/
+                        : (tmp = Math.abs(yGrad * gradMag)) >= Math.abs(xGrad * seMag + (yGrad - xGrad) * sMag) /*(3)*/
+                        && tmp > Math.abs(xGrad * nwMag + (yGrad - xGrad) * nMag) /*(4)*/
+                    ) {
+                        magnitude[index] = gradMag >= MAGNITUDE_LIMIT ? MAGNITUDE_MAX : (int) (MAGNITUDE_SCALE * gradMag);
+                        //NOTE: The orientation of the edge is not employed by this
+                        //implementation. It is a simple matter to compute it at
+                        //this point as: Math.atan2(yGrad, xGrad);
+                    } else {
+                        magnitude[index] = 0;
+                    }
                 }
             }
-        }
+        }, pt);
+        pt.unitsDone(height - numNRows);
     }
 
     //NOTE: It is quite feasible to replace the implementation of this method
@@ -499,69 +538,190 @@ public class CannyEdgeDetector {
         return (float) Math.exp(-(x * x) / (2.0f * sigma * sigma));
     }
 
+    // Laszlo: the hysteresis is calculated as a connected components
+    // labeling, which finds all the pixels that are above the low
+    // threshold and are 8-connected to a pixel above the high threshold.
+    // (The original recursive implementation followed only one path
+    // from each pixel, and could overflow the stack for big images.)
+    // The components are labeled in parallel row strips with a union-find,
+    // and then merged along the strip borders.
     private void performHysteresis(int low, int high) {
         //NOTE: this implementation reuses the data array to store both
         //luminance data from the image, and edge intensity from the processing.
         //This is done for memory efficiency, other implementations may wish
         //to separate these functions.
-        Arrays.fill(data, 0);
-
-        int offset = 0;
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                if (data[offset] == 0 && magnitude[offset] >= high) {
-                    follow(x, y, offset, low);
+        // Laszlo: here the data array stores the union-find parents:
+        // -1 for the pixels that are not edge candidates, and for the
+        // candidates an index that is never greater than their own index
+        int[] parent = data;
+        int minMagnitude = Math.max(low, 1);
+
+        int stripHeight = Math.max(1, height / (4 * Runtime.getRuntime().availableProcessors()));
+        int numStrips = (height + stripHeight - 1) / stripHeight;
+        ThreadPool.processRowBlocks(numStrips, (fromStrip, toStrip) -> {
+            for (int strip = fromStrip; strip < toStrip; strip++) {
+                int fromY = strip * stripHeight;
+                int toY = Math.min(height, fromY + stripHeight);
+                labelStrip(parent, fromY, toY, minMagnitude);
+            }
+        }, ProgressTracker.NULL_TRACKER);
+
+        // merge the components along the strip borders
+        for (int y = stripHeight; y < height; y += stripHeight) {
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                int index = offset + x;
+                if (parent[index] >= 0) {
+                    unionWithRowAbove(parent, index, x);
                 }
-                offset++;
             }
         }
+
+        // make the parents point directly to the roots: this works in a
+        // single pass, because the parents always come earlier
+        for (int i = 0; i < picsize; i++) {
+            int p = parent[i];
+            if (p >= 0) {
+                parent[i] = parent[p];
+            }
+        }
+        pt.unitsDone(height / 2);
+
+        byte[] strong = strongComponents;
+        ThreadPool.processRowBlocks(height, (fromRow, toRow) -> {
+            for (int i = fromRow * width, end = toRow * width; i < end; i++) {
+                strong[i] = 0;
+            }
+        }, ProgressTracker.NULL_TRACKER);
+        ThreadPool.processRowBlocks(height, (fromRow, toRow) -> {
+            for (int i = fromRow * width, end = toRow * width; i < end; i++) {
+                if (parent[i] >= 0 && magnitude[i] >= high) {
+                    // different threads can only write the same value here
+                    strong[parent[i]] = 1;
+                }
+            }
+        }, ProgressTracker.NULL_TRACKER);
+
+        // threshold the edges (each thread reads and writes only its own rows,
+        // the roots are looked up only in the strong components array)
+        ThreadPool.processRowBlocks(height, (fromRow, toRow) -> {
+            for (int i = fromRow * width, end = toRow * width; i < end; i++) {
+                int p = parent[i];
+                parent[i] = p >= 0 && strong[p] != 0 ? -1 : 0xff000000;
+            }
+        }, ProgressTracker.NULL_TRACKER);
+        pt.unitsDone(height - height / 2);
     }
 
-    private void follow(int x1, int y1, int i1, int threshold) {
-        int x0 = x1 == 0 ? x1 : x1 - 1;
-        int x2 = x1 == width - 1 ? x1 : x1 + 1;
-        int y0 = y1 == 0 ? y1 : y1 - 1;
-        int y2 = y1 == height - 1 ? y1 : y1 + 1;
-
-        data[i1] = magnitude[i1];
-        for (int x = x0; x <= x2; x++) {
-            for (int y = y0; y <= y2; y++) {
-                int i2 = x + y * width;
-                if ((y != y1 || x != x1)
-                    && data[i2] == 0
-                    && magnitude[i2] >= threshold) {
-                    follow(x, y, i2, threshold);
-                    return;
+    /**
+     * Labels the edge candidates within the given rows
+     */
+    private void labelStrip(int[] parent, int fromY, int toY, int minMagnitude) {
+        for (int y = fromY; y < toY; y++) {
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                int index = offset + x;
+                if (magnitude[index] < minMagnitude) {
+                    parent[index] = -1;
+                    continue;
+                }
+                parent[index] = index;
+                if (x > 0 && parent[index - 1] >= 0) {
+                    union(parent, index - 1, index);
+                }
+                if (y > fromY) {
+                    unionWithRowAbove(parent, index, x);
                 }
             }
         }
     }
 
-    private void thresholdEdges() {
-        for (int i = 0; i < picsize; i++) {
-            data[i] = data[i] > 0 ? -1 : 0xff000000;
+    private void unionWithRowAbove(int[] parent, int index, int x) {
+        int above = index - width;
+        if (x > 0 && parent[above - 1] >= 0) {
+            union(parent, above - 1, index);
+        }
+        if (parent[above] >= 0) {
+            union(parent, above, index);
+        }
+        if (x < width - 1 && parent[above + 1] >= 0) {
+            union(parent, above + 1, index);
+        }
+    }
+
+    /**
+     * Merges the components of the two pixels, the root
+     * with the smaller index becomes the root of both
+     */
+    private static void union(int[] parent, int a, int b) {
+        int rootA = find(parent, a);
+        int rootB = find(parent, b);
+        if (rootA < rootB) {
+            parent[rootB] = rootA;
+        } else if (rootB < rootA) {
+            parent[rootA] = rootB;
         }
     }
 
+    private static int find(int[] parent, int i) {
+        int root = i;
+        while (parent[root] != root) {
+            root = parent[root];
+        }
+        // path compression
+        while (parent[i] != root) {
+            int next = parent[i];
+            parent[i] = root;
+            i = next;
+        }
+        return root;
+    }
+
     private static int luminance(float r, float g, float b) {
         return Math.round(0.299f * r + 0.587f * g + 0.114f * b);
     }
 
     private void readLuminance() {
         int type = sourceImage.getType();
+        if (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB
+                && type != BufferedImage.TYPE_INT_ARGB_PRE && type != BufferedImage.TYPE_BYTE_GRAY
+                && type != BufferedImage.TYPE_USHORT_GRAY && type != BufferedImage.TYPE_3BYTE_BGR) {
+            throw new IllegalArgumentException("Unsupported image type: " + type);
+        }
+        boolean clear = arraysReused;
+        ThreadPool.processRowBlocks(height, (fromRow, toRow) -> {
+            readLuminance(type, fromRow, toRow);
+            if (clear) {
+                int from = fromRow * width;
+                int to = toRow * width;
+                Arrays.fill(magnitude, from, to, 0);
+                Arrays.fill(xConv, from, to, 0);
+                Arrays.fill(yConv, from, to, 0);
+                Arrays.fill(xGradient, from, to, 0);
+                Arrays.fill(yGradient, from, to, 0);
+            }
+        }, pt);
+    }
+
+    // Laszlo: reads only the given rows, so that it can run in parallel
+    private void readLuminance(int type, int fromRow, int toRow) {
+        Raster raster = sourceImage.getRaster();
+        int numRows = toRow - fromRow;
+        int start = fromRow * width;
+        int end = toRow * width;
         if (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB) {
-            int[] pixels = (int[]) sourceImage.getData().getDataElements(0, 0, width, height, null);
-            for (int i = 0; i < picsize; i++) {
-                int p = pixels[i];
+            int[] pixels = (int[]) raster.getDataElements(0, fromRow, width, numRows, null);
+            for (int i = start; i < end; i++) {
+                int p = pixels[i - start];
                 int r = (p & 0xff0000) >> 16;
                 int g = (p & 0xff00) >> 8;
                 int b = p & 0xff;
                 data[i] = luminance(r, g, b);
             }
         } else if (type == BufferedImage.TYPE_INT_ARGB_PRE) {
-            int[] pixels = (int[]) sourceImage.getData().getDataElements(0, 0, width, height, null);
-            for (int i = 0; i < picsize; i++) {
-                int p = pixels[i];
+            int[] pixels = (int[]) raster.getDataElements(0, fromRow, width, numRows, null);
+            for (int i = start; i < end; i++) {
+                int p = pixels[i - start];
                 int a = (p >>> 24) & 0xff;
                 int r = (p & 0xff0000) >> 16;
                 int g = (p & 0xff00) >> 8;
@@ -581,26 +741,24 @@ public class CannyEdgeDetector {
                 data[i] = lum;
             }
         } else if (type == BufferedImage.TYPE_BYTE_GRAY) {
-            byte[] pixels = (byte[]) sourceImage.getData().getDataElements(0, 0, width, height, null);
-            for (int i = 0; i < picsize; i++) {
-                data[i] = (pixels[i] & 0xff);
+            byte[] pixels = (byte[]) raster.getDataElements(0, fromRow, width, numRows, null);
+            for (int i = start; i < end; i++) {
+                data[i] = (pixels[i - start] & 0xff);
             }
         } else if (type == BufferedImage.TYPE_USHORT_GRAY) {
-            short[] pixels = (short[]) sourceImage.getData().getDataElements(0, 0, width, height, null);
-            for (int i = 0; i < picsize; i++) {
-                data[i] = (pixels[i] & 0xffff) / 256;
+            short[] pixels = (short[]) raster.getDataElements(0, fromRow, width, numRows, null);
+            for (int i = start; i < end; i++) {
+                data[i] = (pixels[i - start] & 0xffff) / 256;
             }
         } else if (type == BufferedImage.TYPE_3BYTE_BGR) {
-            byte[] pixels = (byte[]) sourceImage.getData().getDataElements(0, 0, width, height, null);
+            byte[] pixels = (byte[]) raster.getDataElements(0, fromRow, width, numRows, null);
             int offset = 0;
-            for (int i = 0; i < picsize; i++) {
+            for (int i = start; i < end; i++) {
                 int b = pixels[offset++] & 0xff;
                 int g = pixels[offset++] & 0xff;
                 int r = pixels[offset++] & 0xff;
                 data[i] = luminance(r, g, b);
             }
-        } else {
-            throw new IllegalArgumentException("Unsupported image type: " + type);
         }
     }
 
@@ -18,6 +18,7 @@
 package pixelitor;
 
 import pixelitor.gui.View;
+import pixelitor.selection.SelectionMask;
 import pixelitor.tools.Symmetry;
 
 import java.awt.Dimension;
@@ -138,6 +139,9 @@ public class Canvas implements Serializable {
     }
 
     public Shape invertShape(Shape shape) {
+        if (SelectionMask.shouldBeUsedFor(shape)) {
+            return SelectionMask.fromShape(shape, width, height).invert().toShape();
+        }
         Area area = new Area(shape);
         Area fullArea = new Area(getImBounds());
         fullArea.subtract(area);
@@ -147,6 +151,11 @@ public class Canvas implements Serializable {
     public Shape clipShapeToBounds(Shape shape) {
         assert shape != null;
 
+        if (SelectionMask.shouldBeUsedFor(shape)) {
+            // the masks are always within the canvas
+            return SelectionMask.fromShape(shape, width, height).toShape();
+        }
+
         Rectangle2D canvasBounds = getImBounds();
         Area compBounds = new Area(canvasBounds);
         Area result = new Area(shape);
@@ -17,8 +17,8 @@
 
 package pixelitor;
 
-import pixelitor.gui.HistogramsPanel;
 import pixelitor.gui.OpenComps;
+import pixelitor.gui.RepaintScheduler;
 import pixelitor.gui.View;
 import pixelitor.guides.Guides;
 import pixelitor.guides.GuidesChangeEdit;
@@ -47,6 +47,7 @@ import pixelitor.utils.ImageUtils;
 import pixelitor.utils.Lazy;
 import pixelitor.utils.Messages;
 import pixelitor.utils.VisibleForTesting;
+import pixelitor.utils.debug.PerformanceStats;
 
 import java.awt.AlphaComposite;
 import java.awt.Color;
@@ -70,6 +71,7 @@ import java.util.function.Consumer;
 import static java.awt.image.BufferedImage.TYPE_INT_ARGB_PRE;
 import static java.lang.String.format;
 import static pixelitor.Composition.ImageChangeActions.FULL;
+import static pixelitor.Composition.ImageChangeActions.REPAINT;
 import static pixelitor.Composition.LayerAdder.Position.ABOVE_ACTIVE;
 import static pixelitor.Composition.LayerAdder.Position.BELLOW_ACTIVE;
 import static pixelitor.Composition.LayerAdder.Position.TOP;
@@ -83,6 +85,11 @@ public class Composition implements Serializable {
     // serialization is used for saving in the pxc format
     private static final long serialVersionUID = 1L;
 
+    // the extra pixels around a sampled region that are also evaluated
+    // if there are adjustment layers, because they can depend on the
+    // neighboring pixels
+    private static final int ADJUSTMENT_REGION_MARGIN = 32;
+
     // a counter for the names of new layers
     private int newLayerCount = 1;
 
@@ -111,6 +118,11 @@ public class Composition implements Serializable {
     // by dragging with a tool, but not finalized yet
     private transient Selection builtSelection;
 
+    // while the region updates are batched, the union
+    // of the updated regions (in image space)
+    private transient int regionUpdateBatchDepth;
+    private transient Rectangle2D batchedRegion;
+
     /**
      * The constructor is private: a {@link Composition}
      * can be created either with one of the static factory
@@ -724,12 +736,19 @@ public class Composition implements Serializable {
 
 //        BufferedImage imageSoFar = ImageUtils.createCompatibleImage(getCanvasWidth(), getCanvasHeight());
 
+        long startTime = System.nanoTime();
+        long startAllocated = PerformanceStats.getAllocatedBytes();
+
         BufferedImage imageSoFar = new BufferedImage(
                 canvas.getImWidth(), canvas.getImHeight(), TYPE_INT_ARGB_PRE);
         Graphics2D g = imageSoFar.createGraphics();
 
+        // the layers hidden by an opaque layer are not painted
+        int firstIndex = getFirstPaintedLayerIndex(canvas.getImBounds());
+
         boolean firstVisibleLayer = true;
-        for (Layer layer : layerList) {
+        for (int i = firstIndex; i < layerList.size(); i++) {
+            Layer layer = layerList.get(i);
             if (layer.isVisible()) {
                 BufferedImage result = layer.applyLayer(g, imageSoFar, firstVisibleLayer);
                 if (result != null) { // adjustment layer or watermarking text layer
@@ -745,6 +764,9 @@ public class Composition implements Serializable {
 
         g.dispose();
 
+        PerformanceStats.record(PerformanceStats.COMPOSITE_IMAGE, startTime,
+                startAllocated, (long) canvas.getImWidth() * canvas.getImHeight());
+
         return imageSoFar;
     }
 
@@ -755,7 +777,20 @@ public class Composition implements Serializable {
     }
 
     public void updateRegion(PPoint start, PPoint end, double thickness) {
+        double minX = Math.min(start.getImX(), end.getImX()) - thickness;
+        double minY = Math.min(start.getImY(), end.getImY()) - thickness;
+        double maxX = Math.max(start.getImX(), end.getImX()) + thickness;
+        double maxY = Math.max(start.getImY(), end.getImY()) + thickness;
+        Rectangle2D imRegion = new Rectangle2D.Double(
+                minX, minY, maxX - minX, maxY - minY);
+        if (addToBatchedRegion(imRegion)) {
+            return;
+        }
+
         compositeImage.invalidate();
+        if (activeLayer != null) {
+            activeLayer.invalidateMaskedImageCache(imRegion.getBounds());
+        }
         if (view != null) { // during reload image it can be null
             view.updateRegion(start, end, thickness);
             view.updateNavigator(false);
@@ -763,13 +798,69 @@ public class Composition implements Serializable {
     }
 
     public void updateRegion(PRectangle area) {
+        if (addToBatchedRegion(area.getIm())) {
+            return;
+        }
+
         compositeImage.invalidate();
+        if (activeLayer != null) {
+            activeLayer.invalidateMaskedImageCache(area.getIm().getBounds());
+        }
         if (view != null) { // during reload image it can be null
             view.updateRegion(area);
             view.updateNavigator(false);
         }
     }
 
+    /**
+     * Starts collecting the regions passed to the updateRegion methods,
+     * instead of repainting them one by one. While batching, the
+     * updateRegion methods can be called from any thread.
+     * The batches can be nested.
+     */
+    public synchronized void startRegionUpdateBatch() {
+        regionUpdateBatchDepth++;
+    }
+
+    /**
+     * Finishes the current batch. If it was the outermost one, the union
+     * of the collected regions is invalidated and repainted at once.
+     */
+    public void finishRegionUpdateBatch() {
+        assert regionUpdateBatchDepth > 0;
+        Rectangle2D region;
+        synchronized (this) {
+            regionUpdateBatchDepth--;
+            if (regionUpdateBatchDepth > 0 || batchedRegion == null) {
+                return;
+            }
+            region = batchedRegion;
+            batchedRegion = null;
+        }
+
+        compositeImage.invalidate();
+        if (activeLayer != null) {
+            activeLayer.invalidateMaskedImageCache(region.getBounds());
+        }
+        if (view != null) {
+            view.updateRegion(PRectangle.fromIm(region, view));
+            view.updateNavigator(false);
+        }
+    }
+
+    private synchronized boolean addToBatchedRegion(Rectangle2D imRegion) {
+        if (regionUpdateBatchDepth == 0) {
+            return false;
+        }
+        if (batchedRegion == null) {
+            batchedRegion = new Rectangle2D.Double();
+            batchedRegion.setRect(imRegion);
+        } else {
+            batchedRegion.add(imRegion);
+        }
+        return true;
+    }
+
     public void dispose() {
         if (selection != null) {
             // stop the timer thread
@@ -1021,6 +1112,114 @@ public class Composition implements Serializable {
         return compositeImage.get();
     }
 
+    /**
+     * Returns the ARGB color of the composite image at the given point
+     * (relative to the canvas). If the composite image is not cached,
+     * then only this pixel is calculated.
+     */
+    public int getCompositePixel(int x, int y) {
+        BufferedImage cached = compositeImage.getIfCalculated();
+        if (cached != null) {
+            return cached.getRGB(x, y);
+        }
+        return getCompositeRegion(new Rectangle(x, y, 1, 1)).getRGB(0, 0);
+    }
+
+    /**
+     * Returns the given region (relative to the canvas) of the composite
+     * image. Unless the composite image is already cached, only this region
+     * is calculated, taking into account the blending modes, opacities and
+     * masks of the layers. The region must be inside the canvas.
+     */
+    public BufferedImage getCompositeRegion(Rectangle region) {
+        assert canvas.getImBounds().contains(region) : "region = " + region;
+
+        BufferedImage cached = compositeImage.getIfCalculated();
+        if (cached == null) {
+            for (Layer layer : layerList) {
+                if (layer.isVisible() && !layer.isLocal()) {
+                    cached = compositeImage.get();
+                    break;
+                }
+            }
+        }
+        if (cached != null) {
+            BufferedImage copy = new BufferedImage(region.width, region.height, TYPE_INT_ARGB_PRE);
+            Graphics2D g = copy.createGraphics();
+            g.setComposite(AlphaComposite.Src);
+            g.drawImage(cached, -region.x, -region.y, null);
+            g.dispose();
+            return copy;
+        }
+
+        // The adjustment layers are evaluated in a larger region of interest.
+        // The first visible layer is not affected, because it is not adjusted.
+        Rectangle roi = region;
+        boolean firstVisibleLayer = true;
+        for (Layer layer : layerList) {
+            if (layer.isVisible()) {
+                if (layer.isAdjustment() && !firstVisibleLayer) {
+                    roi = new Rectangle(region);
+                    roi.grow(ADJUSTMENT_REGION_MARGIN, ADJUSTMENT_REGION_MARGIN);
+                    roi = roi.intersection(canvas.getImBounds());
+                    break;
+                }
+                firstVisibleLayer = false;
+            }
+        }
+
+        BufferedImage imageSoFar = new BufferedImage(roi.width, roi.height, TYPE_INT_ARGB_PRE);
+        Graphics2D g = createRegionGraphics(imageSoFar, roi);
+
+        int firstIndex = getFirstPaintedLayerIndex(roi);
+        firstVisibleLayer = true;
+        for (int i = firstIndex; i < layerList.size(); i++) {
+            Layer layer = layerList.get(i);
+            if (layer.isVisible()) {
+                BufferedImage result = layer.applyLayerToRegion(g, imageSoFar, firstVisibleLayer, roi);
+                if (result != null) { // adjustment layer
+                    imageSoFar = result;
+                    g.dispose();
+                    g = createRegionGraphics(imageSoFar, roi);
+                }
+                firstVisibleLayer = false;
+            }
+        }
+        g.dispose();
+
+        if (roi != region) {
+            return imageSoFar.getSubimage(region.x - roi.x, region.y - roi.y,
+                    region.width, region.height);
+        }
+        return imageSoFar;
+    }
+
+    /**
+     * Returns the index of the topmost visible layer that completely
+     * hides the layers bellow it in the given region (relative to the
+     * canvas), or 0 if there is no such layer. The layers bellow
+     * this index don't have to be painted in the given region.
+     */
+    private int getFirstPaintedLayerIndex(Rectangle region) {
+        for (int i = layerList.size() - 1; i > 0; i--) {
+            Layer layer = layerList.get(i);
+            if (layer.isVisible() && layer.isOpaqueIn(region)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Creates a graphics for a region image that works with canvas coordinates
+     */
+    private static Graphics2D createRegionGraphics(BufferedImage regionImage, Rectangle region) {
+        Graphics2D g = regionImage.createGraphics();
+        g.translate(-region.x, -region.y);
+        g.clipRect(region.x, region.y, region.width, region.height);
+        return g;
+    }
+
     public void imageChanged() {
         imageChanged(FULL);
     }
@@ -1036,6 +1235,12 @@ public class Composition implements Serializable {
     public void imageChanged(ImageChangeActions actions, boolean sizeChanged) {
         compositeImage.invalidate();
 
+        // the pixels of the active layer might have changed, and
+        // it is not known whether only a part of them changed
+        if (actions != REPAINT && activeLayer != null) {
+            activeLayer.invalidateMaskedImageCache();
+        }
+
         if (actions.repaintNeeded()) {
             if (view != null) {
                 view.repaint();
@@ -1044,7 +1249,7 @@ public class Composition implements Serializable {
         }
 
         if (actions.histogramChanged()) {
-            HistogramsPanel.INSTANCE.updateFromCompIfShown(this);
+            RepaintScheduler.updateHistogram(this);
         }
     }
 
@@ -1109,7 +1314,7 @@ public class Composition implements Serializable {
     public void intersectSelection(Rectangle2D cropRect) {
         if (selection != null) {
             Shape currentShape = selection.getShape();
-            Shape intersection = SelectionInteraction.INTERSECT.combine(currentShape, cropRect);
+            Shape intersection = SelectionInteraction.INTERSECT.combine(currentShape, cropRect, canvas);
             if (intersection.getBounds().isEmpty()) {
                 selection.die();
                 setSelectionRef(null);
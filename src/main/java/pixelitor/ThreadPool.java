@@ -34,6 +34,9 @@ import java.util.concurrent.Future;
 public class ThreadPool {
     private static final int NUM_AVAILABLE_PROCESSORS = Runtime.getRuntime().availableProcessors();
 
+    // an upper limit, so that the progress is also reported for big images
+    private static final int MAX_ROWS_PER_BLOCK = 64;
+
     private static final ExecutorService executorService =
             Executors.newFixedThreadPool(NUM_AVAILABLE_PROCESSORS);
 
@@ -112,6 +115,45 @@ public class ThreadPool {
         }
     }
 
+    /**
+     * Splits the rows [0, numRows) into blocks, processes the blocks
+     * in parallel, and waits until all of them are finished.
+     * The given {@link ProgressTracker} is updated from the calling
+     * thread with one unit for each finished row.
+     */
+    public static void processRowBlocks(int numRows, RowBlockTask task, ProgressTracker pt) {
+        assert pt != null;
+
+        int blockSize = Math.max(1, numRows / (4 * NUM_AVAILABLE_PROCESSORS));
+        blockSize = Math.min(blockSize, MAX_ROWS_PER_BLOCK);
+        int numBlocks = (numRows + blockSize - 1) / blockSize;
+
+        Future<?>[] futures = new Future[numBlocks];
+        for (int i = 0; i < numBlocks; i++) {
+            int fromRow = i * blockSize;
+            int toRow = Math.min(numRows, fromRow + blockSize);
+            futures[i] = executorService.submit(() -> task.process(fromRow, toRow));
+        }
+
+        for (int i = 0; i < numBlocks; i++) {
+            try {
+                futures[i].get();
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace();
+            }
+            int fromRow = i * blockSize;
+            pt.unitsDone(Math.min(numRows, fromRow + blockSize) - fromRow);
+        }
+    }
+
+    /**
+     * A task that processes the rows in the [fromRow, toRow) range
+     */
+    @FunctionalInterface
+    public interface RowBlockTask {
+        void process(int fromRow, int toRow);
+    }
+
     public static Executor getExecutor() {
         return executorService;
     }
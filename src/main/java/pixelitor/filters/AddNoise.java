@@ -18,10 +18,10 @@
 package pixelitor.filters;
 
 import com.jhlabs.image.ImageMath;
-import pixelitor.filters.gui.IntChoiceParam;
-import pixelitor.filters.gui.IntChoiceParam.Value;
+import pixelitor.ThreadPool;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.filters.gui.ShowOriginal;
+import pixelitor.utils.CounterRNG;
 import pixelitor.utils.ImageUtils;
 import pixelitor.utils.ProgressTracker;
 import pixelitor.utils.ReseedSupport;
@@ -29,7 +29,6 @@ import pixelitor.utils.StatusBarProgressTracker;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
-import java.util.Random;
 
 import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
 
@@ -39,18 +38,9 @@ import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
 public class AddNoise extends ParametrizedFilter {
     public static final String NAME = "Add Noise";
 
-    private static final int METHOD_FASTER = 1;
-    private static final int METHOD_COVERAGE_ANIM = 2;
-
     private final RangeParam opacityParam = new RangeParam("Opacity (%)", 0, 100, 100);
     private final RangeParam coverageParam = new RangeParam("Coverage (%)", 0, 50, 100);
     private final RangeParam saturationParam = new RangeParam("Saturation (%)", 0, 100, 100);
-    private final IntChoiceParam method = new IntChoiceParam("Method", new Value[]{
-            new Value("Faster", METHOD_FASTER),
-            new Value("Smooth Coverage Animation", METHOD_COVERAGE_ANIM),
-    });
-
-    private final float[] tmpHSV = new float[3];
 
     public AddNoise() {
         super(ShowOriginal.YES);
@@ -58,28 +48,32 @@ public class AddNoise extends ParametrizedFilter {
         setParams(
                 coverageParam,
                 saturationParam,
-                opacityParam,
-                method
+                opacityParam
         ).withAction(ReseedSupport.createAction());
     }
 
     @Override
     public BufferedImage doTransform(BufferedImage src, BufferedImage dest) {
-        Random rand = ReseedSupport.reInitialize();
+        // Every pixel has its own stream of random numbers, therefore the
+        // rows can be processed in parallel, and increasing the coverage
+        // only adds new noise pixels without changing the existing ones.
+        ProgressTracker pt = new StatusBarProgressTracker(NAME, src.getHeight());
 
         if (src.getType() == TYPE_BYTE_GRAY) {
-            return addNoiseToGray(src, dest, rand);
+            addNoiseToGray(src, dest, pt);
+        } else {
+            addNoiseToRGB(src, dest, pt);
         }
 
-        boolean coverageAnim = method.getValue() == METHOD_COVERAGE_ANIM;
-        return addNoiseToRGB(src, dest, coverageAnim, rand);
+        pt.finished();
+        return dest;
     }
 
-    private BufferedImage addNoiseToRGB(BufferedImage src, BufferedImage dest,
-                                        boolean coverageAnim, Random rand) {
+    private void addNoiseToRGB(BufferedImage src, BufferedImage dest,
+                               ProgressTracker pt) {
         int[] srcData = ImageUtils.getPixelsAsArray(src);
         int[] destData = ImageUtils.getPixelsAsArray(dest);
-        int length = destData.length;
+        int width = src.getWidth();
 
         boolean fullSaturation = saturationParam.getValue() == 100;
         boolean fullOpacity = opacityParam.getValue() == 100;
@@ -88,129 +82,94 @@ public class AddNoise extends ParametrizedFilter {
         float saturationPercentage = saturationParam.getValueAsPercentage();
         float coveragePercentage = coverageParam.getValueAsPercentage();
 
-        int workUnit = 100_000;
-        int counter = 0;
-        int numWorkUnits = length / workUnit;
-        ProgressTracker pt = new StatusBarProgressTracker(NAME, numWorkUnits);
-
-        for (int i = 0; i < length; i++) {
-            // count at the beginning of the loop because of early returns
-            counter++;
-            if (counter == workUnit) {
-                counter = 0;
-                pt.unitDone();
-            }
-
-            int srcRGB = srcData[i];
-
-            int randomInt = 0;
-            if (coverageAnim) {
-                // generate random numbers for the discarded pixels as well
-                randomInt = rand.nextInt();
-            }
-
-            float rn = rand.nextFloat();
-            if (rn > coveragePercentage) {
-                destData[i] = srcRGB;
-                continue;
-            }
+        ThreadPool.processRowBlocks(src.getHeight(), (fromRow, toRow) -> {
+            CounterRNG rand = ReseedSupport.createCounterRNG();
+            float[] tmpHSV = new float[3];
 
-            int sourceAlpha = 0xFF000000 & srcRGB;
-            if (sourceAlpha == 0) {
-                destData[i] = 0;
-                continue;
-            }
+            int end = toRow * width;
+            for (int i = fromRow * width; i < end; i++) {
+                int srcRGB = srcData[i];
+                rand.jumpTo(i);
 
-            if (!coverageAnim) {
-                // if coverage animation is not a requirement, then it is faster
-                // to generate the random values only here, for the covered pixels
-                randomInt = rand.nextInt();
-            }
+                float rn = rand.nextFloat();
+                if (rn > coveragePercentage) {
+                    destData[i] = srcRGB;
+                    continue;
+                }
 
-            if (fullSaturation) {
-                // make the alpha channel the same as for the source
-                randomInt |= sourceAlpha;
-
-                if (fullOpacity) {
-                    // if we have full saturation (the default), then we can
-                    // just use the random pixel as it is if the opacity is also 100...
-                    destData[i] = randomInt;
-                } else {
-                    // ...or mix the random pixel with the source according to
-                    // the opacity
-                    destData[i] = ImageMath.mixColors(opacityPercentage, srcRGB, randomInt);
+                int sourceAlpha = 0xFF000000 & srcRGB;
+                if (sourceAlpha == 0) {
+                    destData[i] = 0;
+                    continue;
                 }
-            } else { // desaturate the random pixel
-                int r = (randomInt >>> 16) & 0xFF;
-                int g = (randomInt >>> 8) & 0xFF;
-                int b = (randomInt) & 0xFF;
-
-                Color.RGBtoHSB(r, g, b, tmpHSV);
-                float newSaturation = ImageMath.lerp(saturationPercentage, 0.0f, tmpHSV[1]);
-                randomInt = Color.HSBtoRGB(tmpHSV[0], newSaturation, tmpHSV[2]);
-
-                // make the alpha channel the same as for the source
-                randomInt |= sourceAlpha;
-
-                if (fullOpacity) {
-                    destData[i] = randomInt;
-                } else {
-                    destData[i] = ImageMath.mixColors(opacityPercentage, srcRGB, randomInt);
+
+                int randomInt = rand.nextInt();
+
+                if (fullSaturation) {
+                    // make the alpha channel the same as for the source
+                    randomInt |= sourceAlpha;
+
+                    if (fullOpacity) {
+                        // if we have full saturation (the default), then we can
+                        // just use the random pixel as it is if the opacity is also 100...
+                        destData[i] = randomInt;
+                    } else {
+                        // ...or mix the random pixel with the source according to
+                        // the opacity
+                        destData[i] = ImageMath.mixColors(opacityPercentage, srcRGB, randomInt);
+                    }
+                } else { // desaturate the random pixel
+                    int r = (randomInt >>> 16) & 0xFF;
+                    int g = (randomInt >>> 8) & 0xFF;
+                    int b = (randomInt) & 0xFF;
+
+                    Color.RGBtoHSB(r, g, b, tmpHSV);
+                    float newSaturation = ImageMath.lerp(saturationPercentage, 0.0f, tmpHSV[1]);
+                    randomInt = Color.HSBtoRGB(tmpHSV[0], newSaturation, tmpHSV[2]);
+
+                    // make the alpha channel the same as for the source
+                    randomInt |= sourceAlpha;
+
+                    if (fullOpacity) {
+                        destData[i] = randomInt;
+                    } else {
+                        destData[i] = ImageMath.mixColors(opacityPercentage, srcRGB, randomInt);
+                    }
                 }
             }
-        }
-        pt.finished();
-
-        return dest;
+        }, pt);
     }
 
-    private BufferedImage addNoiseToGray(BufferedImage src, BufferedImage dest,
-                                         Random rand) {
+    private void addNoiseToGray(BufferedImage src, BufferedImage dest,
+                                ProgressTracker pt) {
         byte[] srcPixels = ImageUtils.getGrayPixelsAsByteArray(src);
         byte[] destPixels = ImageUtils.getGrayPixelsAsByteArray(dest);
+        int width = src.getWidth();
 
-        // fill the dest with random values
-        rand.nextBytes(destPixels);
-
-        boolean fullOpacity = opacityParam.getValue() == 100;
-        boolean fullCoverage = coverageParam.getValue() == 100;
         float coveragePercentage = coverageParam.getValueAsPercentage();
-
-        if (fullOpacity && fullCoverage) {
-            return dest;
-        }
-
-        int length = destPixels.length;
-        int workUnit = 100_000;
-        int counter = 0;
-        int numWorkUnits = length / workUnit;
-        ProgressTracker pt = new StatusBarProgressTracker(NAME, numWorkUnits);
-
         double destWeight = opacityParam.getValueAsPercentage();
         double srcWeight = 1.0 - destWeight;
-        for (int i = 0; i < length; i++) {
-            // count at the beginning of the loop because of early returns
-            counter++;
-            if (counter == workUnit) {
-                counter = 0;
-                pt.unitDone();
-            }
 
-            float rn = rand.nextFloat();
-            byte srcPixel = srcPixels[i];
-            if (rn > coveragePercentage) {
-                destPixels[i] = srcPixel;
-                continue;
-            }
+        ThreadPool.processRowBlocks(src.getHeight(), (fromRow, toRow) -> {
+            CounterRNG rand = ReseedSupport.createCounterRNG();
 
-            int d = Byte.toUnsignedInt(destPixels[i]);
-            int s = Byte.toUnsignedInt(srcPixel);
-            int v = (int) (d * destWeight + s * srcWeight);
+            int end = toRow * width;
+            for (int i = fromRow * width; i < end; i++) {
+                rand.jumpTo(i);
 
-            destPixels[i] = (byte) v;
-        }
-        pt.finished();
+                float rn = rand.nextFloat();
+                byte srcPixel = srcPixels[i];
+                if (rn > coveragePercentage) {
+                    destPixels[i] = srcPixel;
+                    continue;
+                }
 
-        return dest;
+                int d = rand.nextInt() & 0xFF;
+                int s = Byte.toUnsignedInt(srcPixel);
+                int v = (int) (d * destWeight + s * srcWeight);
+
+                destPixels[i] = (byte) v;
+            }
+        }, pt);
     }
 }
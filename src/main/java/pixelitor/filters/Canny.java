@@ -25,6 +25,7 @@ import pixelitor.utils.MemoryInfo;
 import pixelitor.utils.Messages;
 
 import java.awt.image.BufferedImage;
+import java.lang.ref.SoftReference;
 
 /**
  * Canny edge detector - see http://en.wikipedia.org/wiki/Canny_edge_detector
@@ -42,6 +43,11 @@ public class Canny extends ParametrizedFilter {
     private final BooleanParam contrastNormalized = new BooleanParam(
             "Contrast Normalized", false);
 
+    // The detector is reused between the preview runs, because its buffers
+    // can be reused if the image size doesn't change, but it is only softly
+    // referenced, because it holds a lot of memory
+    private SoftReference<CannyEdgeDetector> detectorRef;
+
     public Canny() {
         super(ShowOriginal.YES);
 
@@ -56,20 +62,27 @@ public class Canny extends ParametrizedFilter {
 
     @Override
     public BufferedImage doTransform(BufferedImage src, BufferedImage dest) {
-        long estimatedMemoryMB = estimateNeededMemoryMB(src);
-        System.gc(); // needed for the memory estimation
-        MemoryInfo memoryInfo = new MemoryInfo();
-        long availableMemoryMB = memoryInfo.getAvailableMemoryMB();
-
-        if (estimatedMemoryMB > availableMemoryMB) {
-            showNotEnoughMemoryDialog(estimatedMemoryMB, availableMemoryMB);
-            dest = src;
-            return dest;
+        CannyEdgeDetector detector = detectorRef == null ? null : detectorRef.get();
+        if (detector == null || !detector.canReuseBuffersFor(src)) {
+            // drop the old buffers before checking the available memory
+            detector = null;
+            detectorRef = null;
+
+            long estimatedMemoryMB = estimateNeededMemoryMB(src);
+            System.gc(); // needed for the memory estimation
+            MemoryInfo memoryInfo = new MemoryInfo();
+            long availableMemoryMB = memoryInfo.getAvailableMemoryMB();
+
+            if (estimatedMemoryMB > availableMemoryMB) {
+                showNotEnoughMemoryDialog(estimatedMemoryMB, availableMemoryMB);
+                dest = src;
+                return dest;
+            }
+
+            detector = new CannyEdgeDetector();
+            detectorRef = new SoftReference<>(detector);
         }
 
-        // do not cache this object because it holds a lot of memory!
-        CannyEdgeDetector detector = new CannyEdgeDetector();
-
         detector.setLowThreshold(lowThreshold.getValueAsPercentage());
         detector.setHighThreshold(highThreshold.getValueAsPercentage());
         detector.setContrastNormalized(contrastNormalized.isChecked());
@@ -81,6 +94,10 @@ public class Canny extends ParametrizedFilter {
         detector.process();
         dest = detector.getEdgesImage();
 
+        // the next run must not overwrite the returned image
+        detector.setEdgesImage(null);
+        detector.setSourceImage(null);
+
         return dest;
     }
 
@@ -98,8 +115,8 @@ public class Canny extends ParametrizedFilter {
         int width = src.getWidth();
         int height = src.getHeight();
         long numPixels = (long) width * height;
-        // 6 arrays with 4-byte data type
-        long estimatedMemoryMB = 6 * numPixels * 4 / MemoryInfo.ONE_MEGABYTE;
+        // 6 arrays with 4-byte data type and one with 1-byte data type
+        long estimatedMemoryMB = 25 * numPixels / MemoryInfo.ONE_MEGABYTE;
         // 1.8 was found experimentally, this is still needed to prevent OutOfMemory errors
         estimatedMemoryMB = (long) (estimatedMemoryMB * 1.8);
         return estimatedMemoryMB;
@@ -26,6 +26,7 @@ import pixelitor.layers.ImageLayer;
 import pixelitor.layers.LayerMask;
 import pixelitor.utils.ImageUtils;
 import pixelitor.utils.Messages;
+import pixelitor.utils.debug.PerformanceStats;
 import pixelitor.utils.test.RandomGUITest;
 
 import java.awt.Component;
@@ -138,6 +139,9 @@ public abstract class Filter implements Serializable {
     }
 
     public BufferedImage transformImage(BufferedImage src) {
+        long startTime = System.nanoTime();
+        long startAllocated = PerformanceStats.getAllocatedBytes();
+
         boolean convertFromGray = false;
         if (src.getType() == TYPE_BYTE_GRAY) { // editing a mask
             if (!supportsGray()) {
@@ -161,6 +165,9 @@ public abstract class Filter implements Serializable {
 
         assert dest != null : getName() + " returned null dest";
 
+        PerformanceStats.record("Filter: " + getName(), startTime,
+                startAllocated, (long) src.getWidth() * src.getHeight());
+
         return dest;
     }
 
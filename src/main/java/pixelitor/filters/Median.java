@@ -0,0 +1,67 @@
+/*
+ * Copyright 2019 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters;
+
+import pixelitor.filters.gui.IntChoiceParam;
+import pixelitor.filters.gui.IntChoiceParam.Value;
+import pixelitor.filters.gui.RangeParam;
+import pixelitor.filters.gui.ShowOriginal;
+import pixelitor.filters.impl.PercentileFilter;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * A median (or percentile) filter with an arbitrary radius
+ */
+public class Median extends ParametrizedFilter {
+    public static final String NAME = "Median";
+
+    private final RangeParam radius = new RangeParam("Radius", 1, 2, 50);
+    private final RangeParam percentile = new RangeParam("Percentile", 0, 50, 100);
+    private final IntChoiceParam mode = new IntChoiceParam("Mode", new Value[]{
+            new Value("Per Channel", PercentileFilter.MODE_CHANNELS),
+            new Value("Luminance", PercentileFilter.MODE_LUMINANCE),
+    });
+
+    private PercentileFilter filter;
+
+    public Median() {
+        super(ShowOriginal.YES);
+
+        setParams(
+                radius.withAdjustedRange(0.02),
+                percentile,
+                mode
+        );
+    }
+
+    @Override
+    public BufferedImage doTransform(BufferedImage src, BufferedImage dest) {
+        if (filter == null) {
+            filter = new PercentileFilter(NAME);
+        }
+
+        filter.setRadius(radius.getValue());
+        filter.setPercentile(percentile.getValue());
+        filter.setMode(mode.getValue());
+
+        dest = filter.filter(src, dest);
+
+        return dest;
+    }
+}
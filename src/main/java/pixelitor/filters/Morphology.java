@@ -39,10 +39,11 @@ public class Morphology extends ParametrizedFilter {
     private static final int OP_OPEN = 10;
     private static final int OP_CLOSE = 11;
 
-    private final RangeParam radius = new RangeParam("Radius", 1, 1, 20);
+    private final RangeParam radius = new RangeParam("Radius", 1, 1, 100);
     private final IntChoiceParam kernel = new IntChoiceParam("Kernel Shape", new Value[]{
             new Value("Diamond", MorphologyFilter.KERNEL_DIAMOND),
             new Value("Square", MorphologyFilter.KERNEL_SQUARE),
+            new Value("Disk", MorphologyFilter.KERNEL_DISK),
     });
     private final IntChoiceParam op = new IntChoiceParam("Operation", new Value[]{
             new Value("Maximum (Dilate)", OP_DILATE),
@@ -61,8 +62,7 @@ public class Morphology extends ParametrizedFilter {
     public BufferedImage doTransform(BufferedImage src, BufferedImage dest) {
         MorphologyFilter filter = new MorphologyFilter(NAME);
 
-        int iterations = radius.getValue();
-        filter.setIterations(iterations);
+        filter.setRadius(radius.getValue());
         filter.setKernel(kernel.getValue());
 
         int selectedOp = op.getValue();
@@ -71,7 +71,8 @@ public class Morphology extends ParametrizedFilter {
             filter.setOp(selectedOp);
             dest = filter.filter(src, dest);
         } else {
-            ProgressTracker pt = new StatusBarProgressTracker(NAME, 2 * iterations);
+            ProgressTracker pt = new StatusBarProgressTracker(NAME,
+                    2 * MorphologyFilter.getNumWorkUnits(src));
             filter.setProgressTracker(pt);
 
             if (selectedOp == OP_OPEN) {
@@ -1,5 +1,5 @@
 /*
- * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ * Copyright 2019 Laszlo Balazs-Csiki and Contributors
  *
  * This file is part of Pixelitor. Pixelitor is free software: you
  * can redistribute it and/or modify it under the terms of the GNU
@@ -18,15 +18,34 @@
 package pixelitor.filters.impl;
 
 import com.jhlabs.image.WholeImageFilter;
+import pixelitor.ThreadPool;
 import pixelitor.filters.Morphology;
+import pixelitor.utils.ProgressTracker;
 
 import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
 
 /**
  * The implementation of the {@link Morphology} filter.
+ *
+ * The minimum/maximum over a line segment is calculated with the
+ * van Herk/Gil-Werman algorithm, which needs a constant number
+ * of comparisons per pixel, independently of the segment length.
+ * The square kernel is the combination of a horizontal and a vertical
+ * segment, the diamond kernel is decomposed into two diagonal segments
+ * and one or two small crosses, and the disk kernel is approximated
+ * by an octagon, which is the combination of a square and a diamond.
+ *
+ * The pixels outside the image are ignored. The lines of each
+ * pass are processed in parallel. TYPE_BYTE_GRAY images (layer masks)
+ * are processed directly, as a single channel.
  */
 public class MorphologyFilter extends WholeImageFilter {
-    private int iterations = 1;
+    private int radius = 1;
 
     public static final int OP_ERODE = 1;
     public static final int OP_DILATE = 2;
@@ -34,6 +53,7 @@ public class MorphologyFilter extends WholeImageFilter {
 
     public static final int KERNEL_DIAMOND = 3;
     public static final int KERNEL_SQUARE = 4;
+    public static final int KERNEL_DISK = 5;
     private int kernel;
 
     public MorphologyFilter(String filterName) {
@@ -48,94 +68,318 @@ public class MorphologyFilter extends WholeImageFilter {
         this.op = op;
     }
 
-    public void setIterations(int iterations) {
-        this.iterations = iterations;
+    /**
+     * Sets the radius of the kernel. A radius of 1 corresponds
+     * to the 3x3 square or diamond kernel.
+     */
+    public void setRadius(int radius) {
+        this.radius = radius;
+    }
+
+    /**
+     * Returns the number of progress units this filter uses for the given image
+     */
+    public static int getNumWorkUnits(BufferedImage src) {
+        return src.getType() == TYPE_BYTE_GRAY ? 1 : 4;
+    }
+
+    @Override
+    public BufferedImage filter(BufferedImage src, BufferedImage dst) {
+        if (src.getType() != TYPE_BYTE_GRAY) {
+            return super.filter(src, dst);
+        }
+
+        int width = src.getWidth();
+        int height = src.getHeight();
+        if (dst == null) {
+            dst = new BufferedImage(width, height, TYPE_BYTE_GRAY);
+        }
+
+        pt = createProgressTracker(1);
+        byte[] plane = (byte[]) src.getRaster().getDataElements(0, 0, width, height, null);
+        filterPlane(plane, width, height);
+        pt.unitDone();
+
+        WritableRaster dstRaster = dst.getRaster();
+        dstRaster.setDataElements(0, 0, width, height, plane);
+        finishProgressTracker();
+
+        return dst;
     }
 
     @Override
     protected int[] filterPixels(int width, int height, int[] inPixels, Rectangle transformedSpace) {
-        int[] outPixels = new int[width * height];
-        int numPixels = inPixels.length;
-        short[] inA = new short[numPixels];
-        short[] inR = new short[numPixels];
-        short[] inG = new short[numPixels];
-        short[] inB = new short[numPixels];
-
-        pt = createProgressTracker(iterations);
-        for (int it = 0; it < iterations; it++) {
-            if (it > 0) {
-                System.arraycopy(outPixels, 0, inPixels, 0, numPixels);
-            }
-            for (int i = 0; i < numPixels; i++) {
+        int numPixels = width * height;
+        pt = createProgressTracker(4);
+
+        byte[][] planes = new byte[4][numPixels];
+        ThreadPool.processRowBlocks(height, (fromRow, toRow) -> {
+            for (int i = fromRow * width, to = toRow * width; i < to; i++) {
                 int rgb = inPixels[i];
-                inA[i] = (short) ((rgb >> 24) & 0xff);
-                inR[i] = (short) ((rgb >> 16) & 0xff);
-                inG[i] = (short) ((rgb >> 8) & 0xff);
-                inB[i] = (short) (rgb & 0xff);
+                planes[0][i] = (byte) (rgb >>> 24);
+                planes[1][i] = (byte) (rgb >>> 16);
+                planes[2][i] = (byte) (rgb >>> 8);
+                planes[3][i] = (byte) rgb;
             }
+        }, ProgressTracker.NULL_TRACKER);
 
-            int index = 0;
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    short a = 0xff;
-                    short r = 0xff;
-                    short g = 0xff;
-                    short b = 0xff;
-
-                    if (op == OP_DILATE) {
-                        r = 0;
-                        g = 0;
-                        b = 0;
-                    }
-
-                    for (int dy = -1; dy <= 1; dy++) {
-                        int iy = y + dy;
-                        if (0 <= iy && iy < height) {
-                            int xOffset = iy * width;
-                            for (int dx = -1; dx <= 1; dx++) {
-                                if (kernel == KERNEL_DIAMOND) {
-                                    if (dx == dy && dx != 0) {
-                                        continue;
-                                    }
-                                    if (dx == -dy && dx != 0) {
-                                        continue;
-                                    }
-                                }
-
-                                int ix = x + dx;
-                                if (0 <= ix && ix < width) {
-                                    int comparedIndex = xOffset + ix;
-
-                                    if (op == OP_ERODE) {
-                                        a = min(a, inA[comparedIndex]);
-                                        r = min(r, inR[comparedIndex]);
-                                        g = min(g, inG[comparedIndex]);
-                                        b = min(b, inB[comparedIndex]);
-                                    } else {
-                                        a = max(a, inA[comparedIndex]);
-                                        r = max(r, inR[comparedIndex]);
-                                        g = max(g, inG[comparedIndex]);
-                                        b = max(b, inB[comparedIndex]);
-                                    }
-                                }
-                            }
-                        }
-                    }
-                    outPixels[index++] = (a << 24) | (r << 16) | (g << 8) | b;
-                }
+        for (int c = 0; c < 4; c++) {
+            if (c == 0 && op == OP_DILATE) {
+                // as in the original 3x3 implementation,
+                // the dilated image is fully opaque
+                Arrays.fill(planes[0], (byte) 0xFF);
+            } else {
+                filterPlane(planes[c], width, height);
             }
             pt.unitDone();
         }
+
+        int[] outPixels = new int[numPixels];
+        ThreadPool.processRowBlocks(height, (fromRow, toRow) -> {
+            for (int i = fromRow * width, to = toRow * width; i < to; i++) {
+                outPixels[i] = (planes[0][i] & 0xFF) << 24
+                        | (planes[1][i] & 0xFF) << 16
+                        | (planes[2][i] & 0xFF) << 8
+                        | (planes[3][i] & 0xFF);
+            }
+        }, ProgressTracker.NULL_TRACKER);
+
         finishProgressTracker();
         return outPixels;
     }
 
-    private static short min(short a, short b) {
-        return (a <= b) ? a : b;
+    /**
+     * Erodes or dilates the given channel in place
+     */
+    private void filterPlane(byte[] plane, int width, int height) {
+        boolean max = op == OP_DILATE;
+        if (kernel == KERNEL_SQUARE) {
+            // a rectangle is convex, therefore the two passes
+            // ignore the outside pixels correctly without padding
+            Plane p = new Plane(plane, width, height, max);
+            p.horizontalPass(radius);
+            p.verticalPass(radius);
+            return;
+        }
+
+        int squareRadius = 0;
+        int diamondRadius = radius;
+        if (kernel == KERNEL_DISK) {
+            // a regular octagon: the sum of the square radius and
+            // the diamond radius is the radius in the axis directions,
+            // and the diagonal directions have the same Euclidean radius
+            squareRadius = (int) Math.round(radius * (Math.sqrt(2) - 1));
+            diamondRadius = radius - squareRadius;
+        }
+
+        // The decomposed kernel is applied to a padded copy, so that the
+        // intermediate results are also calculated outside the image.
+        // The padding contains the neutral value, so it doesn't
+        // influence the result inside the image.
+        int pad = radius;
+        int paddedWidth = width + 2 * pad;
+        int paddedHeight = height + 2 * pad;
+        byte[] padded = new byte[paddedWidth * paddedHeight];
+        Arrays.fill(padded, max ? 0 : (byte) 0xFF);
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(plane, y * width,
+                    padded, (y + pad) * paddedWidth + pad, width);
+        }
+
+        Plane p = new Plane(padded, paddedWidth, paddedHeight, max);
+        p.horizontalPass(squareRadius);
+        p.verticalPass(squareRadius);
+
+        // the diamond of radius 2m + 1 is the sum of the two diagonal
+        // segments with half-length m (covering the points with an
+        // even coordinate sum) and the 3x3 cross,
+        // and an even radius needs an additional cross
+        int halfLength = (diamondRadius - 1) / 2;
+        p.diagonalPass(halfLength, false);
+        p.diagonalPass(halfLength, true);
+        for (int i = 2 * halfLength; i < diamondRadius; i++) {
+            p.crossPass();
+        }
+
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(p.data, (y + pad) * paddedWidth + pad,
+                    plane, y * width, width);
+        }
     }
 
-    private static short max(short a, short b) {
-        return (a >= b) ? a : b;
+    /**
+     * One channel of an image, with the passes that replace each value
+     * with the minimum or maximum of its neighborhood
+     */
+    private static class Plane {
+        private byte[] data;
+        private final int width;
+        private final int height;
+        private final boolean max;
+        private final int neutral;
+
+        Plane(byte[] data, int width, int height, boolean max) {
+            this.data = data;
+            this.width = width;
+            this.height = height;
+            this.max = max;
+            neutral = max ? 0 : 0xFF;
+        }
+
+        void horizontalPass(int halfLength) {
+            if (halfLength == 0) {
+                return;
+            }
+            ThreadPool.processRowBlocks(height, (from, to) -> {
+                LineFilter lineFilter = new LineFilter(width, halfLength);
+                for (int y = from; y < to; y++) {
+                    lineFilter.filter(y * width, 1, width);
+                }
+            }, ProgressTracker.NULL_TRACKER);
+        }
+
+        void verticalPass(int halfLength) {
+            if (halfLength == 0) {
+                return;
+            }
+            ThreadPool.processRowBlocks(width, (from, to) -> {
+                LineFilter lineFilter = new LineFilter(height, halfLength);
+                for (int x = from; x < to; x++) {
+                    lineFilter.filter(x, width, height);
+                }
+            }, ProgressTracker.NULL_TRACKER);
+        }
+
+        /**
+         * Filters along the lines going down-right, or down-left
+         * if antiDiagonal is true. The lines start at the top row
+         * or at the left (right) column.
+         */
+        void diagonalPass(int halfLength, boolean antiDiagonal) {
+            if (halfLength == 0) {
+                return;
+            }
+            int numLines = width + height - 1;
+            int maxLength = Math.min(width, height);
+            int stride = antiDiagonal ? width - 1 : width + 1;
+            ThreadPool.processRowBlocks(numLines, (from, to) -> {
+                LineFilter lineFilter = new LineFilter(maxLength, halfLength);
+                for (int line = from; line < to; line++) {
+                    int startX;
+                    int startY;
+                    if (line < width) {
+                        startX = line;
+                        startY = 0;
+                    } else {
+                        startX = antiDiagonal ? width - 1 : 0;
+                        startY = line - width + 1;
+                    }
+                    int length = Math.min(height - startY,
+                            antiDiagonal ? startX + 1 : width - startX);
+                    lineFilter.filter(startY * width + startX, stride, length);
+                }
+            }, ProgressTracker.NULL_TRACKER);
+        }
+
+        /**
+         * Filters with the 3x3 cross (the diamond with radius 1)
+         */
+        void crossPass() {
+            byte[] out = new byte[data.length];
+            byte[] in = data;
+            ThreadPool.processRowBlocks(height, (from, to) -> {
+                for (int y = from; y < to; y++) {
+                    int rowStart = y * width;
+                    for (int x = 0; x < width; x++) {
+                        int i = rowStart + x;
+                        int v = in[i] & 0xFF;
+                        if (x > 0) {
+                            v = combine(v, in[i - 1] & 0xFF);
+                        }
+                        if (x < width - 1) {
+                            v = combine(v, in[i + 1] & 0xFF);
+                        }
+                        if (y > 0) {
+                            v = combine(v, in[i - width] & 0xFF);
+                        }
+                        if (y < height - 1) {
+                            v = combine(v, in[i + width] & 0xFF);
+                        }
+                        out[i] = (byte) v;
+                    }
+                }
+            }, ProgressTracker.NULL_TRACKER);
+            data = out;
+        }
+
+        private int combine(int a, int b) {
+            if (max) {
+                return a >= b ? a : b;
+            }
+            return a <= b ? a : b;
+        }
+
+        /**
+         * Calculates the van Herk/Gil-Werman running minimum/maximum
+         * along one line of the plane, with reusable buffers
+         */
+        private class LineFilter {
+            private final int halfLength;
+            private final int windowSize;
+
+            // the line padded with halfLength neutral values on both
+            // sides, and further neutral values up to a multiple of windowSize
+            private final int[] values;
+
+            // the running min/max from the start of the window-sized
+            // block to the index, and from the index to the end of the block
+            private final int[] fromBlockStart;
+            private final int[] toBlockEnd;
+
+            LineFilter(int maxLength, int halfLength) {
+                this.halfLength = halfLength;
+                windowSize = 2 * halfLength + 1;
+                int paddedLength = maxLength + 2 * halfLength;
+                int bufferLength = (paddedLength + windowSize - 1) / windowSize * windowSize;
+                values = new int[bufferLength];
+                fromBlockStart = new int[bufferLength];
+                toBlockEnd = new int[bufferLength];
+            }
+
+            void filter(int start, int stride, int length) {
+                int paddedLength = length + 2 * halfLength;
+                int bufferLength = (paddedLength + windowSize - 1) / windowSize * windowSize;
+
+                Arrays.fill(values, 0, halfLength, neutral);
+                for (int i = 0, pos = start; i < length; i++, pos += stride) {
+                    values[halfLength + i] = data[pos] & 0xFF;
+                }
+                Arrays.fill(values, halfLength + length, bufferLength, neutral);
+
+                for (int blockStart = 0; blockStart < bufferLength; blockStart += windowSize) {
+                    int blockEnd = blockStart + windowSize - 1;
+                    int acc = values[blockStart];
+                    fromBlockStart[blockStart] = acc;
+                    for (int i = blockStart + 1; i <= blockEnd; i++) {
+                        acc = combine(acc, values[i]);
+                        fromBlockStart[i] = acc;
+                    }
+                    acc = values[blockEnd];
+                    toBlockEnd[blockEnd] = acc;
+                    for (int i = blockEnd - 1; i >= blockStart; i--) {
+                        acc = combine(acc, values[i]);
+                        toBlockEnd[i] = acc;
+                    }
+                }
+
+                // the window of the i-th pixel covers the padded
+                // values from i to i + windowSize - 1
+                for (int i = 0, pos = start; i < length; i++, pos += stride) {
+                    int v = combine(toBlockEnd[i], fromBlockStart[i + windowSize - 1]);
+                    data[pos] = (byte) v;
+                }
+            }
+        }
     }
 
     @Override
@@ -143,4 +387,3 @@ public class MorphologyFilter extends WholeImageFilter {
         return "Blur/Minimum";
     }
 }
-
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2019 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.impl;
+
+import com.jhlabs.image.ImageMath;
+import com.jhlabs.image.PixelUtils;
+import com.jhlabs.image.WholeImageFilter;
+import pixelitor.ThreadPool;
+import pixelitor.filters.Median;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.concurrent.Future;
+
+/**
+ * The implementation of the {@link Median} filter: a median
+ * (or in general percentile) filter with a square window of arbitrary radius.
+ *
+ * It uses the constant-time algorithm of Perreault and Hébert
+ * ("Median Filtering in Constant Time", 2007): each column of the window
+ * has its own histogram, which is updated only with one added
+ * and one removed pixel when moving to the next row, and the
+ * window histogram is updated with one added and one removed
+ * column histogram when moving to the next pixel.
+ * The histograms have a coarse (16 bins) and a fine (256 bins) level,
+ * and the fine level of the window histogram is updated lazily.
+ *
+ * The image is processed in tiles in parallel, the edges are clamped.
+ */
+public class PercentileFilter extends WholeImageFilter {
+    public static final int MODE_CHANNELS = 0;
+    public static final int MODE_LUMINANCE = 1;
+
+    private static final int TILE_SIZE = 256;
+
+    private int radius = 1;
+    private double percentile = 50;
+    private int mode = MODE_CHANNELS;
+
+    public PercentileFilter(String filterName) {
+        super(filterName);
+    }
+
+    public void setRadius(int radius) {
+        this.radius = radius;
+    }
+
+    /**
+     * Sets the percentile (0-100), 50 is the median
+     */
+    public void setPercentile(double percentile) {
+        this.percentile = percentile;
+    }
+
+    public void setMode(int mode) {
+        this.mode = mode;
+    }
+
+    @Override
+    protected int[] filterPixels(int width, int height, int[] inPixels, Rectangle transformedSpace) {
+        int numPixels = width * height;
+        int windowSize = 2 * radius + 1;
+        int rank = (int) Math.round(percentile / 100.0 * (windowSize * windowSize - 1));
+
+        byte[][] inPlanes;
+        if (mode == MODE_LUMINANCE) {
+            byte[] lum = new byte[numPixels];
+            for (int i = 0; i < numPixels; i++) {
+                lum[i] = (byte) ImageMath.brightnessNTSC(inPixels[i]);
+            }
+            inPlanes = new byte[][]{lum};
+        } else {
+            inPlanes = new byte[4][numPixels];
+            for (int i = 0; i < numPixels; i++) {
+                int rgb = inPixels[i];
+                inPlanes[0][i] = (byte) (rgb >>> 24);
+                inPlanes[1][i] = (byte) (rgb >>> 16);
+                inPlanes[2][i] = (byte) (rgb >>> 8);
+                inPlanes[3][i] = (byte) rgb;
+            }
+        }
+        byte[][] outPlanes = new byte[inPlanes.length][numPixels];
+
+        int numTilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        int numTilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        pt = createProgressTracker(numTilesX * numTilesY);
+
+        Future<?>[] futures = new Future[numTilesX * numTilesY];
+        int futureIndex = 0;
+        for (int ty = 0; ty < numTilesY; ty++) {
+            int y0 = ty * TILE_SIZE;
+            int y1 = Math.min(height, y0 + TILE_SIZE);
+            for (int tx = 0; tx < numTilesX; tx++) {
+                int x0 = tx * TILE_SIZE;
+                int x1 = Math.min(width, x0 + TILE_SIZE);
+                futures[futureIndex++] = ThreadPool.submit(() -> {
+                    TileHistograms histograms = new TileHistograms(x1 - x0 + 2 * radius);
+                    for (int c = 0; c < inPlanes.length; c++) {
+                        histograms.filterTile(inPlanes[c], outPlanes[c],
+                                width, height, x0, x1, y0, y1, radius, rank);
+                    }
+                });
+            }
+        }
+        ThreadPool.waitToFinish(futures, pt);
+
+        int[] outPixels = new int[numPixels];
+        if (mode == MODE_LUMINANCE) {
+            byte[] inLum = inPlanes[0];
+            byte[] outLum = outPlanes[0];
+            for (int i = 0; i < numPixels; i++) {
+                // shift the color so that it has the filtered luminance
+                int rgb = inPixels[i];
+                int diff = (outLum[i] & 0xff) - (inLum[i] & 0xff);
+                int r = PixelUtils.clamp(((rgb >> 16) & 0xff) + diff);
+                int g = PixelUtils.clamp(((rgb >> 8) & 0xff) + diff);
+                int b = PixelUtils.clamp((rgb & 0xff) + diff);
+                outPixels[i] = (rgb & 0xff000000) | (r << 16) | (g << 8) | b;
+            }
+        } else {
+            for (int i = 0; i < numPixels; i++) {
+                outPixels[i] = (outPlanes[0][i] & 0xff) << 24
+                        | (outPlanes[1][i] & 0xff) << 16
+                        | (outPlanes[2][i] & 0xff) << 8
+                        | (outPlanes[3][i] & 0xff);
+            }
+        }
+
+        finishProgressTracker();
+        return outPixels;
+    }
+
+    /**
+     * The histograms needed for filtering one tile of one channel.
+     * They are reused for the channels of the same tile.
+     */
+    private static class TileHistograms {
+        private final int numCols;
+
+        // the column histograms
+        private final short[] colFine;
+        private final short[] colCoarse;
+
+        // the window histogram
+        private final int[] kernelFine = new int[256];
+        private final int[] kernelCoarse = new int[16];
+
+        // for each coarse bin, the tile-relative x position for which the
+        // corresponding fine bins of the window histogram are valid
+        private final int[] fineValidAt = new int[16];
+
+        // the image x coordinate of each column histogram
+        private final int[] colX;
+
+        TileHistograms(int numCols) {
+            this.numCols = numCols;
+            colFine = new short[numCols * 256];
+            colCoarse = new short[numCols * 16];
+            colX = new int[numCols];
+        }
+
+        void filterTile(byte[] in, byte[] out, int width, int height,
+                        int x0, int x1, int y0, int y1, int r, int rank) {
+            int windowSize = 2 * r + 1;
+            int tileWidth = x1 - x0;
+            int maxX = width - 1;
+            int maxY = height - 1;
+
+            for (int j = 0; j < numCols; j++) {
+                colX[j] = ImageMath.clamp(x0 - r + j, 0, maxX);
+            }
+
+            // initialize the column histograms for the first row
+            Arrays.fill(colFine, (short) 0);
+            Arrays.fill(colCoarse, (short) 0);
+            for (int dy = -r; dy <= r; dy++) {
+                int rowOffset = ImageMath.clamp(y0 + dy, 0, maxY) * width;
+                for (int j = 0; j < numCols; j++) {
+                    int v = in[rowOffset + colX[j]] & 0xff;
+                    colFine[j * 256 + v]++;
+                    colCoarse[j * 16 + (v >> 4)]++;
+                }
+            }
+
+            for (int y = y0; y < y1; y++) {
+                if (y > y0) {
+                    int removedRow = ImageMath.clamp(y - r - 1, 0, maxY);
+                    int addedRow = ImageMath.clamp(y + r, 0, maxY);
+                    if (removedRow != addedRow) {
+                        int removedOffset = removedRow * width;
+                        int addedOffset = addedRow * width;
+                        for (int j = 0; j < numCols; j++) {
+                            int vr = in[removedOffset + colX[j]] & 0xff;
+                            colFine[j * 256 + vr]--;
+                            colCoarse[j * 16 + (vr >> 4)]--;
+                            int va = in[addedOffset + colX[j]] & 0xff;
+                            colFine[j * 256 + va]++;
+                            colCoarse[j * 16 + (va >> 4)]++;
+                        }
+                    }
+                }
+
+                // the window histogram for the first pixel of the row
+                Arrays.fill(kernelCoarse, 0);
+                for (int j = 0; j < windowSize; j++) {
+                    int colOffset = j * 16;
+                    for (int b = 0; b < 16; b++) {
+                        kernelCoarse[b] += colCoarse[colOffset + b];
+                    }
+                }
+                Arrays.fill(fineValidAt, -1);
+
+                int outOffset = y * width + x0;
+                for (int xi = 0; xi < tileWidth; xi++) {
+                    if (xi > 0) {
+                        int addedOffset = (xi + 2 * r) * 16;
+                        int removedOffset = (xi - 1) * 16;
+                        for (int b = 0; b < 16; b++) {
+                            kernelCoarse[b] += colCoarse[addedOffset + b] - colCoarse[removedOffset + b];
+                        }
+                    }
+
+                    // find the coarse bin containing the searched rank
+                    int sum = 0;
+                    int coarseBin = 0;
+                    while (sum + kernelCoarse[coarseBin] <= rank) {
+                        sum += kernelCoarse[coarseBin];
+                        coarseBin++;
+                    }
+
+                    updateFineBins(coarseBin, xi, windowSize);
+
+                    // find the value within the coarse bin
+                    int v = coarseBin * 16;
+                    while (sum + kernelFine[v] <= rank) {
+                        sum += kernelFine[v];
+                        v++;
+                    }
+                    out[outOffset + xi] = (byte) v;
+                }
+            }
+        }
+
+        /**
+         * Brings the fine bins of the window histogram belonging
+         * to the given coarse bin up to date for the given position
+         */
+        private void updateFineBins(int coarseBin, int xi, int windowSize) {
+            int from = coarseBin * 16;
+            int validAt = fineValidAt[coarseBin];
+            if (validAt < 0 || xi - validAt >= windowSize) {
+                // recalculate from the column histograms
+                for (int b = 0; b < 16; b++) {
+                    kernelFine[from + b] = 0;
+                }
+                for (int j = xi; j < xi + windowSize; j++) {
+                    int colOffset = j * 256 + from;
+                    for (int b = 0; b < 16; b++) {
+                        kernelFine[from + b] += colFine[colOffset + b];
+                    }
+                }
+            } else {
+                // update incrementally from the last valid position
+                for (int p = validAt + 1; p <= xi; p++) {
+                    int addedOffset = (p + windowSize - 1) * 256 + from;
+                    int removedOffset = (p - 1) * 256 + from;
+                    for (int b = 0; b < 16; b++) {
+                        kernelFine[from + b] += colFine[addedOffset + b] - colFine[removedOffset + b];
+                    }
+                }
+            }
+            fineValidAt[coarseBin] = xi;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Noise/Median";
+    }
+}
@@ -18,8 +18,10 @@
 package pixelitor.filters.impl;
 
 import com.jhlabs.image.PointFilter;
+import pixelitor.ThreadPool;
 import pixelitor.utils.ImageUtils;
 import pixelitor.utils.Metric;
+import pixelitor.utils.ProgressTracker;
 import pixelitor.utils.ReseedSupport;
 
 import java.awt.Color;
@@ -32,14 +34,31 @@ import static java.awt.RenderingHints.KEY_ANTIALIASING;
 import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
 
 /**
- * Voronoi Diagram filter implementation
+ * Voronoi Diagram filter implementation.
+ *
+ * The points are put into a uniform grid of cells, and the nearest
+ * point is searched in rings of cells around the searched position,
+ * until no unvisited cell can contain a closer point. This makes
+ * the cost per pixel nearly independent of the number of points.
  */
 public class VoronoiFilter extends PointFilter {
+    // the average number of points in a grid cell
+    private static final double POINTS_PER_CELL = 2.0;
+
     private int numPoints = 10;
     private int[] xCoords;
     private int[] yCoords;
     private int[] colors;
     private Metric metric;
+
+    // the grid: the indices of the points in the cell (cx, cy) are
+    // in cellPoints, from cellStart[c] (inclusive) to cellStart[c + 1]
+    // (exclusive), where c = cy * gridWidth + cx
+    private int cellSize;
+    private int gridWidth;
+    private int gridHeight;
+    private int[] cellStart;
+    private int[] cellPoints;
     private boolean useImageColors;
 
     private int aaRes = 2;
@@ -85,9 +104,38 @@ public class VoronoiFilter extends PointFilter {
             }
         }
 
+        createGrid(src.getWidth(), src.getHeight());
+
         return super.filter(src, dst);
     }
 
+    private void createGrid(int width, int height) {
+        double cellArea = POINTS_PER_CELL * width * height / numPoints;
+        cellSize = Math.max(1, (int) Math.sqrt(cellArea));
+        gridWidth = (width + cellSize - 1) / cellSize;
+        gridHeight = (height + cellSize - 1) / cellSize;
+
+        // counting sort of the point indices by cell, which
+        // keeps the points of a cell in increasing index order
+        int numCells = gridWidth * gridHeight;
+        cellStart = new int[numCells + 1];
+        int[] pointCells = new int[numPoints];
+        for (int i = 0; i < numPoints; i++) {
+            int cell = (yCoords[i] / cellSize) * gridWidth + xCoords[i] / cellSize;
+            pointCells[i] = cell;
+            cellStart[cell + 1]++;
+        }
+        for (int c = 0; c < numCells; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] nextFree = new int[numCells];
+        System.arraycopy(cellStart, 0, nextFree, 0, numCells);
+        cellPoints = new int[numPoints];
+        for (int i = 0; i < numPoints; i++) {
+            cellPoints[nextFree[pointCells[i]]++] = i;
+        }
+    }
+
     public void showPoints(BufferedImage img) {
         double radius = (img.getWidth() + img.getHeight()) / 300.0;
         if(radius < 1) {
@@ -109,42 +157,93 @@ public class VoronoiFilter extends PointFilter {
 
     @Override
     public int filterRGB(int x, int y, int rgb) {
-        int closestPointIndex = 0;
-        double fromHereToClosestSoFar = Double.POSITIVE_INFINITY;
-
-        // naive brute-force search, but quite fast, because
-        // it doesn't calculate square roots for the distance
-        // TODO use a faster algorithm
-        for (int i = 0; i < numPoints; i++) {
-            double fromHereToPointI = metric.distanceInt(
-                    xCoords[i], x, yCoords[i], y);
-            if (fromHereToPointI < fromHereToClosestSoFar) {
-                closestPointIndex = i;
-                fromHereToClosestSoFar = fromHereToPointI;
-            }
-        }
-
-        return colors[closestPointIndex];
+        return colors[nearestSite(x, y)];
     }
 
     /**
-     * Finds the nearest point with double precision. Used for AA
+     * Returns the index of the point nearest to the given position.
+     * If several points are at the same distance, the one with the
+     * smallest index is returned, just like with a brute-force search.
      */
-    private int nearestSiteDouble(double x, double y) {
-        int closestPointIndex = 0;
+    private int nearestSite(double x, double y) {
+        int cx = clampCell((int) Math.floor(x / cellSize), gridWidth);
+        int cy = clampCell((int) Math.floor(y / cellSize), gridHeight);
+
+        int closestPointIndex = -1;
         double fromHereToClosestSoFar = Double.POSITIVE_INFINITY;
 
-        for (int i = 0; i < numPoints; i++) {
-            double fromHereToPointI = metric.distanceDouble(
-                    xCoords[i], x, yCoords[i], y);
-            if (fromHereToPointI < fromHereToClosestSoFar) {
-                closestPointIndex = i;
-                fromHereToClosestSoFar = fromHereToPointI;
+        for (int ring = 0; ; ring++) {
+            int minCX = cx - ring;
+            int maxCX = cx + ring;
+            int minCY = cy - ring;
+            int maxCY = cy + ring;
+
+            // visit the cells of the current ring that are inside the grid
+            int fromCX = Math.max(minCX, 0);
+            int toCX = Math.min(maxCX, gridWidth - 1);
+            int fromCY = Math.max(minCY, 0);
+            int toCY = Math.min(maxCY, gridHeight - 1);
+            for (int gy = fromCY; gy <= toCY; gy++) {
+                boolean fullRow = gy == minCY || gy == maxCY;
+                // on the other rows only the first and last cells belong to the ring
+                int step = fullRow ? 1 : Math.max(1, maxCX - minCX);
+                for (int gx = fullRow ? fromCX : minCX; gx <= toCX; gx += step) {
+                    if (gx < 0) {
+                        continue;
+                    }
+                    int cell = gy * gridWidth + gx;
+                    for (int j = cellStart[cell]; j < cellStart[cell + 1]; j++) {
+                        int i = cellPoints[j];
+                        double fromHereToPointI = metric.distanceDouble(
+                                xCoords[i], x, yCoords[i], y);
+                        if (fromHereToPointI < fromHereToClosestSoFar
+                                || (fromHereToPointI == fromHereToClosestSoFar
+                                && i < closestPointIndex)) {
+                            closestPointIndex = i;
+                            fromHereToClosestSoFar = fromHereToPointI;
+                        }
+                    }
+                }
+            }
+
+            // the smallest distance along an axis between the
+            // searched position and the unvisited cells
+            double gap = Double.POSITIVE_INFINITY;
+            if (minCX > 0) {
+                gap = Math.min(gap, x - minCX * cellSize);
+            }
+            if (maxCX < gridWidth - 1) {
+                gap = Math.min(gap, (maxCX + 1) * cellSize - x);
+            }
+            if (minCY > 0) {
+                gap = Math.min(gap, y - minCY * cellSize);
+            }
+            if (maxCY < gridHeight - 1) {
+                gap = Math.min(gap, (maxCY + 1) * cellSize - y);
+            }
+            if (gap == Double.POSITIVE_INFINITY) {
+                break; // all cells were visited
+            }
+            // points at exactly the same distance can still
+            // win the tie if they have a smaller index
+            if (closestPointIndex != -1 &&
+                    metric.lowerBoundForAxisGap(Math.max(0, gap)) > fromHereToClosestSoFar) {
+                break;
             }
         }
         return closestPointIndex;
     }
 
+    private static int clampCell(int cell, int numCells) {
+        if (cell < 0) {
+            return 0;
+        }
+        if (cell >= numCells) {
+            return numCells - 1;
+        }
+        return cell;
+    }
+
     /**
      * Check whether the pixel is different from its neighbours.
      * It is enough to check in the horizontal direction
@@ -176,7 +275,7 @@ public class VoronoiFilter extends PointFilter {
             double yy = y + 1.0 / aaRes * i - 0.5;
             for (int j = 0; j < aaRes; j++) {
                 double xx = x + 1.0 / aaRes * j - 0.5;
-                int closestPointIndex = nearestSiteDouble(xx, yy);
+                int closestPointIndex = nearestSite(xx, yy);
                 int color = colors[closestPointIndex];
                 r += (color >>> 16) & 0xFF;
                 g += (color >>> 8) & 0xFF;
@@ -200,18 +299,21 @@ public class VoronoiFilter extends PointFilter {
         int[] pixelsCopy = new int[pixels.length];
         System.arraycopy(pixels, 0, pixelsCopy, 0, pixels.length);
 
-        for (int i = 0; i < pixels.length; i++) {
-            // only pixels at the edges are supersampled
-            boolean edge;
-            try {
-                edge = isEdge(pixelsCopy, i, width);
-            } catch (ArrayIndexOutOfBoundsException e) {
-                edge = false;
-            }
+        ThreadPool.processRowBlocks(imgSoFar.getHeight(), (fromRow, toRow) -> {
+            int to = toRow * width;
+            for (int i = fromRow * width; i < to; i++) {
+                // only pixels at the edges are supersampled
+                boolean edge;
+                try {
+                    edge = isEdge(pixelsCopy, i, width);
+                } catch (ArrayIndexOutOfBoundsException e) {
+                    edge = false;
+                }
 
-            if(edge) {
-                pixels[i] = calcSuperSampledColor(i, width);
+                if (edge) {
+                    pixels[i] = calcSuperSampledColor(i, width);
+                }
             }
-        }
+        }, ProgressTracker.NULL_TRACKER);
     }
 }
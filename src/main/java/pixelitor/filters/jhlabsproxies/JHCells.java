@@ -27,7 +27,7 @@ import pixelitor.filters.gui.IntChoiceParam.Value;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.filters.gui.ReseedNoiseFilterAction;
 import pixelitor.filters.gui.ShowOriginal;
-import pixelitor.utils.CachedFloatRandom;
+import pixelitor.utils.ReseedSupport;
 
 import java.awt.image.BufferedImage;
 
@@ -76,7 +76,7 @@ public class JHCells extends ParametrizedFilter {
                 stretch,
                 angle
         ).withAction(new ReseedNoiseFilterAction(e -> {
-            CachedFloatRandom.reseedCache();
+            ReseedSupport.reseed();
             Noise.reseed();
         }));
     }
@@ -86,6 +86,7 @@ public class JHCells extends ParametrizedFilter {
         if (filter == null) {
             filter = new CellularFilter(NAME);
         }
+        filter.setSeed(ReseedSupport.getSeed());
 
         float tune = refineType.getValueAsPercentage();
         float f1, f2, f3;
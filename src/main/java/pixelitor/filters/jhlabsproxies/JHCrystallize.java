@@ -26,7 +26,7 @@ import pixelitor.filters.gui.IntChoiceParam;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.filters.gui.ReseedNoiseFilterAction;
 import pixelitor.filters.gui.ShowOriginal;
-import pixelitor.utils.CachedFloatRandom;
+import pixelitor.utils.ReseedSupport;
 
 import java.awt.image.BufferedImage;
 
@@ -59,7 +59,7 @@ public class JHCrystallize extends ParametrizedFilter {
                 edgeColor,
                 fadeEdges
         ).withAction(new ReseedNoiseFilterAction(e -> {
-            CachedFloatRandom.reseedCache();
+            ReseedSupport.reseed();
             Noise.reseed();
         }));
     }
@@ -69,6 +69,7 @@ public class JHCrystallize extends ParametrizedFilter {
         if (filter == null) {
             filter = new CrystallizeFilter();
         }
+        filter.setSeed(ReseedSupport.getSeed());
 
         filter.setEdgeThickness(edgeThickness.getValueAsPercentage());
         filter.setScale(size.getValueAsFloat());
@@ -21,6 +21,7 @@ import pixelitor.filters.ParametrizedFilter;
 import pixelitor.filters.gui.IntChoiceParam;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.filters.gui.ShowOriginal;
+import pixelitor.utils.ReseedSupport;
 
 import java.awt.image.BufferedImage;
 
@@ -44,7 +45,7 @@ public class JHFrostedGlass extends ParametrizedFilter {
         setParams(amount.withAdjustedRange(0.1),
                 interpolation,
                 edgeAction.withDefaultChoice(EDGE_REPEAT_PIXELS)
-        );
+        ).withAction(ReseedSupport.createAction());
     }
 
     @Override
@@ -56,6 +57,7 @@ public class JHFrostedGlass extends ParametrizedFilter {
         filter.setScale(amount.getValueAsFloat());
         filter.setEdgeAction(edgeAction.getValue());
         filter.setInterpolation(interpolation.getValue());
+        filter.setSeed(ReseedSupport.getSeed());
 
         dest = filter.filter(src, dest);
         return dest;
@@ -26,7 +26,7 @@ import pixelitor.filters.gui.IntChoiceParam;
 import pixelitor.filters.gui.RangeParam;
 import pixelitor.filters.gui.ReseedNoiseFilterAction;
 import pixelitor.filters.gui.ShowOriginal;
-import pixelitor.utils.CachedFloatRandom;
+import pixelitor.utils.ReseedSupport;
 
 import java.awt.image.BufferedImage;
 
@@ -62,7 +62,7 @@ public class JHPointillize extends ParametrizedFilter {
                 dotSize,
                 fuzziness
         ).withAction(new ReseedNoiseFilterAction(e -> {
-            CachedFloatRandom.reseedCache();
+            ReseedSupport.reseed();
             Noise.reseed();
         }));
     }
@@ -72,6 +72,7 @@ public class JHPointillize extends ParametrizedFilter {
         if (filter == null) {
             filter = new PointillizeFilter();
         }
+        filter.setSeed(ReseedSupport.getSeed());
 
         // there is an angle property but it does not work as expected
         filter.setScale(gridSize.getValueAsFloat());
@@ -206,6 +206,7 @@ public class OpenComps {
 
     public static void imageClosed(View view) {
         views.remove(view);
+        RepaintScheduler.viewClosed(view);
         if (views.isEmpty()) {
             onAllImagesClosed();
         }
@@ -550,7 +551,6 @@ public class OpenComps {
     private static void showPixelGridHelp() {
         Messages.showInfo("Pixel Grid",
             "The pixel grid consists of lines between the pixels,\n" +
-                "and is shown only if the zoom is at least 1600%\n" +
-                "and there is no selection.");
+                "and is shown only if the zoom is at least 1600%.");
     }
 }
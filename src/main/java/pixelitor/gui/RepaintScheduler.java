@@ -0,0 +1,174 @@
+/*
+ * Copyright 2019 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.gui;
+
+import pixelitor.Composition;
+
+import javax.swing.*;
+import java.awt.EventQueue;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Paces the repainting of the views to the display frame rate.
+ *
+ * The first repaint request in a frame is passed on immediately, the
+ * following ones are merged per view, and repainted together when the
+ * frame ends. While a mouse drag is in progress, the navigator and
+ * histogram updates are postponed until the mouse is released.
+ */
+public class RepaintScheduler {
+    // about 60 frames per second
+    private static final int FRAME_MILLIS = 16;
+
+    // the merged regions (in component space) that will
+    // be repainted at the end of the current frame
+    private static final Map<View, Rectangle> dirtyRegions = new LinkedHashMap<>();
+
+    private static final Set<View> navigatorUpdates = new LinkedHashSet<>();
+    private static final Set<Composition> histogramUpdates = new LinkedHashSet<>();
+
+    // runs while a frame is in progress
+    private static final Timer frameTimer = new Timer(FRAME_MILLIS, e -> frameEnded());
+
+    private static boolean dragging = false;
+
+    static {
+        frameTimer.setRepeats(false);
+    }
+
+    private RepaintScheduler() {
+    }
+
+    /**
+     * Requests the repainting of the given region (in component space) of the view
+     */
+    static void repaint(View view, int x, int y, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        if (!EventQueue.isDispatchThread()) {
+            // repainting is thread-safe in Swing, but the scheduling is not
+            view.repaintNow(x, y, width, height);
+            return;
+        }
+
+        if (!frameTimer.isRunning()) {
+            // nothing was repainted recently, there is no reason to wait
+            view.repaintNow(x, y, width, height);
+            frameTimer.restart();
+            return;
+        }
+
+        Rectangle region = new Rectangle(x, y, width, height);
+        Rectangle dirty = dirtyRegions.get(view);
+        if (dirty == null) {
+            dirtyRegions.put(view, region);
+        } else {
+            dirty.add(region);
+        }
+    }
+
+    /**
+     * Requests the repainting of the navigator showing the given view
+     */
+    static void updateNavigator(View view) {
+        if (dragging) {
+            navigatorUpdates.add(view);
+        } else {
+            view.repaintNavigator();
+        }
+    }
+
+    /**
+     * Requests the recalculation of the histograms for the given composition
+     */
+    public static void updateHistogram(Composition comp) {
+        if (dragging) {
+            histogramUpdates.add(comp);
+        } else {
+            HistogramsPanel.INSTANCE.updateFromCompIfShown(comp);
+        }
+    }
+
+    public static boolean isDragging() {
+        return dragging;
+    }
+
+    public static void dragStarted() {
+        dragging = true;
+    }
+
+    /**
+     * At the end of a drag everything postponed is done at once,
+     * so that the final state is always shown.
+     */
+    public static void dragFinished() {
+        dragging = false;
+
+        flushDirtyRegions();
+
+        List<View> views = new ArrayList<>(navigatorUpdates);
+        navigatorUpdates.clear();
+        for (View view : views) {
+            view.repaintNavigator();
+        }
+
+        List<Composition> comps = new ArrayList<>(histogramUpdates);
+        histogramUpdates.clear();
+        for (Composition comp : comps) {
+            HistogramsPanel.INSTANCE.updateFromCompIfShown(comp);
+        }
+    }
+
+    /**
+     * Forgets everything postponed for a closed view,
+     * so that it is not updated after it was closed
+     */
+    static void viewClosed(View view) {
+        dirtyRegions.remove(view);
+        navigatorUpdates.remove(view);
+        Composition viewComp = view.getComp();
+        histogramUpdates.removeIf(comp -> comp == viewComp || comp.getView() == view);
+    }
+
+    private static void frameEnded() {
+        if (flushDirtyRegions()) {
+            // the repaints requested in the next frame have to wait again
+            frameTimer.restart();
+        }
+    }
+
+    private static boolean flushDirtyRegions() {
+        if (dirtyRegions.isEmpty()) {
+            return false;
+        }
+        List<Map.Entry<View, Rectangle>> entries = new ArrayList<>(dirtyRegions.entrySet());
+        dirtyRegions.clear();
+        for (Map.Entry<View, Rectangle> entry : entries) {
+            Rectangle r = entry.getValue();
+            entry.getKey().repaintNow(r.x, r.y, r.width, r.height);
+        }
+        return true;
+    }
+}
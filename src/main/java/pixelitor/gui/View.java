@@ -48,10 +48,12 @@ import pixelitor.utils.ImageUtils;
 import pixelitor.utils.Lazy;
 import pixelitor.utils.Messages;
 import pixelitor.utils.VisibleForTesting;
+import pixelitor.utils.debug.PerformanceStats;
 import pixelitor.utils.debug.ViewNode;
 import pixelitor.utils.test.Assertions;
 
 import javax.swing.*;
+import java.awt.BasicStroke;
 import java.awt.Dimension;
 import java.awt.EventQueue;
 import java.awt.Graphics;
@@ -63,6 +65,7 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
@@ -102,6 +105,8 @@ public class View extends JComponent
 
     private Navigator navigator;
 
+    private final ViewBackBuffer backBuffer = new ViewBackBuffer();
+
     private static boolean showPixelGrid = false;
 
     public View(Composition comp) {
@@ -276,6 +281,7 @@ public class View extends JComponent
             // ImageFrame.internalFrameClosed
             viewContainer.dispose();
         }
+        backBuffer.dispose();
         comp.dispose();
     }
 
@@ -342,6 +348,9 @@ public class View extends JComponent
 
     @Override
     public void paintComponent(Graphics g) {
+        long startTime = System.nanoTime();
+        long startAllocated = PerformanceStats.getAllocatedBytes();
+
         Shape originalClip = g.getClip();
 
         Graphics2D g2 = (Graphics2D) g;
@@ -356,28 +365,42 @@ public class View extends JComponent
         // make a copy of the transform object
         AffineTransform componentTransform = g2.getTransform();
 
-        g2.translate(canvasStartX, canvasStartY);
-
         boolean showMask = maskViewMode.showMask();
-        if (!showMask) {
-            checkerBoardPainter.paint(g2, this, canvasCoWidth, canvasCoHeight);
-        }
-
-        g2.scale(scaling, scaling);
-        // after the translation and scaling, we are in "image space"
+        if (canUseBackBuffer(componentTransform)) {
+            // the checkerboard and the zoomed composite image
+            // are painted from the cache, only the overlays
+            // are repainted from scratch
+            BufferedImage compositeImage = comp.getCompositeImage();
+            backBuffer.paint(g2, getVisibleCanvasArea(canvasCoWidth, canvasCoHeight),
+                    compositeImage, getImageToComponentTransform(),
+                    bg -> paintContent(bg, compositeImage, canvasCoWidth, canvasCoHeight));
 
-        if (showMask) {
-            LayerMask mask = comp.getActiveLayer().getMask();
-            assert mask != null : "no mask in " + maskViewMode;
-            mask.paintLayerOnGraphics(g2, true);
+            g2.translate(canvasStartX, canvasStartY);
+            g2.scale(scaling, scaling);
+            // after the translation and scaling, we are in "image space"
         } else {
-            BufferedImage compositeImage = comp.getCompositeImage();
-            ImageUtils.drawImageWithClipping(g2, compositeImage);
+            g2.translate(canvasStartX, canvasStartY);
+
+            if (!showMask) {
+                checkerBoardPainter.paint(g2, this, canvasCoWidth, canvasCoHeight);
+            }
 
-            if (maskViewMode.showRuby()) {
+            g2.scale(scaling, scaling);
+            // after the translation and scaling, we are in "image space"
+
+            if (showMask) {
                 LayerMask mask = comp.getActiveLayer().getMask();
                 assert mask != null : "no mask in " + maskViewMode;
-                mask.paintAsRubylith(g2);
+                mask.paintLayerOnGraphics(g2, true);
+            } else {
+                BufferedImage compositeImage = comp.getCompositeImage();
+                ImageUtils.drawImageWithClipping(g2, compositeImage);
+
+                if (maskViewMode.showRuby()) {
+                    LayerMask mask = comp.getActiveLayer().getMask();
+                    assert mask != null : "no mask in " + maskViewMode;
+                    mask.paintAsRubylith(g2);
+                }
             }
         }
 
@@ -408,6 +431,49 @@ public class View extends JComponent
         }
 
         g2.setClip(originalClip);
+
+        Rectangle paintedArea = originalClip != null
+                ? originalClip.getBounds()
+                : new Rectangle(getWidth(), getHeight());
+        PerformanceStats.record(PerformanceStats.VIEW_PAINTING, startTime,
+                startAllocated, (long) paintedArea.width * paintedArea.height);
+    }
+
+    /**
+     * The back buffer is used only for the normal mask view modes,
+     * and only if the component space is not scaled (HiDPI), because
+     * the cached image has the resolution of the component space.
+     */
+    private boolean canUseBackBuffer(AffineTransform componentTransform) {
+        if (maskViewMode.showMask() || maskViewMode.showRuby()) {
+            return false;
+        }
+        int type = componentTransform.getType();
+        return (type & ~AffineTransform.TYPE_TRANSLATION) == 0;
+    }
+
+    /**
+     * Returns the visible part of the canvas in component space
+     */
+    private Rectangle getVisibleCanvasArea(int canvasCoWidth, int canvasCoHeight) {
+        Rectangle canvasArea = new Rectangle((int) canvasStartX, (int) canvasStartY,
+                canvasCoWidth, canvasCoHeight);
+        if (viewContainer == null) {
+            return canvasArea;
+        }
+        return canvasArea.intersection(getVisiblePart());
+    }
+
+    /**
+     * Paints the checkerboard and the zoomed composite image
+     * on a {@link Graphics2D} that is in component space
+     */
+    private void paintContent(Graphics2D g, BufferedImage compositeImage,
+                              int canvasCoWidth, int canvasCoHeight) {
+        g.translate(canvasStartX, canvasStartY);
+        checkerBoardPainter.paint(g, this, canvasCoWidth, canvasCoHeight);
+        g.scale(scaling, scaling);
+        ImageUtils.drawImageWithClipping(g, compositeImage);
     }
 
     public void paintImmediately() {
@@ -415,35 +481,47 @@ public class View extends JComponent
     }
 
     public boolean showPixelGridIfEnabled() {
-        // for some reason the pixel grid is very slow if there is
-        // a selection visible, so don't show it
-        return zoomLevel.allowPixelGrid() && !comp.showsSelection();
+        return zoomLevel.allowPixelGrid();
     }
 
+    /**
+     * Draws only the grid lines intersecting the clip,
+     * batched into a single path
+     */
     private void drawPixelGrid(Graphics2D g2) {
-        g2.setXORMode(BLACK);
+        Rectangle clip = g2.getClipBounds();
+        if (clip == null || clip.isEmpty()) {
+            return;
+        }
         double pixelSize = zoomLevel.getViewScale();
 
-        Rectangle r = getVisiblePart();
+        int startX = clip.x;
+        int endX = clip.x + clip.width;
+        int startY = clip.y;
+        int endY = clip.y + clip.height;
 
-        int startX = r.x;
-        int endX = r.x + r.width;
-        int startY = r.y;
-        int endY = r.y + r.height;
+        Path2D grid = new Path2D.Float();
 
         // vertical lines
-        double skipVer = Math.ceil(startX / pixelSize);
-        for (double i = pixelSize * skipVer; i < endX; i += pixelSize) {
+        double firstVer = Math.ceil((startX - canvasStartX) / pixelSize) * pixelSize;
+        for (double i = firstVer; canvasStartX + i < endX; i += pixelSize) {
             int x = (int) (canvasStartX + i);
-            g2.drawLine(x, startY, x, endY);
+            grid.moveTo(x + 0.5, startY);
+            grid.lineTo(x + 0.5, endY);
         }
 
         // horizontal lines
-        double skipHor = Math.ceil(startY / pixelSize);
-        for (double i = skipHor * pixelSize; i < endY; i += pixelSize) {
+        double firstHor = Math.ceil((startY - canvasStartY) / pixelSize) * pixelSize;
+        for (double i = firstHor; canvasStartY + i < endY; i += pixelSize) {
             int y = (int) (canvasStartY + i);
-            g2.drawLine(startX, y, endX, y);
+            grid.moveTo(startX, y + 0.5);
+            grid.lineTo(endX, y + 0.5);
         }
+
+        g2.setXORMode(BLACK);
+        g2.setStroke(new BasicStroke(1.0f));
+        g2.draw(grid);
+        g2.setPaintMode();
     }
 
     public static void setShowPixelGrid(boolean newValue) {
@@ -839,12 +917,33 @@ public class View extends JComponent
                     }
                 });
             } else {
-                // call here, painting calls will be coalesced anyway
-                navigator.repaint();
+                // during a drag it is postponed until the mouse is released
+                RepaintScheduler.updateNavigator(this);
             }
         }
     }
 
+    // called by the RepaintScheduler
+    void repaintNavigator() {
+        if (navigator != null) {
+            navigator.repaint();
+        }
+    }
+
+    /**
+     * All the repaint methods end up here. The repaints
+     * are paced to the frame rate by the {@link RepaintScheduler}.
+     */
+    @Override
+    public void repaint(long tm, int x, int y, int width, int height) {
+        RepaintScheduler.repaint(this, x, y, width, height);
+    }
+
+    // called by the RepaintScheduler
+    void repaintNow(int x, int y, int width, int height) {
+        super.repaint(0, x, y, width, height);
+    }
+
     /**
      * Returns the bounds of the visible part of the canvas
      * in screen coordinates
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2019 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.gui;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+
+/**
+ * Caches the checkerboard and the zoomed composite image of a
+ * {@link View} for the visible part of the canvas, in component space.
+ * The selection, the guides, the pixel grid and the tool overlays are
+ * painted over it, so repainting them doesn't have to
+ * scale the composite image again.
+ *
+ * The cached image is divided into tiles, which are rendered
+ * lazily, only when a repaint needs them. All tiles become invalid
+ * when the composite image, the zoom or the visible area changes.
+ */
+class ViewBackBuffer {
+    private static final int TILE_SIZE = 128;
+
+    private BufferedImage image;
+
+    // the component-space area covered by the cached image
+    private final Rectangle area = new Rectangle();
+
+    private int numTilesX;
+    private int numTilesY;
+    private boolean[] validTiles;
+
+    // the state for which the valid tiles were rendered
+    private BufferedImage compositeRef;
+    private AffineTransform imToCoRef;
+
+    /**
+     * Paints the given area (the visible part of the canvas in
+     * component space) from the cache. Before that, the invalid tiles
+     * intersecting the clip of the given {@link Graphics2D} are
+     * rendered with the given content painter, which receives
+     * a {@link Graphics2D} in component space.
+     */
+    void paint(Graphics2D g, Rectangle newArea,
+               BufferedImage composite, AffineTransform imToCo,
+               Consumer<Graphics2D> contentPainter) {
+        if (newArea.isEmpty()) {
+            return;
+        }
+        if (image == null || !area.equals(newArea)) {
+            resize(newArea);
+        } else if (composite != compositeRef || !imToCo.equals(imToCoRef)) {
+            Arrays.fill(validTiles, false);
+        }
+        compositeRef = composite;
+        imToCoRef = new AffineTransform(imToCo);
+
+        Rectangle clip = g.getClipBounds();
+        if (clip != null) {
+            clip = clip.intersection(area);
+            if (clip.isEmpty()) {
+                return;
+            }
+        } else {
+            clip = area;
+        }
+
+        renderInvalidTiles(clip, contentPainter);
+
+        g.drawImage(image, area.x, area.y, null);
+    }
+
+    private void resize(Rectangle newArea) {
+        if (image == null
+                || image.getWidth() < newArea.width
+                || image.getHeight() < newArea.height) {
+            if (image != null) {
+                image.flush();
+            }
+            image = new BufferedImage(newArea.width, newArea.height, TYPE_INT_RGB);
+        } else if (image.getWidth() != newArea.width
+                || image.getHeight() != newArea.height) {
+            // reuse the memory of the bigger image
+            image = image.getSubimage(0, 0, newArea.width, newArea.height);
+        }
+        area.setBounds(newArea);
+
+        numTilesX = (newArea.width + TILE_SIZE - 1) / TILE_SIZE;
+        numTilesY = (newArea.height + TILE_SIZE - 1) / TILE_SIZE;
+        validTiles = new boolean[numTilesX * numTilesY];
+    }
+
+    /**
+     * Renders the invalid tiles intersecting the given
+     * component-space clip rectangle with a single painting,
+     * which covers the bounding box of these tiles
+     */
+    private void renderInvalidTiles(Rectangle clip, Consumer<Graphics2D> contentPainter) {
+        int firstTileX = (clip.x - area.x) / TILE_SIZE;
+        int firstTileY = (clip.y - area.y) / TILE_SIZE;
+        int lastTileX = (clip.x + clip.width - 1 - area.x) / TILE_SIZE;
+        int lastTileY = (clip.y + clip.height - 1 - area.y) / TILE_SIZE;
+
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = -1;
+        int maxY = -1;
+        for (int ty = firstTileY; ty <= lastTileY; ty++) {
+            for (int tx = firstTileX; tx <= lastTileX; tx++) {
+                if (!validTiles[ty * numTilesX + tx]) {
+                    minX = Math.min(minX, tx);
+                    minY = Math.min(minY, ty);
+                    maxX = Math.max(maxX, tx);
+                    maxY = Math.max(maxY, ty);
+                }
+            }
+        }
+        if (maxX < 0) {
+            return; // everything is up to date
+        }
+
+        Rectangle renderArea = new Rectangle(
+                area.x + minX * TILE_SIZE, area.y + minY * TILE_SIZE,
+                (maxX - minX + 1) * TILE_SIZE, (maxY - minY + 1) * TILE_SIZE)
+                .intersection(area);
+
+        Graphics2D bg = image.createGraphics();
+        bg.translate(-area.x, -area.y);
+        bg.setClip(renderArea);
+        contentPainter.accept(bg);
+        bg.dispose();
+
+        for (int ty = minY; ty <= maxY; ty++) {
+            for (int tx = minX; tx <= maxX; tx++) {
+                validTiles[ty * numTilesX + tx] = true;
+            }
+        }
+    }
+
+    /**
+     * Releases the cached image
+     */
+    void dispose() {
+        if (image != null) {
+            image.flush();
+            image = null;
+        }
+        compositeRef = null;
+        imToCoRef = null;
+    }
+}
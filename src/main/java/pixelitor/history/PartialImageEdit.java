@@ -23,6 +23,7 @@ import pixelitor.selection.Selection;
 import pixelitor.utils.ImageUtils;
 import pixelitor.utils.debug.DataBufferNode;
 import pixelitor.utils.debug.DebugNode;
+import pixelitor.utils.debug.PerformanceStats;
 
 import javax.swing.undo.CannotRedoException;
 import javax.swing.undo.CannotUndoException;
@@ -52,7 +53,11 @@ public class PartialImageEdit extends FadeableEdit {
         this.dr = dr;
         this.saveRect = saveRect;
 
+        long startTime = System.nanoTime();
+        long startAllocated = PerformanceStats.getAllocatedBytes();
         backupRaster = image.getData(this.saveRect);
+        PerformanceStats.record(PerformanceStats.HISTORY_SNAPSHOT, startTime,
+                startAllocated, (long) saveRect.width * saveRect.height);
 
 //        EventQueue.invokeLater(() -> Utils.debugRaster(backupRaster, "Partial Image"));
     }
@@ -92,6 +97,7 @@ public class PartialImageEdit extends FadeableEdit {
 
         backupRaster = tmpRaster;
 
+        dr.invalidateCache();
         comp.imageChanged();
         dr.updateIconImage();
     }
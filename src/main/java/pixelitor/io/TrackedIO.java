@@ -23,6 +23,7 @@ import pixelitor.utils.StatusBarProgressTracker;
 import pixelitor.utils.TrackerReadProgressListener;
 import pixelitor.utils.TrackerWriteProgressListener;
 import pixelitor.utils.VisibleForTesting;
+import pixelitor.utils.debug.PerformanceStats;
 
 import javax.imageio.ImageIO;
 import javax.imageio.ImageReadParam;
@@ -82,6 +83,8 @@ public class TrackedIO {
             throw new IOException("No writer found for " + formatName);
         }
         ImageWriter writer = writers.next();
+        long startTime = System.nanoTime();
+        long startAllocated = PerformanceStats.getAllocatedBytes();
         try {
             writer.setOutput(ios);
             writer.addIIOWriteProgressListener(new TrackerWriteProgressListener(pt));
@@ -89,6 +92,8 @@ public class TrackedIO {
         } finally {
             writer.dispose();
         }
+        PerformanceStats.record("Image Writing: " + formatName.toUpperCase(),
+                startTime, startAllocated, (long) img.getWidth() * img.getHeight());
     }
 
     public static BufferedImage uncheckedRead(File file) {
@@ -131,8 +136,12 @@ public class TrackedIO {
         }
 
         ImageReader reader = readers.next();
+        long startTime = System.nanoTime();
+        long startAllocated = PerformanceStats.getAllocatedBytes();
+        String formatName;
 
         try {
+            formatName = reader.getFormatName().toUpperCase();
             reader.setInput(iis);
 
             reader.addIIOReadProgressListener(new TrackerReadProgressListener(pt));
@@ -142,6 +151,8 @@ public class TrackedIO {
         } finally {
             reader.dispose();
         }
+        PerformanceStats.record("Image Reading: " + formatName, startTime,
+                startAllocated, (long) image.getWidth() * image.getHeight());
 
         return image;
     }
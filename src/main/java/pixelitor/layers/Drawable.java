@@ -69,6 +69,11 @@ public interface Drawable {
 
     void updateIconImage();
 
+    /**
+     * Called after the pixels were changed in place
+     */
+    void invalidateCache();
+
     Composition getComp();
 
     int getTX();
@@ -30,12 +30,13 @@ import pixelitor.history.ImageEdit;
 import pixelitor.history.PixelitorEdit;
 import pixelitor.io.PXCFormat;
 import pixelitor.selection.Selection;
+import pixelitor.selection.SelectionMask;
 import pixelitor.tools.Tools;
-import pixelitor.utils.ImageTrimUtil;
 import pixelitor.utils.ImageUtils;
 import pixelitor.utils.Messages;
 import pixelitor.utils.Utils;
 import pixelitor.utils.VisibleForTesting;
+import pixelitor.utils.debug.PerformanceStats;
 import pixelitor.utils.test.Assertions;
 
 import java.awt.AlphaComposite;
@@ -122,9 +123,16 @@ public class ImageLayer extends ContentLayer implements Drawable {
     private transient BufferedImage filterSourceImage;
 
     /**
-     * The image bounding box trimmed from transparent pixels
+     * Knows which tiles of the image are empty or opaque,
+     * created lazily, see {@link #getTileIndex()}
      */
-    private transient Rectangle trimmedBoundingBox;
+    private transient ImageTileIndex tileIndex;
+
+    /**
+     * The canvas-sized image with the layer mask applied,
+     * or null if there is no layer mask
+     */
+    private transient MaskedImageCache maskedImageCache;
 
     private ImageLayer(Composition comp, String name, Layer parent) {
         super(comp, name, parent);
@@ -241,7 +249,8 @@ public class ImageLayer extends ContentLayer implements Drawable {
         previewImage = null;
         filterSourceImage = null;
         image = null;
-        trimmedBoundingBox = null;
+        tileIndex = null;
+        maskedImageCache = null;
 
         in.defaultReadObject();
         setImage(PXCFormat.deserializeImage(in));
@@ -277,6 +286,9 @@ public class ImageLayer extends ContentLayer implements Drawable {
         image = replaceSelectedPart(image, newImage);
         imageRefChanged();
 
+        // the pixels might have been changed without a reference change
+        invalidateCache();
+
         comp.imageChanged(INVALIDATE_CACHE);
     }
 
@@ -293,6 +305,12 @@ public class ImageLayer extends ContentLayer implements Drawable {
         Shape selectionShape = comp.getSelectionShape();
         if (selectionShape == null) {
             return newImg;
+        } else if (selectionShape instanceof SelectionMask.Outline) {
+            // the mask also blends the partially selected pixels
+            SelectionMask mask = ((SelectionMask.Outline) selectionShape).getMask();
+            Rectangle bounds = selectionShape.getBounds();
+            mask.blend(newImg, bounds.x, bounds.y, src, getTX(), getTY());
+            return src;
         } else {
             // the argument image pixels will replace the old ones only where selected
             Graphics2D g = src.createGraphics();
@@ -535,23 +553,92 @@ public class ImageLayer extends ContentLayer implements Drawable {
         invalidateCache();
     }
 
+    @Override
     public void invalidateCache() {
-        trimmedBoundingBox = null;
+        invalidateMaskedImageCache();
     }
 
     @Override
-    public Rectangle getEffectiveBoundingBox() {
-        // cache trimmed rect until better solution is found
-        if (trimmedBoundingBox == null) {
-            trimmedBoundingBox = ImageTrimUtil.getTrimRect(getImage());
+    public boolean isOpaqueIn(Rectangle region) {
+        if (!isNormalAndOpaque() || hasMask() && isMaskEnabled()) {
+            return false;
+        }
+        // the same conditions as for caching the masked image:
+        // the painted pixels must be the pixels of the image
+        if (state != NORMAL || tmpDrawingLayer != null
+                || (Tools.isShapesDrawing() && isActive())) {
+            return false;
+        }
+        return getTileIndex().isOpaque(image, new Rectangle(
+                region.x - translationX, region.y - translationY,
+                region.width, region.height));
+    }
+
+    private ImageTileIndex getTileIndex() {
+        if (tileIndex == null) {
+            tileIndex = new ImageTileIndex();
         }
+        return tileIndex;
+    }
 
-        return new Rectangle(
-                translationX + trimmedBoundingBox.x,
-                translationY + trimmedBoundingBox.y,
-                trimmedBoundingBox.width,
-                trimmedBoundingBox.height
-        );
+    @Override
+    protected BufferedImage getCachedMaskedImage(boolean firstVisibleLayer) {
+        if (!canCacheMaskedImage()) {
+            return null;
+        }
+        if (maskedImageCache == null) {
+            maskedImageCache = new MaskedImageCache(this);
+        }
+        return maskedImageCache.get(getVisibleImage(), getTX(), getTY(),
+                mask, firstVisibleLayer);
+    }
+
+    /**
+     * Returns true if the masked image depends only on the image
+     * and the mask, and not on some temporary state (filter previews,
+     * brush strokes with blending modes or shapes being dragged)
+     */
+    private boolean canCacheMaskedImage() {
+        return state == NORMAL
+                && mask.getState() == NORMAL
+                && tmpDrawingLayer == null
+                && !Tools.isShapesDrawing();
+    }
+
+    @Override
+    public void invalidateMaskedImageCache() {
+        if (tileIndex != null) {
+            tileIndex.invalidate();
+        }
+        if (maskedImageCache == null) {
+            return;
+        }
+        if (hasMask()) {
+            maskedImageCache.invalidate();
+        } else { // the mask was deleted
+            maskedImageCache.dispose();
+            maskedImageCache = null;
+        }
+    }
+
+    @Override
+    public void invalidateMaskedImageCache(Rectangle region) {
+        if (tileIndex != null) {
+            tileIndex.invalidate(new Rectangle(
+                    region.x - translationX, region.y - translationY,
+                    region.width, region.height));
+        }
+        if (maskedImageCache != null && hasMask()) {
+            maskedImageCache.invalidate(region);
+        }
+    }
+
+    @Override
+    public Rectangle getEffectiveBoundingBox() {
+        // only the changed tiles are rescanned
+        Rectangle contentBounds = getTileIndex().getContentBounds(getImage());
+        contentBounds.translate(translationX, translationY);
+        return contentBounds;
     }
 
     @Override
@@ -565,6 +652,9 @@ public class ImageLayer extends ContentLayer implements Drawable {
         int x = p.x - translationX;
         int y = p.y - translationY;
         if (x >= 0 && y >= 0 && x < image.getWidth() && y < image.getHeight()) {
+            if (getTileIndex().isInEmptyTile(image, x, y)) {
+                return 0x00000000;
+            }
             if (hasMask() && getMask().isMaskEnabled()) {
                 int maskPixel = getMask().getMouseHitPixelAtPoint(p);
                 if (maskPixel != 0) {
@@ -734,6 +824,9 @@ public class ImageLayer extends ContentLayer implements Drawable {
 
         tmpDrawingLayer.dispose();
         tmpDrawingLayer = null;
+
+        // the pixels were changed in place
+        invalidateCache();
     }
 
     public BufferedImage createCanvasSizedTmpImage() {
@@ -802,7 +895,13 @@ public class ImageLayer extends ContentLayer implements Drawable {
         Selection selection = comp.getSelection();
         if (selection == null) { // no selection => return full image
             if (copyIfNoSelection) {
-                return copyImage(image);
+                // the copy is taken for the history
+                long startTime = System.nanoTime();
+                long startAllocated = PerformanceStats.getAllocatedBytes();
+                BufferedImage copy = copyImage(image);
+                PerformanceStats.record(PerformanceStats.HISTORY_SNAPSHOT, startTime,
+                        startAllocated, (long) image.getWidth() * image.getHeight());
+                return copy;
             }
             return image;
         }
@@ -1020,11 +1119,19 @@ public class ImageLayer extends ContentLayer implements Drawable {
                                                   boolean firstVisibleLayer) {
         if (Tools.isShapesDrawing() && isActive() && !isMaskEditing()) {
             paintDraggedShapesIntoActiveLayer(g, visibleImage, firstVisibleLayer);
+        } else if (visibleImage == image && isSrcOver(g.getComposite())) {
+            // the transparent tiles would change nothing
+            getTileIndex().drawNonEmptyTiles(g, image, getTX(), getTY());
         } else { // the simple case
             g.drawImage(visibleImage, getTX(), getTY(), null);
         }
     }
 
+    private static boolean isSrcOver(Composite composite) {
+        return composite instanceof AlphaComposite
+                && ((AlphaComposite) composite).getRule() == AlphaComposite.SRC_OVER;
+    }
+
     protected void paintDraggedShapesIntoActiveLayer(Graphics2D g,
                                                      BufferedImage visibleImage,
                                                      boolean firstVisibleLayer) {
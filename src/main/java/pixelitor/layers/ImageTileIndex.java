@@ -0,0 +1,296 @@
+/*
+ * Copyright 2019 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.layers;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * Remembers for each 64x64 tile of an image whether it is fully
+ * transparent, partially transparent or fully opaque, and the
+ * bounds of the non-transparent pixels within the tile.
+ *
+ * Only the tiles that were invalidated since the last use
+ * are rescanned. The whole index is rebuilt when the image
+ * reference or the image size changes.
+ */
+class ImageTileIndex {
+    static final int TILE_SIZE = 64;
+    private static final int TILE_SHIFT = 6;
+
+    private static final byte UNKNOWN = 0;
+    private static final byte EMPTY = 1;
+    private static final byte PARTIAL = 2;
+    private static final byte OPAQUE = 3;
+
+    // the image for which the index was calculated
+    private BufferedImage imageRef;
+
+    private int numTilesX;
+    private int numTilesY;
+    private byte[] states;
+
+    // for each tile the min x, min y, max x and max y
+    // (relative to the image) of the non-transparent pixels
+    private int[] contentBounds;
+
+    /**
+     * The whole index has to be recalculated
+     */
+    void invalidate() {
+        imageRef = null;
+    }
+
+    /**
+     * Only the tiles intersecting the given region
+     * (relative to the image) have to be rescanned
+     */
+    void invalidate(Rectangle region) {
+        if (imageRef == null) {
+            return;
+        }
+        int minTileX = Math.max(0, region.x >> TILE_SHIFT);
+        int minTileY = Math.max(0, region.y >> TILE_SHIFT);
+        int maxTileX = Math.min(numTilesX - 1, (region.x + region.width - 1) >> TILE_SHIFT);
+        int maxTileY = Math.min(numTilesY - 1, (region.y + region.height - 1) >> TILE_SHIFT);
+        for (int ty = minTileY; ty <= maxTileY; ty++) {
+            for (int tx = minTileX; tx <= maxTileX; tx++) {
+                states[ty * numTilesX + tx] = UNKNOWN;
+            }
+        }
+    }
+
+    /**
+     * Returns the bounds of the non-transparent pixels (relative to the image),
+     * or an empty rectangle if the image is fully transparent
+     */
+    Rectangle getContentBounds(BufferedImage image) {
+        update(image);
+
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < states.length; i++) {
+            if (states[i] != EMPTY) {
+                int base = i * 4;
+                minX = Math.min(minX, contentBounds[base]);
+                minY = Math.min(minY, contentBounds[base + 1]);
+                maxX = Math.max(maxX, contentBounds[base + 2]);
+                maxY = Math.max(maxY, contentBounds[base + 3]);
+            }
+        }
+        if (minX == Integer.MAX_VALUE) {
+            return new Rectangle(0, 0, 0, 0);
+        }
+        return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+    }
+
+    /**
+     * Returns whether the given pixel (relative to the image)
+     * is in a fully transparent tile
+     */
+    boolean isInEmptyTile(BufferedImage image, int x, int y) {
+        update(image);
+        return states[(y >> TILE_SHIFT) * numTilesX + (x >> TILE_SHIFT)] == EMPTY;
+    }
+
+    /**
+     * Returns whether the given region (relative to the image)
+     * contains only fully opaque pixels
+     */
+    boolean isOpaque(BufferedImage image, Rectangle region) {
+        if (region.isEmpty()) {
+            return true;
+        }
+        if (region.x < 0 || region.y < 0
+                || region.x + region.width > image.getWidth()
+                || region.y + region.height > image.getHeight()) {
+            return false;
+        }
+        update(image);
+        int minTileX = region.x >> TILE_SHIFT;
+        int minTileY = region.y >> TILE_SHIFT;
+        int maxTileX = (region.x + region.width - 1) >> TILE_SHIFT;
+        int maxTileY = (region.y + region.height - 1) >> TILE_SHIFT;
+        for (int ty = minTileY; ty <= maxTileY; ty++) {
+            for (int tx = minTileX; tx <= maxTileX; tx++) {
+                if (states[ty * numTilesX + tx] != OPAQUE) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Draws the image with its top-left corner at the given position,
+     * but skips the fully transparent tiles. Should be used only with
+     * composites for which a transparent source pixel changes nothing.
+     */
+    void drawNonEmptyTiles(Graphics2D g, BufferedImage image, int x, int y) {
+        update(image);
+
+        // the tile rows outside the clip are not even examined
+        int minTileY = 0;
+        int maxTileY = numTilesY - 1;
+        Rectangle clip = g.getClipBounds();
+        if (clip != null) {
+            minTileY = Math.max(minTileY, (clip.y - y) >> TILE_SHIFT);
+            maxTileY = Math.min(maxTileY, (clip.y + clip.height - 1 - y) >> TILE_SHIFT);
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        for (int ty = minTileY; ty <= maxTileY; ty++) {
+            int sy1 = ty << TILE_SHIFT;
+            int sy2 = Math.min(height, sy1 + TILE_SIZE);
+            int rowStart = ty * numTilesX;
+            int tx = 0;
+            while (tx < numTilesX) {
+                if (states[rowStart + tx] == EMPTY) {
+                    tx++;
+                    continue;
+                }
+                // draw the consecutive non-empty tiles in one call
+                int runStart = tx;
+                while (tx < numTilesX && states[rowStart + tx] != EMPTY) {
+                    tx++;
+                }
+                int sx1 = runStart << TILE_SHIFT;
+                int sx2 = Math.min(width, tx << TILE_SHIFT);
+                g.drawImage(image,
+                        x + sx1, y + sy1, x + sx2, y + sy2,
+                        sx1, sy1, sx2, sy2, null);
+            }
+        }
+    }
+
+    /**
+     * Makes the index up-to-date for the given image
+     */
+    private void update(BufferedImage image) {
+        if (image != imageRef) {
+            numTilesX = (image.getWidth() + TILE_SIZE - 1) >> TILE_SHIFT;
+            numTilesY = (image.getHeight() + TILE_SIZE - 1) >> TILE_SHIFT;
+            int numTiles = numTilesX * numTilesY;
+            if (states == null || states.length != numTiles) {
+                states = new byte[numTiles];
+                contentBounds = new int[numTiles * 4];
+            } else {
+                Arrays.fill(states, UNKNOWN);
+            }
+            imageRef = image;
+        }
+
+        for (int i = 0; i < states.length; i++) {
+            if (states[i] == UNKNOWN) {
+                scanTile(image, i % numTilesX, i / numTilesX);
+            }
+        }
+    }
+
+    private void scanTile(BufferedImage image, int tileX, int tileY) {
+        int startX = tileX << TILE_SHIFT;
+        int startY = tileY << TILE_SHIFT;
+        int endX = Math.min(image.getWidth(), startX + TILE_SIZE);
+        int endY = Math.min(image.getHeight(), startY + TILE_SIZE);
+        int tileIndex = tileY * numTilesX + tileX;
+        int base = tileIndex * 4;
+
+        WritableRaster alphaRaster = image.getAlphaRaster();
+        if (alphaRaster == null) { // there is no transparency
+            states[tileIndex] = OPAQUE;
+            contentBounds[base] = startX;
+            contentBounds[base + 1] = startY;
+            contentBounds[base + 2] = endX - 1;
+            contentBounds[base + 3] = endY - 1;
+            return;
+        }
+
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = -1;
+        int maxY = -1;
+        boolean opaque = true;
+
+        WritableRaster raster = image.getRaster();
+        // fast path for the usual ARGB images
+        boolean intPixels = raster.getDataBuffer() instanceof DataBufferInt
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel
+                && raster.getParent() == null
+                && raster.getNumBands() == 4
+                && ((SinglePixelPackedSampleModel) raster.getSampleModel()).getBitOffsets()[3] == 24;
+        int[] pixels = null;
+        int stride = 0;
+        int[] alphaRow = null;
+        if (intPixels) {
+            pixels = ((DataBufferInt) raster.getDataBuffer()).getData();
+            stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+        } else {
+            alphaRow = new int[endX - startX];
+        }
+
+        for (int y = startY; y < endY; y++) {
+            if (!intPixels) {
+                alphaRaster.getSamples(startX, y, endX - startX, 1, 0, alphaRow);
+            }
+            int offset = y * stride;
+            for (int x = startX; x < endX; x++) {
+                int alpha;
+                if (intPixels) {
+                    alpha = pixels[offset + x] >>> 24;
+                } else {
+                    alpha = alphaRow[x - startX];
+                }
+                if (alpha == 0) {
+                    opaque = false;
+                } else {
+                    if (alpha != 0xFF) {
+                        opaque = false;
+                    }
+                    if (x < minX) {
+                        minX = x;
+                    }
+                    if (x > maxX) {
+                        maxX = x;
+                    }
+                    if (minY == Integer.MAX_VALUE) {
+                        minY = y;
+                    }
+                    maxY = y;
+                }
+            }
+        }
+
+        if (maxX == -1) {
+            states[tileIndex] = EMPTY;
+        } else {
+            states[tileIndex] = opaque ? OPAQUE : PARTIAL;
+            contentBounds[base] = minX;
+            contentBounds[base + 1] = minY;
+            contentBounds[base + 2] = maxX;
+            contentBounds[base + 3] = maxY;
+        }
+    }
+}
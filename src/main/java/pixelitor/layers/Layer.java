@@ -42,6 +42,7 @@ import java.awt.AlphaComposite;
 import java.awt.Composite;
 import java.awt.EventQueue;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
@@ -366,6 +367,7 @@ public abstract class Layer implements Serializable {
         MaskViewMode oldMode = view.getMaskViewMode();
         mask = null;
         maskEditing = false;
+        invalidateMaskedImageCache(); // releases the cache
 
         comp.imageChanged();
 
@@ -403,6 +405,67 @@ public abstract class Layer implements Serializable {
         return null;
     }
 
+    /**
+     * Like {@link #applyLayer(Graphics2D, BufferedImage, boolean)}, but
+     * the given image contains only the given region of the canvas.
+     * The Graphics2D must be translated so that it works with canvas
+     * coordinates. Should be called only if {@link #isLocal()} returns true.
+     */
+    public BufferedImage applyLayerToRegion(Graphics2D g,
+                                            BufferedImage regionSoFar,
+                                            boolean firstVisibleLayer,
+                                            Rectangle region) {
+        assert isLocal();
+        if (isAdjustment) {
+            if (firstVisibleLayer) {
+                return regionSoFar;
+            }
+            BufferedImage transformed = actOnImageFromLayerBellow(regionSoFar);
+            if (useMask()) {
+                Graphics2D mg = transformed.createGraphics();
+                mg.setComposite(DstIn);
+                mg.drawImage(mask.getTransparencyImage(), -region.x, -region.y, null);
+                mg.dispose();
+            }
+            if (!useMask() && isNormalAndOpaque()) {
+                return transformed;
+            }
+            // unlike in the whole-canvas case, g is translated
+            Graphics2D rg = regionSoFar.createGraphics();
+            setupDrawingComposite(rg, false);
+            rg.drawImage(transformed, 0, 0, null);
+            rg.dispose();
+            return regionSoFar;
+        }
+        return applyLayer(g, regionSoFar, firstVisibleLayer);
+    }
+
+    /**
+     * Returns whether the effect of this layer on a pixel
+     * depends only on the nearby pixels, so that the composite image
+     * can be calculated also for a small region of the canvas.
+     */
+    public boolean isLocal() {
+        return true;
+    }
+
+    /**
+     * Returns whether this layer completely hides the layers
+     * bellow it in the given region (relative to the canvas).
+     * If it returns false, the region might still be covered.
+     */
+    public boolean isOpaqueIn(Rectangle region) {
+        return false;
+    }
+
+    /**
+     * Returns whether this layer changes the image
+     * bellow it (adjustment layer or watermarked text layer)
+     */
+    public boolean isAdjustment() {
+        return isAdjustment;
+    }
+
     // used by the non-adjustment stuff
     // This method assumes that the composite of the graphics is already
     // set up according to the transparency and blending mode
@@ -414,23 +477,54 @@ public abstract class Layer implements Serializable {
      * translations are taken into account
      */
     private void paintLayerOnGraphicsWithMask(Graphics2D g, boolean firstVisibleLayer) {
-//        Canvas canvas = comp.getCanvas();
-
-        // 1. create the masked image
-        // TODO the masked image should be cached
-        BufferedImage maskedImage = new BufferedImage(
-                canvas.getImWidth(), canvas.getImHeight(), TYPE_INT_ARGB);
-        Graphics2D mig = maskedImage.createGraphics();
-        paintLayerOnGraphics(mig, firstVisibleLayer);
-        mig.setComposite(DstIn);
-        mig.drawImage(mask.getTransparencyImage(),
-                mask.getTX(), mask.getTY(), null);
-        mig.dispose();
+        // 1. create the masked image, or take it from the cache
+        BufferedImage maskedImage = getCachedMaskedImage(firstVisibleLayer);
+        boolean cached = maskedImage != null;
+        if (!cached) {
+            maskedImage = new BufferedImage(
+                    canvas.getImWidth(), canvas.getImHeight(), TYPE_INT_ARGB);
+            Graphics2D mig = maskedImage.createGraphics();
+            paintLayerOnGraphics(mig, firstVisibleLayer);
+            mig.setComposite(DstIn);
+            mig.drawImage(mask.getTransparencyImage(),
+                    mask.getTX(), mask.getTY(), null);
+            mig.dispose();
+        }
 
         // 2. paint the masked image onto the graphics
-//            g.drawImage(maskedImage, getTX(), getTY(), null);
         setupDrawingComposite(g, firstVisibleLayer);
         g.drawImage(maskedImage, 0, 0, null);
+
+        if (!cached) {
+            maskedImage.flush();
+        }
+    }
+
+    /**
+     * Returns the up-to-date cached masked image, or null
+     * if the masked image of this layer can't be cached
+     */
+    protected BufferedImage getCachedMaskedImage(boolean firstVisibleLayer) {
+        return null;
+    }
+
+    /**
+     * Must be called when the pixels of this layer (or of its
+     * layer mask) were changed in a way that the image
+     * references, the translations and the link state
+     * of the mask don't reflect.
+     */
+    public void invalidateMaskedImageCache() {
+        // empty here, overridden in the layers that
+        // cache their masked image
+    }
+
+    /**
+     * Like {@link #invalidateMaskedImageCache()}, but only the
+     * given region (relative to the canvas) has changed
+     */
+    public void invalidateMaskedImageCache(Rectangle region) {
+        invalidateMaskedImageCache();
     }
 
     /**
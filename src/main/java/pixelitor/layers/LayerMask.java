@@ -162,12 +162,24 @@ public class LayerMask extends ImageLayer {
 
     public void setLinked(boolean linked, boolean addToHistory) {
         this.linked = linked;
+        parent.invalidateMaskedImageCache();
         notifyLayerChangeListeners();
         if (addToHistory) {
             History.addEdit(new LinkLayerMaskEdit(comp, this));
         }
     }
 
+    @Override
+    public void invalidateMaskedImageCache() {
+        // the masked image is cached in the parent layer
+        parent.invalidateMaskedImageCache();
+    }
+
+    @Override
+    public void invalidateMaskedImageCache(Rectangle region) {
+        parent.invalidateMaskedImageCache(region);
+    }
+
     @Override
     public TmpDrawingLayer createTmpDrawingLayer(Composite c) {
         throw new IllegalStateException("tmp layer with masks");
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2019 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.layers;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import static java.awt.AlphaComposite.DstIn;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+
+/**
+ * Caches the canvas-sized image of a layer with its
+ * layer mask already applied, so that the composite image
+ * can be recalculated without repainting and masking
+ * the layer every time.
+ *
+ * The cache is invalidated explicitly when the pixels
+ * of the layer or of the mask change, and implicitly
+ * when the image references, the translations
+ * or the canvas size change.
+ */
+class MaskedImageCache {
+    private final Layer layer;
+    private BufferedImage maskedImage;
+
+    // the state for which the masked image was calculated
+    private BufferedImage layerImageRef;
+    private BufferedImage maskImageRef;
+    private int layerTX;
+    private int layerTY;
+    private int maskTX;
+    private int maskTY;
+
+    // true if the whole masked image must be recalculated
+    private boolean invalid = true;
+
+    // the region (relative to the canvas) that must be
+    // recalculated, or null if there is no such region
+    private Rectangle dirtyRegion;
+
+    MaskedImageCache(Layer layer) {
+        this.layer = layer;
+    }
+
+    /**
+     * Returns the up-to-date masked image
+     */
+    BufferedImage get(BufferedImage layerImage, int tx, int ty,
+                      LayerMask mask, boolean firstVisibleLayer) {
+        int canvasWidth = layer.canvas.getImWidth();
+        int canvasHeight = layer.canvas.getImHeight();
+
+        if (maskedImage == null
+                || maskedImage.getWidth() != canvasWidth
+                || maskedImage.getHeight() != canvasHeight) {
+            if (maskedImage != null) {
+                maskedImage.flush();
+            }
+            maskedImage = new BufferedImage(canvasWidth, canvasHeight, TYPE_INT_ARGB);
+            invalid = true;
+        }
+
+        BufferedImage maskImage = mask.getTransparencyImage();
+        if (layerImage != layerImageRef || maskImage != maskImageRef
+                || tx != layerTX || ty != layerTY
+                || mask.getTX() != maskTX || mask.getTY() != maskTY) {
+            invalid = true;
+        }
+
+        if (invalid) {
+            recalculate(null, maskImage, mask, firstVisibleLayer);
+        } else if (dirtyRegion != null) {
+            Rectangle region = dirtyRegion.intersection(
+                    new Rectangle(0, 0, canvasWidth, canvasHeight));
+            if (!region.isEmpty()) {
+                recalculate(region, maskImage, mask, firstVisibleLayer);
+            }
+        }
+
+        layerImageRef = layerImage;
+        maskImageRef = maskImage;
+        layerTX = tx;
+        layerTY = ty;
+        maskTX = mask.getTX();
+        maskTY = mask.getTY();
+        invalid = false;
+        dirtyRegion = null;
+
+        return maskedImage;
+    }
+
+    /**
+     * Repaints the masked image, or only the given region
+     * of it if the region is not null
+     */
+    private void recalculate(Rectangle region, BufferedImage maskImage,
+                             LayerMask mask, boolean firstVisibleLayer) {
+        Graphics2D g = maskedImage.createGraphics();
+        if (region != null) {
+            g.setClip(region);
+        }
+
+        g.setComposite(AlphaComposite.Clear);
+        if (region != null) {
+            g.fill(region);
+        } else {
+            g.fillRect(0, 0, maskedImage.getWidth(), maskedImage.getHeight());
+        }
+        g.setComposite(AlphaComposite.SrcOver);
+
+        layer.paintLayerOnGraphics(g, firstVisibleLayer);
+        g.setComposite(DstIn);
+        g.drawImage(maskImage, mask.getTX(), mask.getTY(), null);
+        g.dispose();
+    }
+
+    /**
+     * The whole masked image has to be recalculated
+     */
+    void invalidate() {
+        invalid = true;
+        dirtyRegion = null;
+    }
+
+    /**
+     * Only the given region (relative to the canvas)
+     * of the masked image has to be recalculated
+     */
+    void invalidate(Rectangle region) {
+        if (invalid) {
+            return;
+        }
+        if (dirtyRegion == null) {
+            dirtyRegion = new Rectangle(region);
+        } else {
+            dirtyRegion.add(region);
+        }
+    }
+
+    void dispose() {
+        if (maskedImage != null) {
+            maskedImage.flush();
+            maskedImage = null;
+        }
+        layerImageRef = null;
+        maskImageRef = null;
+        invalidate();
+    }
+}
@@ -238,6 +238,12 @@ public class TextLayer extends ContentLayer {
         return super.applyLayer(g, imageSoFar, firstVisibleLayer);
     }
 
+    @Override
+    public boolean isLocal() {
+        // the watermarking needs the whole canvas
+        return !isAdjustment;
+    }
+
     @Override
     public BufferedImage actOnImageFromLayerBellow(BufferedImage src) {
         assert settings.isWatermark(); // should be called only in this case
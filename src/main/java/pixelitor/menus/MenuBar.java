@@ -97,6 +97,7 @@ import pixelitor.utils.Messages;
 import pixelitor.utils.OpenInBrowserAction;
 import pixelitor.utils.Tests3x3;
 import pixelitor.utils.debug.AppNode;
+import pixelitor.utils.debug.PerformanceStatsPanel;
 import pixelitor.utils.test.Events;
 import pixelitor.utils.test.RandomGUITest;
 import pixelitor.utils.test.SplashImageCreator;
@@ -840,6 +841,7 @@ public class MenuBar extends JMenuBar {
         sub.buildFilter(JHMedian.NAME, JHMedian::new)
                 .noGUI()
                 .add();
+        sub.addFilter(Median.NAME, Median::new);
 
         sub.addSeparator();
 
@@ -1409,6 +1411,13 @@ public class MenuBar extends JMenuBar {
             }
         });
 
+        helpMenu.add(new MenuAction("Performance Statistics...") {
+            @Override
+            public void onClick() {
+                PerformanceStatsPanel.showDialog(pw);
+            }
+        });
+
         helpMenu.add(new MenuAction("Check for Update...") {
             @Override
             public void onClick() {
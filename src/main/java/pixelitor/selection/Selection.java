@@ -18,6 +18,7 @@
 package pixelitor.selection;
 
 import pixelitor.Build;
+import pixelitor.Canvas;
 import pixelitor.Composition;
 import pixelitor.gui.View;
 import pixelitor.history.History;
@@ -33,6 +34,8 @@ import java.awt.Shape;
 import java.awt.Stroke;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Area;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
 import java.awt.geom.Rectangle2D;
 
 import static java.awt.BasicStroke.CAP_BUTT;
@@ -52,10 +55,28 @@ public class Selection {
     // The coordinates are in image space, relative to the canvas.
     private Shape shape;
 
-    private static final double DASH_WIDTH = 1.0;
+    // The flattened outline of the shape in component space,
+    // together with the shape and the transform it was created for.
+    private Path2D coOutline;
+    private Shape coOutlineShape;
+    private AffineTransform coOutlineTransform;
+
+    // the component-space region where the ants were last painted
+    private Rectangle lastPaintedBounds;
+
+    private static final float DASH_WIDTH = 1.0f;
     private static final float DASH_LENGTH = 4.0f;
     private static final float[] MARCHING_ANTS_DASH = {DASH_LENGTH, DASH_LENGTH};
 
+    // the flatness used for the component-space outline, in pixels
+    private static final double OUTLINE_FLATNESS = 0.25;
+
+    // how much the repainted region extends beyond the outline bounds
+    private static final int REPAINT_MARGIN = 2;
+
+    private static final Stroke WHITE_ANTS_STROKE = new BasicStroke(DASH_WIDTH,
+            CAP_BUTT, JOIN_ROUND, 0.0f, MARCHING_ANTS_DASH, 0.0f);
+
     private boolean hidden = false;
     private boolean dead = false;
     private boolean frozen = false;
@@ -98,8 +119,13 @@ public class Selection {
         marchingAntsTimer = new Timer(100, null);
         marchingAntsTimer.addActionListener(evt -> {
             if(!hidden) {
-                dashPhase += 1.0f / (float) view.getScaling();
-                repaint();
+                // the phase is in component space, so that
+                // the ants move with the same speed at every zoom
+                dashPhase += 1.0f;
+                if (dashPhase >= 2 * DASH_LENGTH) {
+                    dashPhase -= 2 * DASH_LENGTH;
+                }
+                repaintOutline();
             }
         });
         marchingAntsTimer.start();
@@ -127,33 +153,80 @@ public class Selection {
     }
 
     private void paintAnts(Graphics2D g2, Shape shape, float phase) {
-        // As the selection coordinates are in image space, this is
-        // called with a Graphics2D transformed into image space.
-        // The line width has to be scaled to compensate.
-        double viewScale = view.getScaling();
-        float lineWidth = (float) (DASH_WIDTH / viewScale);
-
-        float[] dash;
-        if (viewScale == 1.0) { // the most common case
-            dash = MARCHING_ANTS_DASH;
-        } else {
-            float scaledDashLength = (float) (DASH_LENGTH / viewScale);
-            dash = new float[]{scaledDashLength, scaledDashLength};
-        }
+        // This is called with a Graphics2D transformed into image space,
+        // but the ants are drawn in component space along the cached
+        // flattened outline, so that neither the line width nor the dashes
+        // have to be scaled, and the outline is not recalculated
+        // for every animation frame.
+        Path2D outline = getComponentSpaceOutline(shape);
+
+        AffineTransform imageTransform = g2.getTransform();
+        g2.transform(view.getComponentToImageTransform());
 
         g2.setPaint(WHITE);
-        Stroke stroke = new BasicStroke(lineWidth, CAP_BUTT,
-                JOIN_ROUND, 0.0f, dash,
-                phase);
-        g2.setStroke(stroke);
-        g2.draw(shape);
+        if (phase == 0.0f) {
+            g2.setStroke(WHITE_ANTS_STROKE);
+        } else {
+            g2.setStroke(new BasicStroke(DASH_WIDTH, CAP_BUTT,
+                    JOIN_ROUND, 0.0f, MARCHING_ANTS_DASH, phase));
+        }
+        g2.draw(outline);
 
         g2.setPaint(BLACK);
-        Stroke stroke2 = new BasicStroke(lineWidth, CAP_BUTT,
-                JOIN_ROUND, 0.0f, dash,
-                (float) (phase + DASH_LENGTH / viewScale));
-        g2.setStroke(stroke2);
-        g2.draw(shape);
+        g2.setStroke(new BasicStroke(DASH_WIDTH, CAP_BUTT,
+                JOIN_ROUND, 0.0f, MARCHING_ANTS_DASH,
+                phase + DASH_LENGTH));
+        g2.draw(outline);
+
+        g2.setTransform(imageTransform);
+
+        Rectangle paintedBounds = outline.getBounds();
+        if (lastPaintedBounds == null) {
+            lastPaintedBounds = paintedBounds;
+        } else {
+            // a full repaint might have painted other regions since
+            // the last tick, so this is a union to be on the safe side
+            lastPaintedBounds.add(paintedBounds);
+        }
+    }
+
+    /**
+     * Returns the outline of the given shape transformed into
+     * component space and flattened. It is recalculated only
+     * if the shape or the zoom/scroll position has changed.
+     */
+    private Path2D getComponentSpaceOutline(Shape shape) {
+        AffineTransform imToCo = view.getImageToComponentTransform();
+        if (coOutline == null || shape != coOutlineShape
+                || !imToCo.equals(coOutlineTransform)) {
+            PathIterator it = shape.getPathIterator(imToCo, OUTLINE_FLATNESS);
+            coOutline = new Path2D.Float(it.getWindingRule());
+            coOutline.append(it, false);
+            coOutlineShape = shape;
+            coOutlineTransform = new AffineTransform(imToCo);
+        }
+        return coOutline;
+    }
+
+    /**
+     * Called for the animation ticks: repaints only the region of the
+     * component where the ants were painted the last time or
+     * will be painted now, instead of the whole view.
+     */
+    private void repaintOutline() {
+        if (shape == null) {
+            return;
+        }
+        Rectangle outlineBounds = getComponentSpaceOutline(shape).getBounds();
+        Rectangle region = new Rectangle(outlineBounds);
+        if (lastPaintedBounds != null) {
+            region.add(lastPaintedBounds);
+        }
+        // after this repaint the old region contains no ants
+        lastPaintedBounds = outlineBounds;
+
+        region.grow(REPAINT_MARGIN, REPAINT_MARGIN);
+        view.repaint(region);
     }
 
     public void die() {
@@ -164,15 +237,6 @@ public class Selection {
     }
 
     private void repaint() {
-//        if(shape != null && !hidden) {
-//             Rectangle selBounds = shape.getBounds();
-//             view.updateRegion(selBounds.x, selBounds.y, selBounds.x + selBounds.width + 1, selBounds.y + selBounds.height + 1, 1);
-
-//             the above optimization is not enough, the previous positions should be also considered for the
-//             case when the selection is shrinking while dragging.
-//             But it does not seem to solve the pixel grid problem anyway
-//        }
-
         view.repaint();
     }
 
@@ -216,16 +280,23 @@ public class Selection {
     }
 
     public void modify(SelectionModifyType type, float amount) {
-        BasicStroke outlineStroke = new BasicStroke(amount);
-        Shape outlineShape = outlineStroke.createStrokedShape(shape);
+        Composition comp = view.getComp();
+        Shape backupShape = shape;
+        if (type.needsMask() || SelectionMask.shouldBeUsedFor(shape)) {
+            Canvas canvas = comp.getCanvas();
+            SelectionMask mask = SelectionMask.fromShape(shape,
+                    canvas.getImWidth(), canvas.getImHeight());
+            shape = type.modify(mask, amount).toShape();
+        } else {
+            BasicStroke outlineStroke = new BasicStroke(amount);
+            Shape outlineShape = outlineStroke.createStrokedShape(shape);
 
-        Area oldArea = new Area(shape);
-        Area outlineArea = new Area(outlineShape);
+            Area oldArea = new Area(shape);
+            Area outlineArea = new Area(outlineShape);
 
-        Shape backupShape = shape;
-        shape = type.modify(oldArea, outlineArea);
+            shape = type.modify(oldArea, outlineArea);
+        }
 
-        Composition comp = view.getComp();
         boolean notEmpty = clipToCanvasSize(comp);
         if (notEmpty) {
             SelectionChangeEdit edit = new SelectionChangeEdit(
@@ -238,7 +309,14 @@ public class Selection {
 
     public Shape transform(AffineTransform at) {
         Shape backupShape = shape;
-        shape = at.createTransformedShape(shape);
+        if (shape instanceof SelectionMask.Outline) {
+            // transform the coverage values, not only the outline,
+            // so that the soft edges are kept
+            SelectionMask mask = ((SelectionMask.Outline) shape).getMask();
+            shape = mask.transform(at).toShape();
+        } else {
+            shape = at.createTransformedShape(shape);
+        }
         return backupShape;
     }
 
@@ -108,7 +108,7 @@ public class SelectionBuilder {
 
         if (oldSelection != null) { // needs to combine the shapes
             Shape oldShape = oldSelection.getShape();
-            Shape combinedShape = selectionInteraction.combine(oldShape, newShape);
+            Shape combinedShape = selectionInteraction.combine(oldShape, newShape, comp.getCanvas());
 
             Rectangle newBounds = combinedShape.getBounds();
 
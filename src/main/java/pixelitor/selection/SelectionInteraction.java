@@ -16,6 +16,8 @@
  */
 package pixelitor.selection;
 
+import pixelitor.Canvas;
+
 import java.awt.Shape;
 import java.awt.geom.Area;
 
@@ -29,6 +31,11 @@ public enum SelectionInteraction {
         public Shape combine(Shape oldShape, Shape newShape) {
             return newShape;
         }
+
+        @Override
+        public SelectionMask combine(SelectionMask oldMask, SelectionMask newMask) {
+            return newMask;
+        }
     }, ADD("Add") {
         @Override
         public Shape combine(Shape oldShape, Shape newShape) {
@@ -37,6 +44,11 @@ public enum SelectionInteraction {
             oldArea.add(newArea);
             return oldArea;
         }
+
+        @Override
+        public SelectionMask combine(SelectionMask oldMask, SelectionMask newMask) {
+            return oldMask.add(newMask);
+        }
     }, SUBTRACT("Subtract") {
         @Override
         public Shape combine(Shape oldShape, Shape newShape) {
@@ -45,6 +57,11 @@ public enum SelectionInteraction {
             oldArea.subtract(newArea);
             return oldArea;
         }
+
+        @Override
+        public SelectionMask combine(SelectionMask oldMask, SelectionMask newMask) {
+            return oldMask.subtract(newMask);
+        }
     }, INTERSECT("Intersect") {
         @Override
         public Shape combine(Shape oldShape, Shape newShape) {
@@ -53,6 +70,11 @@ public enum SelectionInteraction {
             oldArea.intersect(newArea);
             return oldArea;
         }
+
+        @Override
+        public SelectionMask combine(SelectionMask oldMask, SelectionMask newMask) {
+            return oldMask.intersect(newMask);
+        }
     };
 
     private final String guiName;
@@ -66,6 +88,26 @@ public enum SelectionInteraction {
      */
     public abstract Shape combine(Shape oldShape, Shape newShape);
 
+    /**
+     * Calculates the combined mask from the existing mask and the new one
+     */
+    public abstract SelectionMask combine(SelectionMask oldMask, SelectionMask newMask);
+
+    /**
+     * Calculates the combined shape with vector geometry for simple shapes,
+     * and with {@link SelectionMask}s for complex shapes
+     */
+    public Shape combine(Shape oldShape, Shape newShape, Canvas canvas) {
+        if (this == REPLACE || !SelectionMask.shouldBeUsedFor(oldShape, newShape)) {
+            return combine(oldShape, newShape);
+        }
+        int width = canvas.getImWidth();
+        int height = canvas.getImHeight();
+        SelectionMask oldMask = SelectionMask.fromShape(oldShape, width, height);
+        SelectionMask newMask = SelectionMask.fromShape(newShape, width, height);
+        return combine(oldMask, newMask).toShape();
+    }
+
     @Override
     public String toString() {
         return guiName;
@@ -0,0 +1,934 @@
+/*
+ * Copyright 2019 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.selection;
+
+import pixelitor.ThreadPool;
+import pixelitor.utils.DistanceTransform;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.Arrays;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+
+/**
+ * A raster representation of a selection: an 8-bit coverage
+ * value for each pixel of the canvas, stored in tiles.
+ * Unlike the {@link java.awt.geom.Area} operations, the boolean
+ * operations, feathering, growing and shrinking are all linear
+ * in the number of pixels, independently of the shape complexity.
+ *
+ * The masks are immutable, every operation returns a new mask,
+ * and the unchanged tiles are shared.
+ * The vector outline is only calculated for the display
+ * of the marching ants and for the clipping of the brushes,
+ * see {@link #toShape()}.
+ */
+public class SelectionMask {
+    private static final int TILE_SHIFT = 6;
+    private static final int TILE_SIZE = 1 << TILE_SHIFT;
+    private static final int TILE_MASK = TILE_SIZE - 1;
+
+    // a pixel with at least this coverage is inside the outline
+    private static final int THRESHOLD = 128;
+
+    // shapes with more path segments are combined as masks
+    private static final int MAX_VECTOR_SEGMENTS = 500;
+
+    // the shared tile for the fully selected tiles,
+    // the fully unselected tiles are represented by null
+    private static final byte[] FULL_TILE = new byte[TILE_SIZE * TILE_SIZE];
+
+    static {
+        Arrays.fill(FULL_TILE, (byte) 0xFF);
+    }
+
+    private final int width;
+    private final int height;
+    private final int tilesX;
+    private final int tilesY;
+    private final byte[][] tiles;
+
+    // lazily calculated
+    private Rectangle bounds;
+    private Outline outline;
+
+    private SelectionMask(int width, int height) {
+        this.width = width;
+        this.height = height;
+        tilesX = (width + TILE_MASK) >> TILE_SHIFT;
+        tilesY = (height + TILE_MASK) >> TILE_SHIFT;
+        tiles = new byte[tilesX * tilesY][];
+    }
+
+    /**
+     * Returns true if the combination of the given shapes should
+     * be calculated with masks instead of vector geometry
+     */
+    public static boolean shouldBeUsedFor(Shape... shapes) {
+        int numSegments = 0;
+        for (Shape shape : shapes) {
+            if (shape instanceof Outline) {
+                return true;
+            }
+            PathIterator it = shape.getPathIterator(null);
+            while (!it.isDone()) {
+                numSegments++;
+                if (numSegments > MAX_VECTOR_SEGMENTS) {
+                    return true;
+                }
+                it.next();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Rasterizes the given shape with antialiasing
+     * into a mask of the given (canvas) size
+     */
+    public static SelectionMask fromShape(Shape shape, int width, int height) {
+        if (shape instanceof Outline) {
+            SelectionMask mask = ((Outline) shape).getMask();
+            if (mask.width == width && mask.height == height) {
+                return mask;
+            }
+            // keep the soft coverage even if the canvas size changed
+            return mask.withCanvasSize(width, height);
+        }
+
+        SelectionMask mask = new SelectionMask(width, height);
+        Rectangle shapeBounds = shape.getBounds().intersection(new Rectangle(0, 0, width, height));
+        if (shapeBounds.isEmpty()) {
+            return mask;
+        }
+
+        // rasterize the tiles touched by the shape bounds
+        int firstTileX = shapeBounds.x >> TILE_SHIFT;
+        int firstTileY = shapeBounds.y >> TILE_SHIFT;
+        int lastTileX = (shapeBounds.x + shapeBounds.width - 1) >> TILE_SHIFT;
+        int lastTileY = (shapeBounds.y + shapeBounds.height - 1) >> TILE_SHIFT;
+        int regionX = firstTileX << TILE_SHIFT;
+        int regionY = firstTileY << TILE_SHIFT;
+        int regionWidth = (lastTileX + 1 - firstTileX) << TILE_SHIFT;
+        int regionHeight = (lastTileY + 1 - firstTileY) << TILE_SHIFT;
+
+        BufferedImage img = new BufferedImage(regionWidth, regionHeight, TYPE_BYTE_GRAY);
+        Graphics2D g = img.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.translate(-regionX, -regionY);
+        g.setColor(Color.WHITE);
+        g.fill(shape);
+        g.dispose();
+        byte[] data = ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
+
+        for (int ty = firstTileY; ty <= lastTileY; ty++) {
+            for (int tx = firstTileX; tx <= lastTileX; tx++) {
+                byte[] tile = new byte[TILE_SIZE * TILE_SIZE];
+                int offset = ((ty - firstTileY) << TILE_SHIFT) * regionWidth
+                        + ((tx - firstTileX) << TILE_SHIFT);
+                for (int row = 0; row < TILE_SIZE; row++) {
+                    System.arraycopy(data, offset + row * regionWidth,
+                            tile, row << TILE_SHIFT, TILE_SIZE);
+                }
+                mask.tiles[ty * mask.tilesX + tx] = classify(tile);
+            }
+        }
+        mask.clearOutsideCanvas();
+        return mask;
+    }
+
+    /**
+     * Replaces the tiles with uniform coverage with the shared representations
+     */
+    private static byte[] classify(byte[] tile) {
+        byte first = tile[0];
+        if (first != 0 && first != (byte) 0xFF) {
+            return tile;
+        }
+        for (byte b : tile) {
+            if (b != first) {
+                return tile;
+            }
+        }
+        return first == 0 ? null : FULL_TILE;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the coverage (0-255) at the given canvas coordinates
+     */
+    public int getCoverage(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return 0;
+        }
+        byte[] tile = tiles[(y >> TILE_SHIFT) * tilesX + (x >> TILE_SHIFT)];
+        if (tile == null) {
+            return 0;
+        }
+        return tile[((y & TILE_MASK) << TILE_SHIFT) + (x & TILE_MASK)] & 0xFF;
+    }
+
+    public boolean isEmpty() {
+        return getBounds().isEmpty();
+    }
+
+    /**
+     * Returns the bounds of the pixels with nonzero coverage
+     */
+    public Rectangle getBounds() {
+        if (bounds == null) {
+            bounds = calcBounds();
+        }
+        return new Rectangle(bounds);
+    }
+
+    private Rectangle calcBounds() {
+        int minX = width;
+        int minY = height;
+        int maxX = -1;
+        int maxY = -1;
+        for (int ty = 0; ty < tilesY; ty++) {
+            for (int tx = 0; tx < tilesX; tx++) {
+                byte[] tile = tiles[ty * tilesX + tx];
+                if (tile == null) {
+                    continue;
+                }
+                int tileX = tx << TILE_SHIFT;
+                int tileY = ty << TILE_SHIFT;
+                for (int row = 0; row < TILE_SIZE; row++) {
+                    int offset = row << TILE_SHIFT;
+                    for (int col = 0; col < TILE_SIZE; col++) {
+                        if (tile[offset + col] != 0) {
+                            minX = Math.min(minX, tileX + col);
+                            maxX = Math.max(maxX, tileX + col);
+                            minY = Math.min(minY, tileY + row);
+                            maxY = Math.max(maxY, tileY + row);
+                        }
+                    }
+                }
+            }
+        }
+        if (maxX < 0) {
+            return new Rectangle(0, 0, 0, 0);
+        }
+        // the tiles at the edges can extend beyond the canvas
+        maxX = Math.min(maxX, width - 1);
+        maxY = Math.min(maxY, height - 1);
+        return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+    }
+
+    public SelectionMask add(SelectionMask other) {
+        return combine(other, CombineOp.ADD);
+    }
+
+    public SelectionMask subtract(SelectionMask other) {
+        return combine(other, CombineOp.SUBTRACT);
+    }
+
+    public SelectionMask intersect(SelectionMask other) {
+        return combine(other, CombineOp.INTERSECT);
+    }
+
+    private enum CombineOp {
+        ADD {
+            @Override
+            byte[] combineSpecial(byte[] a, byte[] b) {
+                if (a == null) {
+                    return b;
+                } else if (b == null) {
+                    return a;
+                } else if (a == FULL_TILE || b == FULL_TILE) {
+                    return FULL_TILE;
+                }
+                return NOT_SPECIAL;
+            }
+
+            @Override
+            int combine(int a, int b) {
+                return Math.max(a, b);
+            }
+        }, SUBTRACT {
+            @Override
+            byte[] combineSpecial(byte[] a, byte[] b) {
+                if (a == null || b == FULL_TILE) {
+                    return null;
+                } else if (b == null) {
+                    return a;
+                }
+                return NOT_SPECIAL;
+            }
+
+            @Override
+            int combine(int a, int b) {
+                return Math.min(a, 255 - b);
+            }
+        }, INTERSECT {
+            @Override
+            byte[] combineSpecial(byte[] a, byte[] b) {
+                if (a == null || b == null) {
+                    return null;
+                } else if (a == FULL_TILE) {
+                    return b;
+                } else if (b == FULL_TILE) {
+                    return a;
+                }
+                return NOT_SPECIAL;
+            }
+
+            @Override
+            int combine(int a, int b) {
+                return Math.min(a, b);
+            }
+        };
+
+        // marker for the tile combinations that must be calculated per pixel
+        private static final byte[] NOT_SPECIAL = new byte[0];
+
+        /**
+         * Combines the empty or full tiles without looking at the pixels
+         */
+        abstract byte[] combineSpecial(byte[] a, byte[] b);
+
+        abstract int combine(int a, int b);
+    }
+
+    private SelectionMask combine(SelectionMask other, CombineOp op) {
+        checkSameSize(other);
+        SelectionMask result = new SelectionMask(width, height);
+        ThreadPool.processRowBlocks(tilesY, (fromTY, toTY) -> {
+            for (int i = fromTY * tilesX; i < toTY * tilesX; i++) {
+                byte[] a = tiles[i];
+                byte[] b = other.tiles[i];
+                byte[] special = op.combineSpecial(a, b);
+                if (special != CombineOp.NOT_SPECIAL) {
+                    result.tiles[i] = special;
+                    continue;
+                }
+                byte[] tile = new byte[TILE_SIZE * TILE_SIZE];
+                for (int j = 0; j < tile.length; j++) {
+                    tile[j] = (byte) op.combine(a[j] & 0xFF, b[j] & 0xFF);
+                }
+                result.tiles[i] = classify(tile);
+            }
+        }, ProgressTracker.NULL_TRACKER);
+        return result;
+    }
+
+    private void checkSameSize(SelectionMask other) {
+        if (other.width != width || other.height != height) {
+            throw new IllegalArgumentException(String.format(
+                    "size mismatch: %dx%d and %dx%d",
+                    width, height, other.width, other.height));
+        }
+    }
+
+    public SelectionMask invert() {
+        SelectionMask result = new SelectionMask(width, height);
+        for (int i = 0; i < tiles.length; i++) {
+            byte[] tile = tiles[i];
+            if (tile == null) {
+                result.tiles[i] = FULL_TILE;
+            } else if (tile != FULL_TILE) {
+                byte[] inverted = new byte[tile.length];
+                for (int j = 0; j < tile.length; j++) {
+                    inverted[j] = (byte) ~tile[j];
+                }
+                result.tiles[i] = inverted;
+            }
+        }
+        // the parts of the edge tiles outside the canvas
+        // must remain unselected
+        result.clearOutsideCanvas();
+        return result;
+    }
+
+    private void clearOutsideCanvas() {
+        int usedInLastColumn = width - ((tilesX - 1) << TILE_SHIFT);
+        int usedInLastRow = height - ((tilesY - 1) << TILE_SHIFT);
+        for (int ty = 0; ty < tilesY; ty++) {
+            for (int tx = 0; tx < tilesX; tx++) {
+                int usedCols = tx == tilesX - 1 ? usedInLastColumn : TILE_SIZE;
+                int usedRows = ty == tilesY - 1 ? usedInLastRow : TILE_SIZE;
+                if (usedCols == TILE_SIZE && usedRows == TILE_SIZE) {
+                    continue;
+                }
+                int i = ty * tilesX + tx;
+                byte[] tile = tiles[i];
+                if (tile == null) {
+                    continue;
+                }
+                if (tile == FULL_TILE) {
+                    tile = FULL_TILE.clone();
+                }
+                for (int row = 0; row < TILE_SIZE; row++) {
+                    int from = row < usedRows ? usedCols : 0;
+                    Arrays.fill(tile, (row << TILE_SHIFT) + from, (row + 1) << TILE_SHIFT, (byte) 0);
+                }
+                tiles[i] = classify(tile);
+            }
+        }
+    }
+
+    /**
+     * Returns a new mask (with the same canvas size) with the given transform
+     * applied to the coverage values, which are resampled bilinearly.
+     * Integer translations move the coverage values exactly.
+     */
+    public SelectionMask transform(AffineTransform at) {
+        if (at.isIdentity() || isEmpty()) {
+            return this;
+        }
+        AffineTransform inverse;
+        try {
+            inverse = at.createInverse();
+        } catch (NoninvertibleTransformException e) {
+            // everything is transformed into a zero area
+            return new SelectionMask(width, height);
+        }
+
+        Rectangle transformedBounds = at.createTransformedShape(getBounds()).getBounds();
+        transformedBounds.grow(1, 1);
+        Rectangle region = transformedBounds.intersection(new Rectangle(0, 0, width, height));
+        if (region.isEmpty()) {
+            return new SelectionMask(width, height);
+        }
+
+        int regionWidth = region.width;
+        int[] values = new int[regionWidth * region.height];
+        ThreadPool.processRowBlocks(region.height, (fromRow, toRow) -> {
+            double[] point = new double[2];
+            for (int row = fromRow; row < toRow; row++) {
+                for (int col = 0; col < regionWidth; col++) {
+                    // sample at the pixel centers
+                    point[0] = region.x + col + 0.5;
+                    point[1] = region.y + row + 0.5;
+                    inverse.transform(point, 0, point, 0, 1);
+                    values[col + row * regionWidth] = sampleBilinear(
+                            point[0] - 0.5, point[1] - 0.5);
+                }
+            }
+        }, ProgressTracker.NULL_TRACKER);
+
+        return new SelectionMask(width, height).withReplacedRegion(region, values);
+    }
+
+    private int sampleBilinear(double x, double y) {
+        int x0 = (int) Math.floor(x);
+        int y0 = (int) Math.floor(y);
+        double fx = x - x0;
+        double fy = y - y0;
+        double top = (1 - fx) * getCoverage(x0, y0) + fx * getCoverage(x0 + 1, y0);
+        double bottom = (1 - fx) * getCoverage(x0, y0 + 1) + fx * getCoverage(x0 + 1, y0 + 1);
+        return (int) ((1 - fy) * top + fy * bottom + 0.5);
+    }
+
+    /**
+     * Returns a mask with the given canvas size, and with the same
+     * coverage values where the two canvases overlap
+     */
+    private SelectionMask withCanvasSize(int newWidth, int newHeight) {
+        SelectionMask result = new SelectionMask(newWidth, newHeight);
+        Rectangle region = getBounds().intersection(new Rectangle(0, 0, newWidth, newHeight));
+        if (region.isEmpty()) {
+            return result;
+        }
+        int[] values = new int[region.width * region.height];
+        for (int y = 0; y < region.height; y++) {
+            for (int x = 0; x < region.width; x++) {
+                values[x + y * region.width] = getCoverage(region.x + x, region.y + y);
+            }
+        }
+        return result.withReplacedRegion(region, values);
+    }
+
+    /**
+     * Returns a new mask where the pixels within the given
+     * distance from the selected area are also selected
+     */
+    public SelectionMask grow(float radius) {
+        if (isEmpty() || radius <= 0) {
+            return this;
+        }
+        Rectangle region = getBounds();
+        int margin = (int) Math.ceil(radius) + 1;
+        region.grow(margin, margin);
+        region = region.intersection(new Rectangle(0, 0, width, height));
+
+        // the distances of the unselected pixels from the selected ones
+        float[] grid = createThresholdGrid(region, true);
+        DistanceTransform.squaredDistances(grid, region.width, region.height);
+
+        int[] values = new int[grid.length];
+        for (int i = 0; i < grid.length; i++) {
+            float coverage = radius + 1 - (float) Math.sqrt(grid[i]);
+            values[i] = toByteCoverage(coverage);
+        }
+        return withRegionValues(region, values, true);
+    }
+
+    /**
+     * Returns a new mask where the pixels within the given distance
+     * from the unselected area are also unselected. The area outside
+     * the canvas counts as unselected.
+     */
+    public SelectionMask shrink(float radius) {
+        if (isEmpty() || radius <= 0) {
+            return this;
+        }
+        Rectangle region = getBounds();
+        // the region has a one pixel unselected border,
+        // even outside the canvas
+        region.grow(1, 1);
+
+        // the distances of the selected pixels from the unselected ones
+        float[] grid = createThresholdGrid(region, false);
+        DistanceTransform.squaredDistances(grid, region.width, region.height);
+
+        int[] values = new int[grid.length];
+        for (int i = 0; i < grid.length; i++) {
+            float coverage = (float) Math.sqrt(grid[i]) - radius;
+            values[i] = toByteCoverage(coverage);
+        }
+        return withRegionValues(region, values, false);
+    }
+
+    private static int toByteCoverage(float coverage) {
+        if (coverage <= 0) {
+            return 0;
+        } else if (coverage >= 1) {
+            return 255;
+        }
+        return (int) (coverage * 255 + 0.5f);
+    }
+
+    /**
+     * Returns the distance transform input for the given region,
+     * where the features are either the selected or the unselected pixels
+     */
+    private float[] createThresholdGrid(Rectangle region, boolean selectedAreFeatures) {
+        float[] grid = new float[region.width * region.height];
+        for (int y = 0; y < region.height; y++) {
+            for (int x = 0; x < region.width; x++) {
+                boolean selected = getCoverage(region.x + x, region.y + y) >= THRESHOLD;
+                grid[x + y * region.width] = selected == selectedAreFeatures ? 0 : DistanceTransform.FAR;
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Returns a new mask where the pixels of the given region are
+     * combined with the given values, either with max or with min
+     */
+    private SelectionMask withRegionValues(Rectangle region, int[] values, boolean max) {
+        SelectionMask result = new SelectionMask(width, height);
+        System.arraycopy(tiles, 0, result.tiles, 0, tiles.length);
+
+        Rectangle canvasRegion = region.intersection(new Rectangle(0, 0, width, height));
+        if (canvasRegion.isEmpty()) {
+            return result;
+        }
+        int firstTileX = canvasRegion.x >> TILE_SHIFT;
+        int firstTileY = canvasRegion.y >> TILE_SHIFT;
+        int lastTileX = (canvasRegion.x + canvasRegion.width - 1) >> TILE_SHIFT;
+        int lastTileY = (canvasRegion.y + canvasRegion.height - 1) >> TILE_SHIFT;
+        for (int ty = firstTileY; ty <= lastTileY; ty++) {
+            for (int tx = firstTileX; tx <= lastTileX; tx++) {
+                int i = ty * tilesX + tx;
+                byte[] orig = tiles[i];
+                byte[] tile = orig == null ? new byte[TILE_SIZE * TILE_SIZE] : orig.clone();
+                for (int row = 0; row < TILE_SIZE; row++) {
+                    int y = (ty << TILE_SHIFT) + row;
+                    if (y < canvasRegion.y || y >= canvasRegion.y + canvasRegion.height) {
+                        continue;
+                    }
+                    for (int col = 0; col < TILE_SIZE; col++) {
+                        int x = (tx << TILE_SHIFT) + col;
+                        if (x < canvasRegion.x || x >= canvasRegion.x + canvasRegion.width) {
+                            continue;
+                        }
+                        int value = values[(x - region.x) + (y - region.y) * region.width];
+                        int index = (row << TILE_SHIFT) + col;
+                        int current = tile[index] & 0xFF;
+                        tile[index] = (byte) (max ? Math.max(current, value) : Math.min(current, value));
+                    }
+                }
+                result.tiles[i] = classify(tile);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a new mask with soft edges: the coverage values are
+     * blurred so that the transition is about twice the given radius wide.
+     */
+    public SelectionMask feather(float radius) {
+        if (isEmpty() || radius <= 0) {
+            return this;
+        }
+        // three box blurs approximate a gaussian blur
+        int boxRadius = Math.max(1, Math.round(radius / 3.0f));
+        int margin = 3 * boxRadius;
+
+        Rectangle region = getBounds();
+        region.grow(margin, margin);
+        region = region.intersection(new Rectangle(0, 0, width, height));
+        int regionWidth = region.width;
+        int regionHeight = region.height;
+
+        int[] values = new int[regionWidth * regionHeight];
+        for (int y = 0; y < regionHeight; y++) {
+            for (int x = 0; x < regionWidth; x++) {
+                values[x + y * regionWidth] = getCoverage(region.x + x, region.y + y);
+            }
+        }
+
+        int[] tmp = new int[values.length];
+        for (int i = 0; i < 3; i++) {
+            boxBlur(values, tmp, regionWidth, regionHeight, boxRadius);
+            boxBlur(tmp, values, regionHeight, regionWidth, boxRadius);
+        }
+
+        SelectionMask result = new SelectionMask(width, height);
+        System.arraycopy(tiles, 0, result.tiles, 0, tiles.length);
+        return result.withReplacedRegion(region, values);
+    }
+
+    /**
+     * A box blur of the rows that also transposes the result.
+     * The pixels outside the region count as unselected.
+     */
+    private static void boxBlur(int[] in, int[] out, int width, int height, int radius) {
+        int windowSize = 2 * radius + 1;
+        for (int y = 0; y < height; y++) {
+            int offset = y * width;
+            int sum = 0;
+            for (int x = 0; x < radius && x < width; x++) {
+                sum += in[offset + x];
+            }
+            for (int x = 0; x < width; x++) {
+                int added = x + radius;
+                if (added < width) {
+                    sum += in[offset + added];
+                }
+                int removed = x - radius - 1;
+                if (removed >= 0) {
+                    sum -= in[offset + removed];
+                }
+                out[y + x * height] = (sum + windowSize / 2) / windowSize;
+            }
+        }
+    }
+
+    /**
+     * Sets the pixels of the given region to the given values.
+     * Can be called only on a newly created mask.
+     */
+    private SelectionMask withReplacedRegion(Rectangle region, int[] values) {
+        int firstTileX = region.x >> TILE_SHIFT;
+        int firstTileY = region.y >> TILE_SHIFT;
+        int lastTileX = (region.x + region.width - 1) >> TILE_SHIFT;
+        int lastTileY = (region.y + region.height - 1) >> TILE_SHIFT;
+        for (int ty = firstTileY; ty <= lastTileY; ty++) {
+            for (int tx = firstTileX; tx <= lastTileX; tx++) {
+                int i = ty * tilesX + tx;
+                byte[] orig = tiles[i];
+                byte[] tile = orig == null ? new byte[TILE_SIZE * TILE_SIZE] : orig.clone();
+                for (int row = 0; row < TILE_SIZE; row++) {
+                    int y = (ty << TILE_SHIFT) + row;
+                    if (y < region.y || y >= region.y + region.height) {
+                        continue;
+                    }
+                    for (int col = 0; col < TILE_SIZE; col++) {
+                        int x = (tx << TILE_SHIFT) + col;
+                        if (x < region.x || x >= region.x + region.width) {
+                            continue;
+                        }
+                        tile[(row << TILE_SHIFT) + col] =
+                                (byte) values[(x - region.x) + (y - region.y) * region.width];
+                    }
+                }
+                tiles[i] = classify(tile);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Copies the pixels of the source image into the destination image
+     * where this mask is selected, and blends them at the partially
+     * selected pixels. The top-left corner of the source is at
+     * (srcX, srcY) and the top-left corner of the destination is at
+     * (destX, destY) in canvas coordinates. Both images must be ARGB
+     * (not premultiplied).
+     */
+    public void blend(BufferedImage src, int srcX, int srcY,
+                      BufferedImage dest, int destX, int destY) {
+        Rectangle area = getBounds()
+                .intersection(new Rectangle(srcX, srcY, src.getWidth(), src.getHeight()))
+                .intersection(new Rectangle(destX, destY, dest.getWidth(), dest.getHeight()));
+        if (area.isEmpty()) {
+            return;
+        }
+        int areaWidth = area.width;
+        ThreadPool.processRowBlocks(area.height, (fromRow, toRow) -> {
+            int[] srcLine = new int[areaWidth];
+            int[] destLine = new int[areaWidth];
+            for (int row = fromRow; row < toRow; row++) {
+                int y = area.y + row;
+                src.getRGB(area.x - srcX, y - srcY, areaWidth, 1, srcLine, 0, areaWidth);
+                dest.getRGB(area.x - destX, y - destY, areaWidth, 1, destLine, 0, areaWidth);
+                for (int i = 0; i < areaWidth; i++) {
+                    int coverage = getCoverage(area.x + i, y);
+                    if (coverage == 255) {
+                        destLine[i] = srcLine[i];
+                    } else if (coverage != 0) {
+                        destLine[i] = mix(destLine[i], srcLine[i], coverage);
+                    }
+                }
+                dest.setRGB(area.x - destX, y - destY, areaWidth, 1, destLine, 0, areaWidth);
+            }
+        }, ProgressTracker.NULL_TRACKER);
+    }
+
+    /**
+     * Interpolates between two non-premultiplied ARGB colors
+     * in premultiplied space, t is in the 0-255 range.
+     */
+    private static int mix(int rgb1, int rgb2, int t) {
+        int a1 = (rgb1 >>> 24) * (255 - t);
+        int a2 = (rgb2 >>> 24) * t;
+        int a = a1 + a2;
+        if (a == 0) {
+            return 0;
+        }
+        int r = ((((rgb1 >> 16) & 0xFF) * a1 + ((rgb2 >> 16) & 0xFF) * a2) + a / 2) / a;
+        int g = ((((rgb1 >> 8) & 0xFF) * a1 + ((rgb2 >> 8) & 0xFF) * a2) + a / 2) / a;
+        int b = (((rgb1 & 0xFF) * a1 + (rgb2 & 0xFF) * a2) + a / 2) / a;
+        return ((a + 127) / 255) << 24 | r << 16 | g << 8 | b;
+    }
+
+    /**
+     * Returns the vector outline of the pixels with at least half coverage,
+     * which also gives access to this mask.
+     */
+    public Shape toShape() {
+        if (outline == null) {
+            outline = new Outline(this, traceOutline());
+        }
+        return outline;
+    }
+
+    // the directions of the boundary edges
+    private static final int EAST = 1;
+    private static final int SOUTH = 2;
+    private static final int WEST = 4;
+    private static final int NORTH = 8;
+
+    /**
+     * Traces the boundaries between the selected and unselected
+     * pixels into closed polygons, with the selected area always
+     * on the right side. The collinear edges are merged.
+     */
+    private Path2D traceOutline() {
+        Path2D path = new Path2D.Float(Path2D.WIND_EVEN_ODD);
+        Rectangle b = getBounds();
+        if (b.isEmpty()) {
+            return path;
+        }
+
+        // the outgoing edges at each grid vertex of the bounds
+        int vertexCols = b.width + 1;
+        byte[] edges = new byte[vertexCols * (b.height + 1)];
+        for (int y = b.y; y < b.y + b.height; y++) {
+            for (int x = b.x; x < b.x + b.width; x++) {
+                if (!isSelected(x, y)) {
+                    continue;
+                }
+                int vx = x - b.x;
+                int vy = y - b.y;
+                if (!isSelected(x, y - 1)) { // top edge, going east
+                    edges[vx + vy * vertexCols] |= EAST;
+                }
+                if (!isSelected(x + 1, y)) { // right edge, going south
+                    edges[vx + 1 + vy * vertexCols] |= SOUTH;
+                }
+                if (!isSelected(x, y + 1)) { // bottom edge, going west
+                    edges[vx + 1 + (vy + 1) * vertexCols] |= WEST;
+                }
+                if (!isSelected(x - 1, y)) { // left edge, going north
+                    edges[vx + (vy + 1) * vertexCols] |= NORTH;
+                }
+            }
+        }
+
+        for (int start = 0; start < edges.length; start++) {
+            while (edges[start] != 0) {
+                int vx = start % vertexCols;
+                int vy = start / vertexCols;
+                path.moveTo(b.x + vx, b.y + vy);
+
+                int dir = Integer.lowestOneBit(edges[start]);
+                int vertex = start;
+                int prevDir = 0;
+                while (true) {
+                    edges[vertex] &= ~dir;
+                    if (dir != prevDir && prevDir != 0) {
+                        path.lineTo(b.x + vx, b.y + vy);
+                    }
+                    switch (dir) {
+                        case EAST:
+                            vx++;
+                            break;
+                        case SOUTH:
+                            vy++;
+                            break;
+                        case WEST:
+                            vx--;
+                            break;
+                        default:
+                            vy--;
+                            break;
+                    }
+                    vertex = vx + vy * vertexCols;
+                    prevDir = dir;
+                    if (edges[vertex] == 0) {
+                        break; // back at the start
+                    }
+                    dir = chooseNextDir(edges[vertex], dir);
+                }
+                path.closePath();
+            }
+        }
+        return path;
+    }
+
+    /**
+     * At a vertex with two outgoing edges (where two selected pixels
+     * touch only diagonally) the right turn is preferred, so that
+     * the polygons don't cross each other
+     */
+    private static int chooseNextDir(int available, int dir) {
+        int right = dir == NORTH ? EAST : dir << 1;
+        if ((available & right) != 0) {
+            return right;
+        }
+        if ((available & dir) != 0) {
+            return dir;
+        }
+        return dir == EAST ? NORTH : dir >> 1;
+    }
+
+    private boolean isSelected(int x, int y) {
+        return getCoverage(x, y) >= THRESHOLD;
+    }
+
+    /**
+     * The vector outline of a {@link SelectionMask}. It can be used as
+     * any other {@link Shape}, and the selection operations use its mask
+     * instead of the vector geometry.
+     */
+    public static class Outline implements Shape {
+        private final SelectionMask mask;
+        private final Path2D path;
+
+        private Outline(SelectionMask mask, Path2D path) {
+            this.mask = mask;
+            this.path = path;
+        }
+
+        public SelectionMask getMask() {
+            return mask;
+        }
+
+        // the bounds also include the partially selected
+        // pixels outside the outline, so that they are
+        // also included in the selected part of the image
+
+        @Override
+        public Rectangle getBounds() {
+            return mask.getBounds();
+        }
+
+        @Override
+        public Rectangle2D getBounds2D() {
+            return mask.getBounds();
+        }
+
+        @Override
+        public boolean contains(double x, double y) {
+            return path.contains(x, y);
+        }
+
+        @Override
+        public boolean contains(Point2D p) {
+            return path.contains(p);
+        }
+
+        @Override
+        public boolean intersects(double x, double y, double w, double h) {
+            return path.intersects(x, y, w, h);
+        }
+
+        @Override
+        public boolean intersects(Rectangle2D r) {
+            return path.intersects(r);
+        }
+
+        @Override
+        public boolean contains(double x, double y, double w, double h) {
+            return path.contains(x, y, w, h);
+        }
+
+        @Override
+        public boolean contains(Rectangle2D r) {
+            return path.contains(r);
+        }
+
+        @Override
+        public PathIterator getPathIterator(AffineTransform at) {
+            return path.getPathIterator(at);
+        }
+
+        @Override
+        public PathIterator getPathIterator(AffineTransform at, double flatness) {
+            return path.getPathIterator(at, flatness);
+        }
+    }
+}
@@ -32,29 +32,69 @@ public enum SelectionModifyType {
             previous.add(outlineShape);
             return previous;
         }
+
+        @Override
+        public SelectionMask modify(SelectionMask previous, float amount) {
+            return previous.grow(amount / 2);
+        }
     }, CONTRACT("Contract") {
         @Override
         public Shape modify(Area previous, Area outlineShape) {
             previous.subtract(outlineShape);
             return previous;
         }
+
+        @Override
+        public SelectionMask modify(SelectionMask previous, float amount) {
+            return previous.shrink(amount / 2);
+        }
     }, BORDER("Border") {
         @Override
         public Shape modify(Area previous, Area outlineShape) {
             return outlineShape;
         }
+
+        @Override
+        public SelectionMask modify(SelectionMask previous, float amount) {
+            return previous.grow(amount / 2).subtract(previous.shrink(amount / 2));
+        }
     }, BORDER_OUT("Border Outwards Only") {
         @Override
         public Shape modify(Area previous, Area outlineShape) {
             outlineShape.subtract(previous);
             return outlineShape;
         }
+
+        @Override
+        public SelectionMask modify(SelectionMask previous, float amount) {
+            return previous.grow(amount / 2).subtract(previous);
+        }
     }, BORDER_IN("Border Inwards Only") {
         @Override
         public Shape modify(Area previous, Area outlineShape) {
             previous.intersect(outlineShape);
             return previous;
         }
+
+        @Override
+        public SelectionMask modify(SelectionMask previous, float amount) {
+            return previous.subtract(previous.shrink(amount / 2));
+        }
+    }, FEATHER("Feather") {
+        @Override
+        public Shape modify(Area previous, Area outlineShape) {
+            throw new IllegalStateException("feathering needs a mask");
+        }
+
+        @Override
+        public SelectionMask modify(SelectionMask previous, float amount) {
+            return previous.feather(amount);
+        }
+
+        @Override
+        public boolean needsMask() {
+            return true;
+        }
     };
 
     private final String guiName;
@@ -69,6 +109,19 @@ public enum SelectionModifyType {
      */
     public abstract Shape modify(Area previous, Area outlineShape);
 
+    /**
+     * The raster equivalent of the vector modification, where
+     * the stroked outline has the given amount as its width.
+     */
+    public abstract SelectionMask modify(SelectionMask previous, float amount);
+
+    /**
+     * Returns true if this modification has no vector equivalent
+     */
+    public boolean needsMask() {
+        return false;
+    }
+
     public static EnumParam<SelectionModifyType> asParam() {
         return new EnumParam<>("Type", SelectionModifyType.class);
     }
@@ -330,18 +330,26 @@ public abstract class AbstractBrushTool extends Tool {
      * Called from mousePressed, mouseDragged
      */
     private void newMousePoint(Drawable dr, PPoint p, boolean lineConnect) {
-        if (graphics == null) { // a new brush stroke has to be initialized
-            drawDestination.prepareBrushStroke(dr);
-            graphics = createGraphicsForNewBrushStroke(dr);
-            graphics.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
-
-            if (lineConnect) {
-                brush.lineConnectTo(p);
+        // all the regions painted for one mouse event
+        // (by all brushes) are repainted together
+        Composition comp = dr.getComp();
+        comp.startRegionUpdateBatch();
+        try {
+            if (graphics == null) { // a new brush stroke has to be initialized
+                drawDestination.prepareBrushStroke(dr);
+                graphics = createGraphicsForNewBrushStroke(dr);
+                graphics.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
+
+                if (lineConnect) {
+                    brush.lineConnectTo(p);
+                } else {
+                    brush.startAt(p);
+                }
             } else {
-                brush.startAt(p);
+                brush.continueTo(p);
             }
-        } else {
-            brush.continueTo(p);
+        } finally {
+            comp.finishRegionUpdateBatch();
         }
     }
 
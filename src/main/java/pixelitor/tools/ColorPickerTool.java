@@ -17,6 +17,7 @@
 
 package pixelitor.tools;
 
+import pixelitor.Composition;
 import pixelitor.gui.View;
 import pixelitor.layers.Drawable;
 import pixelitor.tools.util.PMouseEvent;
@@ -74,7 +75,7 @@ public class ColorPickerTool extends Tool {
         int x = (int) e.getImX();
         int y = (int) e.getImY();
 
-        BufferedImage img;
+        int rgb;
         boolean isGray = false;
         if (sampleLayerOnly.isSelected()) {
             if (!view.activeIsDrawable()) {
@@ -82,31 +83,40 @@ public class ColorPickerTool extends Tool {
             }
 
             Drawable dr = view.getComp().getActiveDrawableOrThrow();
-            img = dr.getImage();
+            BufferedImage img = dr.getImage();
             isGray = img.getType() == TYPE_BYTE_GRAY;
 
-            x -= dr.getTX();
-            y -= dr.getTY();
+            int imgX = x - dr.getTX();
+            int imgY = y - dr.getTY();
+            if (!isInside(img, imgX, imgY)) {
+                return;
+            }
+            rgb = img.getRGB(imgX, imgY);
+            x = imgX;
+            y = imgY;
         } else {
-            img = view.getComp().getCompositeImage();
+            Composition comp = view.getComp();
+            if (!comp.getCanvas().getImBounds().contains(x, y)) {
+                return;
+            }
+            // doesn't recalculate the whole composite image
+            rgb = comp.getCompositePixel(x, y);
         }
-        int imgWidth = img.getWidth();
-        int imgHeight = img.getHeight();
-
-        if (x < imgWidth && y < imgHeight && x >= 0 && y >= 0) {
-            int rgb = img.getRGB(x, y);
 
-            showColorInStatusBar(x, y, rgb, isGray);
+        showColorInStatusBar(x, y, rgb, isGray);
 
-            Color sampledColor = new Color(rgb);
-            if (selectBackground) {
-                setBGColor(sampledColor);
-            } else {
-                setFGColor(sampledColor);
-            }
+        Color sampledColor = new Color(rgb);
+        if (selectBackground) {
+            setBGColor(sampledColor);
+        } else {
+            setFGColor(sampledColor);
         }
     }
 
+    private static boolean isInside(BufferedImage img, int x, int y) {
+        return x < img.getWidth() && y < img.getHeight() && x >= 0 && y >= 0;
+    }
+
     private static void showColorInStatusBar(int x, int y, int rgb, boolean isGray) {
         int a = (rgb >>> 24) & 0xFF;
         int r = (rgb >>> 16) & 0xFF;
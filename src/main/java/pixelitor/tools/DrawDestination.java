@@ -19,6 +19,7 @@ package pixelitor.tools;
 
 import pixelitor.layers.Drawable;
 import pixelitor.utils.ImageUtils;
+import pixelitor.utils.debug.PerformanceStats;
 import pixelitor.utils.test.Assertions;
 
 import java.awt.Composite;
@@ -69,7 +70,11 @@ public enum DrawDestination {
 
             assert Assertions.checkRasterMinimum(image);
 
+            long startTime = System.nanoTime();
+            long startAllocated = PerformanceStats.getAllocatedBytes();
             copyBeforeStart = ImageUtils.copyImage(image);
+            PerformanceStats.record(PerformanceStats.HISTORY_SNAPSHOT, startTime,
+                    startAllocated, (long) image.getWidth() * image.getHeight());
         }
 
         @Override
@@ -19,6 +19,7 @@ package pixelitor.tools;
 
 import pixelitor.Composition;
 import pixelitor.gui.OpenComps;
+import pixelitor.gui.RepaintScheduler;
 import pixelitor.gui.View;
 import pixelitor.tools.crop.CropTool;
 import pixelitor.tools.gradient.GradientTool;
@@ -175,6 +176,9 @@ public class Tools {
             lastEvent = new PMouseEvent(e, view);
             currentTool.handlerChain.handleMousePressed(lastEvent);
             mouseDown = true;
+            // only if the press was handled normally, otherwise
+            // the release might never arrive to finish the drag
+            RepaintScheduler.dragStarted();
         }
 
         public static void mouseReleased(MouseEvent e, View view) {
@@ -183,11 +187,17 @@ public class Tools {
                 // (for example a combo box was open when it happened)
                 // and the recovery in mouseDragged didn't happen because
                 // it was a click
+                RepaintScheduler.dragFinished();
                 return;
             }
             lastEvent = new PMouseEvent(e, view);
-            currentTool.handlerChain.handleMouseReleased(lastEvent);
-            mouseDown = false;
+            try {
+                currentTool.handlerChain.handleMouseReleased(lastEvent);
+            } finally {
+                mouseDown = false;
+                // the final state is always rendered
+                RepaintScheduler.dragFinished();
+            }
         }
 
         public static void mouseDragged(MouseEvent e, View view) {
@@ -197,6 +207,7 @@ public class Tools {
                 // simulating one
                 currentTool.handlerChain.handleMousePressed(lastEvent);
                 mouseDown = true;
+                RepaintScheduler.dragStarted();
                 return;
             }
             currentTool.handlerChain.handleMouseDragged(lastEvent);
@@ -207,9 +218,15 @@ public class Tools {
             // doesn't need to go through the handler chain
             currentTool.mouseClicked(lastEvent);
             mouseDown = false;
+            RepaintScheduler.dragFinished();
         }
 
         public static void mouseMoved(MouseEvent e, View view) {
+            if (RepaintScheduler.isDragging()) {
+                // the release was lost (for example a modal
+                // dialog was opened while handling the press)
+                RepaintScheduler.dragFinished();
+            }
             // doesn't need to go through the handler chain
             currentTool.mouseMoved(e, view);
         }
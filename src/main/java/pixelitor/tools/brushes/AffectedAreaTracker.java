@@ -78,6 +78,11 @@ public class AffectedAreaTracker implements Brush {
         return delegate.getPreferredSpacing();
     }
 
+    @Override
+    public boolean paintsLocally() {
+        return delegate.paintsLocally();
+    }
+
     @Override
     public DebugNode getDebugNode() {
         DebugNode node = new DebugNode("Affected Area Tracker", this);
@@ -69,6 +69,15 @@ public interface Brush {
 
     default void dispose() {}
 
+    /**
+     * Returns whether this brush paints only within its actual radius around
+     * the line between its last two points. Such brushes can paint in parallel
+     * if these regions don't overlap.
+     */
+    default boolean paintsLocally() {
+        return true;
+    }
+
     DebugNode getDebugNode();
 
     /**
@@ -130,6 +130,12 @@ public class ConnectBrush extends AbstractBrush {
         return 0;
     }
 
+    @Override
+    public boolean paintsLocally() {
+        // the lines can connect to any earlier point of the stroke
+        return false;
+    }
+
     public void deleteHistory() {
         history.clear();
     }
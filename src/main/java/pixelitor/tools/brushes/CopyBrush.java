@@ -34,6 +34,9 @@ public abstract class CopyBrush extends DabsBrush {
     protected BufferedImage brushImage;
     protected CopyBrushType type;
 
+    // the alpha values of the brush shape for each pixel of the brush image
+    protected int[] alphaMask;
+
     // can be set from the develop menu
     private static boolean debugBrushImage = false;
 
@@ -49,12 +52,14 @@ public abstract class CopyBrush extends DabsBrush {
             int size = (int) diameter;
             brushImage = new BufferedImage(size, size, TYPE_INT_ARGB);
             type.setSize(diameter);
+            alphaMask = type.createAlphaMask(diameter);
         }
     }
 
     public void typeChanged(CopyBrushType type) {
         this.type = type;
         type.setSize(diameter);
+        alphaMask = type.createAlphaMask(diameter);
     }
 
     public void debugImage() {
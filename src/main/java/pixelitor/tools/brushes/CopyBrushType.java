@@ -37,6 +37,17 @@ public enum CopyBrushType {
             transparencyImage = ImageUtils.createSoftTransparencyImage((int) size);
         }
 
+        @Override
+        public int[] createAlphaMask(double size) {
+            BufferedImage image = ImageUtils.createSoftTransparencyImage((int) size);
+            int[] pixels = ImageUtils.getPixelsAsArray(image);
+            int[] alphaMask = new int[pixels.length];
+            for (int i = 0; i < pixels.length; i++) {
+                alphaMask[i] = pixels[i] >>> 24;
+            }
+            return alphaMask;
+        }
+
         @Override
         public void beforeDrawImage(Graphics2D g) {
             // important in the areas where there is no source defined
@@ -57,6 +68,22 @@ public enum CopyBrushType {
             circleClip = new Ellipse2D.Double(0, 0, size, size);
         }
 
+        @Override
+        public int[] createAlphaMask(double size) {
+            // the same pixels as with the clipping
+            Ellipse2D circle = new Ellipse2D.Double(0, 0, size, size);
+            int intSize = (int) size;
+            int[] alphaMask = new int[intSize * intSize];
+            for (int y = 0; y < intSize; y++) {
+                for (int x = 0; x < intSize; x++) {
+                    if (circle.contains(x + 0.5, y + 0.5)) {
+                        alphaMask[y * intSize + x] = 0xFF;
+                    }
+                }
+            }
+            return alphaMask;
+        }
+
         @Override
         public void beforeDrawImage(Graphics2D g) {
             // important in the areas where there is no source defined
@@ -103,6 +130,14 @@ public enum CopyBrushType {
         this.size = size;
     }
 
+    /**
+     * Returns the alpha values (0..255) of the brush shape for each
+     * pixel of a brush image with the given size. The transparency is
+     * the same as the one set up by beforeDrawImage and afterDrawImage.
+     * Unlike setSize, this doesn't change the state of the shared type.
+     */
+    public abstract int[] createAlphaMask(double size);
+
     @Override
     public String toString() {
         return guiName;
@@ -21,10 +21,10 @@ import pixelitor.tools.util.PPoint;
 import pixelitor.utils.ImageUtils;
 
 import java.awt.Color;
-import java.awt.Graphics2D;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.Map;
 
 import static java.awt.RenderingHints.KEY_INTERPOLATION;
@@ -35,22 +35,42 @@ import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
  * A {@link DabsBrush} where the dabs are images
  */
 public class ImageDabsBrush extends DabsBrush {
-    private static final Map<ImageBrushType, BufferedImage> templateImages
+    private static final Map<ImageBrushType, StampMipmap> templates
             = new EnumMap<>(ImageBrushType.class);
-    private final BufferedImage templateImg;
-    private BufferedImage coloredBrushImg;
-    private BufferedImage finalScaledImg;
+
+    // the number of sub-pixel positions in each direction
+    private static final int NUM_PHASES = 4;
+
+    // for larger stamps the sub-pixel positioning is not visible
+    private static final int MAX_PHASED_SIZE = 64;
+
+    // the number of different stamp sizes that are kept
+    private static final int MAX_CACHED_SIZES = 8;
+
+    private final StampMipmap template;
+
+    // for each recently used stamp size the stamps
+    // for all the sub-pixel phases (created lazily)
+    private final Map<Integer, BufferedImage[]> stampsBySize = new HashMap<>();
+
+    // the stamps for the current size
+    private BufferedImage[] stamps;
+    private int stampSize;
+    private int numPhases;
     private Color lastColor;
 
+    // reused for the rotated dabs
+    private final AffineTransform dabTransform = new AffineTransform();
+
     public ImageDabsBrush(double radius, ImageBrushType imageBrushType,
                           double spacingRatio, AngleSettings angleSettings) {
         super(radius, new RadiusRatioSpacing(spacingRatio),
                 angleSettings, false);
 
         // for each brush type multiple brush instances are created because
-        // of the symmetry, but the template image can be shared between them
-        templateImg = templateImages.computeIfAbsent(imageBrushType,
-                ImageBrushType::createBWBrushImage);
+        // of the symmetry, but the template can be shared between them
+        template = templates.computeIfAbsent(imageBrushType,
+                type -> new StampMipmap(type.createBWBrushImage()));
     }
 
     @Override
@@ -59,76 +79,85 @@ public class ImageDabsBrush extends DabsBrush {
         Color c = targetG.getColor();
 
         if (!c.equals(lastColor)) {
-            colorizeBrushImage(c);
+            colorizeStamps(c);
             lastColor = c;
-            resizeBrushImage(diameter, true);
-        } else {
-            resizeBrushImage(diameter, false);
+        }
+
+        int newSize = (int) diameter;
+        assert newSize > 0 : "newSize = " + newSize;
+        if (stamps == null || newSize != stampSize) {
+            selectStampSize(newSize);
         }
     }
 
-    /**
-     * This method assumes that the color of coloredBrushImg is OK
-     */
-    private void resizeBrushImage(double newSize, boolean force) {
-        if (!force) {
-            if (finalScaledImg != null && finalScaledImg.getWidth() == newSize) {
-                return;
+    private void selectStampSize(int newSize) {
+        stampSize = newSize;
+        numPhases = newSize <= MAX_PHASED_SIZE ? NUM_PHASES : 1;
+
+        stamps = stampsBySize.get(newSize);
+        if (stamps == null) {
+            if (stampsBySize.size() >= MAX_CACHED_SIZES) {
+                stampsBySize.clear();
             }
+            stamps = new BufferedImage[numPhases * numPhases];
+            stampsBySize.put(newSize, stamps);
         }
+    }
 
-        if (finalScaledImg != null) {
-            finalScaledImg.flush();
+    /**
+     * Changes the color of the already created stamps in place,
+     * the alpha values don't depend on the color
+     */
+    private void colorizeStamps(Color color) {
+        int rgb = color.getRGB() & 0x00_FF_FF_FF;
+        for (BufferedImage[] sizeStamps : stampsBySize.values()) {
+            for (BufferedImage stamp : sizeStamps) {
+                if (stamp != null) {
+                    int[] pixels = ImageUtils.getPixelsAsArray(stamp);
+                    for (int i = 0; i < pixels.length; i++) {
+                        pixels[i] = (pixels[i] & 0xFF_00_00_00) | rgb;
+                    }
+                }
+            }
         }
-
-        int newSizeInt = (int) newSize;
-        assert newSizeInt > 0 : "newSize = " + newSize;
-        finalScaledImg = new BufferedImage(newSizeInt, newSizeInt, TYPE_INT_ARGB);
-        Graphics2D g = finalScaledImg.createGraphics();
-        g.drawImage(coloredBrushImg, 0, 0, newSizeInt, newSizeInt, null);
-        g.dispose();
     }
 
     /**
-     * Creates a colorized brush image from the template image
-     * according to the foreground color
+     * Returns the stamp that is shifted by the given number
+     * of sub-pixel steps to the right and down
      */
-    private void colorizeBrushImage(Color color) {
-        coloredBrushImg = new BufferedImage(
-                templateImg.getWidth(), templateImg.getHeight(), TYPE_INT_ARGB);
-        int[] srcPixels = ImageUtils.getPixelsAsArray(templateImg);
-        int[] destPixels = ImageUtils.getPixelsAsArray(coloredBrushImg);
-
-        int destR = color.getRed();
-        int destG = color.getGreen();
-        int destB = color.getBlue();
-        for (int i = 0; i < destPixels.length; i++) {
-            int srcRGB = srcPixels[i];
-
-            //int a = (srcRGB >>> 24) & 0xFF;
-            int srcR = (srcRGB >>> 16) & 0xFF;
-            int srcG = (srcRGB >>> 8) & 0xFF;
-            int srcB = (srcRGB) & 0xFF;
-            int srcAverage = (srcR + srcG + srcB) / 3;
-
-            destPixels[i] = (0xFF - srcAverage) << 24 | destR << 16 | destG << 8 | destB;
+    private BufferedImage getStamp(int phaseX, int phaseY) {
+        int index = phaseY * numPhases + phaseX;
+        BufferedImage stamp = stamps[index];
+        if (stamp == null) {
+            // the shifted stamps need an extra row and column
+            int imgSize = numPhases == 1 ? stampSize : stampSize + 1;
+            stamp = new BufferedImage(imgSize, imgSize, TYPE_INT_ARGB);
+            template.fillStamp(ImageUtils.getPixelsAsArray(stamp), imgSize, stampSize,
+                    phaseX / (double) numPhases, phaseY / (double) numPhases,
+                    lastColor.getRGB());
+            stamps[index] = stamp;
         }
+        return stamp;
     }
 
     @Override
     public void putDab(PPoint p, double theta) {
         double x = p.getImX();
         double y = p.getImY();
-        int drawStartX = (int) (x - radius);
-        int drawStartY = (int) (y - radius);
         if (!settings.isAngleAware() || theta == 0) {
-            targetG.drawImage(finalScaledImg, drawStartX, drawStartY, null);
+            // round the top-left corner to the nearest sub-pixel position
+            int posX = (int) Math.floor((x - radius) * numPhases + 0.5);
+            int posY = (int) Math.floor((y - radius) * numPhases + 0.5);
+            BufferedImage stamp = getStamp(
+                    Math.floorMod(posX, numPhases), Math.floorMod(posY, numPhases));
+            targetG.drawImage(stamp,
+                    Math.floorDiv(posX, numPhases), Math.floorDiv(posY, numPhases), null);
         } else {
-            AffineTransform oldTransform = targetG.getTransform();
-            targetG.rotate(theta, x, y);
+            dabTransform.setToRotation(theta, x, y);
+            dabTransform.translate(x - radius, y - radius);
             targetG.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_BILINEAR);
-            targetG.drawImage(finalScaledImg, drawStartX, drawStartY, null);
-            targetG.setTransform(oldTransform);
+            targetG.drawImage(getStamp(0, 0), dabTransform, null);
         }
         updateComp(p);
     }
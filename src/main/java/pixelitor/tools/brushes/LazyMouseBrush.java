@@ -156,6 +156,11 @@ public class LazyMouseBrush implements Brush {
         return delegate.getPreferredSpacing();
     }
 
+    @Override
+    public boolean paintsLocally() {
+        return delegate.paintsLocally();
+    }
+
     public static RangeParam createDistParam() {
         RangeParam param = new RangeParam(
                 "Distance (px)", MIN_DIST, minDist, MAX_DIST);
@@ -18,6 +18,7 @@
 package pixelitor.tools.brushes;
 
 import pixelitor.tools.util.PPoint;
+import pixelitor.utils.debug.PerformanceStats;
 
 /**
  * The simplest dabs strategy: it places the dabs along the lines
@@ -55,7 +56,7 @@ public class LinearDabsStrategy implements DabsStrategy {
             // so that a dab is drawn soon
             distFromLastDab = spacingStrategy.getSpacing(brush.getRadius()) * 0.8;
         } else {
-            brush.putDab(p, 0);
+            putDab(p, 0);
         }
     }
 
@@ -98,7 +99,7 @@ public class LinearDabsStrategy implements DabsStrategy {
             // TODO perhaps this could be optimized if instead of putDab
             // we called a special version that does not update the region
             // and then we updated the region at the end
-            brush.putDab(p, theta);
+            putDab(p, theta);
             drew = true;
         }
 
@@ -114,6 +115,16 @@ public class LinearDabsStrategy implements DabsStrategy {
         prev = end;
     }
 
+    private void putDab(PPoint p, double theta) {
+        long startTime = System.nanoTime();
+        brush.putDab(p, theta);
+
+        // the dabs are too short for measuring the allocated memory
+        long diameter = (long) (2 * brush.getRadius());
+        PerformanceStats.recordTime(PerformanceStats.BRUSH_DAB,
+                startTime, diameter * diameter);
+    }
+
     @Override
     public void settingsChanged() {
         DabsBrushSettings settings = brush.getSettings();
@@ -18,12 +18,16 @@
 package pixelitor.tools.brushes;
 
 import pixelitor.tools.util.PPoint;
+import pixelitor.utils.ImageUtils;
 import pixelitor.utils.debug.DebugNode;
 
 import java.awt.AlphaComposite;
 import java.awt.Graphics2D;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
 
 import static pixelitor.colors.FgBgColors.getFGColor;
 
@@ -50,6 +54,12 @@ public class SmudgeBrush extends CopyBrush {
      */
     private boolean fingerPainting = false;
 
+    private AlphaComposite dabComposite;
+
+    // reused for each dab
+    private final AffineTransform dabTransform = new AffineTransform();
+    private int[] sampleBuffer;
+
     public SmudgeBrush(double radius, CopyBrushType type) {
         super(radius, type, new FixedDistanceSpacing(1.0));
     }
@@ -58,37 +68,101 @@ public class SmudgeBrush extends CopyBrush {
         this.sourceImage = sourceImage;
         last = src;
         this.strength = strength;
+        dabComposite = AlphaComposite.SrcOver.derive(strength);
         firstUsageInStroke = true;
     }
 
     @Override
     void setupBrushStamp(PPoint p) {
-        Graphics2D g = brushImage.createGraphics();
-        type.beforeDrawImage(g);
-
         if (firstUsageInStroke && fingerPainting) {
             // finger painting starts with the foreground color
-            g.setColor(getFGColor());
-            int size = (int) diameter;
-            g.fillRect(0, 0, size, size);
+            fillStamp(getFGColor().getRGB());
+        } else if (sourceImage.getType() == TYPE_INT_ARGB) {
+            sampleSource();
         } else {
-            // samples the source image at lastX, lastY into the brush image
-            g.drawImage(sourceImage,
-                    AffineTransform.getTranslateInstance(
-                            -last.getImX() + radius,
-                            -last.getImY() + radius), null);
+            sampleSourceWithGraphics();
         }
 
-        type.afterDrawImage(g);
-        g.dispose();
-
         firstUsageInStroke = false;
         super.debugImage();
     }
 
+    /**
+     * Samples the source image at lastX, lastY into the brush image
+     * by copying the pixels directly, without creating a Graphics2D
+     */
+    private void sampleSource() {
+        int size = brushImage.getWidth();
+        int[] stampPixels = ImageUtils.getPixelsAsArray(brushImage);
+
+        // the nearest neighbor sampling of the translated source image
+        int offsetX = (int) Math.floor(last.getImX() - radius + 0.5);
+        int offsetY = (int) Math.floor(last.getImY() - radius + 0.5);
+
+        // the part of the brush image that is inside the source
+        int minX = Math.max(0, -offsetX);
+        int minY = Math.max(0, -offsetY);
+        int maxX = Math.min(size, sourceImage.getWidth() - offsetX);
+        int maxY = Math.min(size, sourceImage.getHeight() - offsetY);
+
+        // important in the areas where there is no source defined
+        Arrays.fill(stampPixels, 0);
+        if (maxX <= minX || maxY <= minY) {
+            return;
+        }
+
+        int width = maxX - minX;
+        int height = maxY - minY;
+        if (sampleBuffer == null || sampleBuffer.length < size * size) {
+            sampleBuffer = new int[size * size];
+        }
+        sourceImage.getRaster().getDataElements(
+                offsetX + minX, offsetY + minY, width, height, sampleBuffer);
+
+        for (int y = 0; y < height; y++) {
+            int stampOffset = (minY + y) * size + minX;
+            int bufferOffset = y * width;
+            for (int x = 0; x < width; x++) {
+                int maskAlpha = alphaMask[stampOffset + x];
+                if (maskAlpha != 0) {
+                    stampPixels[stampOffset + x] = applyMask(sampleBuffer[bufferOffset + x], maskAlpha);
+                }
+            }
+        }
+    }
+
+    private void fillStamp(int argb) {
+        int[] stampPixels = ImageUtils.getPixelsAsArray(brushImage);
+        for (int i = 0; i < stampPixels.length; i++) {
+            stampPixels[i] = applyMask(argb, alphaMask[i]);
+        }
+    }
+
+    private static int applyMask(int argb, int maskAlpha) {
+        int alpha = ((argb >>> 24) * maskAlpha + 127) / 255;
+        return alpha << 24 | (argb & 0x00_FF_FF_FF);
+    }
+
+    /**
+     * The general, but slower version of {@link #sampleSource()}
+     * for the source images that are not in the default ARGB format
+     */
+    private void sampleSourceWithGraphics() {
+        Graphics2D g = brushImage.createGraphics();
+        type.beforeDrawImage(g);
+
+        dabTransform.setToTranslation(
+                -last.getImX() + radius,
+                -last.getImY() + radius);
+        g.drawImage(sourceImage, dabTransform, null);
+
+        type.afterDrawImage(g);
+        g.dispose();
+    }
+
     @Override
     public void putDab(PPoint p, double theta) {
-        AffineTransform transform = AffineTransform.getTranslateInstance(
+        dabTransform.setToTranslation(
                 p.getImX() - radius,
                 p.getImY() - radius
         );
@@ -96,14 +170,14 @@ public class SmudgeBrush extends CopyBrush {
         // TODO SrcOver allows to smudge into transparent areas, but transparency
         // cannot be smudged into non-transparent areas
         // DstOver allows only smudging into transparent
-        targetG.setComposite(AlphaComposite.SrcOver.derive(strength));
+        targetG.setComposite(dabComposite);
 
 // SrcAtop: cannot smudge into transparent areas
 //        targetG.setComposite(AlphaComposite.SrcAtop.derive(strength));
 
 //        targetG.setComposite(BlendComposite.CrossFade.derive(strength));
 
-        targetG.drawImage(brushImage, transform, null);
+        targetG.drawImage(brushImage, dabTransform, null);
 
         last = p;
 
@@ -193,4 +193,10 @@ public class SprayBrush extends AbstractBrush {
     public double getPreferredSpacing() {
         return 0;
     }
+
+    @Override
+    public boolean paintsLocally() {
+        // the sprayed shapes have no fixed maximum distance
+        return false;
+    }
 }
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2019 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.tools.brushes;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The alpha values of a square brush template, precomputed at
+ * successively halved sizes, so that a stamp of any size can be
+ * resampled from a level that is at most twice as large.
+ */
+class StampMipmap {
+    // the alpha values of the levels, the first one has the original size
+    private final List<float[]> levels = new ArrayList<>();
+    private final List<Integer> levelSizes = new ArrayList<>();
+
+    /**
+     * Creates the levels from a black and white template,
+     * where white means transparent and black means opaque
+     */
+    StampMipmap(BufferedImage bwTemplate) {
+        int size = bwTemplate.getWidth();
+        assert bwTemplate.getHeight() == size;
+
+        int[] rgbs = bwTemplate.getRGB(0, 0, size, size, null, 0, size);
+        float[] alphas = new float[size * size];
+        for (int i = 0; i < rgbs.length; i++) {
+            int rgb = rgbs[i];
+            int r = (rgb >>> 16) & 0xFF;
+            int g = (rgb >>> 8) & 0xFF;
+            int b = rgb & 0xFF;
+            alphas[i] = 0xFF - (r + g + b) / 3;
+        }
+        levels.add(alphas);
+        levelSizes.add(size);
+
+        // each level is the 2x2 box-filtered version of the previous one
+        while (size > 1) {
+            int newSize = (size + 1) / 2;
+            float[] newAlphas = new float[newSize * newSize];
+            for (int y = 0; y < newSize; y++) {
+                for (int x = 0; x < newSize; x++) {
+                    int x2 = Math.min(2 * x + 1, size - 1);
+                    int y2 = Math.min(2 * y + 1, size - 1);
+                    newAlphas[y * newSize + x] = (alphas[2 * y * size + 2 * x]
+                            + alphas[2 * y * size + x2]
+                            + alphas[y2 * size + 2 * x]
+                            + alphas[y2 * size + x2]) / 4.0f;
+                }
+            }
+            alphas = newAlphas;
+            size = newSize;
+            levels.add(alphas);
+            levelSizes.add(size);
+        }
+    }
+
+    /**
+     * Writes the ARGB pixels of a stamp with the given size and color into
+     * the given array. The stamp is shifted right and down by the given
+     * sub-pixel offsets, and the array (with the given width) must be
+     * large enough to contain the shifted stamp.
+     */
+    void fillStamp(int[] pixels, int arrayWidth, int stampSize,
+                   double shiftX, double shiftY, int rgb) {
+        // use the smallest level that is still not smaller than the stamp
+        int levelIndex = 0;
+        while (levelIndex + 1 < levels.size()
+                && levelSizes.get(levelIndex + 1) >= stampSize) {
+            levelIndex++;
+        }
+        float[] alphas = levels.get(levelIndex);
+        int levelSize = levelSizes.get(levelIndex);
+        double scale = levelSize / (double) stampSize;
+
+        int arrayHeight = pixels.length / arrayWidth;
+        int color = rgb & 0x00_FF_FF_FF;
+        for (int y = 0; y < arrayHeight; y++) {
+            // bilinear sampling at the center of the destination pixel
+            double srcY = (y + 0.5 - shiftY) * scale - 0.5;
+            int y0 = (int) Math.floor(srcY);
+            float wy = (float) (srcY - y0);
+            for (int x = 0; x < arrayWidth; x++) {
+                double srcX = (x + 0.5 - shiftX) * scale - 0.5;
+                int x0 = (int) Math.floor(srcX);
+                float wx = (float) (srcX - x0);
+
+                float top = (1 - wx) * sample(alphas, levelSize, x0, y0)
+                        + wx * sample(alphas, levelSize, x0 + 1, y0);
+                float bottom = (1 - wx) * sample(alphas, levelSize, x0, y0 + 1)
+                        + wx * sample(alphas, levelSize, x0 + 1, y0 + 1);
+                int alpha = (int) ((1 - wy) * top + wy * bottom + 0.5f);
+
+                pixels[y * arrayWidth + x] = alpha << 24 | color;
+            }
+        }
+    }
+
+    private static float sample(float[] alphas, int size, int x, int y) {
+        if (x < 0 || y < 0 || x >= size || y >= size) {
+            return 0;
+        }
+        return alphas[y * size + x];
+    }
+}
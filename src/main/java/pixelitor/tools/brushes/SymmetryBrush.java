@@ -18,16 +18,26 @@
 package pixelitor.tools.brushes;
 
 import pixelitor.Composition;
+import pixelitor.ThreadPool;
 import pixelitor.tools.BrushType;
 import pixelitor.tools.Symmetry;
 import pixelitor.tools.Tool;
 import pixelitor.tools.util.PPoint;
+import pixelitor.utils.ProgressTracker;
 import pixelitor.utils.debug.DebugNode;
 
 import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
 
 /**
- * Delegates the work to other brushes according to the symmetry and brush type settings
+ * Delegates the work to other brushes according to the symmetry and brush type settings.
+ *
+ * The symmetry only collects the points of the brushes, and then they
+ * paint together: in parallel if the regions they paint don't overlap,
+ * and with a single combined region update.
  */
 public class SymmetryBrush implements Brush {
     private static final int MAX_BRUSHES = 4;
@@ -39,6 +49,20 @@ public class SymmetryBrush implements Brush {
     private Symmetry symmetry;
     private final AffectedArea affectedArea;
 
+    private Composition comp;
+    private Graphics2D targetG;
+
+    // the brushes (except the first one) get their own copy of the
+    // Graphics2D when they first paint in parallel during a stroke
+    private final Graphics2D[] ownGraphics = new Graphics2D[MAX_BRUSHES];
+
+    // the points collected from the symmetry for the current input
+    private final PPoint[] batchPoints = new PPoint[MAX_BRUSHES];
+    private final PPoint[] lastPoints = new PPoint[MAX_BRUSHES];
+
+    // the regions the brushes will paint for the current input (in image space)
+    private final Rectangle2D.Double[] paintedRegions = new Rectangle2D.Double[MAX_BRUSHES];
+
     public SymmetryBrush(Tool tool, BrushType brushType,
                          Symmetry symmetry, double radius) {
         this.tool = tool;
@@ -47,6 +71,9 @@ public class SymmetryBrush implements Brush {
         this.affectedArea = new AffectedArea();
         numInstantiatedBrushes = symmetry.getNumBrushes();
         assert numInstantiatedBrushes <= MAX_BRUSHES;
+        for (int i = 0; i < MAX_BRUSHES; i++) {
+            paintedRegions[i] = new Rectangle2D.Double();
+        }
         brushTypeChanged(brushType, radius);
     }
 
@@ -56,6 +83,9 @@ public class SymmetryBrush implements Brush {
 
     @Override
     public void setTarget(Composition comp, Graphics2D g) {
+        this.comp = comp;
+        this.targetG = g;
+        disposeOwnGraphics();
         for(int i = 0; i < numInstantiatedBrushes; i++) {
             brushes[i].setTarget(comp, g);
         }
@@ -75,26 +105,125 @@ public class SymmetryBrush implements Brush {
 
     @Override
     public void startAt(PPoint p) {
-        symmetry.startAt(this, p);
+        Arrays.fill(lastPoints, null);
+        comp.startRegionUpdateBatch();
+        try {
+            symmetry.startAt(this, p);
+            paintBatch(Brush::startAt);
+        } finally {
+            comp.finishRegionUpdateBatch();
+        }
     }
 
     @Override
     public void continueTo(PPoint p) {
-        symmetry.continueTo(this, p);
+        comp.startRegionUpdateBatch();
+        try {
+            symmetry.continueTo(this, p);
+            paintBatch(Brush::continueTo);
+        } finally {
+            comp.finishRegionUpdateBatch();
+        }
     }
 
     @Override
     public void lineConnectTo(PPoint p) {
-        symmetry.lineConnectTo(this, p);
+        comp.startRegionUpdateBatch();
+        try {
+            symmetry.lineConnectTo(this, p);
+            paintBatch(Brush::lineConnectTo);
+        } finally {
+            comp.finishRegionUpdateBatch();
+        }
     }
 
     @Override
     public void finish() {
         symmetry.finish(this);
+        disposeOwnGraphics();
+    }
+
+    /**
+     * Lets each active brush paint to its collected point
+     */
+    private void paintBatch(BiConsumer<Brush, PPoint> action) {
+        int numBrushes = symmetry.getNumBrushes();
+        if (canPaintInParallel(numBrushes)) {
+            paintInParallel(numBrushes, action);
+        } else {
+            for (int i = 0; i < numBrushes; i++) {
+                action.accept(brushes[i], batchPoints[i]);
+            }
+        }
+
+        for (int i = 0; i < numBrushes; i++) {
+            lastPoints[i] = batchPoints[i];
+            batchPoints[i] = null;
+        }
+    }
+
+    private boolean canPaintInParallel(int numBrushes) {
+        if (numBrushes < 2) {
+            return false;
+        }
+        for (int i = 0; i < numBrushes; i++) {
+            Brush brush = brushes[i];
+            if (!brush.paintsLocally()) {
+                return false;
+            }
+            PPoint p = batchPoints[i];
+            PPoint last = lastPoints[i] != null ? lastPoints[i] : p;
+            double r = brush.getActualRadius();
+            double minX = Math.min(p.getImX(), last.getImX()) - r;
+            double minY = Math.min(p.getImY(), last.getImY()) - r;
+            double maxX = Math.max(p.getImX(), last.getImX()) + r;
+            double maxY = Math.max(p.getImY(), last.getImY()) + r;
+            paintedRegions[i].setRect(minX, minY, maxX - minX, maxY - minY);
+
+            for (int j = 0; j < i; j++) {
+                if (paintedRegions[i].intersects(paintedRegions[j])) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void paintInParallel(int numBrushes, BiConsumer<Brush, PPoint> action) {
+        // a Graphics2D can't be shared between threads
+        for (int i = 1; i < numBrushes; i++) {
+            if (ownGraphics[i] == null) {
+                ownGraphics[i] = (Graphics2D) targetG.create();
+                brushes[i].setTarget(comp, ownGraphics[i]);
+            }
+        }
+
+        Future<?>[] futures = new Future<?>[numBrushes - 1];
+        for (int i = 1; i < numBrushes; i++) {
+            Brush brush = brushes[i];
+            PPoint p = batchPoints[i];
+            futures[i - 1] = ThreadPool.submit(() -> action.accept(brush, p));
+        }
+        // the first brush paints in the current thread
+        action.accept(brushes[0], batchPoints[0]);
+        ThreadPool.waitToFinish(futures, ProgressTracker.NULL_TRACKER);
+    }
+
+    private void disposeOwnGraphics() {
+        for (int i = 0; i < MAX_BRUSHES; i++) {
+            if (ownGraphics[i] != null) {
+                ownGraphics[i].dispose();
+                ownGraphics[i] = null;
+                if (brushes[i] != null && comp != null) {
+                    brushes[i].setTarget(comp, targetG);
+                }
+            }
+        }
     }
 
     public void brushTypeChanged(BrushType brushType, double radius) {
         this.brushType = brushType;
+        disposeOwnGraphics();
         for(int i = 0; i < numInstantiatedBrushes; i++) {
             if(brushes[i] != null) {
                 brushes[i].dispose();
@@ -132,23 +261,32 @@ public class SymmetryBrush implements Brush {
         return true;
     }
 
+    /**
+     * Called by the symmetry: collects the start point of the given brush
+     */
     public void startAt(int brushNo, PPoint p) {
         if(brushNo == 0) {
             affectedArea.initAt(p);
         } else {
             affectedArea.updateWith(p);
         }
-        brushes[brushNo].startAt(p);
+        batchPoints[brushNo] = p;
     }
 
+    /**
+     * Called by the symmetry: collects the next point of the given brush
+     */
     public void continueTo(int brushNo, PPoint p) {
         affectedArea.updateWith(p);
-        brushes[brushNo].continueTo(p);
+        batchPoints[brushNo] = p;
     }
 
+    /**
+     * Called by the symmetry: collects the line-connected point of the given brush
+     */
     public void lineConnectTo(int brushNo, PPoint p) {
         affectedArea.updateWith(p);
-        brushes[brushNo].lineConnectTo(p);
+        batchPoints[brushNo] = p;
     }
 
     public void finish(int brushNo) {
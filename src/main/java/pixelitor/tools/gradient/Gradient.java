@@ -17,23 +17,27 @@
 
 package pixelitor.tools.gradient;
 
+import pixelitor.ThreadPool;
 import pixelitor.gui.View;
 import pixelitor.layers.BlendingMode;
 import pixelitor.layers.Drawable;
 import pixelitor.layers.LayerMask;
 import pixelitor.layers.TmpDrawingLayer;
 import pixelitor.tools.util.ImDrag;
+import pixelitor.utils.ProgressTracker;
 
 import java.awt.Color;
 import java.awt.Composite;
 import java.awt.Graphics2D;
 import java.awt.MultipleGradientPaint.CycleMethod;
 import java.awt.Paint;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 
 import static java.awt.RenderingHints.KEY_ANTIALIASING;
 import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
 
 /**
  * This class describes a gradient with all the information
@@ -83,21 +87,65 @@ public class Gradient {
 
         g.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
 
+        g.setPaint(createPaint(imDrag));
+
+        fillInStrips(g, width, height);
+
+        g.dispose();
+        dr.mergeTmpDrawingLayerDown();
+        dr.updateIconImage();
+    }
+
+    /**
+     * Renders a low-resolution version of the gradient, to be shown
+     * while the handles are dragged. The returned image is scaled
+     * down by the given factor relative to the canvas size.
+     */
+    public BufferedImage createPreview(int canvasWidth, int canvasHeight, double scale) {
+        int width = Math.max(1, (int) Math.ceil(canvasWidth * scale));
+        int height = Math.max(1, (int) Math.ceil(canvasHeight * scale));
+        BufferedImage preview = new BufferedImage(width, height, TYPE_INT_ARGB);
+        Graphics2D g = preview.createGraphics();
+
+        // the custom paints work in device space, therefore the
+        // drag has to be scaled instead of the graphics
+        ImDrag scaledDrag = imDrag.createTransformed(
+                AffineTransform.getScaleInstance(scale, scale));
+        g.setPaint(createPaint(scaledDrag));
+
+        fillInStrips(g, width, height);
+
+        g.dispose();
+        return preview;
+    }
+
+    private Paint createPaint(ImDrag drag) {
         Color startColor = colorType.getStartColor(reverted);
         Color endColor = colorType.getEndColor(reverted);
         assert startColor != null;
         assert endColor != null;
         Color[] colors = {startColor, endColor};
 
-        Paint paint = type.createPaint(imDrag, colors, cycleMethod);
-
-        g.setPaint(paint);
-
-        g.fillRect(0, 0, width, height);
+        return type.createPaint(drag, colors, cycleMethod);
+    }
 
-        g.dispose();
-        dr.mergeTmpDrawingLayerDown();
-        dr.updateIconImage();
+    /**
+     * Fills the given area with the current paint of the given
+     * Graphics, using horizontal strips that are rendered in parallel.
+     * Each strip gets its own copy of the Graphics (and therefore
+     * its own paint context), but they share the destination image.
+     */
+    private static void fillInStrips(Graphics2D g, int width, int height) {
+        ThreadPool.processRowBlocks(height, (fromRow, toRow) -> {
+            Graphics2D stripG;
+            synchronized (g) {
+                stripG = (Graphics2D) g.create();
+            }
+            int stripHeight = toRow - fromRow;
+            stripG.clipRect(0, fromRow, width, stripHeight);
+            stripG.fillRect(0, fromRow, width, stripHeight);
+            stripG.dispose();
+        }, ProgressTracker.NULL_TRACKER);
     }
 
     /**
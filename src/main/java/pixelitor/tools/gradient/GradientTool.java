@@ -25,6 +25,8 @@ import pixelitor.gui.View;
 import pixelitor.gui.utils.Dialogs;
 import pixelitor.history.History;
 import pixelitor.layers.Drawable;
+import pixelitor.layers.LayerMask;
+import pixelitor.selection.Selection;
 import pixelitor.tools.ClipStrategy;
 import pixelitor.tools.DragTool;
 import pixelitor.tools.gradient.history.GradientChangeEdit;
@@ -42,10 +44,13 @@ import java.awt.Graphics2D;
 import java.awt.MultipleGradientPaint.CycleMethod;
 import java.awt.event.MouseEvent;
 import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 
 import static java.awt.MultipleGradientPaint.CycleMethod.NO_CYCLE;
 import static java.awt.MultipleGradientPaint.CycleMethod.REFLECT;
 import static java.awt.MultipleGradientPaint.CycleMethod.REPEAT;
+import static java.awt.RenderingHints.KEY_INTERPOLATION;
+import static java.awt.RenderingHints.VALUE_INTERPOLATION_BILINEAR;
 import static pixelitor.tools.util.DraggablePoint.activePoint;
 
 /**
@@ -71,6 +76,13 @@ public class GradientTool extends DragTool {
     private Gradient lastGradient;
     private boolean ignoreRegenerate = false;
 
+    // the maximal number of pixels in the low-resolution
+    // preview that is shown while the gradient is dragged
+    private static final int MAX_PREVIEW_PIXELS = 250_000;
+
+    private BufferedImage preview;
+    private double previewScale;
+
     public GradientTool() {
         super("Gradient", 'g', "gradient_tool_icon.png",
                 "<b>click</b> and <b>drag</b> to draw a gradient, " +
@@ -171,24 +183,55 @@ public class GradientTool extends DragTool {
 
     @Override
     public void ongoingDrag(PMouseEvent e) {
-        // the gradient will be drawn only when the mouse is released
+        // the full-quality gradient will be drawn only when
+        // the mouse is released, until then only a preview is shown
 
+        ImDrag imDrag;
         if (activePoint != null) {
             // draw the handles
             double x = e.getCoX();
             double y = e.getCoY();
             activePoint.mouseDragged(x, y, e.isShiftDown());
+            imDrag = handles.toImDrag(e.getView());
         } else {
             // if we are dragging a new gradient from scratch,
             // we don't want to show the old handles
             handles = null;
+            imDrag = userDrag.toImDrag();
         }
+        updatePreview(e.getView(), imDrag);
 
         e.repaint();
     }
 
+    private void updatePreview(View view, ImDrag imDrag) {
+        Composition comp = view.getComp();
+        Drawable dr = comp.getActiveDrawableOrNull();
+        if (imDrag.isClick() || dr == null || dr instanceof LayerMask) {
+            // masks are not previewed, because the preview
+            // is painted over the composite image
+            preview = null;
+            return;
+        }
+
+        Canvas canvas = comp.getCanvas();
+        int canvasWidth = canvas.getImWidth();
+        int canvasHeight = canvas.getImHeight();
+
+        // half of the on-screen resolution is good enough while dragging
+        double scale = Math.min(1.0, view.getScaling()) * 0.5;
+        double numPixels = canvasWidth * scale * canvasHeight * scale;
+        if (numPixels > MAX_PREVIEW_PIXELS) {
+            scale *= Math.sqrt(MAX_PREVIEW_PIXELS / numPixels);
+        }
+
+        preview = createGradient(imDrag).createPreview(canvasWidth, canvasHeight, scale);
+        previewScale = scale;
+    }
+
     @Override
     public void dragFinished(PMouseEvent e) {
+        preview = null;
         if (userDrag.isClick()) {
             return;
         }
@@ -272,6 +315,7 @@ public class GradientTool extends DragTool {
     public void resetInitialState() {
         handles = null;
         activePoint = null;
+        preview = null;
         OpenComps.repaintActive();
     }
 
@@ -293,6 +337,7 @@ public class GradientTool extends DragTool {
     private void hideHandles(View view) {
         handles = null;
         activePoint = null;
+        preview = null;
         lastGradient = null;
         view.repaint();
     }
@@ -310,13 +355,16 @@ public class GradientTool extends DragTool {
         return (GradientType) typeSelector.getSelectedItem();
     }
 
-    private void drawGradient(Drawable dr, ImDrag imDrag, boolean addToHistory) {
-        Gradient gradient = new Gradient(imDrag,
+    private Gradient createGradient(ImDrag imDrag) {
+        return new Gradient(imDrag,
                 getType(), getCycleType(), getGradientColorType(),
                 revertCheckBox.isSelected(),
                 blendingModePanel.getBlendingMode(),
                 blendingModePanel.getOpacity());
+    }
 
+    private void drawGradient(Drawable dr, ImDrag imDrag, boolean addToHistory) {
+        Gradient gradient = createGradient(imDrag);
 
         if (addToHistory) {
             boolean isFirst = lastGradient == null;
@@ -336,6 +384,10 @@ public class GradientTool extends DragTool {
     public void paintOverImage(Graphics2D g2, Canvas canvas, View view,
                                AffineTransform componentTransform,
                                AffineTransform imageTransform) {
+        if (preview != null) {
+            paintPreview(g2, canvas, view, imageTransform);
+        }
+
         // the superclass draws the drag display
         super.paintOverImage(g2, canvas, view, componentTransform, imageTransform);
 
@@ -350,6 +402,22 @@ public class GradientTool extends DragTool {
         }
     }
 
+    private void paintPreview(Graphics2D g2, Canvas canvas, View view,
+                              AffineTransform imageTransform) {
+        Graphics2D pg = (Graphics2D) g2.create();
+        pg.setTransform(imageTransform);
+        pg.clip(canvas.getImBounds());
+        Selection selection = view.getComp().getSelection();
+        if (selection != null) {
+            pg.clip(selection.getShape());
+        }
+        pg.scale(1.0 / previewScale, 1.0 / previewScale);
+        pg.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_BILINEAR);
+        pg.setComposite(blendingModePanel.getComposite());
+        pg.drawImage(preview, 0, 0, null);
+        pg.dispose();
+    }
+
     @Override
     public DragDisplayType getDragDisplayType() {
         if (handles == null) {
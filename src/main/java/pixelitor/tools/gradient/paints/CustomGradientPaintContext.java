@@ -0,0 +1,200 @@
+/*
+ * Copyright 2019 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.tools.gradient.paints;
+
+import pixelitor.tools.util.ImDrag;
+
+import java.awt.Color;
+import java.awt.MultipleGradientPaint.CycleMethod;
+import java.awt.PaintContext;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * The common superclass of the paint contexts of the custom gradients.
+ * The subclasses only calculate the interpolation value (between 0 and 1)
+ * for a pixel, the colors are looked up in a precomputed table, and
+ * written directly into the data array of a reused raster.
+ */
+abstract class CustomGradientPaintContext implements PaintContext {
+    private static final int AA_RES = 4; // the resolution of AA supersampling
+    private static final int AA_RES2 = AA_RES * AA_RES;
+
+    // the number of precomputed colors, large enough so that
+    // the neighboring colors differ by at most one level
+    private static final int LUT_SIZE = 1024;
+
+    private static final ColorModel GRAY_CM = new ComponentColorModel(
+            ColorSpace.getInstance(ColorSpace.CS_GRAY), new int[]{8},
+            false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+
+    protected final ImDrag imDrag;
+    protected final CycleMethod cycleMethod;
+
+    private final boolean gray;
+    private final ColorModel cm;
+
+    // the ARGB colors (or gray values) for evenly spaced interpolation values
+    private final int[] lut = new int[LUT_SIZE];
+
+    private WritableRaster savedRaster;
+
+    protected CustomGradientPaintContext(ImDrag imDrag,
+                                         Color startColor, Color endColor,
+                                         ColorModel destCM, CycleMethod cycleMethod) {
+        this.imDrag = imDrag;
+        this.cycleMethod = cycleMethod;
+
+        gray = destCM.getNumComponents() == 1;
+        if (gray) {
+            cm = GRAY_CM;
+            int startGray = startColor.getRed();
+            int endGray = endColor.getRed();
+            for (int i = 0; i < LUT_SIZE; i++) {
+                double interpolation = i / (LUT_SIZE - 1.0);
+                lut[i] = (int) (startGray + interpolation * (endGray - startGray));
+            }
+        } else {
+            cm = ColorModel.getRGBdefault();
+            int startAlpha = startColor.getAlpha();
+            int startRed = startColor.getRed();
+            int startGreen = startColor.getGreen();
+            int startBlue = startColor.getBlue();
+
+            int endAlpha = endColor.getAlpha();
+            int endRed = endColor.getRed();
+            int endGreen = endColor.getGreen();
+            int endBlue = endColor.getBlue();
+
+            for (int i = 0; i < LUT_SIZE; i++) {
+                double interpolation = i / (LUT_SIZE - 1.0);
+                int a = (int) (startAlpha + interpolation * (endAlpha - startAlpha));
+                int r = (int) (startRed + interpolation * (endRed - startRed));
+                int g = (int) (startGreen + interpolation * (endGreen - startGreen));
+                int b = (int) (startBlue + interpolation * (endBlue - startBlue));
+                lut[i] = a << 24 | r << 16 | g << 8 | b;
+            }
+        }
+    }
+
+    /**
+     * Returns the position of the given point within the gradient,
+     * as a value between 0 and 1
+     */
+    protected abstract double getInterpolation(double x, double y);
+
+    /**
+     * Returns whether the pixel is near a sharp color transition,
+     * where it must be supersampled
+     */
+    protected abstract boolean needsAA(int x, int y, double interpolation);
+
+    @Override
+    public void dispose() {
+        savedRaster = null;
+    }
+
+    @Override
+    public ColorModel getColorModel() {
+        return cm;
+    }
+
+    @Override
+    public Raster getRaster(int startX, int startY, int width, int height) {
+        // the raster can be larger than requested, the caller
+        // uses only the top-left width x height part
+        WritableRaster raster = savedRaster;
+        if (raster == null || raster.getWidth() < width || raster.getHeight() < height) {
+            raster = cm.createCompatibleWritableRaster(width, height);
+            savedRaster = raster;
+        }
+
+        if (gray) {
+            byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+            int stride = ((ComponentSampleModel) raster.getSampleModel()).getScanlineStride();
+            for (int j = 0; j < height; j++) {
+                int y = startY + j;
+                int offset = j * stride;
+                for (int i = 0; i < width; i++) {
+                    data[offset + i] = (byte) calcColor(startX + i, y);
+                }
+            }
+        } else {
+            int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+            int stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+            for (int j = 0; j < height; j++) {
+                int y = startY + j;
+                int offset = j * stride;
+                for (int i = 0; i < width; i++) {
+                    data[offset + i] = calcColor(startX + i, y);
+                }
+            }
+        }
+        return raster;
+    }
+
+    private int calcColor(int x, int y) {
+        double interpolation = getInterpolation(x, y);
+        if (!needsAA(x, y, interpolation)) {
+            return lut[toIndex(interpolation)];
+        }
+
+        // average the channels of the supersampled colors
+        // (for gray values only the blue channel is used)
+        int a = 0;
+        int r = 0;
+        int g = 0;
+        int b = 0;
+        for (int m = 0; m < AA_RES; m++) {
+            double yy = y + 1.0 / AA_RES * m - 0.5;
+            for (int n = 0; n < AA_RES; n++) {
+                double xx = x + 1.0 / AA_RES * n - 0.5;
+                int color = lut[toIndex(getInterpolation(xx, yy))];
+                a += color >>> 24;
+                r += (color >>> 16) & 0xFF;
+                g += (color >>> 8) & 0xFF;
+                b += color & 0xFF;
+            }
+        }
+        a /= AA_RES2;
+        r /= AA_RES2;
+        g /= AA_RES2;
+        b /= AA_RES2;
+        return a << 24 | r << 16 | g << 8 | b;
+    }
+
+    private static int toIndex(double interpolation) {
+        int index = (int) (interpolation * (LUT_SIZE - 1) + 0.5);
+        if (index < 0) {
+            return 0;
+        }
+        if (index >= LUT_SIZE) {
+            return LUT_SIZE - 1;
+        }
+        return index;
+    }
+}
@@ -28,8 +28,6 @@ import java.awt.RenderingHints;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.ColorModel;
-import java.awt.image.Raster;
-import java.awt.image.WritableRaster;
 
 import static java.awt.MultipleGradientPaint.CycleMethod.REPEAT;
 
@@ -42,9 +40,6 @@ public class DiamondGradientPaint implements Paint {
     private final Color endColor;
     private final CycleMethod cycleMethod;
 
-    private static final int AA_RES = 4; // the resolution of AA supersampling
-    private static final int AA_RES2 = AA_RES * AA_RES;
-
     public DiamondGradientPaint(ImDrag imDrag, Color startColor, Color endColor, CycleMethod cycleMethod) {
         this.imDrag = imDrag;
         this.startColor = startColor;
@@ -56,13 +51,6 @@ public class DiamondGradientPaint implements Paint {
     public PaintContext createContext(ColorModel cm,
                                       Rectangle deviceBounds, Rectangle2D userBounds,
                                       AffineTransform xform, RenderingHints hints) {
-        int numComponents = cm.getNumComponents();
-
-        if (numComponents == 1) {
-            return new GrayDiamondGradientPaintContext(imDrag,
-                    startColor, endColor, cm, cycleMethod);
-        }
-
         return new DiamondGradientPaintContext(imDrag,
                 startColor, endColor, cm, cycleMethod);
     }
@@ -74,43 +62,20 @@ public class DiamondGradientPaint implements Paint {
         return (((a1 & a2) == 0xFF) ? OPAQUE : TRANSLUCENT);
     }
 
-    private static class DiamondGradientPaintContext implements PaintContext {
-        protected final ImDrag imDrag;
-        protected final CycleMethod cycleMethod;
-
-        private final int startAlpha;
-        private final int startRed;
-        private final int startGreen;
-        private final int startBlue;
-
-        private final int endAlpha;
-        private final int endRed;
-        private final int endGreen;
-        private final int endBlue;
-
-        protected final ColorModel cm;
-
-        protected final float dragRelDX;
-        protected final float dragRelDY;
-        protected final double dragDist;
+    private static class DiamondGradientPaintContext extends CustomGradientPaintContext {
+        private final double startX;
+        private final double startY;
+        private final float dragRelDX;
+        private final float dragRelDY;
+        private final double dragDist;
 
         private DiamondGradientPaintContext(ImDrag imDrag,
                                             Color startColor, Color endColor,
                                             ColorModel cm, CycleMethod cycleMethod) {
-            this.imDrag = imDrag;
-            this.cycleMethod = cycleMethod;
-
-            startAlpha = startColor.getAlpha();
-            startRed = startColor.getRed();
-            startGreen = startColor.getGreen();
-            startBlue = startColor.getBlue();
-
-            endAlpha = endColor.getAlpha();
-            endRed = endColor.getRed();
-            endGreen = endColor.getGreen();
-            endBlue = endColor.getBlue();
+            super(imDrag, startColor, endColor, cm, cycleMethod);
 
-            this.cm = cm;
+            startX = imDrag.getStartX();
+            startY = imDrag.getStartY();
 
             dragDist = imDrag.getDistance();
             double dragDistSqr = dragDist * dragDist;
@@ -119,85 +84,19 @@ public class DiamondGradientPaint implements Paint {
         }
 
         @Override
-        public void dispose() {
-
-        }
-
-        @Override
-        public ColorModel getColorModel() {
-            return cm;
-        }
-
-        // Warning: gray subclass has exact copy of the algorithm
-        @Override
-        public Raster getRaster(int startX, int startY, int width, int height) {
-            WritableRaster raster = cm.createCompatibleWritableRaster(width, height);
-            int[] rasterData = new int[width * height * 4];
-
-            for (int j = 0; j < height; j++) {
-                int y = startY + j;
-                for (int i = 0; i < width; i++) {
-                    int base = (j * width + i) * 4;
-                    int x = startX + i;
-
-                    double interpolation = getInterpolation(x, y);
-
-                    boolean needsAA = false;
-                    if (cycleMethod == REPEAT) {
-                        double threshold = 1.0 / dragDist;
-                        needsAA = interpolation > (1.0 - threshold)
-                                || interpolation < threshold;
-                    }
-
-                    if (needsAA) {
-                        int a = 0;
-                        int r = 0;
-                        int g = 0;
-                        int b = 0;
-
-                        for (int m = 0; m < AA_RES; m++) {
-                            float yy = (y + 1.0f / AA_RES * m - 0.5f);
-                            for (int n = 0; n < AA_RES; n++) {
-                                float xx = x + 1.0f / AA_RES * n - 0.5f;
-
-                                double interpolationAA = getInterpolation(xx, yy);
-
-                                a += (int) (startAlpha + interpolationAA * (endAlpha - startAlpha));
-                                r += (int) (startRed + interpolationAA * (endRed - startRed));
-                                g += (int) (startGreen + interpolationAA * (endGreen - startGreen));
-                                b += (int) (startBlue + interpolationAA * (endBlue - startBlue));
-                            }
-                        }
-                        a /= AA_RES2;
-                        r /= AA_RES2;
-                        g /= AA_RES2;
-                        b /= AA_RES2;
-
-                        rasterData[base] = r;
-                        rasterData[base + 1] = g;
-                        rasterData[base + 2] = b;
-                        rasterData[base + 3] = a;
-                    } else { // no AA
-                        int a = (int) (startAlpha + interpolation * (endAlpha - startAlpha));
-                        int r = (int) (startRed + interpolation * (endRed - startRed));
-                        int g = (int) (startGreen + interpolation * (endGreen - startGreen));
-                        int b = (int) (startBlue + interpolation * (endBlue - startBlue));
-
-                        rasterData[base] = r;
-                        rasterData[base + 1] = g;
-                        rasterData[base + 2] = b;
-                        rasterData[base + 3] = a;
-                    }
-                }
+        protected boolean needsAA(int x, int y, double interpolation) {
+            if (cycleMethod == REPEAT) {
+                double threshold = 1.0 / dragDist;
+                return interpolation > (1.0 - threshold)
+                        || interpolation < threshold;
             }
-
-            raster.setPixels(0, 0, width, height, rasterData);
-            return raster;
+            return false;
         }
 
-        public double getInterpolation(double x, double y) {
-            double dx = x - imDrag.getStartX();
-            double dy = y - imDrag.getStartY();
+        @Override
+        protected double getInterpolation(double x, double y) {
+            double dx = x - startX;
+            double dy = y - startY;
 
             double v1 = Math.abs((dx * this.dragRelDX) + (dy * this.dragRelDY));
             double v2 = Math.abs((dx * this.dragRelDY) - (dy * this.dragRelDX));
@@ -230,65 +129,4 @@ public class DiamondGradientPaint implements Paint {
             return interpolation;
         }
     }
-
-    private static class GrayDiamondGradientPaintContext extends DiamondGradientPaintContext {
-        private final int startGray;
-        private final int endGray;
-
-        private GrayDiamondGradientPaintContext(ImDrag imDrag,
-                                                Color startColor, Color endColor,
-                                                ColorModel cm, CycleMethod cycleMethod) {
-            super(imDrag, startColor, endColor, cm, cycleMethod);
-
-            startGray = startColor.getRed();
-            endGray = endColor.getRed();
-        }
-
-        @Override
-        public Raster getRaster(int startX, int startY, int width, int height) {
-            WritableRaster raster = cm.createCompatibleWritableRaster(width, height);
-            int[] rasterData = new int[width * height];
-
-            for (int j = 0; j < height; j++) {
-                int y = startY + j;
-                for (int i = 0; i < width; i++) {
-                    int base = (j * width + i);
-                    int x = startX + i;
-
-                    double interpolation = getInterpolation(x, y);
-
-                    boolean needsAA = false;
-                    if (cycleMethod == REPEAT) {
-                        double threshold = 1.0 / dragDist;
-                        needsAA = interpolation > (1.0 - threshold) || interpolation < threshold;
-                    }
-
-                    if (needsAA) {
-                        int g = 0;
-
-                        for (int m = 0; m < AA_RES; m++) {
-                            float yy = (y + 1.0f / AA_RES * m - 0.5f);
-                            for (int n = 0; n < AA_RES; n++) {
-                                float xx = x + 1.0f / AA_RES * n - 0.5f;
-
-                                double interpolationAA = getInterpolation(xx, yy);
-
-                                g += (int) (startGray + interpolationAA * (endGray - startGray));
-                            }
-                        }
-                        g /= AA_RES2;
-
-                        rasterData[base] = g;
-                    } else { // no AA
-                        int g = (int) (startGray + interpolation * (endGray - startGray));
-
-                        rasterData[base] = g;
-                    }
-                }
-            }
-
-            raster.setPixels(0, 0, width, height, rasterData);
-            return raster;
-        }
-    }
-}
\ No newline at end of file
+}
@@ -17,6 +17,7 @@
 
 package pixelitor.tools.gradient.paints;
 
+import net.jafama.FastMath;
 import pixelitor.tools.util.ImDrag;
 
 import java.awt.Color;
@@ -28,8 +29,6 @@ import java.awt.RenderingHints;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.ColorModel;
-import java.awt.image.Raster;
-import java.awt.image.WritableRaster;
 
 import static java.awt.MultipleGradientPaint.CycleMethod.NO_CYCLE;
 import static java.awt.MultipleGradientPaint.CycleMethod.REFLECT;
@@ -45,9 +44,6 @@ public class SpiralGradientPaint implements Paint {
     private final Color endColor;
     private final CycleMethod cycleMethod;
 
-    private static final int AA_RES = 4; // the resolution of AA supersampling
-    private static final int AA_RES2 = AA_RES * AA_RES;
-
     public SpiralGradientPaint(boolean clockwise, ImDrag imDrag,
                                Color startColor, Color endColor,
                                CycleMethod cycleMethod) {
@@ -62,12 +58,6 @@ public class SpiralGradientPaint implements Paint {
     public PaintContext createContext(ColorModel cm,
                                       Rectangle deviceBounds, Rectangle2D userBounds,
                                       AffineTransform xform, RenderingHints hints) {
-        int numComponents = cm.getNumComponents();
-
-        if (numComponents == 1) {
-            return new GraySpiralGradientPaintContext(clockwise, imDrag, startColor, endColor, cm, cycleMethod);
-        }
-
         return new SpiralGradientPaintContext(clockwise, imDrag, startColor, endColor, cm, cycleMethod);
     }
 
@@ -78,132 +68,47 @@ public class SpiralGradientPaint implements Paint {
         return (((a1 & a2) == 0xFF) ? OPAQUE : TRANSLUCENT);
     }
 
-    static class SpiralGradientPaintContext implements PaintContext {
-        protected final boolean clockwise;
-        protected final ImDrag imDrag;
-        protected final CycleMethod cycleMethod;
-
-        private final int startAlpha;
-        private final int startRed;
-        private final int startGreen;
-        private final int startBlue;
-
-        private final int endAlpha;
-        private final int endRed;
-        private final int endGreen;
-        private final int endBlue;
-
-        protected final ColorModel cm;
-        protected final double drawAngle;
-        protected final double dragDistance;
+    static class SpiralGradientPaintContext extends CustomGradientPaintContext {
+        private final boolean clockwise;
+        private final double startX;
+        private final double startY;
+        private final double drawAngle;
+        private final double dragDistance;
 
         private SpiralGradientPaintContext(boolean clockwise, ImDrag imDrag,
                                            Color startColor, Color endColor,
                                            ColorModel cm, CycleMethod cycleMethod) {
+            super(imDrag, startColor, endColor, cm, cycleMethod);
             this.clockwise = clockwise;
-            this.imDrag = imDrag;
-            this.cycleMethod = cycleMethod;
 
-            startAlpha = startColor.getAlpha();
-            startRed = startColor.getRed();
-            startGreen = startColor.getGreen();
-            startBlue = startColor.getBlue();
-
-            endAlpha = endColor.getAlpha();
-            endRed = endColor.getRed();
-            endGreen = endColor.getGreen();
-            endBlue = endColor.getBlue();
-
-            this.cm = cm;
+            startX = imDrag.getStartX();
+            startY = imDrag.getStartY();
             drawAngle = imDrag.getDrawAngle() + Math.PI;  // between 0 and 2*PI
 
             dragDistance = imDrag.getDistance();
         }
 
         @Override
-        public void dispose() {
-
-        }
-
-        @Override
-        public ColorModel getColorModel() {
-            return cm;
+        protected boolean needsAA(int x, int y, double interpolation) {
+            if (cycleMethod == REFLECT) {
+                return false;
+            }
+            double threshold;
+            if (cycleMethod == NO_CYCLE) {
+                threshold = 0.5 / dragDistance;
+            } else { // REPEAT
+                threshold = 1.0 / dragDistance;
+            }
+            return interpolation > (1.0 - threshold) || interpolation < threshold;
         }
 
-        // Warning: gray subclass has exact copy of the algorithm
         @Override
-        public Raster getRaster(int startX, int startY, int width, int height) {
-            WritableRaster raster = cm.createCompatibleWritableRaster(width, height);
-            int[] rasterData = new int[width * height * 4];
-
-            for (int j = 0; j < height; j++) {
-                for (int i = 0; i < width; i++) {
-                    int base = (j * width + i) * 4;
-
-                    int x = startX + i;
-                    int y = startY + j;
-
-                    double interpolation = getInterpolation(x, y);
-
-                    boolean needsAA = false;
-                    if (cycleMethod != REFLECT) {
-                        double threshold;
-                        if (cycleMethod == NO_CYCLE) {
-                            threshold = 0.5 / dragDistance;
-                        } else { // REPEAT
-                            threshold = 1.0 / dragDistance;
-                        }
-                        needsAA = interpolation > (1.0 - threshold) || interpolation < threshold;
-                    }
+        protected double getInterpolation(double x, double y) {
+            double dx = x - startX;
+            double dy = y - startY;
 
-                    if (needsAA) {
-                        int a = 0;
-                        int r = 0;
-                        int g = 0;
-                        int b = 0;
-
-                        for (int m = 0; m < AA_RES; m++) {
-                            double yy = y + 1.0 / AA_RES * m - 0.5;
-                            for (int n = 0; n < AA_RES; n++) {
-                                double xx = x + 1.0 / AA_RES * n - 0.5;
-
-                                double interpolationAA = getInterpolation(xx, yy);
-
-                                a += (int) (startAlpha + interpolationAA * (endAlpha - startAlpha));
-                                r += (int) (startRed + interpolationAA * (endRed - startRed));
-                                g += (int) (startGreen + interpolationAA * (endGreen - startGreen));
-                                b += (int) (startBlue + interpolationAA * (endBlue - startBlue));
-                            }
-                        }
-                        a /= AA_RES2;
-                        r /= AA_RES2;
-                        g /= AA_RES2;
-                        b /= AA_RES2;
-
-                        rasterData[base] = r;
-                        rasterData[base + 1] = g;
-                        rasterData[base + 2] = b;
-                        rasterData[base + 3] = a;
-                    } else { // no AA
-                        int a = (int) (startAlpha + interpolation * (endAlpha - startAlpha));
-                        int r = (int) (startRed + interpolation * (endRed - startRed));
-                        int g = (int) (startGreen + interpolation * (endGreen - startGreen));
-                        int b = (int) (startBlue + interpolation * (endBlue - startBlue));
-
-                        rasterData[base] = r;
-                        rasterData[base + 1] = g;
-                        rasterData[base + 2] = b;
-                        rasterData[base + 3] = a;
-                    }
-                }
-            }
-
-            raster.setPixels(0, 0, width, height, rasterData);
-            return raster;
-        }
-
-        public double getInterpolation(double x, double y) {
-            double renderAngle = imDrag.getAngleFromStartTo(x, y) + Math.PI;
+            // the same as imDrag.getAngleFromStartTo(x, y), but faster
+            double renderAngle = FastMath.atan2(dx, dy) + Math.PI;
             double relativeAngle;
             if (clockwise) {
                 relativeAngle = renderAngle - drawAngle;
@@ -215,8 +120,7 @@ public class SpiralGradientPaint implements Paint {
             }
             relativeAngle /= (2.0 * Math.PI);
 
-//                    double renderDist = Math.sqrt(renderRelativeX*renderRelativeX + renderRelativeY*renderRelativeY);
-            double renderDist = imDrag.getStartDistanceFrom(x, y);
+            double renderDist = Math.sqrt(dx * dx + dy * dy);
 
             double relativeDist = renderDist / dragDistance;
 
@@ -243,71 +147,4 @@ public class SpiralGradientPaint implements Paint {
             return interpolation;
         }
     }
-
-    private static class GraySpiralGradientPaintContext extends SpiralGradientPaintContext {
-        private final int startGray;
-        private final int endGray;
-
-        private GraySpiralGradientPaintContext(boolean clockwise, ImDrag imDrag,
-                                               Color startColor, Color endColor,
-                                               ColorModel cm, CycleMethod cycleMethod) {
-            super(clockwise, imDrag, startColor, endColor, cm, cycleMethod);
-
-            startGray = startColor.getRed();
-            endGray = endColor.getRed();
-        }
-
-        @Override
-        public Raster getRaster(int startX, int startY, int width, int height) {
-            WritableRaster raster = cm.createCompatibleWritableRaster(width, height);
-            int[] rasterData = new int[width * height];
-
-            for (int j = 0; j < height; j++) {
-                for (int i = 0; i < width; i++) {
-                    int base = (j * width + i);
-
-                    int x = startX + i;
-                    int y = startY + j;
-
-                    double interpolation = getInterpolation(x, y);
-
-                    boolean needsAA = false;
-                    if (cycleMethod != REFLECT) {
-                        double threshold;
-                        if (cycleMethod == NO_CYCLE) {
-                            threshold = 0.5 / dragDistance;
-                        } else { // REPEAT
-                            threshold = 1.0 / dragDistance;
-                        }
-                        needsAA = interpolation > (1.0 - threshold) || interpolation < threshold;
-                    }
-
-                    if (needsAA) {
-                        int g = 0;
-
-                        for (int m = 0; m < AA_RES; m++) {
-                            double yy = y + 1.0 / AA_RES * m - 0.5;
-                            for (int n = 0; n < AA_RES; n++) {
-                                double xx = x + 1.0 / AA_RES * n - 0.5;
-
-                                double interpolationAA = getInterpolation(xx, yy);
-
-                                g += (int) (startGray + interpolationAA * (endGray - startGray));
-                            }
-                        }
-                        g /= AA_RES2;
-
-                        rasterData[base] = g;
-                    } else { // no AA
-                        int g = (int) (startGray + interpolation * (endGray - startGray));
-
-                        rasterData[base] = g;
-                    }
-                }
-            }
-
-            raster.setPixels(0, 0, width, height, rasterData);
-            return raster;
-        }
-    }
-}
\ No newline at end of file
+}
@@ -195,8 +195,7 @@ public enum ShapeType {
 
         @Override
         public Shape getShape(double x, double y, double diameter) {
-            RandomStarShape.randomize();
-            return new RandomStarShape(x, y, diameter, diameter);
+            return RandomStarShape.createRandom(x, y, diameter, diameter);
         }
 
         @Override
@@ -204,7 +203,7 @@ public enum ShapeType {
             return DragDisplayType.WIDTH_HEIGHT;
         }
     }, ARROW("Arrow", true, true) {
-        GeneralPath unitArrow = null;
+        private final GeneralPath unitArrow = Shapes.createUnitArrow();
 
         @Override
         public Shape getShape(ImDrag imDrag) {
@@ -217,18 +216,16 @@ public enum ShapeType {
         }
 
         private Shape createArrowShape(ImDrag imDrag, boolean rotate) {
-            if (unitArrow == null) {
-                unitArrow = Shapes.createUnitArrow();
-            }
-
-            setCoordinates(imDrag);
+            // the coordinates are local, because the brushes
+            // can call this from several threads at the same time
+            Rectangle2D r = imDrag.createPossiblyEmptyRect();
 
             double distance = imDrag.getDistance();
             if (imDrag.isStartFromCenter()) {
                 distance *= 2;
             }
 
-            AffineTransform transform = AffineTransform.getTranslateInstance(x, y);
+            AffineTransform transform = AffineTransform.getTranslateInstance(r.getX(), r.getY());
             transform.scale(distance, distance); // originally it had a length of 1.0
             if (rotate) {
                 double angleInRadians = imDrag.getDrawAngle();
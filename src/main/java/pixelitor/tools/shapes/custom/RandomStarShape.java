@@ -28,6 +28,8 @@ import java.awt.geom.GeneralPath;
 import java.awt.geom.PathIterator;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.DoubleSupplier;
 
 /**
  * A random star, inspired by http://tips4java.wordpress.com/2013/05/13/playing-with-shapes/
@@ -41,36 +43,42 @@ public class RandomStarShape implements Shape {
 
     private static final CachedFloatRandom random = new CachedFloatRandom();
 
-    private static int numPoints;
-    private static int numRadius;
-    private static double[] radiusRatios;
-
-    private static double unitAngle;
-    private static double initialAngle;
+    // the parameters of the last randomization, used
+    // when the shapes tool only rescales the star
+    private static volatile StarParams lastParams = StarParams.createShared();
 
+    /**
+     * Generates new random parameters for the stars created
+     * with the {@link #RandomStarShape(double, double, double, double)} constructor
+     */
     public static void randomize() {
-        numPoints = 2 * (4 + Rnd.nextInt(6));
-        numRadius = 2; // if higher than 2 then sometimes nice dancing starts are produced, but often ugly ones
-        radiusRatios = new double[numRadius];
-        radiusRatios[0] = 1.0;
-        for (int i = 1; i < numRadius; i++) {
-            radiusRatios[i] = 0.1 + random.nextFloat() / 2.5;
-        }
-
-        unitAngle = (2 * Math.PI) / numPoints;
+        lastParams = StarParams.createShared();
+    }
 
-        // a random value between 0 and unitAngle
-        initialAngle = 2 * random.nextFloat() * unitAngle;
+    /**
+     * Creates a star with the parameters of the last randomization
+     */
+    public RandomStarShape(double x, double y, double width, double height) {
+        this(x, y, width, height, lastParams);
     }
 
-    static {
-        randomize();
+    /**
+     * Creates a star with new random parameters, without changing any shared
+     * state, so it can be called from several threads at the same time
+     */
+    public static RandomStarShape createRandom(double x, double y, double width, double height) {
+        return new RandomStarShape(x, y, width, height, StarParams.createThreadLocal());
     }
 
-    public RandomStarShape(double x, double y, double width, double height) {
+    private RandomStarShape(double x, double y, double width, double height, StarParams params) {
+        int numPoints = params.numPoints;
+        double[] radiusRatios = params.radiusRatios;
+        double unitAngle = params.unitAngle;
+        double initialAngle = params.initialAngle;
+
         double centerX = x + width / 2.0;
         double centerY = y + height / 2.0;
-        double[] radii = new double[numRadius];
+        double[] radii = new double[radiusRatios.length];
         double maxRadius = 1 + width / 2;
 
         radii[0] = maxRadius;
@@ -147,4 +155,46 @@ public class RandomStarShape implements Shape {
     public boolean contains(double x, double y, double w, double h) {
         return delegate.contains(x, y, w, h);
     }
+
+    /**
+     * The random parameters of a star, independent of its size
+     */
+    private static class StarParams {
+        private final int numPoints;
+        private final double[] radiusRatios;
+        private final double unitAngle;
+        private final double initialAngle;
+
+        /**
+         * Creates the parameters for the shapes tool
+         * with the shared random generators
+         */
+        static StarParams createShared() {
+            return new StarParams(Rnd.nextInt(6), random::nextFloat);
+        }
+
+        /**
+         * Creates the parameters with the random generator of
+         * the current thread, without touching any shared state
+         */
+        static StarParams createThreadLocal() {
+            ThreadLocalRandom threadRandom = ThreadLocalRandom.current();
+            return new StarParams(threadRandom.nextInt(6), threadRandom::nextFloat);
+        }
+
+        private StarParams(int extraPoints, DoubleSupplier nextFloat) {
+            numPoints = 2 * (4 + extraPoints);
+            int numRadius = 2; // if higher than 2 then sometimes nice dancing starts are produced, but often ugly ones
+            radiusRatios = new double[numRadius];
+            radiusRatios[0] = 1.0;
+            for (int i = 1; i < numRadius; i++) {
+                radiusRatios[i] = 0.1 + nextFloat.getAsDouble() / 2.5;
+            }
+
+            unitAngle = (2 * Math.PI) / numPoints;
+
+            // a random value between 0 and unitAngle
+            initialAngle = 2 * nextFloat.getAsDouble() * unitAngle;
+        }
+    }
 }
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.tools.util;
+
+import pixelitor.ThreadPool;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+
+/**
+ * A set of pixels whose color is within a tolerance of a given color,
+ * either the contiguous region around a starting point (flood fill),
+ * or all such pixels of an image (global replace).
+ *
+ * The pixels are stored in a packed bitset, where each
+ * row starts with a new word, so that the rows can be
+ * calculated and processed in parallel.
+ */
+public class RegionMask {
+    private final int width;
+    private final int height;
+    private final int wordsPerRow;
+    private final long[] bits;
+
+    // the bounds of the set pixels
+    private int minX;
+    private int minY;
+    private int maxX = -1;
+    private int maxY = -1;
+
+    private RegionMask(int width, int height) {
+        this.width = width;
+        this.height = height;
+        wordsPerRow = (width + 63) >>> 6;
+        bits = new long[wordsPerRow * height];
+        minX = width;
+        minY = height;
+    }
+
+    /**
+     * Returns the 4-connected region of the pixels which are similar
+     * to the pixel at the given starting point. It uses a scanline
+     * fill with a primitive stack of spans, see
+     * http://en.wikipedia.org/wiki/Flood_fill
+     */
+    public static RegionMask contiguous(int[] pixels, int width, int height,
+                                        int startX, int startY, int tolerance) {
+        RegionMask mask = new RegionMask(width, height);
+        int targetRGB = pixels[startX + startY * width];
+
+        // the x, y coordinates of the points to be inspected later
+        int[] stack = new int[64];
+        int stackSize = 0;
+        stack[stackSize++] = startX;
+        stack[stackSize++] = startY;
+
+        while (stackSize > 0) {
+            int y = stack[--stackSize];
+            int x = stack[--stackSize];
+            if (mask.contains(x, y)) {
+                // already filled after it was pushed
+                continue;
+            }
+            int offset = y * width;
+
+            // find the last replaceable point to the left
+            int scanlineMinX = x;
+            while (scanlineMinX > 0
+                    && !mask.contains(scanlineMinX - 1, y)
+                    && isSimilar(pixels[scanlineMinX - 1 + offset], targetRGB, tolerance)) {
+                scanlineMinX--;
+            }
+
+            // find the last replaceable point to the right
+            int scanlineMaxX = x;
+            while (scanlineMaxX < width - 1
+                    && !mask.contains(scanlineMaxX + 1, y)
+                    && isSimilar(pixels[scanlineMaxX + 1 + offset], targetRGB, tolerance)) {
+                scanlineMaxX++;
+            }
+
+            mask.setSpan(y, scanlineMinX, scanlineMaxX);
+
+            // look upwards and downwards for new points to be inspected later.
+            // If there are multiple pixels to be replaced
+            // that are horizontal neighbours,
+            // only one of them has to be inspected later
+            for (int ny = y - 1; ny <= y + 1; ny += 2) {
+                if (ny < 0 || ny >= height) {
+                    continue;
+                }
+                int nOffset = ny * width;
+                boolean pointsInLine = false;
+                for (int i = scanlineMinX; i <= scanlineMaxX; i++) {
+                    boolean shouldBeReplaced = !mask.contains(i, ny)
+                            && isSimilar(pixels[i + nOffset], targetRGB, tolerance);
+                    if (!pointsInLine && shouldBeReplaced) {
+                        if (stackSize + 2 > stack.length) {
+                            stack = Arrays.copyOf(stack, stack.length * 2);
+                        }
+                        stack[stackSize++] = i;
+                        stack[stackSize++] = ny;
+                        pointsInLine = true;
+                    } else if (pointsInLine && !shouldBeReplaced) {
+                        pointsInLine = false;
+                    }
+                }
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Returns all the pixels of the image which are similar
+     * to the given color. The rows are processed in parallel.
+     */
+    public static RegionMask global(int[] pixels, int width, int height,
+                                    int targetRGB, int tolerance) {
+        RegionMask mask = new RegionMask(width, height);
+
+        // the horizontal bounds of each row, merged at the end
+        int[] rowMinX = new int[height];
+        int[] rowMaxX = new int[height];
+
+        ThreadPool.processRowBlocks(height, (fromY, toY) -> {
+            for (int y = fromY; y < toY; y++) {
+                int offset = y * width;
+                int wordOffset = y * mask.wordsPerRow;
+                int rowMin = width;
+                int rowMax = -1;
+                for (int x = 0; x < width; x++) {
+                    if (isSimilar(pixels[offset + x], targetRGB, tolerance)) {
+                        mask.bits[wordOffset + (x >>> 6)] |= 1L << x;
+                        if (rowMin == width) {
+                            rowMin = x;
+                        }
+                        rowMax = x;
+                    }
+                }
+                rowMinX[y] = rowMin;
+                rowMaxX[y] = rowMax;
+            }
+        }, ProgressTracker.NULL_TRACKER);
+
+        for (int y = 0; y < height; y++) {
+            if (rowMaxX[y] >= 0) {
+                mask.includeInBounds(rowMinX[y], rowMaxX[y], y);
+            }
+        }
+        return mask;
+    }
+
+    private void setSpan(int y, int fromX, int toX) {
+        int wordOffset = y * wordsPerRow;
+        int fromWord = fromX >>> 6;
+        int toWord = toX >>> 6;
+        long fromMask = -1L << fromX;
+        long toMask = -1L >>> (63 - (toX & 63));
+        if (fromWord == toWord) {
+            bits[wordOffset + fromWord] |= fromMask & toMask;
+        } else {
+            bits[wordOffset + fromWord] |= fromMask;
+            for (int w = fromWord + 1; w < toWord; w++) {
+                bits[wordOffset + w] = -1L;
+            }
+            bits[wordOffset + toWord] |= toMask;
+        }
+        includeInBounds(fromX, toX, y);
+    }
+
+    private void includeInBounds(int fromX, int toX, int y) {
+        if (fromX < minX) {
+            minX = fromX;
+        }
+        if (toX > maxX) {
+            maxX = toX;
+        }
+        if (y < minY) {
+            minY = y;
+        }
+        if (y > maxY) {
+            maxY = y;
+        }
+    }
+
+    public boolean contains(int x, int y) {
+        return (bits[y * wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    public boolean isEmpty() {
+        return maxX < 0;
+    }
+
+    /**
+     * Returns the exact bounding box of the region,
+     * or an empty rectangle if the region is empty
+     */
+    public Rectangle getBounds() {
+        if (isEmpty()) {
+            return new Rectangle(0, 0, 0, 0);
+        }
+        return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+    }
+
+    /**
+     * Sets the pixels of the region to the given color in the given
+     * image with a packed int array, whose top-left corner corresponds
+     * to the (imgX, imgY) point of the region.
+     */
+    public void fill(BufferedImage img, int imgX, int imgY, int rgb) {
+        if (isEmpty()) {
+            return;
+        }
+        int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        int imgWidth = img.getWidth();
+        int fromY = Math.max(minY, imgY);
+        int toY = Math.min(maxY + 1, imgY + img.getHeight());
+        int fromX = Math.max(minX, imgX);
+        int toX = Math.min(maxX + 1, imgX + imgWidth);
+        if (fromY >= toY || fromX >= toX) {
+            return;
+        }
+
+        ThreadPool.processRowBlocks(toY - fromY, (fromRow, toRow) -> {
+            for (int y = fromY + fromRow; y < fromY + toRow; y++) {
+                int wordOffset = y * wordsPerRow;
+                int pixelOffset = (y - imgY) * imgWidth - imgX;
+                for (int w = fromX >>> 6; w <= (toX - 1) >>> 6; w++) {
+                    long word = bits[wordOffset + w];
+                    while (word != 0) {
+                        int x = (w << 6) + Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                        if (x >= fromX && x < toX) {
+                            pixels[pixelOffset + x] = rgb;
+                        }
+                    }
+                }
+            }
+        }, ProgressTracker.NULL_TRACKER);
+    }
+
+    /**
+     * Returns the region as a {@link BufferedImage#TYPE_BYTE_GRAY}
+     * image of the original size, where the pixels of
+     * the region are white and the others are black.
+     */
+    public BufferedImage createMaskImage() {
+        BufferedImage img = new BufferedImage(width, height, TYPE_BYTE_GRAY);
+        byte[] pixels = ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
+        for (int y = minY; y <= maxY; y++) {
+            int offset = y * width;
+            for (int x = minX; x <= maxX; x++) {
+                if (contains(x, y)) {
+                    pixels[offset + x] = (byte) 0xFF;
+                }
+            }
+        }
+        return img;
+    }
+
+    /**
+     * Returns true if the RGB components of the two colors
+     * are within the given tolerance. The alpha is ignored.
+     */
+    public static boolean isSimilar(int color1, int color2, int tolerance) {
+        if (color1 == color2) {
+            return true;
+        }
+
+        int r1 = (color1 >>> 16) & 0xFF;
+        int g1 = (color1 >>> 8) & 0xFF;
+        int b1 = color1 & 0xFF;
+
+        int r2 = (color2 >>> 16) & 0xFF;
+        int g2 = (color2 >>> 8) & 0xFF;
+        int b2 = color2 & 0xFF;
+
+        return (r2 <= r1 + tolerance) && (r2 >= r1 - tolerance) &&
+                (g2 <= g1 + tolerance) && (g2 >= g1 - tolerance) &&
+                (b2 <= b1 + tolerance) && (b2 >= b1 - tolerance);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2019 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import net.jafaran.AbstractSeqRNG;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A counter-based random number generator in the style of SplitMix64.
+ *
+ * The random numbers depend only on the seed and on the counter
+ * given to {@link #jumpTo(long)} (typically a pixel index), and not on
+ * the previously generated numbers. This means that a filter can
+ * process its pixels in any order, on any number of threads, and
+ * it still produces the same output for the same seed.
+ *
+ * Not thread-safe: each thread should use its own instance.
+ */
+public class CounterRNG extends AbstractSeqRNG {
+    private static final long serialVersionUID = 1L;
+
+    // the odd increment of SplitMix64, derived from the golden ratio
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    // the hashed seed
+    private long key;
+    private long state;
+
+    public CounterRNG(long seed) {
+        super(seed);
+    }
+
+    /**
+     * Selects the independent stream of random numbers
+     * that belongs to the given counter
+     */
+    public void jumpTo(long counter) {
+        state = mix64(key + counter * GOLDEN_GAMMA);
+        setCurrentNbrOfStoredBits(0);
+    }
+
+    @Override
+    public long nextLong() {
+        state += GOLDEN_GAMMA;
+        return mix64(state);
+    }
+
+    /**
+     * Returns the first random number of the stream selected by
+     * the counter, without creating a generator. The result is the
+     * same as calling {@link #jumpTo(long)} and then {@link #nextLong()}
+     * on a generator created with the same seed.
+     */
+    public static long hash(long seed, long counter) {
+        long streamStart = mix64(mix64(seed) + counter * GOLDEN_GAMMA);
+        return mix64(streamStart + GOLDEN_GAMMA);
+    }
+
+    /**
+     * The finalizer of SplitMix64 (variant 13 of David Stafford's mixers)
+     */
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    @Override
+    public byte[] getState() {
+        // big endian: the key, then the current position
+        byte[] tab = new byte[8 + 8];
+        ByteBuffer bb = ByteBuffer.wrap(tab);
+        bb.putLong(key);
+        bb.putLong(state);
+        return tab;
+    }
+
+    @Override
+    public void setState(byte[] state) {
+        ByteBuffer bb = ByteBuffer.wrap(state);
+        key = bb.getLong();
+        this.state = bb.getLong();
+        setCurrentNbrOfStoredBits(0);
+    }
+
+    @Override
+    protected void setSeedImpl(long seed) {
+        super.setSeedImpl(0L);
+        key = mix64(seed);
+        state = key;
+    }
+}
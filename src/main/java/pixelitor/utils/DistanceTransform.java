@@ -0,0 +1,107 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+/**
+ * The exact Euclidean distance transform of Felzenszwalb and Huttenlocher
+ * ("Distance Transforms of Sampled Functions", 2012), which runs
+ * in linear time, independently of the size of the distances.
+ */
+public class DistanceTransform {
+    /**
+     * The initial value of the pixels which are not features
+     */
+    public static final float FAR = 1.0e20f;
+
+    private DistanceTransform() {
+        // should not be instantiated
+    }
+
+    /**
+     * Calculates the squared distances in place. The features
+     * must be set to 0 in the given grid, and all the other pixels to
+     * {@link #FAR}. After the call each pixel contains its squared distance
+     * from the nearest feature (or a value around {@link #FAR},
+     * if there are no features at all).
+     */
+    public static void squaredDistances(float[] grid, int width, int height) {
+        int maxLength = Math.max(width, height);
+        float[] f = new float[maxLength];
+        float[] d = new float[maxLength];
+        int[] v = new int[maxLength];
+        float[] z = new float[maxLength + 1];
+
+        // the columns
+        for (int x = 0; x < width; x++) {
+            for (int y = 0, i = x; y < height; y++, i += width) {
+                f[y] = grid[i];
+            }
+            transform1D(f, d, v, z, height);
+            for (int y = 0, i = x; y < height; y++, i += width) {
+                grid[i] = d[y];
+            }
+        }
+
+        // the rows
+        for (int y = 0; y < height; y++) {
+            int offset = y * width;
+            System.arraycopy(grid, offset, f, 0, width);
+            transform1D(f, d, v, z, width);
+            System.arraycopy(d, 0, grid, offset, width);
+        }
+    }
+
+    /**
+     * The one-dimensional distance transform of the sampled function f,
+     * calculated as the lower envelope of the parabolas rooted at the samples
+     */
+    private static void transform1D(float[] f, float[] d, int[] v, float[] z, int n) {
+        int k = 0;
+        v[0] = 0;
+        z[0] = Float.NEGATIVE_INFINITY;
+        z[1] = Float.POSITIVE_INFINITY;
+        for (int q = 1; q < n; q++) {
+            float s = intersection(f, q, v[k]);
+            while (s <= z[k]) {
+                k--;
+                s = intersection(f, q, v[k]);
+            }
+            k++;
+            v[k] = q;
+            z[k] = s;
+            z[k + 1] = Float.POSITIVE_INFINITY;
+        }
+
+        k = 0;
+        for (int q = 0; q < n; q++) {
+            while (z[k + 1] < q) {
+                k++;
+            }
+            int dq = q - v[k];
+            d[q] = dq * dq + f[v[k]];
+        }
+    }
+
+    /**
+     * The horizontal position of the intersection
+     * of the parabolas rooted at q and p
+     */
+    private static float intersection(float[] f, int q, int p) {
+        return ((f[q] + q * q) - (f[p] + p * p)) / (2 * q - 2 * p);
+    }
+}
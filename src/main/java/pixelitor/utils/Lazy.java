@@ -43,6 +43,13 @@ public class Lazy<T> implements Supplier<T> {
         return value;
     }
 
+    /**
+     * Returns the value if it is already calculated, or null otherwise
+     */
+    public T getIfCalculated() {
+        return value;
+    }
+
     /**
      * Make sure that the value is re-calculated the next time
      */
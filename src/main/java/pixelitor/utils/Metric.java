@@ -37,6 +37,11 @@ public enum Metric {
             double dy = y1 - y2;
             return dx * dx + dy * dy; // much faster without square root
         }
+
+        @Override
+        public double lowerBoundForAxisGap(double gap) {
+            return gap * gap;
+        }
     }, TAXICAB("Taxicab (Manhattan)") {
         @Override
         public double distanceInt(int x1, int x2, int y1, int y2) {
@@ -47,6 +52,11 @@ public enum Metric {
         public double distanceDouble(double x1, double x2, double y1, double y2) {
             return Math.abs(x1 - x2) + Math.abs(y1 - y2);
         }
+
+        @Override
+        public double lowerBoundForAxisGap(double gap) {
+            return gap;
+        }
     }, MAX("Chessboard (Chebyshev)") {
         @Override
         public double distanceInt(int x1, int x2, int y1, int y2) {
@@ -57,6 +67,11 @@ public enum Metric {
         public double distanceDouble(double x1, double x2, double y1, double y2) {
             return Math.max(Math.abs(x1 - x2), Math.abs(y1 - y2));
         }
+
+        @Override
+        public double lowerBoundForAxisGap(double gap) {
+            return gap;
+        }
     };
 
     private final String guiName;
@@ -74,4 +89,11 @@ public enum Metric {
 
     // a slower version with double arguments
     public abstract double distanceDouble(double x1, double x2, double y1, double y2);
+
+    /**
+     * Returns the smallest possible distance (in the units returned by
+     * the distance methods) between two points whose x or y coordinates
+     * differ by at least the given non-negative gap.
+     */
+    public abstract double lowerBoundForAxisGap(double gap);
 }
@@ -47,10 +47,28 @@ public class ReseedSupport {
         return rand;
     }
 
+    /**
+     * Returns a new counter-based random number generator for the
+     * current seed. Unlike the generator returned by {@link #reInitialize()},
+     * it can be used for processing the pixels on several threads
+     * (one generator per thread), and the result still depends only on the seed.
+     */
+    public static CounterRNG createCounterRNG() {
+        return new CounterRNG(seed);
+    }
+
+    /**
+     * Returns the current seed, for filters that use
+     * {@link CounterRNG#hash(long, long)} directly
+     */
+    public static long getSeed() {
+        return seed;
+    }
+
     /**
      * Called then the user presses the "reseed" button
      */
-    private static void reseed() {
+    public static void reseed() {
         seed = System.nanoTime();
     }
 
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2019 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils.debug;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The counters and the duration histogram of one kind of
+ * operation. Recording is lock-free and can be done
+ * from several threads at the same time.
+ */
+public class OperationStats {
+    // The durations are counted in logarithmic buckets:
+    // every power of two range of nanoseconds is divided
+    // into 8 linear sub-buckets, so the percentiles
+    // have a relative error of at most 12.5%
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int NUM_BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final String name;
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder pixels = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+    private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+
+    public OperationStats(String name) {
+        this.name = name;
+    }
+
+    public void add(long nanos, long allocated, long numPixels) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        buckets.incrementAndGet(bucketIndex(nanos));
+        if (numPixels > 0) {
+            pixels.add(numPixels);
+        }
+        if (allocated > 0) {
+            allocatedBytes.add(allocated);
+        }
+    }
+
+    public void reset() {
+        count.reset();
+        totalNanos.reset();
+        pixels.reset();
+        allocatedBytes.reset();
+        maxNanos.reset();
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns a consistent copy of the current values,
+     * which can be shown or exported without further
+     * synchronization.
+     */
+    public Summary createSummary() {
+        long[] counts = new long[NUM_BUCKETS];
+        long histogramCount = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            histogramCount += counts[i];
+        }
+        long max = maxNanos.get();
+
+        return new Summary(name, count.sum(), totalNanos.sum(),
+                percentile(counts, histogramCount, 0.5, max),
+                percentile(counts, histogramCount, 0.99, max),
+                max, pixels.sum(), allocatedBytes.sum());
+    }
+
+    static int bucketIndex(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos; // exact values for tiny durations
+        }
+        int log = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (log - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (log - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * The largest duration that is counted in the given bucket
+     */
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int log = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = index % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (log - SUB_BUCKET_BITS)) - 1;
+    }
+
+    private static long percentile(long[] counts, long total, double p, long max) {
+        if (total == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(p * total);
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            if (cumulative >= target) {
+                // the upper bound of the bucket can't be more than the max
+                return Math.min(bucketUpperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * An immutable snapshot of the statistics of an operation
+     */
+    public static class Summary {
+        private static final double NANOS_PER_MS = 1_000_000.0;
+
+        private final String name;
+        private final long count;
+        private final long totalNanos;
+        private final long p50Nanos;
+        private final long p99Nanos;
+        private final long maxNanos;
+        private final long pixels;
+        private final long allocatedBytes;
+
+        private Summary(String name, long count, long totalNanos,
+                        long p50Nanos, long p99Nanos, long maxNanos,
+                        long pixels, long allocatedBytes) {
+            this.name = name;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.p50Nanos = p50Nanos;
+            this.p99Nanos = p99Nanos;
+            this.maxNanos = maxNanos;
+            this.pixels = pixels;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getTotalMillis() {
+            return totalNanos / NANOS_PER_MS;
+        }
+
+        public double getMeanMillis() {
+            if (count == 0) {
+                return 0;
+            }
+            return totalNanos / NANOS_PER_MS / count;
+        }
+
+        public double getP50Millis() {
+            return p50Nanos / NANOS_PER_MS;
+        }
+
+        public double getP99Millis() {
+            return p99Nanos / NANOS_PER_MS;
+        }
+
+        public double getMaxMillis() {
+            return maxNanos / NANOS_PER_MS;
+        }
+
+        public double getAllocatedMegaBytes() {
+            return allocatedBytes / (1024.0 * 1024.0);
+        }
+
+        public double getMegaPixelsPerSecond() {
+            if (totalNanos == 0) {
+                return 0;
+            }
+            // pixels / nanosecond = 1000 megapixels / second
+            return pixels * 1000.0 / totalNanos;
+        }
+    }
+}
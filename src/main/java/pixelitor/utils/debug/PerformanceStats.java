@@ -0,0 +1,194 @@
+/*
+ * Copyright 2019 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils.debug;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.lang.String.format;
+
+/**
+ * Always-on timing statistics of the expensive operations
+ * (filters, compositing, painting, brush dabs, history
+ * snapshots and image IO), shown in the performance statistics
+ * dialog and exportable as CSV or JSON.
+ *
+ * The typical usage is
+ * <pre>
+ * long startTime = System.nanoTime();
+ * long startAllocated = PerformanceStats.getAllocatedBytes();
+ * ... // the measured operation
+ * PerformanceStats.record(name, startTime, startAllocated, numPixels);
+ * </pre>
+ */
+public final class PerformanceStats {
+    public static final String COMPOSITE_IMAGE = "Composite Image";
+    public static final String VIEW_PAINTING = "View Painting";
+    public static final String BRUSH_DAB = "Brush Dab";
+    public static final String HISTORY_SNAPSHOT = "History Snapshot";
+
+    private static final Map<String, OperationStats> stats = new ConcurrentHashMap<>();
+
+    // null if measuring the allocated memory is not supported
+    private static final com.sun.management.ThreadMXBean threadBean = initThreadBean();
+
+    private PerformanceStats() {
+        // do not instantiate
+    }
+
+    private static com.sun.management.ThreadMXBean initThreadBean() {
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+                if (sunBean.isThreadAllocatedMemorySupported()
+                        && sunBean.isThreadAllocatedMemoryEnabled()) {
+                    return sunBean;
+                }
+            }
+        } catch (Throwable e) {
+            // not a HotSpot-based JVM, the memory is not measured
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of bytes allocated so far by the current thread,
+     * or 0 if this can't be measured. Only the difference of two calls is
+     * meaningful, and it doesn't include the memory allocated by the
+     * thread pool of a multithreaded operation.
+     */
+    public static long getAllocatedBytes() {
+        if (threadBean == null) {
+            return 0;
+        }
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Records an operation that started at the given nanoTime
+     * and allocation count, and processed the given number of pixels.
+     */
+    public static void record(String operation, long startTime,
+                              long startAllocated, long numPixels) {
+        long nanos = System.nanoTime() - startTime;
+        long allocated = getAllocatedBytes() - startAllocated;
+        getStats(operation).add(nanos, allocated, numPixels);
+    }
+
+    /**
+     * Records only the duration of a very short operation,
+     * without measuring the allocated memory
+     */
+    public static void recordTime(String operation, long startTime, long numPixels) {
+        long nanos = System.nanoTime() - startTime;
+        getStats(operation).add(nanos, 0, numPixels);
+    }
+
+    private static OperationStats getStats(String operation) {
+        OperationStats opStats = stats.get(operation);
+        if (opStats == null) {
+            opStats = stats.computeIfAbsent(operation, OperationStats::new);
+        }
+        return opStats;
+    }
+
+    /**
+     * Returns the current statistics, sorted by operation name
+     */
+    public static List<OperationStats.Summary> getSummaries() {
+        List<OperationStats.Summary> summaries = new ArrayList<>();
+        for (OperationStats opStats : stats.values()) {
+            OperationStats.Summary summary = opStats.createSummary();
+            if (summary.getCount() > 0) {
+                summaries.add(summary);
+            }
+        }
+        summaries.sort(Comparator.comparing(OperationStats.Summary::getName));
+        return summaries;
+    }
+
+    public static void reset() {
+        for (OperationStats opStats : stats.values()) {
+            opStats.reset();
+        }
+    }
+
+    public static void exportCSV(Writer writer) throws IOException {
+        PrintWriter out = new PrintWriter(writer);
+        out.println("operation,count,total_ms,mean_ms,p50_ms,p99_ms,max_ms,allocated_mb,megapixels_per_s");
+        for (OperationStats.Summary s : getSummaries()) {
+            out.println(format(Locale.US, "\"%s\",%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f",
+                    s.getName().replace("\"", "\"\""),
+                    s.getCount(), s.getTotalMillis(), s.getMeanMillis(),
+                    s.getP50Millis(), s.getP99Millis(), s.getMaxMillis(),
+                    s.getAllocatedMegaBytes(), s.getMegaPixelsPerSecond()));
+        }
+        out.flush();
+        if (out.checkError()) {
+            throw new IOException("could not write the CSV file");
+        }
+    }
+
+    public static void exportJSON(Writer writer) throws IOException {
+        PrintWriter out = new PrintWriter(writer);
+        out.println("[");
+        List<OperationStats.Summary> summaries = getSummaries();
+        for (int i = 0; i < summaries.size(); i++) {
+            OperationStats.Summary s = summaries.get(i);
+            out.print(format(Locale.US, "  {\"operation\": \"%s\", \"count\": %d, " +
+                            "\"totalMs\": %.3f, \"meanMs\": %.3f, \"p50Ms\": %.3f, " +
+                            "\"p99Ms\": %.3f, \"maxMs\": %.3f, \"allocatedMB\": %.3f, " +
+                            "\"megaPixelsPerSec\": %.3f}",
+                    escapeJSON(s.getName()),
+                    s.getCount(), s.getTotalMillis(), s.getMeanMillis(),
+                    s.getP50Millis(), s.getP99Millis(), s.getMaxMillis(),
+                    s.getAllocatedMegaBytes(), s.getMegaPixelsPerSecond()));
+            out.println(i < summaries.size() - 1 ? "," : "");
+        }
+        out.println("]");
+        out.flush();
+        if (out.checkError()) {
+            throw new IOException("could not write the JSON file");
+        }
+    }
+
+    private static String escapeJSON(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
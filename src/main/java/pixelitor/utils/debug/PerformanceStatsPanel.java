@@ -0,0 +1,190 @@
+/*
+ * Copyright 2019 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils.debug;
+
+import pixelitor.gui.PixelitorWindow;
+import pixelitor.gui.utils.ConfirmSaveFileChooser;
+import pixelitor.gui.utils.DialogBuilder;
+import pixelitor.io.Dirs;
+import pixelitor.utils.Messages;
+
+import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import javax.swing.table.AbstractTableModel;
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shows the live {@link PerformanceStats} in a table
+ */
+public class PerformanceStatsPanel extends JPanel {
+    private static final int REFRESH_MILLIS = 1000;
+
+    private final StatsTableModel model = new StatsTableModel();
+    private final Timer refreshTimer;
+
+    private PerformanceStatsPanel() {
+        super(new BorderLayout());
+
+        JTable table = new JTable(model);
+        table.setAutoCreateRowSorter(true);
+        table.setPreferredScrollableViewportSize(new Dimension(850, 300));
+        add(new JScrollPane(table), BorderLayout.CENTER);
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        JButton resetButton = new JButton("Reset");
+        resetButton.addActionListener(e -> {
+            PerformanceStats.reset();
+            model.refresh();
+        });
+        buttons.add(resetButton);
+
+        JButton csvButton = new JButton("Export CSV...");
+        csvButton.addActionListener(e -> export("csv"));
+        buttons.add(csvButton);
+
+        JButton jsonButton = new JButton("Export JSON...");
+        jsonButton.addActionListener(e -> export("json"));
+        buttons.add(jsonButton);
+        add(buttons, BorderLayout.SOUTH);
+
+        model.refresh();
+        refreshTimer = new Timer(REFRESH_MILLIS, e -> model.refresh());
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        refreshTimer.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        refreshTimer.stop();
+        super.removeNotify();
+    }
+
+    private void export(String ext) {
+        JFileChooser chooser = new ConfirmSaveFileChooser(Dirs.getLastSave());
+        chooser.setFileFilter(new FileNameExtensionFilter(ext.toUpperCase() + " files", ext));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = chooser.getSelectedFile();
+        if (!file.getName().toLowerCase().endsWith('.' + ext)) {
+            file = new File(file.getAbsolutePath() + '.' + ext);
+        }
+
+        try (Writer writer = new FileWriter(file)) {
+            if (ext.equals("csv")) {
+                PerformanceStats.exportCSV(writer);
+            } else {
+                PerformanceStats.exportJSON(writer);
+            }
+        } catch (IOException ex) {
+            Messages.showException(ex);
+            return;
+        }
+        Dirs.setLastSave(file.getParentFile());
+        Messages.showFileSavedMessage(file);
+    }
+
+    public static void showDialog(PixelitorWindow pw) {
+        new DialogBuilder()
+                .owner(pw)
+                .title("Performance Statistics")
+                .content(new PerformanceStatsPanel())
+                .notModal()
+                .okText("Close")
+                .noCancelButton()
+                .show();
+    }
+
+    private static class StatsTableModel extends AbstractTableModel {
+        private static final String[] COLUMN_NAMES = {
+                "Operation", "Count", "Total (ms)", "Mean (ms)", "p50 (ms)",
+                "p99 (ms)", "Max (ms)", "Allocated (MB)", "Megapixels/s"};
+
+        private List<OperationStats.Summary> rows = new ArrayList<>();
+
+        void refresh() {
+            rows = PerformanceStats.getSummaries();
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMN_NAMES.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMN_NAMES[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            if (column == 0) {
+                return String.class;
+            }
+            if (column == 1) {
+                return Long.class;
+            }
+            return Double.class;
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            OperationStats.Summary s = rows.get(row);
+            switch (column) {
+                case 0:
+                    return s.getName();
+                case 1:
+                    return s.getCount();
+                case 2:
+                    return s.getTotalMillis();
+                case 3:
+                    return s.getMeanMillis();
+                case 4:
+                    return s.getP50Millis();
+                case 5:
+                    return s.getP99Millis();
+                case 6:
+                    return s.getMaxMillis();
+                case 7:
+                    return s.getAllocatedMegaBytes();
+                case 8:
+                    return s.getMegaPixelsPerSecond();
+                default:
+                    throw new IllegalStateException("column = " + column);
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+Copyright 2019 Laszlo Balazs-Csiki
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.jhlabs.image;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static pixelitor.utils.ProgressTracker.NULL_TRACKER;
+
+/**
+ * Compares the {@link FFTConvolver} with a direct convolution
+ */
+public class FFTConvolverTest {
+    @Test
+    public void matchesDirectConvolution() {
+        Random random = new Random(11);
+        int[][] sizes = {
+                // image width, image height, kernel width, kernel height
+                {40, 30, 15, 15},
+                {37, 300, 17, 16},
+                {500, 23, 20, 31},
+                {333, 211, 15, 21},
+        };
+        int[] edgeActions = {ConvolveFilter.ZERO_EDGES,
+                ConvolveFilter.CLAMP_EDGES, ConvolveFilter.WRAP_EDGES};
+        for (int[] size : sizes) {
+            int width = size[0];
+            int height = size[1];
+            int kw = size[2];
+            int kh = size[3];
+
+            float[] in = new float[width * height];
+            for (int i = 0; i < in.length; i++) {
+                in[i] = random.nextInt(256);
+            }
+            float[] kernel = new float[kw * kh];
+            for (int i = 0; i < kernel.length; i++) {
+                kernel[i] = random.nextFloat() - 0.3f;
+            }
+
+            for (int edgeAction : edgeActions) {
+                float[][] out = new FFTConvolver(kernel, kw, kh).convolve(
+                        new float[][]{in, in, in}, width, height, edgeAction, NULL_TRACKER);
+
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        float expected = convolveDirectly(in, width, height,
+                                kernel, kw, kh, x, y, edgeAction);
+                        String msg = "size = " + width + "x" + height
+                                + ", kernel = " + kw + "x" + kh
+                                + ", edge = " + edgeAction
+                                + ", x = " + x + ", y = " + y;
+                        for (float[] plane : out) {
+                            assertEquals(msg, expected, plane[x + y * width], 0.05f);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static float convolveDirectly(float[] in, int width, int height,
+                                          float[] kernel, int kw, int kh,
+                                          int x, int y, int edgeAction) {
+        float sum = 0;
+        for (int j = 0; j < kh; j++) {
+            int sy = y + j - kh / 2;
+            for (int i = 0; i < kw; i++) {
+                int sx = x + i - kw / 2;
+                int mx = sx;
+                int my = sy;
+                if (edgeAction == ConvolveFilter.CLAMP_EDGES) {
+                    mx = Math.max(0, Math.min(width - 1, sx));
+                    my = Math.max(0, Math.min(height - 1, sy));
+                } else if (edgeAction == ConvolveFilter.WRAP_EDGES) {
+                    mx = Math.floorMod(sx, width);
+                    my = Math.floorMod(sy, height);
+                } else if (sx < 0 || sx >= width || sy < 0 || sy >= height) {
+                    continue;
+                }
+                sum += kernel[j * kw + i] * in[my * width + mx];
+            }
+        }
+        return sum;
+    }
+}
@@ -23,6 +23,7 @@ import org.junit.Test;
 import pixelitor.Composition.LayerAdder;
 import pixelitor.filters.comp.Crop;
 import pixelitor.history.History;
+import pixelitor.layers.BlendingMode;
 import pixelitor.layers.ImageLayer;
 import pixelitor.layers.Layer;
 import pixelitor.selection.Selection;
@@ -31,6 +32,8 @@ import pixelitor.tools.Tools;
 import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
 
 import static pixelitor.Composition.LayerAdder.Position.ABOVE_ACTIVE;
 import static pixelitor.Composition.LayerAdder.Position.BELLOW_ACTIVE;
@@ -837,4 +840,34 @@ public class CompositionTest {
         // There is no undo at this level
         History.assertNumEditsIs(0);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void test_getCompositeRegion() {
+        // fill the layers with different random pixels
+        Random random = new Random(42);
+        for (int i = 0; i < comp.getNumLayers(); i++) {
+            BufferedImage image = ((ImageLayer) comp.getLayer(i)).getImage();
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    image.setRGB(x, y, random.nextInt());
+                }
+            }
+        }
+        Layer layer2 = comp.getLayer(1);
+        layer2.setBlendingMode(BlendingMode.MULTIPLY, false, false, false);
+        layer2.setOpacity(0.6f, false, false, false);
+
+        BufferedImage full = comp.calculateCompositeImage();
+        comp.imageChanged(); // make sure that the cache is not used
+
+        Rectangle region = new Rectangle(3, 2, 10, 5);
+        BufferedImage regionImage = comp.getCompositeRegion(region);
+        for (int y = 0; y < region.height; y++) {
+            for (int x = 0; x < region.width; x++) {
+                assertThat(regionImage.getRGB(x, y))
+                        .isEqualTo(full.getRGB(region.x + x, region.y + y));
+            }
+        }
+        assertThat(comp.getCompositePixel(7, 8)).isEqualTo(full.getRGB(7, 8));
+    }
+}
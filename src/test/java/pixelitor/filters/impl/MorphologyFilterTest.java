@@ -0,0 +1,170 @@
+/*
+ * Copyright 2019 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.impl;
+
+import org.junit.Test;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_BYTE_GRAY;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.junit.Assert.assertEquals;
+import static pixelitor.filters.impl.MorphologyFilter.KERNEL_DIAMOND;
+import static pixelitor.filters.impl.MorphologyFilter.KERNEL_DISK;
+import static pixelitor.filters.impl.MorphologyFilter.KERNEL_SQUARE;
+import static pixelitor.filters.impl.MorphologyFilter.OP_DILATE;
+import static pixelitor.filters.impl.MorphologyFilter.OP_ERODE;
+
+/**
+ * Compares the {@link MorphologyFilter} with a brute-force implementation
+ */
+public class MorphologyFilterTest {
+    private static final int[] KERNELS = {KERNEL_SQUARE, KERNEL_DIAMOND, KERNEL_DISK};
+    private static final int[] OPS = {OP_ERODE, OP_DILATE};
+
+    @Test
+    public void matchesBruteForce() {
+        int width = 41;
+        int height = 29;
+        BufferedImage src = new BufferedImage(width, height, TYPE_INT_ARGB);
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                src.setRGB(x, y, random.nextInt());
+            }
+        }
+        int[] srcPixels = getPixels(src);
+
+        for (int kernel : KERNELS) {
+            for (int op : OPS) {
+                for (int radius = 1; radius <= 35; radius += 3) {
+                    MorphologyFilter filter = createFilter(kernel, op, radius);
+                    int[] destPixels = getPixels(filter.filter(src, null));
+
+                    for (int y = 0; y < height; y++) {
+                        for (int x = 0; x < width; x++) {
+                            int expected = bruteForce(srcPixels, width, height,
+                                    x, y, kernel, op, radius);
+                            assertEquals("kernel = " + kernel + ", op = " + op
+                                            + ", radius = " + radius + ", x = " + x + ", y = " + y,
+                                    expected, destPixels[x + y * width]);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void grayMatchesBruteForce() {
+        int width = 37;
+        int height = 23;
+        BufferedImage src = new BufferedImage(width, height, TYPE_BYTE_GRAY);
+        byte[] srcData = new byte[width * height];
+        new Random(7).nextBytes(srcData);
+        src.getRaster().setDataElements(0, 0, width, height, srcData);
+
+        // the gray values in the alpha and blue channels
+        int[] packed = new int[srcData.length];
+        for (int i = 0; i < packed.length; i++) {
+            int v = srcData[i] & 0xFF;
+            packed[i] = v << 24 | v;
+        }
+
+        for (int kernel : KERNELS) {
+            for (int op : OPS) {
+                for (int radius = 1; radius <= 13; radius += 4) {
+                    MorphologyFilter filter = createFilter(kernel, op, radius);
+                    BufferedImage dest = filter.filter(src, null);
+                    assertEquals(TYPE_BYTE_GRAY, dest.getType());
+                    byte[] destData = (byte[]) dest.getRaster()
+                            .getDataElements(0, 0, width, height, null);
+
+                    for (int y = 0; y < height; y++) {
+                        for (int x = 0; x < width; x++) {
+                            int expected = bruteForce(packed, width, height,
+                                    x, y, kernel, op, radius) & 0xFF;
+                            assertEquals("kernel = " + kernel + ", op = " + op
+                                            + ", radius = " + radius + ", x = " + x + ", y = " + y,
+                                    expected, destData[x + y * width] & 0xFF);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static MorphologyFilter createFilter(int kernel, int op, int radius) {
+        MorphologyFilter filter = new MorphologyFilter("Morphology");
+        filter.setProgressTracker(ProgressTracker.NULL_TRACKER);
+        filter.setKernel(kernel);
+        filter.setOp(op);
+        filter.setRadius(radius);
+        return filter;
+    }
+
+    private static int bruteForce(int[] pixels, int width, int height,
+                                  int x, int y, int kernel, int op, int radius) {
+        int squareRadius = radius;
+        int diamondRadius = 0;
+        if (kernel == KERNEL_DIAMOND) {
+            squareRadius = 0;
+            diamondRadius = radius;
+        } else if (kernel == KERNEL_DISK) {
+            squareRadius = (int) Math.round(radius * (Math.sqrt(2) - 1));
+            diamondRadius = radius - squareRadius;
+        }
+
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            int v = op == OP_ERODE ? 0xFF : 0;
+            for (int dy = -radius; dy <= radius; dy++) {
+                int sy = y + dy;
+                if (sy < 0 || sy >= height) {
+                    continue;
+                }
+                for (int dx = -radius; dx <= radius; dx++) {
+                    int sx = x + dx;
+                    if (sx < 0 || sx >= width) {
+                        continue;
+                    }
+                    // the offset must be the sum of a square
+                    // offset and a diamond offset
+                    int restX = Math.max(0, Math.abs(dx) - squareRadius);
+                    int restY = Math.max(0, Math.abs(dy) - squareRadius);
+                    if (restX + restY > diamondRadius) {
+                        continue;
+                    }
+                    int value = (pixels[sx + sy * width] >>> shift) & 0xFF;
+                    v = op == OP_ERODE ? Math.min(v, value) : Math.max(v, value);
+                }
+            }
+            if (shift == 24 && op == OP_DILATE) {
+                v = 0xFF; // the dilated image is opaque
+            }
+            result |= v << shift;
+        }
+        return result;
+    }
+
+    private static int[] getPixels(BufferedImage img) {
+        return img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth());
+    }
+}
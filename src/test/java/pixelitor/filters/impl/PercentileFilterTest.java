@@ -0,0 +1,103 @@
+/*
+ * Copyright 2019 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.filters.impl;
+
+import org.junit.Test;
+import pixelitor.utils.ProgressTracker;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the {@link PercentileFilter} with a brute-force implementation
+ */
+public class PercentileFilterTest {
+    @Test
+    public void matchesBruteForce() {
+        // large enough to be split into several tiles
+        int width = 300;
+        int height = 270;
+        BufferedImage src = createRandomImage(width, height);
+        int[] srcPixels = getPixels(src);
+
+        int[][] settings = {{1, 50}, {3, 0}, {4, 100}, {7, 25}};
+        for (int[] setting : settings) {
+            int radius = setting[0];
+            int percentile = setting[1];
+
+            PercentileFilter filter = new PercentileFilter("Median");
+            filter.setProgressTracker(ProgressTracker.NULL_TRACKER);
+            filter.setRadius(radius);
+            filter.setPercentile(percentile);
+            filter.setMode(PercentileFilter.MODE_CHANNELS);
+            BufferedImage dest = filter.filter(src, null);
+            int[] destPixels = getPixels(dest);
+
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int expected = bruteForce(srcPixels, width, height,
+                            x, y, radius, percentile);
+                    assertEquals("radius = " + radius + ", percentile = " + percentile
+                                    + ", x = " + x + ", y = " + y,
+                            expected, destPixels[x + y * width]);
+                }
+            }
+        }
+    }
+
+    private static int bruteForce(int[] pixels, int width, int height,
+                                  int x, int y, int radius, int percentile) {
+        int windowSize = 2 * radius + 1;
+        int numValues = windowSize * windowSize;
+        int rank = (int) Math.round(percentile / 100.0 * (numValues - 1));
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            int[] values = new int[numValues];
+            int i = 0;
+            for (int dy = -radius; dy <= radius; dy++) {
+                int sy = Math.min(Math.max(y + dy, 0), height - 1);
+                for (int dx = -radius; dx <= radius; dx++) {
+                    int sx = Math.min(Math.max(x + dx, 0), width - 1);
+                    values[i++] = (pixels[sx + sy * width] >>> shift) & 0xff;
+                }
+            }
+            Arrays.sort(values);
+            result |= values[rank] << shift;
+        }
+        return result;
+    }
+
+    private static BufferedImage createRandomImage(int width, int height) {
+        BufferedImage img = new BufferedImage(width, height, TYPE_INT_ARGB);
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                img.setRGB(x, y, random.nextInt());
+            }
+        }
+        return img;
+    }
+
+    private static int[] getPixels(BufferedImage img) {
+        return img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth());
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2019 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.layers;
+
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ImageTileIndexTest {
+    private static final int WIDTH = 300;
+    private static final int HEIGHT = 200;
+
+    @Test
+    public void contentBounds() {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        ImageTileIndex index = new ImageTileIndex();
+        assertTrue(index.getContentBounds(image).isEmpty());
+
+        image.setRGB(70, 30, 0x01_00_00_00);
+        image.setRGB(250, 190, 0xFF_00_00_00);
+        index.invalidate();
+        assertEquals(new Rectangle(70, 30, 181, 161), index.getContentBounds(image));
+
+        // without invalidating, the change is not noticed
+        image.setRGB(5, 6, 0xFF_FF_FF_FF);
+        assertEquals(new Rectangle(70, 30, 181, 161), index.getContentBounds(image));
+
+        index.invalidate(new Rectangle(5, 6, 1, 1));
+        assertEquals(new Rectangle(5, 6, 246, 185), index.getContentBounds(image));
+
+        // a new image reference is always noticed
+        BufferedImage other = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        other.setRGB(299, 199, 0xFF_00_00_00);
+        assertEquals(new Rectangle(299, 199, 1, 1), index.getContentBounds(other));
+    }
+
+    @Test
+    public void emptyAndOpaqueTiles() {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.RED);
+        g.fillRect(0, 0, 128, 100);
+        g.dispose();
+
+        ImageTileIndex index = new ImageTileIndex();
+        assertTrue(index.isOpaque(image, new Rectangle(0, 0, 128, 64)));
+        assertTrue(index.isOpaque(image, new Rectangle(10, 10, 50, 50)));
+        // the second tile row is only partially covered
+        assertFalse(index.isOpaque(image, new Rectangle(0, 0, 128, 100)));
+        // outside the image
+        assertFalse(index.isOpaque(image, new Rectangle(-1, 0, 10, 10)));
+
+        assertFalse(index.isInEmptyTile(image, 50, 50));
+        assertFalse(index.isInEmptyTile(image, 100, 120));
+        assertTrue(index.isInEmptyTile(image, 200, 50));
+    }
+
+    @Test
+    public void drawingSkipsOnlyEmptyTiles() {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(new Color(0, 0, 255, 128));
+        g.fillOval(20, 30, 90, 60);
+        g.fillRect(200, 150, 100, 50);
+        g.dispose();
+
+        BufferedImage expected = createBackground();
+        Graphics2D eg = expected.createGraphics();
+        eg.drawImage(image, 7, 3, null);
+        eg.dispose();
+
+        BufferedImage result = createBackground();
+        Graphics2D rg = result.createGraphics();
+        new ImageTileIndex().drawNonEmptyTiles(rg, image, 7, 3);
+        rg.dispose();
+
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                assertEquals(expected.getRGB(x, y), result.getRGB(x, y));
+            }
+        }
+    }
+
+    private static BufferedImage createBackground() {
+        BufferedImage img = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(Color.YELLOW);
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+        g.dispose();
+        return img;
+    }
+}
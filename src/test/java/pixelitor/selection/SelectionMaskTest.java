@@ -0,0 +1,228 @@
+/*
+ * Copyright 2019 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.selection;
+
+import org.junit.Test;
+import pixelitor.Build;
+import pixelitor.Composition;
+import pixelitor.TestHelper;
+
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+
+/**
+ * Tests the raster selection operations of {@link SelectionMask}
+ */
+public class SelectionMaskTest {
+    // not multiples of the tile size
+    private static final int WIDTH = 150;
+    private static final int HEIGHT = 100;
+
+    @Test
+    public void fromRectangle() {
+        Rectangle rect = new Rectangle(10, 20, 70, 50);
+        SelectionMask mask = SelectionMask.fromShape(rect, WIDTH, HEIGHT);
+
+        assertEquals(rect, mask.getBounds());
+        checkPixels(mask, rect);
+        checkOutline(mask);
+    }
+
+    @Test
+    public void shapeIsClippedToCanvas() {
+        Rectangle rect = new Rectangle(-20, 50, 300, 100);
+        SelectionMask mask = SelectionMask.fromShape(rect, WIDTH, HEIGHT);
+
+        assertEquals(new Rectangle(0, 50, WIDTH, 50), mask.getBounds());
+    }
+
+    @Test
+    public void booleanOperations() {
+        Shape a = new Rectangle(10, 10, 80, 60);
+        Shape b = new Rectangle(50, 30, 90, 60);
+        SelectionMask maskA = SelectionMask.fromShape(a, WIDTH, HEIGHT);
+        SelectionMask maskB = SelectionMask.fromShape(b, WIDTH, HEIGHT);
+
+        Area added = new Area(a);
+        added.add(new Area(b));
+        checkPixels(maskA.add(maskB), added);
+
+        Area subtracted = new Area(a);
+        subtracted.subtract(new Area(b));
+        checkPixels(maskA.subtract(maskB), subtracted);
+
+        Area intersected = new Area(a);
+        intersected.intersect(new Area(b));
+        checkPixels(maskA.intersect(maskB), intersected);
+
+        Area inverted = new Area(new Rectangle(0, 0, WIDTH, HEIGHT));
+        inverted.subtract(new Area(a));
+        checkPixels(maskA.invert(), inverted);
+        assertEquals(new Rectangle(0, 0, WIDTH, HEIGHT), maskA.invert().getBounds());
+    }
+
+    @Test
+    public void growAndShrink() {
+        Rectangle rect = new Rectangle(40, 30, 60, 40);
+        SelectionMask mask = SelectionMask.fromShape(rect, WIDTH, HEIGHT);
+
+        Rectangle grown = new Rectangle(rect);
+        grown.grow(5, 5);
+        SelectionMask grownMask = mask.grow(5);
+        assertEquals(grown, grownMask.getBounds());
+        assertEquals(255, grownMask.getCoverage(36, 50));
+        assertEquals(0, grownMask.getCoverage(34, 50));
+
+        Rectangle shrunk = new Rectangle(rect);
+        shrunk.grow(-5, -5);
+        SelectionMask shrunkMask = mask.shrink(5);
+        assertEquals(shrunk, shrunkMask.getBounds());
+        assertEquals(255, shrunkMask.getCoverage(45, 50));
+        assertEquals(0, shrunkMask.getCoverage(44, 50));
+    }
+
+    @Test
+    public void shrinkAtCanvasEdge() {
+        SelectionMask mask = SelectionMask.fromShape(
+                new Rectangle(0, 0, WIDTH, HEIGHT), WIDTH, HEIGHT);
+        assertEquals(new Rectangle(3, 3, WIDTH - 6, HEIGHT - 6),
+                mask.shrink(3).getBounds());
+    }
+
+    @Test
+    public void feather() {
+        Rectangle rect = new Rectangle(40, 30, 60, 40);
+        SelectionMask mask = SelectionMask.fromShape(rect, WIDTH, HEIGHT).feather(6);
+
+        assertEquals(255, mask.getCoverage(70, 50));
+        assertEquals(0, mask.getCoverage(10, 50));
+        int edge = mask.getCoverage(40, 50);
+        assertTrue("edge = " + edge, edge > 64 && edge < 192);
+        assertTrue(mask.getBounds().contains(new Rectangle(36, 26, 68, 48)));
+    }
+
+    @Test
+    public void transform() {
+        Rectangle rect = new Rectangle(40, 30, 60, 40);
+        SelectionMask mask = SelectionMask.fromShape(rect, WIDTH, HEIGHT).feather(6);
+
+        // integer translations move the coverage values exactly
+        SelectionMask moved = mask.transform(AffineTransform.getTranslateInstance(7, -3));
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                assertEquals(mask.getCoverage(x - 7, y + 3), moved.getCoverage(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void nudgeKeepsSoftCoverage() {
+        // the mocked view still needs the GUI classes
+        assumeFalse(GraphicsEnvironment.isHeadless());
+        Build.setUnitTestingMode();
+        Composition comp = TestHelper.createMockComposition();
+
+        Rectangle rect = new Rectangle(4, 3, 10, 5);
+        SelectionMask mask = SelectionMask.fromShape(rect,
+                TestHelper.TEST_WIDTH, TestHelper.TEST_HEIGHT).feather(3);
+        int partial = mask.getCoverage(4, 5);
+        assertTrue("partial = " + partial, partial > 0 && partial < 255);
+
+        Selection selection = new Selection(mask.toShape(), comp.getView());
+        selection.nudge(AffineTransform.getTranslateInstance(2, 1));
+
+        Shape nudged = selection.getShape();
+        assertTrue(nudged instanceof SelectionMask.Outline);
+        SelectionMask nudgedMask = ((SelectionMask.Outline) nudged).getMask();
+        assertEquals(partial, nudgedMask.getCoverage(6, 6));
+    }
+
+    @Test
+    public void outlineOfComplexMask() {
+        // random blobs with holes and diagonally touching pixels
+        Random random = new Random(3);
+        SelectionMask mask = SelectionMask.fromShape(new Rectangle(0, 0, 0, 0), WIDTH, HEIGHT);
+        for (int i = 0; i < 40; i++) {
+            Shape blob = new Ellipse2D.Double(random.nextInt(WIDTH), random.nextInt(HEIGHT),
+                    2 + random.nextInt(30), 2 + random.nextInt(30));
+            SelectionMask blobMask = SelectionMask.fromShape(blob, WIDTH, HEIGHT);
+            mask = random.nextBoolean() ? mask.add(blobMask) : mask.subtract(blobMask);
+        }
+        checkOutline(mask);
+    }
+
+    @Test
+    public void blend() {
+        SelectionMask mask = SelectionMask.fromShape(
+                new Rectangle(40, 30, 60, 40), WIDTH, HEIGHT).feather(6);
+        Rectangle bounds = mask.getBounds();
+
+        BufferedImage src = new BufferedImage(bounds.width, bounds.height, TYPE_INT_ARGB);
+        fill(src, 0xFFFF0000);
+        BufferedImage dest = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        fill(dest, 0xFF0000FF);
+
+        mask.blend(src, bounds.x, bounds.y, dest, 0, 0);
+
+        assertEquals(0xFFFF0000, dest.getRGB(70, 50));
+        assertEquals(0xFF0000FF, dest.getRGB(10, 50));
+        int edge = dest.getRGB(40, 50);
+        assertEquals(0xFF, edge >>> 24);
+        assertTrue((edge & 0xFF0000) != 0 && (edge & 0xFF) != 0);
+    }
+
+    private static void fill(BufferedImage img, int rgb) {
+        for (int y = 0; y < img.getHeight(); y++) {
+            for (int x = 0; x < img.getWidth(); x++) {
+                img.setRGB(x, y, rgb);
+            }
+        }
+    }
+
+    private static void checkPixels(SelectionMask mask, Shape expected) {
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                boolean inside = expected.contains(x + 0.5, y + 0.5);
+                assertEquals("x = " + x + ", y = " + y,
+                        inside ? 255 : 0, mask.getCoverage(x, y));
+            }
+        }
+    }
+
+    private static void checkOutline(SelectionMask mask) {
+        Shape outline = mask.toShape();
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                boolean selected = mask.getCoverage(x, y) >= 128;
+                assertEquals("x = " + x + ", y = " + y,
+                        selected, outline.contains(x + 0.5, y + 0.5));
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2019 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.tools.brushes;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class CopyBrushTest {
+    @Test
+    public void alphaMaskIsPerBrush() {
+        CopyBrush small = new SmudgeBrush(5, CopyBrushType.HARD);
+        small.setRadius(5);
+        CopyBrush large = new SmudgeBrush(20, CopyBrushType.HARD);
+        large.setRadius(20);
+
+        // the shared type was last sized by the large brush
+        assertMaskMatchesBrushImage(small);
+        assertMaskMatchesBrushImage(large);
+
+        small.setRadius(3);
+        assertMaskMatchesBrushImage(small);
+        assertMaskMatchesBrushImage(large);
+    }
+
+    private static void assertMaskMatchesBrushImage(CopyBrush brush) {
+        int size = brush.brushImage.getWidth();
+        assertEquals(size * size, brush.alphaMask.length);
+
+        // opaque in the center, transparent in the corners
+        assertEquals(0xFF, brush.alphaMask[size / 2 * size + size / 2]);
+        assertEquals(0, brush.alphaMask[0]);
+        assertEquals(0, brush.alphaMask[size * size - 1]);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2019 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.tools.brushes;
+
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static org.junit.Assert.assertEquals;
+
+public class StampMipmapTest {
+    private static final int RGB = 0x12_34_56;
+
+    @Test
+    public void fullSizeStampIsTheTemplate() {
+        BufferedImage template = createTemplate(64, 16, 32);
+        StampMipmap mipmap = new StampMipmap(template);
+
+        int[] pixels = new int[64 * 64];
+        mipmap.fillStamp(pixels, 64, 64, 0, 0, RGB);
+        for (int y = 0; y < 64; y++) {
+            for (int x = 0; x < 64; x++) {
+                boolean inside = x >= 16 && x < 48 && y >= 16 && y < 48;
+                int expected = inside ? 0xFF_12_34_56 : 0x00_12_34_56;
+                assertEquals(expected, pixels[y * 64 + x]);
+            }
+        }
+    }
+
+    @Test
+    public void downscaledStampKeepsTheCoverage() {
+        BufferedImage template = createTemplate(64, 16, 32);
+        StampMipmap mipmap = new StampMipmap(template);
+
+        int[] pixels = new int[16 * 16];
+        mipmap.fillStamp(pixels, 16, 16, 0, 0, RGB);
+        int sum = 0;
+        for (int pixel : pixels) {
+            sum += pixel >>> 24;
+        }
+        // a quarter of the area is opaque
+        assertEquals(16 * 16 * 255 / 4, sum, 16 * 16);
+        assertEquals(0xFF, pixels[8 * 16 + 8] >>> 24);
+        assertEquals(0, pixels[0] >>> 24);
+    }
+
+    @Test
+    public void shiftedStamp() {
+        BufferedImage template = createTemplate(8, 0, 8);
+        StampMipmap mipmap = new StampMipmap(template);
+
+        // a fully opaque stamp shifted by half a pixel into a larger array
+        int[] pixels = new int[9 * 9];
+        mipmap.fillStamp(pixels, 9, 8, 0.5, 0.5, RGB);
+        assertEquals(0x40, pixels[0] >>> 24);
+        assertEquals(0x80, pixels[4] >>> 24);
+        assertEquals(0xFF, pixels[4 * 9 + 4] >>> 24);
+        assertEquals(0x40, pixels[9 * 9 - 1] >>> 24);
+    }
+
+    // a white template with a black (opaque) square in it
+    private static BufferedImage createTemplate(int size, int squareStart, int squareSize) {
+        BufferedImage template = new BufferedImage(size, size, TYPE_INT_RGB);
+        Graphics2D g = template.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, size, size);
+        g.setColor(Color.BLACK);
+        g.fillRect(squareStart, squareStart, squareSize, squareSize);
+        g.dispose();
+        return template;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.tools.util;
+
+import org.junit.Test;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the {@link RegionMask} with simple pixel-by-pixel implementations
+ */
+public class RegionMaskTest {
+    // wider than 64, so that the rows have several bitset words
+    private static final int WIDTH = 150;
+    private static final int HEIGHT = 70;
+    private static final int TOLERANCE = 30;
+
+    @Test
+    public void contiguousMatchesFourConnectedRegion() {
+        int[] pixels = createRandomPixels();
+        for (int[] start : new int[][]{{0, 0}, {75, 35}, {149, 69}, {64, 10}}) {
+            int startX = start[0];
+            int startY = start[1];
+            RegionMask mask = RegionMask.contiguous(pixels, WIDTH, HEIGHT,
+                    startX, startY, TOLERANCE);
+
+            boolean[] expected = new boolean[pixels.length];
+            int targetRGB = pixels[startX + startY * WIDTH];
+            Deque<int[]> queue = new ArrayDeque<>();
+            queue.add(start);
+            expected[startX + startY * WIDTH] = true;
+            while (!queue.isEmpty()) {
+                int[] p = queue.poll();
+                int[][] neighbors = {{p[0] - 1, p[1]}, {p[0] + 1, p[1]},
+                        {p[0], p[1] - 1}, {p[0], p[1] + 1}};
+                for (int[] n : neighbors) {
+                    if (n[0] < 0 || n[0] >= WIDTH || n[1] < 0 || n[1] >= HEIGHT) {
+                        continue;
+                    }
+                    int index = n[0] + n[1] * WIDTH;
+                    if (!expected[index] && RegionMask.isSimilar(pixels[index], targetRGB, TOLERANCE)) {
+                        expected[index] = true;
+                        queue.add(n);
+                    }
+                }
+            }
+            checkMask(mask, expected);
+        }
+    }
+
+    @Test
+    public void globalMatchesAllSimilarPixels() {
+        int[] pixels = createRandomPixels();
+        int targetRGB = pixels[1000];
+        RegionMask mask = RegionMask.global(pixels, WIDTH, HEIGHT, targetRGB, TOLERANCE);
+
+        boolean[] expected = new boolean[pixels.length];
+        for (int i = 0; i < pixels.length; i++) {
+            expected[i] = RegionMask.isSimilar(pixels[i], targetRGB, TOLERANCE);
+        }
+        checkMask(mask, expected);
+    }
+
+    @Test
+    public void fillChangesOnlyTheRegion() {
+        int[] pixels = createRandomPixels();
+        BufferedImage img = new BufferedImage(WIDTH, HEIGHT, TYPE_INT_ARGB);
+        img.setRGB(0, 0, WIDTH, HEIGHT, pixels, 0, WIDTH);
+
+        RegionMask mask = RegionMask.contiguous(pixels, WIDTH, HEIGHT, 75, 35, TOLERANCE);
+        int newRGB = 0xFF123456;
+        mask.fill(img, 0, 0, newRGB);
+
+        int[] filled = img.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int index = x + y * WIDTH;
+                int expected = mask.contains(x, y) ? newRGB : pixels[index];
+                assertEquals(expected, filled[index]);
+            }
+        }
+    }
+
+    private static void checkMask(RegionMask mask, boolean[] expected) {
+        Rectangle expectedBounds = null;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                boolean inside = expected[x + y * WIDTH];
+                assertEquals("x = " + x + ", y = " + y, inside, mask.contains(x, y));
+                if (inside) {
+                    Rectangle pixel = new Rectangle(x, y, 1, 1);
+                    if (expectedBounds == null) {
+                        expectedBounds = pixel;
+                    } else {
+                        expectedBounds.add(pixel);
+                    }
+                }
+            }
+        }
+        assertTrue(expectedBounds != null);
+        assertEquals(expectedBounds, mask.getBounds());
+    }
+
+    // creates large blobs of similar colors with some noise
+    private static int[] createRandomPixels() {
+        Random random = new Random(11);
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int base = ((x / 20 + y / 15) % 3) * 100;
+                int v = Math.min(255, base + random.nextInt(25));
+                pixels[x + y * WIDTH] = 0xFF000000 | (v << 16) | (v << 8) | v;
+            }
+        }
+        return pixels;
+    }
+}
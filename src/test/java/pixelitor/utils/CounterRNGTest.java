@@ -0,0 +1,90 @@
+/*
+ * Copyright 2019 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CounterRNGTest {
+    private static final int NUM_COUNTERS = 10_000;
+
+    @Test
+    public void streamsDontDependOnTheOrder() {
+        long seed = 42;
+        long[] forward = new long[NUM_COUNTERS];
+        CounterRNG rng = new CounterRNG(seed);
+        for (int i = 0; i < NUM_COUNTERS; i++) {
+            rng.jumpTo(i);
+            rng.nextFloat(); // partially consumed bits must not leak
+            forward[i] = rng.nextLong();
+        }
+
+        CounterRNG other = new CounterRNG(seed);
+        for (int i = NUM_COUNTERS - 1; i >= 0; i--) {
+            other.jumpTo(i);
+            other.nextFloat();
+            assertEquals(forward[i], other.nextLong());
+        }
+    }
+
+    @Test
+    public void hashIsTheFirstValueOfTheStream() {
+        CounterRNG rng = new CounterRNG(-7);
+        for (long counter = -100; counter < 100; counter++) {
+            rng.jumpTo(counter);
+            assertEquals(rng.nextLong(), CounterRNG.hash(-7, counter));
+        }
+    }
+
+    @Test
+    public void seedChangesTheNumbers() {
+        CounterRNG a = new CounterRNG(1);
+        CounterRNG b = new CounterRNG(2);
+        a.jumpTo(5);
+        b.jumpTo(5);
+        assertNotEquals(a.nextLong(), b.nextLong());
+
+        // reseeding an existing instance gives the same numbers as a new one
+        b.setSeed(1);
+        b.jumpTo(5);
+        CounterRNG c = new CounterRNG(1);
+        c.jumpTo(5);
+        assertEquals(c.nextLong(), b.nextLong());
+    }
+
+    @Test
+    public void neighboringCountersAreUniform() {
+        int numBins = 16;
+        int[] bins = new int[numBins];
+        CounterRNG rng = new CounterRNG(0);
+        for (int i = 0; i < NUM_COUNTERS; i++) {
+            rng.jumpTo(i);
+            float f = rng.nextFloat();
+            assertTrue(f >= 0 && f < 1);
+            bins[(int) (f * numBins)]++;
+        }
+        int expected = NUM_COUNTERS / numBins;
+        for (int count : bins) {
+            // more than 5 standard deviations away
+            assertTrue("count = " + count, Math.abs(count - expected) < 5 * Math.sqrt(expected));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2018 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the {@link DistanceTransform} with a brute-force calculation
+ */
+public class DistanceTransformTest {
+    @Test
+    public void matchesBruteForce() {
+        int width = 57;
+        int height = 43;
+        Random random = new Random(7);
+        boolean[] features = new boolean[width * height];
+        float[] grid = new float[width * height];
+        for (int i = 0; i < grid.length; i++) {
+            features[i] = random.nextInt(50) == 0;
+            grid[i] = features[i] ? 0 : DistanceTransform.FAR;
+        }
+
+        DistanceTransform.squaredDistances(grid, width, height);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int expected = Integer.MAX_VALUE;
+                for (int fy = 0; fy < height; fy++) {
+                    for (int fx = 0; fx < width; fx++) {
+                        if (features[fx + fy * width]) {
+                            int dx = fx - x;
+                            int dy = fy - y;
+                            expected = Math.min(expected, dx * dx + dy * dy);
+                        }
+                    }
+                }
+                assertEquals("x = " + x + ", y = " + y,
+                        expected, grid[x + y * width], 0.0f);
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2019 Laszlo Balazs-Csiki and Contributors
+ *
+ * This file is part of Pixelitor. Pixelitor is free software: you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License, version 3 as published by the Free
+ * Software Foundation.
+ *
+ * Pixelitor is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Pixelitor. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package pixelitor.utils.debug;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OperationStatsTest {
+    @Test
+    public void bucketBoundsContainTheValues() {
+        long[] values = {0, 1, 7, 8, 15, 16, 17, 100, 12345,
+                1_000_000, 987_654_321, Long.MAX_VALUE};
+        for (long value : values) {
+            int index = OperationStats.bucketIndex(value);
+            assertTrue(index >= 0 && index < OperationStats.NUM_BUCKETS);
+            long upper = OperationStats.bucketUpperBound(index);
+            assertTrue("value = " + value, value <= upper);
+            if (index > 0) {
+                long lower = OperationStats.bucketUpperBound(index - 1) + 1;
+                assertTrue("value = " + value, value >= lower);
+                // the relative error is at most 12.5%
+                assertTrue(upper - lower <= lower / 8);
+            }
+        }
+    }
+
+    @Test
+    public void percentiles() {
+        OperationStats stats = new OperationStats("test");
+        // 1..100 ms
+        for (int i = 1; i <= 100; i++) {
+            stats.add(i * 1_000_000L, 1024 * 1024, 1_000_000);
+        }
+        OperationStats.Summary summary = stats.createSummary();
+
+        assertEquals(100, summary.getCount());
+        assertEquals(5050.0, summary.getTotalMillis(), 1.0e-9);
+        assertEquals(50.5, summary.getMeanMillis(), 1.0e-9);
+        assertEquals(100.0, summary.getMaxMillis(), 1.0e-9);
+        assertEquals(100.0, summary.getAllocatedMegaBytes(), 1.0e-9);
+        // 100 megapixels in 5.05 seconds
+        assertEquals(100.0 / 5.05, summary.getMegaPixelsPerSecond(), 1.0e-9);
+
+        double p50 = summary.getP50Millis();
+        assertTrue("p50 = " + p50, p50 >= 50 && p50 <= 50 * 1.125);
+        double p99 = summary.getP99Millis();
+        assertTrue("p99 = " + p99, p99 >= 99 && p99 <= 100);
+
+        stats.reset();
+        summary = stats.createSummary();
+        assertEquals(0, summary.getCount());
+        assertEquals(0.0, summary.getP99Millis(), 0.0);
+    }
+}